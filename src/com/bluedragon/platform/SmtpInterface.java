@@ -31,6 +31,8 @@ package com.bluedragon.platform;
 
 import javax.mail.internet.MimeMessage;
 
+import com.naryx.tagfusion.cfm.engine.cfStructData;
+
 public interface SmtpInterface {
 
 	public static final String DEFAULT_CHARSET 			= "UTF-8";
@@ -51,4 +53,6 @@ public interface SmtpInterface {
 
 	public String getSpoolDirectory();
 	public String getUndeliveredDirectory();
+
+	public cfStructData getSpoolMetrics();
 }
\ No newline at end of file
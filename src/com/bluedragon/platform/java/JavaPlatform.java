@@ -413,6 +413,7 @@ public class JavaPlatform implements Platform {
 		functions.put( "xmlsearch", 									"com.naryx.tagfusion.expression.function.xml.XmlSearch" );
 		functions.put( "getmailspooldirectory", 			"com.naryx.tagfusion.expression.function.getMailSpoolDirectory" );
 		functions.put( "getmailundelivereddirectory", "com.naryx.tagfusion.expression.function.getMailUndeliveredDirectory" );
+		functions.put( "getmailspoolinfo", 						"com.naryx.tagfusion.expression.function.getMailSpoolInfo" );
 
 		functions.put( "dbinfo", 											"com.naryx.tagfusion.cfm.sql.platform.java.dbInfo" );
 
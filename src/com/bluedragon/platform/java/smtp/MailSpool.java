@@ -0,0 +1,188 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.bluedragon.platform.java.smtp;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory index of the mail spool directory.
+ *
+ * Messages are queued by route (the first server the message is addressed to)
+ * and the routes are served round-robin, one message per take, so a busy
+ * route never holds up the others; the TransportPool keeps each route's
+ * connection open whichever MailSender picks up its next message. The
+ * directory is only listed when the index is built at startup, or when asked
+ * to rescan (files dropped into the spool by hand, or moved back from
+ * undelivered).
+ */
+class MailSpool {
+
+	private static final String	EMAIL	= ".email", SENDING = ".tmpsend";
+
+	private final File													spoolDirectory;
+	private final Map<String, ArrayDeque<String>>	routes	= new LinkedHashMap<String, ArrayDeque<String>>();
+	private final Set<String>										queued	= new HashSet<String>();
+
+
+	MailSpool( File spoolDirectory ) {
+		this.spoolDirectory = spoolDirectory;
+		rescan();
+	}
+
+
+	/**
+	 * Queues a spool file that has just been renamed to its .email name
+	 */
+	synchronized void add( String route, String fileName ) {
+		if ( !queued.add( fileName ) )
+			return;
+
+		ArrayDeque<String> q = routes.get( route );
+		if ( q == null ) {
+			q = new ArrayDeque<String>();
+			routes.put( route, q );
+		}
+		q.add( fileName );
+		notify();
+	}
+
+
+	/**
+	 * Picks up any .email files in the directory that are not in the index,
+	 * oldest first. Returns how many were added.
+	 */
+	synchronized int rescan() {
+		String[] names = spoolDirectory.list( new FilenameFilter() {
+			public boolean accept( File dir, String name ) {
+				return name.endsWith( EMAIL );
+			}
+		} );
+
+		if ( names == null || names.length == 0 )
+			return 0;
+
+		// the names are the spool ids, which increase over time
+		Arrays.sort( names, new Comparator<String>() {
+			public int compare( String a, String b ) {
+				return a.length() != b.length() ? a.length() - b.length() : a.compareTo( b );
+			}
+		} );
+
+		int added = 0;
+		for ( String name : names ) {
+			if ( !queued.contains( name ) ) {
+				add( "", name );
+				added++;
+			}
+		}
+		return added;
+	}
+
+
+	/**
+	 * Takes the next message from the route at the head of the line, which then
+	 * goes to the back, and renames it to .tmpsend so it is owned by the caller.
+	 * Waits up to waitMs for one to arrive; returns null if none did.
+	 */
+	synchronized Item take( long waitMs ) throws InterruptedException {
+		long end = System.currentTimeMillis() + waitMs;
+
+		for ( ;; ) {
+			while ( queued.isEmpty() ) {
+				long remaining = end - System.currentTimeMillis();
+				if ( remaining <= 0 )
+					return null;
+				wait( remaining );
+			}
+
+			String route = null;
+			ArrayDeque<String> q = null;
+			Iterator<Map.Entry<String, ArrayDeque<String>>> it = routes.entrySet().iterator();
+			while ( it.hasNext() ) {
+				Map.Entry<String, ArrayDeque<String>> e = it.next();
+				it.remove();
+				if ( !e.getValue().isEmpty() ) {
+					route = e.getKey();
+					q = e.getValue();
+					break;
+				}
+			}
+
+			String name = q.poll();
+			queued.remove( name );
+
+			// emptied routes are dropped; add() starts them again
+			if ( !q.isEmpty() )
+				routes.put( route, q );
+
+			File file = new File( spoolDirectory, name );
+			File sending = new File( spoolDirectory, name.substring( 0, name.length() - EMAIL.length() ) + SENDING );
+			if ( file.renameTo( sending ) )
+				return new Item( sending, route );
+
+			// it has gone from the directory behind our back; try the next one
+		}
+	}
+
+
+	synchronized int size() {
+		return queued.size();
+	}
+
+
+	synchronized int routeCount() {
+		int count = 0;
+		for ( ArrayDeque<String> q : routes.values() ) {
+			if ( !q.isEmpty() )
+				count++;
+		}
+		return count;
+	}
+
+
+	static class Item {
+		final File		file;
+		final String	route;
+
+		Item( File file, String route ) {
+			this.file = file;
+			this.route = route;
+		}
+	}
+}
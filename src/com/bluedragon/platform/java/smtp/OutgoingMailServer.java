@@ -35,12 +35,12 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.mail.Address;
@@ -62,8 +62,10 @@ import com.naryx.tagfusion.cfm.application.cfAPPLICATION;
 import com.naryx.tagfusion.cfm.application.cfApplicationData;
 import com.naryx.tagfusion.cfm.engine.cfArrayData;
 import com.naryx.tagfusion.cfm.engine.cfEngine;
+import com.naryx.tagfusion.cfm.engine.cfNumberData;
 import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfStringData;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
 import com.naryx.tagfusion.cfm.engine.engineListener;
 import com.naryx.tagfusion.cfm.engine.variableStore;
@@ -76,6 +78,8 @@ import com.naryx.tagfusion.xmlConfig.xmlCFML;
  */
 public class OutgoingMailServer implements engineListener, SmtpInterface {
 	public static final String DEFAULT_MAILTHREADS = "1";
+	public static final int DEFAULT_KEEPALIVE = 30;
+	public static final int DEFAULT_MAXMESSAGES = 100;
 
 	private static enum SendType {
 		NONE, SSL, TLS
@@ -85,14 +89,14 @@ public class OutgoingMailServer implements engineListener, SmtpInterface {
 
 	private AtomicLong uniqueID = new AtomicLong(System.currentTimeMillis());
 
-	private int mailOut = 0;
-	private long mailSize = 0;
+	private AtomicInteger mailOut = new AtomicInteger(0);
+	private AtomicLong mailSize = new AtomicLong(0);
 	private String smtpServer, smtpPort;
 	private boolean useSSL, useTLS;
 	private volatile boolean stayAlive = true;
 	private String domain;
-	private Object semaphore = new Object();
-	private fileFilter emailFileFilter = new fileFilter();
+	private MailSpool spool;
+	private TransportPool transports = new TransportPool(DEFAULT_MAXMESSAGES, DEFAULT_KEEPALIVE * 1000L);
 	private int mailThreads;
 	private int timeout;
 	private InternetAddress[]	catchEmails = null;
@@ -104,6 +108,11 @@ public class OutgoingMailServer implements engineListener, SmtpInterface {
 
 	private List<Thread> mailThreadList;
 
+	// throughput, reported by getSpoolMetrics()
+	private AtomicLong sentCount = new AtomicLong(0), failedCount = new AtomicLong(0), sentBytes = new AtomicLong(0);
+	private AtomicLong connectionsOpened = new AtomicLong(0), connectionsReused = new AtomicLong(0);
+	private long[] sentInSecond = new long[60], secondStamp = new long[60];
+
 	// needed in order to create a MimeMessage for reading in the message.
 	// Its properties should not be populated because it is not used in the
 	// sending
@@ -127,6 +136,10 @@ public class OutgoingMailServer implements engineListener, SmtpInterface {
 		LogFile.println("MAIL", "OutgoingMailServer started");
 		cfEngine.log("OutgoingMailServer started mainDirectory=" + mainDirectory.toString());
 
+		spool = new MailSpool(spoolDirectory);
+		if ( spool.size() > 0 )
+			cfEngine.log("OutgoingMailServer spooled=" + spool.size() );
+
 		mailThreadList = new ArrayList<Thread>();
 		setMailSettings(config);
 
@@ -147,6 +160,10 @@ public class OutgoingMailServer implements engineListener, SmtpInterface {
 		useSSL 			= config.getBoolean("server.cfmail.usessl", false);
 		useTLS 			= config.getBoolean("server.cfmail.usetls", false);
 
+		// the connections in the pool were opened with the old settings (e.g. domain)
+		transports.closeAll();
+		transports.setLimits( config.getInt("server.cfmail.maxmessagesperconnection", DEFAULT_MAXMESSAGES), config.getInt("server.cfmail.keepalive", DEFAULT_KEEPALIVE) * 1000L );
+
 		catchEmailList	= config.getString("server.cfmail.catchemail", "");
 		catchEmails			= cfMAIL.getAddresses( catchEmailList, SmtpInterface.DEFAULT_CHARSET );
 		
@@ -173,11 +190,11 @@ public class OutgoingMailServer implements engineListener, SmtpInterface {
 	}
 
 	public int getTotalMails() {
-		return mailOut;
+		return mailOut.get();
 	}
 
 	public long getTotalMailSize() {
-		return mailSize;
+		return mailSize.get();
 	}
 
 	public String getDomain() {
@@ -197,6 +214,7 @@ public class OutgoingMailServer implements engineListener, SmtpInterface {
 			((MailSender) mailThreadList.get(i)).shutdown();
 		}
 
+		transports.closeAll();
 		sessions.destroy();
 		cfEngine.log("OutgoingMailServer: Shutdown");
 	}
@@ -229,6 +247,7 @@ public class OutgoingMailServer implements engineListener, SmtpInterface {
 			return;
 
 		long msgID = uniqueID.getAndIncrement(); // atomic increment
+		String route = getRoute(msg);
 
 		/*
 		 * Write out the email to a temp file so it won't be picked up by a
@@ -263,19 +282,34 @@ public class OutgoingMailServer implements engineListener, SmtpInterface {
 			// Now rename to a file with a .email extension so it will be picked up by
 			// a MailSender thread. This is the fix for bug #3285.
 			try {
-				if (!filename.renameTo(new File(spoolDirectory, msgID + ".email")))
+				if (filename.renameTo(new File(spoolDirectory, msgID + ".email")))
+					spool.add(route, msgID + ".email");
+				else
 					LogFile.println("MAIL", "ERROR - Failed to rename [" + filename.getAbsolutePath() + "]");
 			} catch (Exception exc) {
 				LogFile.println("MAIL", "ERROR - Exception occurred while trying to rename [" + filename.getAbsolutePath() + "], exc=" + exc.toString());
 			}
 		}
-
-		notifySenders();
 	}
 
+	/**
+	 * Picks up any mail placed in the spool directory from outside, such as
+	 * files moved back from the undelivered directory
+	 */
 	public void notifySenders() {
-		synchronized (semaphore) {
-			semaphore.notify();
+		spool.rescan();
+	}
+
+	/*
+	 * The first server and the SSL mode; the spool queues messages by these and
+	 * serves each in turn
+	 */
+	private String getRoute(MimeMessage msg) {
+		try {
+			String[] servers = msg.getHeader("X-BlueDragon-server");
+			return (servers == null || servers.length == 0 ? "" : servers[0]) + ";" + msg.getHeader("X-BlueDragon-SSL", ",");
+		} catch (MessagingException e) {
+			return "";
 		}
 	}
 
@@ -294,40 +328,40 @@ public class OutgoingMailServer implements engineListener, SmtpInterface {
 			this.interrupt();
 		}
 
-		private File getMail() {
-			synchronized (semaphore) {
+		private MailSpool.Item getMail() {
+			long idleSince = System.currentTimeMillis();
 
-				// Get the files from the spool directory that end with .email
-				String[] fileArr = spoolDirectory.list(emailFileFilter);
-
-				// Keep waiting until we find a file that ends with .email
-				while ((fileArr == null) || (fileArr.length == 0)) {
-					try {
-						semaphore.wait(60000);
-						fileArr = spoolDirectory.list(emailFileFilter);
-					} catch (InterruptedException ignored) {
-						if (shutdown) {
-							return null;
-						}
+			// Keep waiting until there is a message; the spool renames it from xxx.email
+			// to xxx.tmpsend so no other MailSender threads will pick up the file
+			for (;;) {
+				try {
+					MailSpool.Item item = spool.take(5000);
+					if (item != null)
+						return item;
+				} catch (InterruptedException ignored) {
+					if (shutdown) {
+						return null;
 					}
 				}
 
-				// Rename from xxx.email to xxx.tmpsend so no other MailSender threads will pick up the file
-				String oldName = fileArr[0];
-				String newName = oldName.substring(0, oldName.length() - ".email".length()) + ".tmpsend";
-				File oldMailFile = new File(spoolDirectory, oldName);
-				File newMailFile = new File(spoolDirectory, newName);
-				oldMailFile.renameTo(newMailFile);
+				if (!stayAlive || shutdown)
+					return null;
 
-				return newMailFile;
+				transports.closeIdle();
+
+				// as a backstop, look for mail dropped into the spool directory
+				if (System.currentTimeMillis() - idleSince >= 60000) {
+					spool.rescan();
+					idleSince = System.currentTimeMillis();
+				}
 			}
 		}
 
 		public void run() {
-			File file;
+			MailSpool.Item item;
 			try {
-				while (stayAlive && !shutdown && (file = getMail()) != null) {
-					sendMail(file);
+				while (stayAlive && !shutdown && (item = getMail()) != null) {
+					sendMail(item.file);
 				}
 			} catch (Throwable t) {
 				// handle unexpected exceptions
@@ -428,7 +462,7 @@ public class OutgoingMailServer implements engineListener, SmtpInterface {
 			boolean gotAtLeastOneGoodServerAndPortCombo = false;
 
 			for (int x = 0; x < servers.length; x++) {
-				Transport transport = null;
+				TransportPool.Pooled pooled = null;
 				String catchLog = "";
 				
 				try {
@@ -463,31 +497,48 @@ public class OutgoingMailServer implements engineListener, SmtpInterface {
 					}
 					
 					// Send the message
-					mailOut++;
-					mailSize += filename.length();
-
-					/*
-					 * previously just used the static method Transport.send() to send
-					 * messages that don't require authentication however we need to use
-					 * the realSession as opposed to the dummySession associated with the
-					 * MimeMessage
-					 */
-					if (sendType == SendType.SSL) {
-						transport = realSession.getTransport("smtps");
-					} else {
-						transport = realSession.getTransport("smtp");
-					}
+					mailOut.incrementAndGet();
+					mailSize.addAndGet(filename.length());
+
+					// Reuse a connection already open and authenticated with these settings
+					String poolKey = sendType + ";" + server + ";" + port + ";" + username + ";" + password.hashCode() + ";" + timeout + ";" + (returnPath == null || returnPath.length == 0 ? "" : returnPath[0]);
+					pooled = transports.borrow(poolKey);
+
+					if (pooled == null) {
+						/*
+						 * previously just used the static method Transport.send() to send
+						 * messages that don't require authentication however we need to use
+						 * the realSession as opposed to the dummySession associated with the
+						 * MimeMessage
+						 */
+						Transport transport;
+						if (sendType == SendType.SSL) {
+							transport = realSession.getTransport("smtps");
+						} else {
+							transport = realSession.getTransport("smtp");
+						}
+
+						if (auth) {
+							transport.connect(server, username, password);
+						} else {
+							transport.connect();
+						}
 
-					if (auth) {
-						transport.connect(server, username, password);
+						pooled = new TransportPool.Pooled(poolKey, transport);
+						connectionsOpened.incrementAndGet();
 					} else {
-						transport.connect();
+						connectionsReused.incrementAndGet();
 					}
 
 					msg.saveChanges();
 					
 					rateLimitSend();
-					transport.sendMessage(msg, msg.getAllRecipients());
+					pooled.transport.sendMessage(msg, msg.getAllRecipients());
+
+					// back to the pool; a connection that failed is not trusted again
+					transports.release(pooled);
+					pooled = null;
+					countSent(filename.length());
 
 					LogFile.println("MAIL", catchLog + "MailOut: To=" + To + "; From=" + From + "; Subject=" + Subject + "; Server=" + servers[x] + "; Size=" + filename.length() + " bytes");
 
@@ -503,8 +554,8 @@ public class OutgoingMailServer implements engineListener, SmtpInterface {
 						onMailFailed(callbackCFC, appname, servers[x], E.getMessage(), new File(failedDirectory, origFilename), customData, msg);
 
 				} finally {
-					if (transport != null)
-						transport.close();
+					if (pooled != null)
+						pooled.close();
 				}
 			}// end for-loop
 
@@ -535,6 +586,8 @@ public class OutgoingMailServer implements engineListener, SmtpInterface {
 				if (!filename.delete())
 					LogFile.println("MAIL", "MailOutFail: Failed to delete " + filename);
 			} else {
+				failedCount.incrementAndGet();
+
 				// sending failed so move file to failed directory
 				File failedFilename = new File(failedDirectory, origFilename);
 				if ( !failedFilename.getParentFile().exists() )
@@ -591,15 +644,46 @@ public class OutgoingMailServer implements engineListener, SmtpInterface {
 		msg.setRecipients( RecipientType.TO, catchEmails );
 	}
 	
-	/*
-	 * fileFilter
-	 * 
-	 * This FilenameFilter returns true for all files that end with ".email".
-	 */
-	class fileFilter implements FilenameFilter {
-		public boolean accept(File dir, String name) {
-			return name.endsWith(".email");
+	private void countSent(long bytes) {
+		sentCount.incrementAndGet();
+		sentBytes.addAndGet(bytes);
+
+		long second = System.currentTimeMillis() / 1000;
+		int slot = (int) (second % sentInSecond.length);
+		synchronized (sentInSecond) {
+			if (secondStamp[slot] != second) {
+				secondStamp[slot] = second;
+				sentInSecond[slot] = 0;
+			}
+			sentInSecond[slot]++;
+		}
+	}
+
+	private long getSentLastMinute() {
+		long since = System.currentTimeMillis() / 1000 - sentInSecond.length;
+		long total = 0;
+		synchronized (sentInSecond) {
+			for (int x = 0; x < sentInSecond.length; x++) {
+				if (secondStamp[x] > since)
+					total += sentInSecond[x];
+			}
 		}
+		return total;
+	}
+
+	public cfStructData getSpoolMetrics() {
+		cfStructData metrics = new cfStructData();
+		metrics.setData("threads", new cfNumberData(mailThreadList.size()));
+		metrics.setData("spooled", new cfNumberData(spool.size()));
+		metrics.setData("routes", new cfNumberData(spool.routeCount()));
+		metrics.setData("sent", new cfNumberData(sentCount.get()));
+		metrics.setData("failed", new cfNumberData(failedCount.get()));
+		metrics.setData("sentbytes", new cfNumberData(sentBytes.get()));
+		metrics.setData("sentlastminute", new cfNumberData(getSentLastMinute()));
+		metrics.setData("connectionsopened", new cfNumberData(connectionsOpened.get()));
+		metrics.setData("connectionsreused", new cfNumberData(connectionsReused.get()));
+		metrics.setData("connectionsidle", new cfNumberData(transports.getIdleCount()));
+		return metrics;
 	}
 
 	public String getSmtpPort() {
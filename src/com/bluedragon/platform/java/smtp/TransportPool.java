@@ -0,0 +1,193 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.bluedragon.platform.java.smtp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+
+/**
+ * Connected, authenticated SMTP transports kept open between messages. They
+ * are keyed by everything that went into opening them (host, port, user,
+ * SSL/TLS mode and the session properties), so any MailSender can reuse a
+ * connection another one opened.
+ *
+ * A connection is retired after a number of messages, as many servers cap
+ * the messages per session, or once it has been idle longer than keepAlive.
+ */
+class TransportPool {
+
+	private final Map<String, ArrayDeque<Pooled>>	idle	= new HashMap<String, ArrayDeque<Pooled>>();
+	private volatile int													maxMessages;
+	private volatile long													keepAliveMS;
+	private int																		idleCount	= 0;
+
+
+	TransportPool( int maxMessages, long keepAliveMS ) {
+		setLimits( maxMessages, keepAliveMS );
+	}
+
+
+	void setLimits( int maxMessages, long keepAliveMS ) {
+		this.maxMessages = maxMessages;
+		this.keepAliveMS = keepAliveMS;
+	}
+
+
+	/**
+	 * Returns an idle connection for the key, or null if the caller needs to
+	 * open one
+	 */
+	Pooled borrow( String key ) {
+		for ( ;; ) {
+			Pooled p;
+			synchronized ( this ) {
+				ArrayDeque<Pooled> q = idle.get( key );
+				if ( q == null || q.isEmpty() )
+					return null;
+
+				p = q.pollLast();
+				idleCount--;
+			}
+
+			// isConnected() costs a NOOP, but catches the server having hung up on us
+			if ( System.currentTimeMillis() - p.lastUsed < keepAliveMS && p.transport.isConnected() )
+				return p;
+
+			p.close();
+		}
+	}
+
+
+	/**
+	 * Hands a connection back after a successful send; it is closed instead if
+	 * it has reached its message limit, or if pooling is switched off
+	 */
+	void release( Pooled p ) {
+		p.messages++;
+		p.lastUsed = System.currentTimeMillis();
+
+		if ( p.messages < maxMessages && keepAliveMS > 0 ) {
+			synchronized ( this ) {
+				ArrayDeque<Pooled> q = idle.get( p.key );
+				if ( q == null ) {
+					q = new ArrayDeque<Pooled>();
+					idle.put( p.key, q );
+				}
+				q.add( p );
+				idleCount++;
+			}
+		} else {
+			p.close();
+		}
+	}
+
+
+	/**
+	 * Closes the connections that have been idle longer than keepAlive
+	 */
+	void closeIdle() {
+		closeOlderThan( System.currentTimeMillis() - keepAliveMS );
+	}
+
+
+	void closeAll() {
+		closeOlderThan( Long.MAX_VALUE );
+	}
+
+
+	synchronized int getIdleCount() {
+		return idleCount;
+	}
+
+
+	private void closeOlderThan( long lastUsed ) {
+		List<Pooled> expired = new ArrayList<Pooled>();
+
+		synchronized ( this ) {
+			Iterator<ArrayDeque<Pooled>> it = idle.values().iterator();
+			while ( it.hasNext() ) {
+				ArrayDeque<Pooled> q = it.next();
+				Iterator<Pooled> pit = q.iterator();
+				while ( pit.hasNext() ) {
+					Pooled p = pit.next();
+					if ( p.lastUsed < lastUsed ) {
+						pit.remove();
+						idleCount--;
+						expired.add( p );
+					}
+				}
+
+				if ( q.isEmpty() )
+					it.remove();
+			}
+		}
+
+		close( expired );
+	}
+
+
+	private static void close( List<Pooled> list ) {
+		if ( list == null )
+			return;
+
+		for ( Pooled p : list )
+			p.close();
+	}
+
+
+	static class Pooled {
+		final String		key;
+		final Transport	transport;
+		int							messages	= 0;
+		long						lastUsed	= System.currentTimeMillis();
+
+		Pooled( String key, Transport transport ) {
+			this.key = key;
+			this.transport = transport;
+		}
+
+		boolean isReused() {
+			return messages > 0;
+		}
+
+		void close() {
+			try {
+				transport.close();
+			} catch ( MessagingException ignore ) {}
+		}
+	}
+}
@@ -61,6 +61,7 @@ public class DocumentWrap {
 	public static final String	SIZE					= "size";
 	public static final String	CATEGORY			= "category";
 	public static final String	CATEGORYTREE	= "categorytree";
+	public static final String	FINGERPRINT		= "fingerprint";
 
 	private Document	doc						= null;
 	private float			score					= 0f;
@@ -195,6 +196,23 @@ public class DocumentWrap {
 		}
 	}
 
+	/**
+	 * The last modified time and size of the file this document was crawled from, as
+	 * made by getFingerprint(); lets an incremental crawl pass over unchanged files
+	 */
+	public String getFingerprint(){
+		return get(FINGERPRINT);
+	}
+
+	public void setFingerprint( String fingerprint ){
+		if ( fingerprint != null )
+			doc.add( new StoredField( FINGERPRINT, fingerprint ) );
+	}
+	
+	public static String getFingerprint( File file ){
+		return Long.toString( file.lastModified(), 36 ) + "-" + Long.toString( file.length(), 36 );
+	}
+
 	public String getAttribute(String attribName){
 		return get(attribName);
 	}
@@ -36,17 +36,23 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
 import java.nio.file.FileSystems;
+import java.nio.file.Path;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.CorruptIndexException;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TrackingIndexWriter;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.LockObtainFailedException;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.NIOFSDirectory;
 import org.apache.lucene.store.SimpleFSDirectory;
 import org.apache.lucene.util.Constants;
@@ -54,23 +60,38 @@ import org.apache.lucene.util.Constants;
 import com.bluedragon.search.AnalyzerFactory;
 import com.bluedragon.search.DocumentWrap;
 import com.bluedragon.search.index.DocumentWriter;
+import com.bluedragon.search.index.crawl.CrawlPipeline;
 import com.nary.io.FileUtils;
 
 
 public class Collection extends Object {
 
+	// how stale, in seconds, the searcher of a near-real-time collection is allowed to get
+	private static final double NRT_MAX_STALE	= 1.0;
+	private static final double NRT_MIN_STALE	= 0.1;
+	
+	// how much the IndexWriter buffers before writing a segment; more than Lucene's 16MB so bulk crawls make fewer, larger segments
+	private static final double RAM_BUFFER_MB	= 64.0;
+	
 	private	String 	name;
 	private	long		created;
-	private boolean	bStoreBody;
+	private boolean	bStoreBody, bNearRealTime;
 	private String	language, collectionpath;
 	
 	// Lucene specific variables
 	private Directory	directory = null;
-	private IndexSearcher	indexsearcher = null;
+	private volatile SearcherManager	searchermanager = null;
+	private ControlledRealTimeReopenThread<IndexSearcher>	reopenthread = null;
 	private IndexWriter	indexwriter = null;
-	private int	totalDocs = -1;
+	private volatile int	totalDocs = -1;
 	private DocumentWriter documentwriter = null;
-	private long lastUsed	= System.currentTimeMillis();
+	private volatile long lastUsed	= System.currentTimeMillis();
+	
+	// timings, in milliseconds, of the last commit and the last searcher refresh
+	private volatile long	commitTime = -1, refreshTime = -1;
+	
+	// the directory crawl running, or the last one to have run, against this collection
+	private volatile CrawlPipeline	crawlpipeline = null;
 	
 	public String toString(){
 		return "[Collection name=" + name + "; path=" + collectionpath + "]";
@@ -103,6 +124,19 @@ public class Collection extends Object {
 	public boolean bStoreBody(){
 		return bStoreBody;
 	}
+	
+	/**
+	 * A near-real-time collection keeps its IndexWriter open, and the searchers are
+	 * reopened from it in the background, so new documents are searchable within a
+	 * second without waiting for a commit
+	 */
+	public void setNearRealTime(boolean boolean1) {
+		bNearRealTime	= boolean1;
+	}
+
+	public boolean isNearRealTime(){
+		return bNearRealTime;
+	}
 
 	public String getName() {
 		return name;
@@ -120,6 +154,28 @@ public class Collection extends Object {
 		return collectionpath;
 	}
 	
+	/**
+	 * How long, in milliseconds, the last commit to the index took; -1 if not yet committed
+	 */
+	public long getCommitTime(){
+		return commitTime;
+	}
+	
+	/**
+	 * How long, in milliseconds, the last reopen of the searcher took; -1 if not yet refreshed
+	 */
+	public long getRefreshTime(){
+		return refreshTime;
+	}
+	
+	public void setCrawlPipeline(CrawlPipeline pipeline){
+		crawlpipeline	= pipeline;
+	}
+	
+	public CrawlPipeline getCrawlPipeline(){
+		return crawlpipeline;
+	}
+	
 	public void setDirectory(String path) throws Exception {
 		File	filePath;
 		if ( !path.endsWith(name) )
@@ -134,8 +190,13 @@ public class Collection extends Object {
 	}
 
 	
-	public void close(){
-		closeReader();
+	public synchronized void close(){
+		if ( reopenthread != null ){
+			reopenthread.close();
+			reopenthread = null;
+		}
+		
+		closeSearcherManager();
 		
 		if ( indexwriter != null ){
 			try {
@@ -146,38 +207,99 @@ public class Collection extends Object {
 	}
 	
 	
+	/**
+	 * Lets go of the searchers; any search still running holds onto its own reference until it
+	 * is released.  A near-real-time collection closes its IndexWriter too, committing anything
+	 * outstanding, as it would otherwise keep the index open
+	 */
 	public void closeReader(){
-		if ( indexsearcher != null ){
+		if ( bNearRealTime )
+			close();
+		else
+			closeSearcherManager();
+	}
+	
+	
+	private void closeSearcherManager(){
+		SearcherManager	sm	= searchermanager;
+		if ( sm != null ){
+			searchermanager = null;
 			try {
-				indexsearcher.getIndexReader().close();
+				sm.close();
 			} catch ( IOException ignoreThisException ) {}
-			indexsearcher = null;
 		}
 	}
 	
+	
 	/**
-	 * Retrieves the IndexSearcher object.  This object is cached against this collection and is intended
-	 * to be used amongst several threads.   This is the recommended approach.
+	 * Acquires the current IndexSearcher for this collection.  No lock is taken; the searcher is
+	 * reference counted and must be handed back using releaseSearcher() once the search is done.
 	 * 
-	 * If new content is added to this collection then it won't be available for searching until a new
-	 * indexsearcher is created
+	 * If new content is added to this collection then it will be in the next searcher acquired;
+	 * straight after the commit for a normal collection, or within a second for a near-real-time one
 	 * 
 	 * @return
 	 * @throws CorruptIndexException
 	 * @throws IOException
 	 */
-	public synchronized IndexSearcher getIndexSearcher() throws CorruptIndexException, IOException{
+	public IndexSearcher acquireSearcher() throws CorruptIndexException, IOException{
 		lastUsed	= System.currentTimeMillis();
 		
-		if ( indexsearcher != null )
-			return indexsearcher;
+		for (;;){
+			SearcherManager	sm	= searchermanager;
+			if ( sm == null )
+				sm = openSearcherManager();
+			
+			try {
+				IndexSearcher	indexsearcher	= sm.acquire();
+				totalDocs	= indexsearcher.getIndexReader().numDocs();
+				return indexsearcher;
+			} catch ( AlreadyClosedException e ){
+				// closed underneath us by the idle sweep; go round and open it again
+			}
+		}
+	}
+	
+	
+	public void releaseSearcher(IndexSearcher indexsearcher) throws IOException {
+		// the same as SearcherManager.release(), which would not let us release to one that has since been closed
+		indexsearcher.getIndexReader().decRef();
+	}
+	
+	
+	private synchronized SearcherManager openSearcherManager() throws IOException {
+		if ( searchermanager != null )
+			return searchermanager;
 		
-		setDirectory();
-		indexsearcher	= new IndexSearcher( DirectoryReader.open(directory) );
+		SearcherManager	sm;
+		if ( bNearRealTime ){
+			setIndexWriter();
+			sm	= new SearcherManager( indexwriter, true, null );
+			
+			reopenthread = new ControlledRealTimeReopenThread<IndexSearcher>( new TrackingIndexWriter(indexwriter), sm, NRT_MAX_STALE, NRT_MIN_STALE );
+			reopenthread.setName( "CollectionNRT-" + name );
+			reopenthread.setDaemon( true );
+			reopenthread.start();
+		}else{
+			setDirectory();
+			sm	= new SearcherManager( directory, null );
+		}
 		
-		totalDocs			= indexsearcher.getIndexReader().numDocs();
+		sm.addListener( new ReferenceManager.RefreshListener(){
+			private long start;
+			
+			public void beforeRefresh() {
+				start	= System.nanoTime();
+			}
+
+			public void afterRefresh(boolean didRefresh) {
+				if ( didRefresh )
+					refreshTime	= ( System.nanoTime() - start ) / 1000000;
+			}
+		});
 		
-		return indexsearcher;
+		searchermanager	= sm;
+		return sm;
 	}
 	
 	
@@ -202,14 +324,19 @@ public class Collection extends Object {
 		return size;
 	}
 	
-	private void setDirectory() throws IOException {
+	private synchronized void setDirectory() throws IOException {
 		if ( directory != null )
 			return;
 		
-    if (Constants.WINDOWS) {
-    	directory = new SimpleFSDirectory( FileSystems.getDefault().getPath(collectionpath) );
+		Path	path	= FileSystems.getDefault().getPath(collectionpath);
+		
+		// memory mapping needs the address space of a 64bit JVM
+		if ( Constants.JRE_IS_64BIT && MMapDirectory.UNMAP_SUPPORTED ){
+			directory = new MMapDirectory( path );
+		} else if (Constants.WINDOWS) {
+    	directory = new SimpleFSDirectory( path );
     } else {
-    	directory = new NIOFSDirectory( FileSystems.getDefault().getPath(collectionpath) );
+    	directory = new NIOFSDirectory( path );
     }
     
     File touchFile	= new File( collectionpath, "openbd.created" );
@@ -273,14 +400,25 @@ public class Collection extends Object {
 		setDirectory();
 		IndexWriterConfig iwc = new IndexWriterConfig( AnalyzerFactory.get(language) );
 		iwc.setOpenMode( OpenMode.CREATE_OR_APPEND );
+		iwc.setRAMBufferSizeMB( RAM_BUFFER_MB );
 		indexwriter = new IndexWriter(directory, iwc);
 	}
 	
-	public synchronized void addDocuments(java.util.Collection<Document> pageCollection) throws CorruptIndexException, IOException {
+	public void addDocuments(java.util.Collection<Document> pageCollection) throws CorruptIndexException, IOException {
+		addDocuments( pageCollection, true );
+	}
+	
+	/**
+	 * Adds the documents to the index.  A normal collection commits them straight away, unless
+	 * bCommit is false; a near-real-time collection leaves them for the background reopen to
+	 * pick up.  Either way the uncommitted documents go in with the next call to closeWriter()
+	 */
+	public synchronized void addDocuments(java.util.Collection<Document> pageCollection, boolean bCommit) throws CorruptIndexException, IOException {
 		setIndexWriter();
 		indexwriter.addDocuments(pageCollection);
-		closeWriter();
-		close();
+		
+		if ( !bNearRealTime && bCommit )
+			closeWriter();
 	}
 
 	public synchronized void deleteDocument(DocumentWrap docwrap, boolean closeOptimize ) throws IOException {
@@ -293,10 +431,31 @@ public class Collection extends Object {
 	}
 	
 	
+	/**
+	 * Commits the outstanding changes.  A normal collection closes its IndexWriter and moves its
+	 * searcher on to the new commit; a near-real-time one keeps the IndexWriter open
+	 */
 	public synchronized void closeWriter() throws CorruptIndexException, IOException{
+		if ( indexwriter == null )
+			return;
+		
+		long start	= System.nanoTime();
 		indexwriter.commit();
+		commitTime	= ( System.nanoTime() - start ) / 1000000;
+		
+		if ( bNearRealTime )
+			return;
+		
 		indexwriter.close();
 		indexwriter	= null;
+		
+		SearcherManager	sm	= searchermanager;
+		if ( sm != null ){
+			try{
+				// waits for any refresh already underway, so the commit is in the next searcher
+				sm.maybeRefreshBlocking();
+			}catch( AlreadyClosedException ignoreThisException ){}
+		}
 	}
 	
 	
@@ -304,6 +463,10 @@ public class Collection extends Object {
 		setIndexWriter();
 		indexwriter.deleteAll();
 		closeWriter();
-		close();		
+		
+		// a purge should not linger in the searchers
+		SearcherManager	sm	= searchermanager;
+		if ( bNearRealTime && sm != null )
+			sm.maybeRefreshBlocking();
 	}
-}
\ No newline at end of file
+}
@@ -50,8 +50,8 @@ public class CollectionCreateFunction extends functionBase {
 
 	public CollectionCreateFunction(){
 		min = 1;
-		max = 5;
-		setNamedParams( new String[]{ "collection", "storebody", "language", "path", "relative" } );
+		max = 6;
+		setNamedParams( new String[]{ "collection", "storebody", "language", "path", "relative", "nearrealtime" } );
 	}
 	
 	
@@ -61,7 +61,8 @@ public class CollectionCreateFunction extends functionBase {
 			"a flag to determine if the body is stored as a whole in the index.  For large collections this can take up a lot of space. defaults to false",
 			"language this collection is using. defaults to 'english'. Valid: english, german, russian, brazilian, korean, chinese, japanese, czech, greek, french, dutch, danish, finnish, italian, norwegian, portuguese, spanish, swedish",
 			"path to where the collection will be created.  If omitted then it will be created in the working directory under the 'cfcollection' directory",
-			"a flag to determine if the 'path' attribute, if presented, is relative to the web path"
+			"a flag to determine if the 'path' attribute, if presented, is relative to the web path",
+			"a flag to keep the index open for writing, with new documents becoming searchable within a second rather than when the indexing finishes. defaults to false"
 		};
   }
 	
@@ -88,6 +89,7 @@ public class CollectionCreateFunction extends functionBase {
 			throwException(_session, "specified language, " + language + ", not supported" );
 		
 		boolean bRelative		= getNamedBooleanParam(argStruct, "relative", false );
+		boolean bNearRealTime	= getNamedBooleanParam(argStruct, "nearrealtime", false );
 		String pathIn				= getNamedStringParam(argStruct, "path", null );		
 		String path 				= getPath( name, pathIn,  bRelative );
 		if ( path == null )
@@ -99,6 +101,7 @@ public class CollectionCreateFunction extends functionBase {
 			col.setName( name );
 			col.setStoreBody(bStoreBody);
 			col.setLanguage(language);
+			col.setNearRealTime(bNearRealTime);
 			
 			col.setDirectory(path);
 
@@ -111,6 +114,7 @@ public class CollectionCreateFunction extends functionBase {
       cfEngine.getConfig().setData(collectionkey + ".language", 	language );
       cfEngine.getConfig().setData(collectionkey + ".storebody", 	bStoreBody ? "true" : "false" );
       cfEngine.getConfig().setData(collectionkey + ".relative", 	bRelative ? "true" : "false" );
+      cfEngine.getConfig().setData(collectionkey + ".nearrealtime", 	bNearRealTime ? "true" : "false" );
       
       if ( bRelative && pathIn != null ){
       	cfEngine.getConfig().setData(collectionkey + ".path", pathIn );
@@ -130,6 +130,7 @@ public class CollectionFactory extends Object implements SystemClockEvent {
 					collection.setName( xmlconfig.getString(xmlkey + ".name") );
 					collection.setLanguage( xmlconfig.getString(xmlkey + ".language", "english") );
 					collection.setStoreBody( xmlconfig.getBoolean(xmlkey + ".storebody", false ) );
+					collection.setNearRealTime( xmlconfig.getBoolean(xmlkey + ".nearrealtime", false ) );
 					
 					String path	= xmlconfig.getString(xmlkey + ".path");
 					if ( path == null || path.length() == 0 )
@@ -91,20 +91,25 @@ public class CollectionListCategoryFunction extends functionBase {
 		try{
 
 			// Run around all the documents counting up the categories
-			IndexSearcher indexsearcher = col.getIndexSearcher();
-			for ( int d=0; d < col.getTotalDocs(); d++ ){
-				DocumentWrap	docWrap	= new DocumentWrap( indexsearcher.doc(d) );
-				
-				String [] categories = docWrap.getCategories();
-				if ( categories != null ){
-					for ( int c = 0; c < categories.length; c++ ){
-						incrementCount( catList, categories[c] );
+			IndexSearcher indexsearcher = col.acquireSearcher();
+			try{
+				int totalDocs	= indexsearcher.getIndexReader().numDocs();
+				for ( int d=0; d < totalDocs; d++ ){
+					DocumentWrap	docWrap	= new DocumentWrap( indexsearcher.doc(d) );
+					
+					String [] categories = docWrap.getCategories();
+					if ( categories != null ){
+						for ( int c = 0; c < categories.length; c++ ){
+							incrementCount( catList, categories[c] );
+						}
 					}
+	
+					String catTree = docWrap.getCategoryTree();
+					if ( catTree != null )
+						incrementCount( catTreeList, catTree );
 				}
-
-				String catTree = docWrap.getCategoryTree();
-				if ( catTree != null )
-					incrementCount( catTreeList, catTree );
+			}finally{
+				col.releaseSearcher( indexsearcher );
 			}
 			
 			// divide the categories trees into subcategory tree counts
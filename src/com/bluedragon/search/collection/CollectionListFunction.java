@@ -75,7 +75,7 @@ public class CollectionListFunction extends functionBase {
 				continue;
 			
 			try {
-				col.getIndexSearcher();
+				col.releaseSearcher( col.acquireSearcher() );
 			} catch (IOException e) {
 				continue;
 			}
@@ -34,6 +34,7 @@ package com.bluedragon.search.collection;
 
 import java.io.IOException;
 
+import com.bluedragon.search.index.crawl.CrawlPipeline;
 import com.naryx.tagfusion.cfm.engine.cfArgStructData;
 import com.naryx.tagfusion.cfm.engine.cfBooleanData;
 import com.naryx.tagfusion.cfm.engine.cfData;
@@ -42,6 +43,7 @@ import com.naryx.tagfusion.cfm.engine.cfNumberData;
 import com.naryx.tagfusion.cfm.engine.cfQueryResultData;
 import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfStringData;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
 import com.naryx.tagfusion.expression.function.functionBase;
 
@@ -65,7 +67,7 @@ public class CollectionStatus extends functionBase {
 	public java.util.Map getInfo(){
 		return makeInfo(
 				"search", 
-				"Returns back all the information for a given collection", 
+				"Returns back all the information for a given collection, including how long in milliseconds the last commit (COMMITTIME) and the last searcher refresh (REFRESHTIME) took, and the progress of the directory crawl underway or last run (INDEXPROGRESS: running, started, elapsed, files, indexed, skipped, failed, rate per second)", 
 				ReturnType.QUERY );
 	}
 
@@ -81,10 +83,11 @@ public class CollectionStatus extends functionBase {
 		
 		cfQueryResultData queryResultData	=  new cfQueryResultData( new String[] { 
 				"EXTERNAL", "LANGUAGE", "MAPPED", "NAME", "ONLINE", "PATH", "REGISTERED",
-    		"CATEGORIES", "SIZE", "DOCCOUNT", "LASTMODIFIED", "CREATED", "STOREDBODY" }, "SEARCH" );
+    		"CATEGORIES", "SIZE", "DOCCOUNT", "LASTMODIFIED", "CREATED", "STOREDBODY",
+    		"NEARREALTIME", "COMMITTIME", "REFRESHTIME", "INDEXPROGRESS" }, "SEARCH" );
 		
 		try {
-			col.getIndexSearcher();
+			col.releaseSearcher( col.acquireSearcher() );
 		} catch (IOException e) {
 			throwException(_session, "problem with '" + name + "' collection:" + e.getMessage() );
 		}
@@ -106,9 +109,33 @@ public class CollectionStatus extends functionBase {
 		queryResultData.setCell(11, new cfDateData( col.getLastModified() ) );
 		queryResultData.setCell(12, new cfDateData( col.getCreated() ) );
 		queryResultData.setCell(13, cfBooleanData.getcfBooleanData( col.bStoreBody() ) );
+		queryResultData.setCell(14, cfBooleanData.getcfBooleanData( col.isNearRealTime() ) );
+		queryResultData.setCell(15, new cfNumberData( col.getCommitTime() ) );
+		queryResultData.setCell(16, new cfNumberData( col.getRefreshTime() ) );
+		queryResultData.setCell(17, getIndexProgress( col.getCrawlPipeline() ) );
 		
 		queryResultData.reset();
 		
 		return queryResultData;
 	}
+	
+	
+	/**
+	 * Details of the directory crawl underway, or the last one to have run; an empty structure if none has
+	 */
+	private cfStructData getIndexProgress( CrawlPipeline pipeline ){
+		cfStructData	sd	= new cfStructData();
+		if ( pipeline == null )
+			return sd;
+		
+		sd.setData( "running", 	cfBooleanData.getcfBooleanData( pipeline.isRunning() ) );
+		sd.setData( "started", 	new cfDateData( pipeline.getStarted() ) );
+		sd.setData( "elapsed", 	new cfNumberData( pipeline.getElapsed() ) );
+		sd.setData( "files", 		new cfNumberData( pipeline.getFiles() ) );
+		sd.setData( "indexed", 	new cfNumberData( pipeline.getIndexed() ) );
+		sd.setData( "skipped", 	new cfNumberData( pipeline.getSkipped() ) );
+		sd.setData( "failed", 	new cfNumberData( pipeline.getFailed() ) );
+		sd.setData( "rate", 		new cfNumberData( pipeline.getRate() ) );
+		return sd;
+	}
 }
@@ -66,6 +66,7 @@ public class CollectionTag extends cfTag implements Serializable  {
 			createAttInfo( "LANGUAGE", 	"language this collection is using. defaults to 'english'. Valid: english, german, russian, brazilian, korean, chinese, japanese, czech, greek, french, dutch, danish, finnish, italian, norwegian, portuguese, spanish, swedish.  Used for ACTION=create", "english", false ),
 			createAttInfo( "PATH", 			"path to where the collection will be created.  If omitted then it will be created in the working directory under the 'cfcollection' directory.  Used for ACTION=create", "", false ),
 			createAttInfo( "RELATIVE", 	"a flag to determine if the 'path' attribute, if presented, is relative to the web path.   Used for ACTION=create", "false", false ),
+			createAttInfo( "NEARREALTIME", "a flag to keep the index open for writing, with new documents becoming searchable within a second rather than when the indexing finishes.  Used for ACTION=create", "false", false ),
 			
 			createAttInfo( "NAME", 			"The name of the variable to store the resulting data.   Used for ACTION=list|categorylist", "", true ),
 			
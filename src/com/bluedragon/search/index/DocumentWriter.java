@@ -53,9 +53,21 @@ public class DocumentWriter extends Object {
 	private Collection<Document>	pageCollection;
 	
 	private int	PAGE_SIZE		= 100;
+	private boolean bCommitPages;
 	
 	public DocumentWriter( com.bluedragon.search.collection.Collection collection ){
+		this( collection, true );
+	}
+	
+	
+	/**
+	 * @param collection
+	 * @param bCommitPages false to keep adding the pages to the one open IndexWriter, only committing
+	 * 	them when commit() is called; for bulk indexing
+	 */
+	public DocumentWriter( com.bluedragon.search.collection.Collection collection, boolean bCommitPages ){
 		this.collection		= collection;
+		this.bCommitPages	= bCommitPages;
 		pageCollection		= new ArrayList<Document>();
 	}
 	
@@ -72,7 +84,7 @@ public class DocumentWriter extends Object {
 		pageCollection.add( docwrap.getDocument() );
 
 		if ( pageCollection.size() == PAGE_SIZE )
-			commit();
+			flush();
 	}
 
 	
@@ -89,10 +101,19 @@ public class DocumentWriter extends Object {
 	 * @throws IOException
 	 */
 	public synchronized void commit() throws CorruptIndexException, IOException{
+		flush();
+		
+		// a near-real-time collection leaves its batches uncommitted until the indexing is done
+		if ( collection.isNearRealTime() || !bCommitPages )
+			collection.closeWriter();
+	}
+	
+	
+	private void flush() throws CorruptIndexException, IOException{
 		if ( pageCollection.size() == 0 )
 			return;
 		
-		collection.addDocuments( pageCollection );
+		collection.addDocuments( pageCollection, bCommitPages );
 		
 		pageCollection.clear();
 	}
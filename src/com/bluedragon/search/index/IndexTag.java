@@ -80,6 +80,7 @@ public class IndexTag extends cfTag implements Serializable  {
 
 			createAttInfo( "RECURSE", 		"a flag to determine whether or not the path is recursed for sub-directories. TYPE=PATH", 	"false", false ),
 			createAttInfo( "EXTENSIONS", 	"a list of extensions to include in this crawl.  defaults to '.cfm, .cfml, .htm, .html, .dbm, .dbml'.  '.*'/'*.*' handles all files. TYPE=PATH", 	"false", false ),
+			createAttInfo( "INCREMENTAL", "a flag to pass over any file whose last modified time and size are unchanged since it was last indexed. TYPE=PATH", 	"false", false ),
 		};
 	}
 
@@ -115,8 +115,19 @@ public class CrawlFactory extends Object {
 	 * @throws IOException
 	 */
 	public Set<String>	getFilesToCrawl(File dir, String exts, boolean bRecurse ) throws IOException {
-		ConfigurableFileFilter	filter	= new ConfigurableFileFilter( getExtensions(exts), bRecurse );
-		return recursePath( dir, filter );
+		return recursePath( dir, getFileFilter(exts, bRecurse) );
+	}
+	
+	
+	/**
+	 * The filter getFilesToCrawl() walks the directories with
+	 * 
+	 * @param exts
+	 * @param bRecurse
+	 * @return
+	 */
+	public static FileFilter getFileFilter(String exts, boolean bRecurse ){
+		return new ConfigurableFileFilter( getExtensions(exts), bRecurse );
 	}
 	
 	
@@ -135,7 +146,7 @@ public class CrawlFactory extends Object {
 	}
 
 	
-	private Set<String> getExtensions(String exts) {
+	private static Set<String> getExtensions(String exts) {
 		Set<String> extensions = new HashSet<String>();
 		
 		if ( exts != null ) {
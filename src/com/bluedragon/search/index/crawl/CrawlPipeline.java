@@ -0,0 +1,338 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.bluedragon.search.index.crawl;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+
+import com.bluedragon.search.DocumentWrap;
+import com.bluedragon.search.collection.Collection;
+import com.bluedragon.search.index.DocumentWriter;
+import com.naryx.tagfusion.cfm.engine.cfEngine;
+import com.naryx.tagfusion.xmlConfig.xmlCFML;
+
+
+/**
+ * Crawls directories into a collection in three stages.  The calling thread walks the files,
+ * the text is pulled out of them on a shared pool of workers, and the documents come back to
+ * the calling thread to be finished off and added in batches to the collection's IndexWriter,
+ * which is committed once at the end rather than after every batch.
+ * 
+ * If incremental, a file whose last modified time and size match the fingerprint stored with
+ * its document is passed over without being read again.
+ * 
+ * The counts are kept up to date as it goes, and the collection holds on to the last crawl,
+ * so CollectionStatus() can report on one still underway.
+ */
+public class CrawlPipeline extends Object {
+
+	/**
+	 * Called on the crawling thread for each document, to set the fields that come from the caller
+	 */
+	public interface DocumentListener {
+		public void crawled( String file, DocumentWrap doc ) throws Exception;
+	}
+
+	// shared by all crawls, for pulling the text out of the files
+	private static ExecutorService extractExecutor;
+	private static int extractThreads;
+	
+	private final Collection collection;
+	private final boolean bStoreBody, bIncremental;
+	private final DocumentWriter docWriter;
+	private final List<String> badFiles = new ArrayList<String>();
+	private boolean bCommitted = false;
+	
+	private final long started = System.currentTimeMillis();
+	private volatile long finished = -1;
+	private volatile long files = 0, indexed = 0, skipped = 0, failed = 0;
+	
+	
+	public CrawlPipeline( Collection collection, boolean bIncremental ){
+		this.collection		= collection;
+		this.bStoreBody		= collection.bStoreBody();
+		this.bIncremental	= bIncremental;
+		docWriter	= new DocumentWriter( collection, false );
+		collection.setCrawlPipeline( this );
+	}
+	
+	
+	/**
+	 * Crawls the files in the directory that match the extensions, returning once they have all been
+	 * handed to the DocumentWriter
+	 * 
+	 * @param dir
+	 * @param exts
+	 * @param bRecurse
+	 * @param listener
+	 * @throws Exception
+	 */
+	public void crawl( File dir, String exts, boolean bRecurse, DocumentListener listener ) throws Exception {
+		FileFilter	filter	= CrawlFactory.getFileFilter( exts, bRecurse );
+		ExecutorService executor	= getExtractExecutor();
+		CompletionService<Extraction> completion	= new ExecutorCompletionService<Extraction>( executor );
+		
+		// enough files in hand to keep the workers busy, without reading ahead of the IndexWriter
+		int maxPending	= extractThreads * 4;
+		int pending			= 0;
+		
+		IndexSearcher	searcher	= bIncremental ? collection.acquireSearcher() : null;
+		try{
+			Set<String> seen	= new HashSet<String>();
+			LinkedList<File> dirs	= new LinkedList<File>();
+			dirs.add( dir );
+			
+			while ( !dirs.isEmpty() ){
+				File[] list	= dirs.removeFirst().listFiles( filter );
+				if ( list == null )
+					continue;
+				
+				for ( int x = 0; x < list.length; x++ ){
+					if ( list[x].isDirectory() ){
+						dirs.add( list[x] );
+						continue;
+					}
+					
+					String path	= list[x].getCanonicalPath();
+					if ( !seen.add(path) )
+						continue;
+					
+					files++;
+					String fingerprint	= DocumentWrap.getFingerprint( list[x] );
+					if ( searcher != null && fingerprint.equals( getFingerprint(searcher, path) ) ){
+						skipped++;
+						continue;
+					}
+					
+					completion.submit( new Extraction( path, list[x], fingerprint ) );
+					pending++;
+					
+					while ( pending >= maxPending ){
+						add( completion.take(), listener );
+						pending--;
+					}
+					
+					Future<Extraction>	done;
+					while ( ( done = completion.poll() ) != null ){
+						add( done, listener );
+						pending--;
+					}
+				}
+			}
+			
+			while ( pending > 0 ){
+				add( completion.take(), listener );
+				pending--;
+			}
+			
+		}finally{
+			if ( searcher != null )
+				collection.releaseSearcher( searcher );
+		}
+	}
+	
+	
+	private void add( Future<Extraction> future, DocumentListener listener ) throws Exception {
+		Extraction	extraction;
+		try{
+			extraction	= future.get();
+		}catch( ExecutionException e ){
+			throw ( e.getCause() instanceof Exception ) ? (Exception)e.getCause() : e;
+		}
+		
+		if ( extraction.doc == null ){
+			badFiles.add( extraction.path );
+			failed++;
+			return;
+		}
+		
+		if ( listener != null )
+			listener.crawled( extraction.path, extraction.doc );
+		
+		docWriter.add( extraction.doc );
+		indexed++;
+	}
+	
+	
+	/**
+	 * The fingerprint of the document already in the index for this file, or null if there is not one
+	 */
+	private static String getFingerprint( IndexSearcher searcher, String path ) throws Exception {
+		TopDocs	hits	= searcher.search( new TermQuery( new Term( DocumentWrap.ID, path.replace(File.separatorChar, '/') ) ), 1 );
+		if ( hits.scoreDocs.length == 0 )
+			return null;
+		
+		return searcher.doc( hits.scoreDocs[0].doc, Collections.singleton( DocumentWrap.FINGERPRINT ) ).get( DocumentWrap.FINGERPRINT );
+	}
+	
+	
+	/**
+	 * Commits all the documents crawled
+	 */
+	public void commit() throws Exception {
+		docWriter.commit();
+		bCommitted = true;
+	}
+	
+	
+	/**
+	 * Marks the crawl as finished, committing whatever was crawled before it went wrong
+	 */
+	public void close() {
+		try{
+			if ( !bCommitted )
+				commit();
+		}catch( Exception e ){
+			cfEngine.log( "CrawlPipeline.close(" + collection.getName() + "): " + e.getMessage() );
+		}
+		
+		finished	= System.currentTimeMillis();
+	}
+	
+	
+	public List<String> getBadFiles(){
+		return badFiles;
+	}
+	
+	public boolean isRunning(){
+		return finished == -1;
+	}
+
+	/**
+	 * Files found by the walk, including those skipped and failed
+	 */
+	public long getFiles(){
+		return files;
+	}
+
+	public long getIndexed(){
+		return indexed;
+	}
+
+	/**
+	 * Files passed over as their fingerprint had not changed
+	 */
+	public long getSkipped(){
+		return skipped;
+	}
+
+	/**
+	 * Files that could not be handled
+	 */
+	public long getFailed(){
+		return failed;
+	}
+	
+	public long getStarted(){
+		return started;
+	}
+
+	public long getElapsed(){
+		return ( finished == -1 ? System.currentTimeMillis() : finished ) - started;
+	}
+	
+	/**
+	 * Documents indexed per second
+	 */
+	public double getRate(){
+		long elapsed	= getElapsed();
+		return ( elapsed == 0 ) ? 0 : indexed * 1000.0 / elapsed;
+	}
+	
+	
+	/**
+	 * Pulls the text out of one file on a worker.  Each gets its own CrawlFactory as the handlers
+	 * keep the file they are working on
+	 */
+	private class Extraction implements Callable<Extraction> {
+		private final String path, fingerprint;
+		private final File file;
+		private DocumentWrap doc = null;
+		
+		private Extraction( String path, File file, String fingerprint ){
+			this.path					= path;
+			this.file					= file;
+			this.fingerprint	= fingerprint;
+		}
+		
+		public Extraction call() {
+			try{
+				doc	= new CrawlFactory( bStoreBody ).crawlFile( null, file );
+				if ( doc != null )
+					doc.setFingerprint( fingerprint );
+			}catch( Exception e ){
+				doc = null;
+			}
+			return this;
+		}
+	}
+	
+	
+	private static synchronized ExecutorService getExtractExecutor(){
+		if ( extractExecutor == null ){
+			int threads = Runtime.getRuntime().availableProcessors();
+			xmlCFML config = cfEngine.getConfig();
+			if ( config != null )
+				threads = config.getInt( "server.cfcollection.indexthreads", threads );
+			
+			extractThreads	= Math.max( 1, threads );
+			extractExecutor = Executors.newFixedThreadPool( extractThreads, new ThreadFactory(){
+				private final AtomicInteger id = new AtomicInteger( 0 );
+
+				public Thread newThread( Runnable r ){
+					Thread t = new Thread( r, "CollectionCrawl-" + id.incrementAndGet() );
+					t.setDaemon( true );
+					return t;
+				}
+			});
+		}
+		return extractExecutor;
+	}
+}
@@ -33,13 +33,12 @@ package com.bluedragon.search.index.path;
 
 import java.io.File;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.List;
 
 import com.bluedragon.search.DocumentWrap;
 import com.bluedragon.search.collection.Collection;
 import com.bluedragon.search.collection.CollectionFactory;
-import com.bluedragon.search.index.DocumentWriter;
-import com.bluedragon.search.index.crawl.CrawlFactory;
+import com.bluedragon.search.index.crawl.CrawlPipeline;
 import com.bluedragon.search.index.custom.CustomFunction;
 import com.naryx.tagfusion.cfm.engine.cfArgStructData;
 import com.naryx.tagfusion.cfm.engine.cfArrayData;
@@ -56,7 +55,7 @@ public class PathFunction extends CustomFunction {
 	private static final long	serialVersionUID	= 1L;
 
 	public PathFunction(){
-		String[] p = new String[]{"collection","key","title","summary","author","category","categorytree","urlpath","custommap","extensions","recurse","query"};
+		String[] p = new String[]{"collection","key","title","summary","author","category","categorytree","urlpath","custommap","extensions","recurse","query","incremental"};
 		min = 2;
 		max = p.length;
 		setNamedParams( p );
@@ -75,7 +74,8 @@ public class PathFunction extends CustomFunction {
 			"a structure of custom atttributes that will be added to the document and indexed.  The key of the structure element will be the field name and the value will be indexed.  You can specify as many custom attributes as required.  Each one is stored in the index as well.  If 'query' then this is used for column names",
 			"a list of extensions to include in this crawl.  defaults to '.cfm, .cfml, .htm, .html, .dbm, .dbml'.  '.*'/'*.*' handles all files",
 			"a flag to determine whether or not the path is recursed for sub-directories",
-			"the query representing all the rows to add to this index."
+			"the query representing all the rows to add to this index.",
+			"a flag to pass over any file whose last modified time and size are unchanged since it was last indexed. defaults to false"
 	};
 }
 
@@ -86,6 +86,7 @@ public java.util.Map getInfo(){
 			"Inserts/Updates a path into the collection.  The key is the unique path for each directory that all files inside will be handled.  Each field in the document can be searched against.  " +
 			"If a query is presented then the fields represent columns into the query.  If the column does not exist then an exception is thrown. " +
 			"The index can still be searched while an update is happening, however the new documents will not be available in the search until this operation has completed. " +
+			"The text is pulled out of the files on a pool of threads, and CollectionStatus() reports the progress of the crawl. " +
 			"Note that all fields are treated as strings and will be indexed accordingly.", 
 			ReturnType.STRUCTURE );
 }	
@@ -156,74 +157,62 @@ public java.util.Map getInfo(){
 	 * @return
 	 * @throws cfmRunTimeException
 	 */
-	private cfData indexPath(Collection collection, cfSession _session, cfStructData custommap, cfArgStructData argStruct) throws cfmRunTimeException  {
+	private cfData indexPath(Collection collection, cfSession _session, final cfStructData custommap, final cfArgStructData argStruct) throws cfmRunTimeException  {
 		String filename = getNamedStringParam(argStruct, "key", "");
 		
 		File originalfile	= new File( filename );
 		if ( !originalfile.isDirectory() )
 			throwException(_session, "Path not found: " + originalfile.toString() );
 		
-		CrawlFactory	crawlfactory	= new CrawlFactory( collection.bStoreBody() );
-		int totalFiles				= 0;
+		CrawlPipeline	pipeline	= new CrawlPipeline( collection, getNamedBooleanParam(argStruct, "incremental", false ) );
 		cfArrayData	badFiles	= cfArrayData.createArray(1);
-		String urlpath				= getNamedStringParam(argStruct, "urlpath", null );
+		final String urlpath	= getNamedStringParam(argStruct, "urlpath", null );
 		String	exts					= getNamedStringParam(argStruct, "extensions", null );
 		boolean bRcurse				= getNamedBooleanParam(argStruct, "recurse", false );
 
 		
 		try{
-			String originalFileSt	= originalfile.getCanonicalPath();
-			DocumentWriter	docWriter	= collection.getDocumentWriter();
+			final String originalFileSt	= originalfile.getCanonicalPath();
 			
-			Set<String>	filesToCrawlSet	= crawlfactory.getFilesToCrawl(originalfile, exts, bRcurse);
-			Iterator<String>	fit	= filesToCrawlSet.iterator();
-
-			while ( fit.hasNext() ){
-				String fileToCrawl	= fit.next();
-				
-				DocumentWrap	doc	= crawlfactory.crawlFile( null, new File(fileToCrawl) );
-				if ( doc == null ){
-					badFiles.addElement( new cfStringData(fileToCrawl) );
-					continue;
-				}
-				
-				// Set the URL
-				if ( urlpath != null ){
-					doc.setURL( urlpath + fileToCrawl.replace('\\', '/').substring( originalFileSt.length()+1 ) );
-				}
-				
-				// Set the optional fields
-				doc.setName( getNamedStringParam(argStruct, "title", null ) );
-				doc.setSummary( getNamedStringParam(argStruct, "summary", null ) );
-				doc.setAuthor( getNamedStringParam(argStruct, "author", null ) );
-				doc.setCategoryTree( getNamedStringParam(argStruct, "categorytree", null ) );
-				doc.setCategories( getNamedStringParam(argStruct, "category", "" ).split(",") );
-				
-				// Set the custom attributes
-				if ( custommap != null ){
-					Iterator<String> it = custommap.keySet().iterator();
-					while ( it.hasNext() ){
-						String k = it.next();
-						String v = custommap.getData(k).getString();
-						doc.setAttribute(k, v);
+			pipeline.crawl( originalfile, exts, bRcurse, new CrawlPipeline.DocumentListener(){
+				public void crawled( String fileToCrawl, DocumentWrap doc ) throws Exception {
+					// Set the URL
+					if ( urlpath != null ){
+						doc.setURL( urlpath + fileToCrawl.replace('\\', '/').substring( originalFileSt.length()+1 ) );
+					}
+					
+					// Set the optional fields
+					doc.setName( getNamedStringParam(argStruct, "title", null ) );
+					doc.setSummary( getNamedStringParam(argStruct, "summary", null ) );
+					doc.setAuthor( getNamedStringParam(argStruct, "author", null ) );
+					doc.setCategoryTree( getNamedStringParam(argStruct, "categorytree", null ) );
+					doc.setCategories( getNamedStringParam(argStruct, "category", "" ).split(",") );
+					
+					// Set the custom attributes
+					if ( custommap != null ){
+						Iterator<String> it = custommap.keySet().iterator();
+						while ( it.hasNext() ){
+							String k = it.next();
+							String v = custommap.getData(k).getString();
+							doc.setAttribute(k, v);
+						}
 					}
 				}
-
-				// Add the document to the index
-				docWriter.add(doc);
-				totalFiles++;
-			}
+			});
  
-			docWriter.commit();
+			pipeline.commit();
 			
 		}catch(Exception e){
 			throwException(_session, e.getMessage());
 		} finally {
-			crawlfactory.close();
+			pipeline.close();
 		}
 		
+		addBadFiles( badFiles, pipeline.getBadFiles() );
+		
 		cfStructData	sd	= new cfStructData();
-		sd.setData("inserted", new cfNumberData(totalFiles) );
+		sd.setData("inserted", new cfNumberData(pipeline.getIndexed()) );
+		sd.setData("skipped", new cfNumberData(pipeline.getSkipped()) );
 		sd.setData("invalid", new cfNumberData(badFiles.size()) );
 		sd.setData("badkeys", badFiles );
 		return sd;
@@ -231,19 +220,15 @@ public java.util.Map getInfo(){
 
 	
 	
-	private cfData indexPathQuery(Collection collection, cfQueryResultData query, cfSession _session, cfStructData custommap, cfArgStructData argStruct) throws cfmRunTimeException {
+	private cfData indexPathQuery(Collection collection, final cfQueryResultData query, cfSession _session, final cfStructData custommap, final cfArgStructData argStruct) throws cfmRunTimeException {
 		cfStructData	sd	= new cfStructData();
-		int totalDocs = 0;
 		cfArrayData	badFiles	= cfArrayData.createArray(1);
-		DocumentWriter	docWriter = null;
 		
 		String	exts					= getNamedStringParam(argStruct, "extensions", null );
 		boolean bRcurse				= getNamedBooleanParam(argStruct, "recurse", false );
-		CrawlFactory	crawlfactory	= new CrawlFactory( collection.bStoreBody() );
+		CrawlPipeline	pipeline	= new CrawlPipeline( collection, getNamedBooleanParam(argStruct, "incremental", false ) );
 
 		try{
-			docWriter	= collection.getDocumentWriter();
-			
 			query.reset();
 			while (query.nextRow()) {
 				
@@ -254,73 +239,62 @@ public java.util.Map getInfo(){
 					continue;
 				}
 
-				String originalFileSt	= originalfile.getCanonicalPath();
-				String urlpath	= getQueryParam(argStruct, query, "urlpath" );
+				final String originalFileSt	= originalfile.getCanonicalPath();
+				final String urlpath	= getQueryParam(argStruct, query, "urlpath" );
 				
-				Set<String>	filesToCrawlSet	= crawlfactory.getFilesToCrawl(originalfile, exts, bRcurse);
-				Iterator<String>	fit	= filesToCrawlSet.iterator();
-
-				while ( fit.hasNext() ){
-					String fileToCrawl	= fit.next();
-					
-					DocumentWrap	doc	= crawlfactory.crawlFile( null, new File(fileToCrawl) );
-					if ( doc == null ){
-						badFiles.addElement( new cfStringData(fileToCrawl) );
-						continue;
-					}
-					
-					// Set the URL
-					if ( urlpath != null ){
-						doc.setURL( urlpath + fileToCrawl.replace('\\', '/').substring( originalFileSt.length()+1 ) );
-					}
-					
-					// Set the optional fields
-					doc.setName( getQueryParam(argStruct, query, "title" ) );
-					doc.setSummary( getQueryParam(argStruct, query, "summary" ) );
-					doc.setAuthor( getQueryParam(argStruct, query, "author" ) );
-					doc.setCategoryTree( getQueryParam(argStruct, query, "categorytree" ) );
-
-					// Set the custom attributes
-					if ( custommap != null ){
-						Iterator<String> it = custommap.keySet().iterator();
-						while ( it.hasNext() ){
-							String k = it.next();
-							String v = query.getData( custommap.getData(k).getString() ).getString();
-							doc.setAttribute(k, v);
+				// the crawl of this row is finished with before moving on to the next
+				pipeline.crawl( originalfile, exts, bRcurse, new CrawlPipeline.DocumentListener(){
+					public void crawled( String fileToCrawl, DocumentWrap doc ) throws Exception {
+						// Set the URL
+						if ( urlpath != null ){
+							doc.setURL( urlpath + fileToCrawl.replace('\\', '/').substring( originalFileSt.length()+1 ) );
+						}
+						
+						// Set the optional fields
+						doc.setName( getQueryParam(argStruct, query, "title" ) );
+						doc.setSummary( getQueryParam(argStruct, query, "summary" ) );
+						doc.setAuthor( getQueryParam(argStruct, query, "author" ) );
+						doc.setCategoryTree( getQueryParam(argStruct, query, "categorytree" ) );
+	
+						// Set the custom attributes
+						if ( custommap != null ){
+							Iterator<String> it = custommap.keySet().iterator();
+							while ( it.hasNext() ){
+								String k = it.next();
+								String v = query.getData( custommap.getData(k).getString() ).getString();
+								doc.setAttribute(k, v);
+							}
 						}
+	
+						String category	= getQueryParam(argStruct, query, "category" );
+						if ( category != null )
+							doc.setCategories( category.split(",") );
 					}
-
-					String category	= getQueryParam(argStruct, query, "category" );
-					if ( category != null )
-						doc.setCategories( category.split(",") );
-
-					docWriter.add( doc );
-					totalDocs++;				
-				}
-				
+				});
 			}
 
+			pipeline.commit();
+			
 		} catch (Exception e) {
 			throwException(_session, e.getMessage());
 		}finally{
-			try {
-				if ( docWriter != null )
-					docWriter.commit();
-			} catch (Exception e) {
-				throwException(_session, e.getMessage());
-			}
-			
-			crawlfactory.close();
+			pipeline.close();
 		}
 
+		addBadFiles( badFiles, pipeline.getBadFiles() );
 
 		// Set the status
-		sd.setData("inserted", new cfNumberData(totalDocs) );
+		sd.setData("inserted", new cfNumberData(pipeline.getIndexed()) );
+		sd.setData("skipped", new cfNumberData(pipeline.getSkipped()) );
 		sd.setData("invalid", new cfNumberData(badFiles.size()) );
 		sd.setData("badfiles", badFiles );
 		return sd;
 	}
 	
 	
+	private void addBadFiles( cfArrayData badFiles, List<String> files ) throws cfmRunTimeException {
+		for ( int x = 0; x < files.size(); x++ )
+			badFiles.addElement( new cfStringData( files.get(x) ) );
+	}
 	
 }
@@ -64,6 +64,7 @@ public class QueryAttributes extends Object {
 	private int startRow	= 0, maxRows = Integer.MAX_VALUE;
 	private boolean	bContent = true;
 	private String uniqueColumn = null;
+	private SearchCursor cursor = null;
 	
 	private	int ContextBytes = 300, ContextPassages = 0;
 	private String ContextHighlightStart = "<b>", ContextHighlightEnd = "</b>";
@@ -101,6 +102,10 @@ public class QueryAttributes extends Object {
 		return collectionsList.iterator();
 	}
 	
+	public List<Collection> getCollections(){
+		return collectionsList;
+	}
+	
 	public boolean setCriteria( String _critera, String type ) throws ParseException {
 		if ( _critera == null || _critera.length() == 0 )
 			return false;
@@ -178,6 +183,22 @@ public class QueryAttributes extends Object {
 		this.startRow = _startrow;
 	}
 	
+	/**
+	 * Continues a previous search from the CURSOR it returned in its status; takes the
+	 * place of STARTROW
+	 * 
+	 * @param _cursor
+	 * @throws Exception if the cursor is not valid
+	 */
+	public void setCursor(String _cursor) throws Exception {
+		if ( _cursor != null && _cursor.length() > 0 )
+			cursor = SearchCursor.parse( _cursor );
+	}
+	
+	SearchCursor getCursor(){
+		return cursor;
+	}
+	
 	public void setContentFlag( boolean _bContent ){
 		bContent	= _bContent;
 	}
@@ -32,17 +32,26 @@
 package com.bluedragon.search.search;
 
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.highlight.Fragmenter;
@@ -56,9 +65,11 @@ import com.bluedragon.search.AnalyzerFactory;
 import com.bluedragon.search.DocumentWrap;
 import com.bluedragon.search.collection.Collection;
 import com.naryx.tagfusion.cfm.engine.cfArrayData;
+import com.naryx.tagfusion.cfm.engine.cfEngine;
 import com.naryx.tagfusion.cfm.engine.cfNumberData;
 import com.naryx.tagfusion.cfm.engine.cfQueryResultData;
 import com.naryx.tagfusion.cfm.engine.cfStringData;
+import com.naryx.tagfusion.xmlConfig.xmlCFML;
 
 
 public class QueryRun extends Object {
@@ -68,6 +79,16 @@ public class QueryRun extends Object {
 	private cfQueryResultData	queryResultData;
 	private Map<String, Integer>	activeColumns;
 	private Set<String>	uniqueSet = null;
+	private Highlighter highlighter = null;
+	
+	private SearchCursor nextCursor = null;
+	private long found = 0, searched = 0;
+	
+	// the fewest hits asked of a collection at once, for when rows are being filtered out
+	private static final int MIN_PAGE = 10;
+	
+	// shared by all searches, for running the collections of a search side by side
+	private static ExecutorService searchExecutor;
 	
 	public QueryRun( QueryAttributes _queryAttributes ){
 		queryAttributes	= _queryAttributes;
@@ -88,29 +109,106 @@ public class QueryRun extends Object {
 		return queryResultData;
 	}
 
-	public void run() throws CorruptIndexException, Exception{
-		int potentialRows = 0;
+	/**
+	 * The token to pass back as CURSOR to carry on from the last row returned, or null
+	 * if the search did not stop at MAXROWS
+	 */
+	public String getNextCursor(){
+		return nextCursor == null ? null : nextCursor.toString();
+	}
+	
+	/**
+	 * Total documents matching the query in the collections searched
+	 */
+	public long getFound(){
+		return found;
+	}
+	
+	/**
+	 * Total documents in the collections searched
+	 */
+	public long getSearched(){
+		return searched;
+	}
 
-		Iterator<Collection> it =	queryAttributes.getCollectionIterator();
+	
+	/**
+	 * Runs the query against all the collections at once, merging their hits by score into the one
+	 * ranking.  Rather than scoring and collecting every document, each collection is searched only
+	 * deep enough to reach STARTROW+MAXROWS, carrying on after the last row taken with searchAfter()
+	 * should rows be filtered out by MINSCORE or UNIQUECOLUMN
+	 */
+	public void run() throws CorruptIndexException, Exception{
+		List<Collection> collections	= queryAttributes.getCollections();
+		int maxRows			= queryAttributes.getMaxRows();
+		SearchCursor cursor	= queryAttributes.getCursor();
+		long toSkip			= ( cursor == null ) ? Math.max( queryAttributes.getStartRow() - 1, 0 ) : 0;
 
-		while ( it.hasNext() && queryResultData.getSize() <= queryAttributes.getMaxRows() ){
-			Collection collection	= it.next();
+		IndexSearcher[] searchers	= new IndexSearcher[ collections.size() ];
+		int[] totalDocs		= new int[ searchers.length ];
+		int[] totalHits		= new int[ searchers.length ];
+		
+		try{
+			for ( int c = 0; c < searchers.length; c++ ){
+				searchers[c]	= collections.get(c).acquireSearcher();
+				totalDocs[c]	= searchers[c].getIndexReader().numDocs();
+				searched	+= totalDocs[c];
+			}
+			
+			// The last row taken, from the cursor to begin with
+			ScoreDoc last	= null;
+			int rank			= 0;
+			if ( cursor != null ){
+				last	= cursor.after;
+				rank	= cursor.rank;
+			}
 
-			IndexSearcher	searcher	= collection.getIndexSearcher();
-			TopDocs hits = searcher.search( queryAttributes.getQuery(), collection.getTotalDocs() );
+			boolean bCounted = false;
+			while ( queryResultData.getSize() < maxRows ){
+				int wanted	= (int)Math.min( Math.max( toSkip + maxRows - queryResultData.getSize(), MIN_PAGE ), Math.max( searched, 1 ) );
+				TopDocs[] hits	= search( searchers, totalDocs, last, wanted );
 
-			ScoreDoc[] scorehits	= hits.scoreDocs;
-			for ( int x=0; x < scorehits.length; x++ ){
-				if ( scorehits[x].score > queryAttributes.getMinScore() ){
-					potentialRows++;
+				if ( !bCounted ){
+					for ( int c = 0; c < hits.length; c++ ){
+						totalHits[c]	= hits[c].totalHits;
+						found	+= hits[c].totalHits;
+					}
+					bCounted = true;
+				}
+				
+				// sets the shardIndex of each hit to the collection it came from
+				ScoreDoc[] scorehits	= TopDocs.merge( null, wanted, hits ).scoreDocs;
+				boolean bExhausted	= ( scorehits.length < wanted );
+				
+				for ( int x=0; x < scorehits.length; x++ ){
+					// the hits come back best first, so nothing after this will pass either
+					if ( scorehits[x].score <= queryAttributes.getMinScore() ){
+						bExhausted = true;
+						break;
+					}
+					
+					last	= scorehits[x];
+					rank++;
 					
-					if ( potentialRows >= queryAttributes.getStartRow() ){
-						addRow( searcher, scorehits[x].doc, scorehits[x].score, x, scorehits.length, collection.getTotalDocs() );
-						if ( queryResultData.getSize() == queryAttributes.getMaxRows() )
-							break;
+					if ( toSkip > 0 ){
+						toSkip--;
+						continue;
 					}
 					
+					addRow( searchers[last.shardIndex], last.doc, last.score, rank-1, totalHits[last.shardIndex], totalDocs[last.shardIndex] );
+					if ( queryResultData.getSize() == maxRows ){
+						nextCursor	= new SearchCursor( rank, last );
+						break;
+					}
 				}
+				
+				if ( bExhausted )
+					break;
+			}
+		}finally{
+			for ( int c = 0; c < searchers.length; c++ ){
+				if ( searchers[c] != null )
+					collections.get(c).releaseSearcher( searchers[c] );
 			}
 		}
 		
@@ -119,6 +217,97 @@ public class QueryRun extends Object {
 		if ( uniqueSet != null )
 			uniqueSet.clear();
 	}
+	
+	
+	/**
+	 * Asks each collection for its next best hits after the last row taken.  The collections are
+	 * searched at the same time on the search pool, with this thread taking the first of them, so
+	 * the search takes about as long as the slowest collection rather than all of them added up
+	 */
+	private TopDocs[] search( IndexSearcher[] searchers, int[] totalDocs, ScoreDoc last, int wanted ) throws Exception {
+		TopDocs[] hits	= new TopDocs[ searchers.length ];
+		List<Callable<TopDocs>> tasks	= new ArrayList<Callable<TopDocs>>( searchers.length );
+		List<Integer> taskCollections	= new ArrayList<Integer>( searchers.length );
+		
+		for ( int c = 0; c < searchers.length; c++ ){
+			if ( totalDocs[c] <= 0 ){
+				hits[c]	= new TopDocs( 0, new ScoreDoc[0], Float.NaN );
+				continue;
+			}
+			
+			final IndexSearcher searcher	= searchers[c];
+			final Query query		= queryAttributes.getQuery();
+			final ScoreDoc after	= getAfter( searcher, c, last );
+			final int n					= Math.min( wanted, totalDocs[c] );
+			
+			tasks.add( new Callable<TopDocs>(){
+				public TopDocs call() throws Exception {
+					return ( after == null ) ? searcher.search( query, n ) : searcher.searchAfter( after, query, n );
+				}
+			});
+			taskCollections.add( c );
+		}
+		
+		if ( tasks.size() > 0 ){
+			List<Future<TopDocs>> futures	= new ArrayList<Future<TopDocs>>( tasks.size() );
+			for ( int t = 1; t < tasks.size(); t++ )
+				futures.add( getSearchExecutor().submit( tasks.get(t) ) );
+			
+			hits[ taskCollections.get(0) ]	= tasks.get(0).call();
+			
+			for ( int t = 1; t < tasks.size(); t++ ){
+				try{
+					hits[ taskCollections.get(t) ]	= futures.get(t-1).get();
+				}catch( ExecutionException e ){
+					throw ( e.getCause() instanceof Exception ) ? (Exception)e.getCause() : e;
+				}
+			}
+		}
+		
+		return hits;
+	}
+	
+	
+	/**
+	 * Where a collection carries on from.  The merged ranking orders equal scores by collection and
+	 * then document, so the collections before the one the last row came from resume below its score,
+	 * that collection resumes after its document, and those after it resume at its score
+	 */
+	private static ScoreDoc getAfter( IndexSearcher searcher, int c, ScoreDoc last ){
+		if ( last == null )
+			return null;
+		
+		// searchAfter() will not take a document past the end of the index
+		int maxDoc	= searcher.getIndexReader().maxDoc();
+		
+		if ( c < last.shardIndex )
+			return new ScoreDoc( maxDoc - 1, last.score );
+		else if ( c == last.shardIndex )
+			return new ScoreDoc( Math.min( last.doc, maxDoc - 1 ), last.score );
+		else
+			return new ScoreDoc( -1, last.score );
+	}
+	
+	
+	private static synchronized ExecutorService getSearchExecutor(){
+		if ( searchExecutor == null ){
+			int threads = Runtime.getRuntime().availableProcessors();
+			xmlCFML config = cfEngine.getConfig();
+			if ( config != null )
+				threads = config.getInt( "server.cfcollection.searchthreads", threads );
+
+			searchExecutor = Executors.newFixedThreadPool( Math.max( 1, threads ), new ThreadFactory(){
+				private final AtomicInteger id = new AtomicInteger( 0 );
+
+				public Thread newThread( Runnable r ){
+					Thread t = new Thread( r, "CollectionSearch-" + id.incrementAndGet() );
+					t.setDaemon( true );
+					return t;
+				}
+			});
+		}
+		return searchExecutor;
+	}
 
 	
 	private void addRow(IndexSearcher	searcher, int docid, float score, int rank, int searchCount, int recordsSearched ) throws CorruptIndexException, Exception {
@@ -158,6 +347,9 @@ public class QueryRun extends Object {
 			if ( fieldName.equals("contents") && !queryAttributes.getContentFlag() )
 				continue;
 			
+			if ( fieldName.equals( DocumentWrap.FINGERPRINT ) )
+				continue;
+			
 			if ( !activeColumns.containsKey( fieldName ) ){
 				int newcolumn = queryResultData.addColumnData( fieldable.name().toUpperCase(), cfArrayData.createArray(1), null );
 				activeColumns.put( fieldName, newcolumn );
@@ -174,11 +366,14 @@ public class QueryRun extends Object {
 		// Do the context stuff if enable
 		if ( queryAttributes.getContextPassages() > 0 ){
 			
-	    Scorer scorer									= new QueryScorer( queryAttributes.getQuery() );
-	    SimpleHTMLFormatter formatter = new SimpleHTMLFormatter( queryAttributes.getContextHighlightStart(), queryAttributes.getContextHighlightEnd() );
-	    Highlighter highlighter 			= new Highlighter( formatter, scorer );
-	    Fragmenter fragmenter 				= new SimpleFragmenter( queryAttributes.getContextBytes() );
-	    highlighter.setTextFragmenter( fragmenter );
+			// One highlighter serves all the rows of this search
+			if ( highlighter == null ){
+		    Scorer scorer									= new QueryScorer( queryAttributes.getQuery() );
+		    SimpleHTMLFormatter formatter = new SimpleHTMLFormatter( queryAttributes.getContextHighlightStart(), queryAttributes.getContextHighlightEnd() );
+		    highlighter 									= new Highlighter( formatter, scorer );
+		    Fragmenter fragmenter 				= new SimpleFragmenter( queryAttributes.getContextBytes() );
+		    highlighter.setTextFragmenter( fragmenter );
+			}
 
     	String nextContext = "";
       String contents = document.getAttribute( DocumentWrap.CONTENTS );
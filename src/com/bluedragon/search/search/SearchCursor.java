@@ -0,0 +1,91 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.bluedragon.search.search;
+
+import org.apache.lucene.search.ScoreDoc;
+
+
+/**
+ * The position a search stopped at, handed back to the page as an opaque
+ * token so the next page can carry on with IndexSearcher.searchAfter()
+ * rather than collecting and skipping every row before it.
+ *
+ * The token holds the last row taken from the merged ranking: the collection
+ * it came from, its rank, and its Lucene document number and score. Every
+ * collection carries on from that one row. If a collection is updated
+ * between pages the rows can shift, in the same way they would with STARTROW.
+ */
+class SearchCursor extends Object {
+
+	final int rank;
+	final ScoreDoc after;
+
+	/**
+	 * @param rank the rank of the row within the merged results
+	 * @param after the row, with shardIndex set to the collection it came from
+	 */
+	SearchCursor( int rank, ScoreDoc after ){
+		this.rank				= rank;
+		this.after			= after;
+	}
+
+	
+	/**
+	 * Parses a token made by toString()
+	 * 
+	 * @param token
+	 * @return the cursor
+	 * @throws Exception if the token was not one of ours
+	 */
+	static SearchCursor parse( String token ) throws Exception {
+		String[] parts	= token.trim().split("-");
+		if ( parts.length != 4 )
+			throw new Exception( "invalid search cursor: " + token );
+		
+		try{
+			int collection	= Integer.parseInt( parts[0], 36 );
+			int rank				= Integer.parseInt( parts[1], 36 );
+			int doc					= Integer.parseInt( parts[2], 36 );
+			float score			= Float.intBitsToFloat( (int)Long.parseLong( parts[3], 16 ) );
+			
+			if ( collection < 0 || rank < 0 || doc < 0 )
+				throw new NumberFormatException();
+			
+			return new SearchCursor( rank, new ScoreDoc( doc, score, collection ) );
+		}catch( NumberFormatException e ){
+			throw new Exception( "invalid search cursor: " + token );
+		}
+	}
+	
+	
+	public String toString(){
+		return Integer.toString( after.shardIndex, 36 ) + "-" + Integer.toString( rank, 36 ) + "-" + Integer.toString( after.doc, 36 ) + "-" + Integer.toHexString( Float.floatToIntBits( after.score ) );
+	}
+}
@@ -34,7 +34,10 @@ package com.bluedragon.search.search;
 
 import com.naryx.tagfusion.cfm.engine.cfArgStructData;
 import com.naryx.tagfusion.cfm.engine.cfData;
+import com.naryx.tagfusion.cfm.engine.cfNumberData;
 import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfStringData;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
 import com.naryx.tagfusion.expression.function.functionBase;
 
@@ -44,8 +47,8 @@ public class SearchFunction extends functionBase {
 
 	public SearchFunction(){
 		min = 2;
-		max = 14;
-		setNamedParams( new String[]{ "collection", "criteria", "type", "minscore", "maxrows", "startrow", "category", "categorytree", "contextpassages", "contextbytes", "contexthighlightstart", "contexthighlightend", "contents", "uniquecolumn" } );
+		max = 16;
+		setNamedParams( new String[]{ "collection", "criteria", "type", "minscore", "maxrows", "startrow", "category", "categorytree", "contextpassages", "contextbytes", "contexthighlightstart", "contexthighlightend", "contents", "uniquecolumn", "cursor", "status" } );
 	}
 	
   public String[] getParamInfo(){
@@ -65,7 +68,9 @@ public class SearchFunction extends functionBase {
 			"the end marker for the contextual piece",
 			
 			"flag to determine if the CONTENT column is return;  If you are storing the full body, this lets you return that full body or not in the query. defaults to true",
-			"name of the column that will be checked to see if it is unique before adding to the result query"
+			"name of the column that will be checked to see if it is unique before adding to the result query",
+			"the CURSOR from the status of a previous search, to return the rows following on from that search.  Used in place of startrow, it keeps paging deep into large results cheap",
+			"name of a variable to receive a structure describing the search: FOUND (matching documents), SEARCHED (documents in the collections searched), TIME (milliseconds) and CURSOR (to pass for the next page; empty if there are no more rows)"
 		};
 	}
 	
@@ -105,11 +110,31 @@ public class SearchFunction extends functionBase {
 		queryAttributes.setContentFlag( getNamedBooleanParam( argStruct, "contents", true ) );
 		queryAttributes.setUniqueColumn( getNamedStringParam(argStruct, "uniquecolumn", null ) );
 
+		try {
+			queryAttributes.setCursor( getNamedStringParam(argStruct, "cursor", null ) );
+		} catch (Exception e) {
+			throwException(_session, e.getMessage());
+		}
+
 		// Run the query now
 		QueryRun	query	= new QueryRun(queryAttributes);
 		try {
+			long startTime = System.currentTimeMillis();
 			query.run();
+			
+			String status	= getNamedStringParam(argStruct, "status", null );
+			if ( status != null ){
+				cfStructData statusData = new cfStructData();
+				statusData.setData( "found", 		new cfNumberData( query.getFound() ) );
+				statusData.setData( "searched", new cfNumberData( query.getSearched() ) );
+				statusData.setData( "time", 		new cfNumberData( System.currentTimeMillis() - startTime ) );
+				statusData.setData( "cursor", 	new cfStringData( query.getNextCursor() == null ? "" : query.getNextCursor() ) );
+				_session.setData( status, statusData );
+			}
+			
 			return query.getQueryResultData();
+		} catch (cfmRunTimeException e) {
+			throw e;
 		} catch (Exception e) {
 			throwException(_session, e.getMessage());
 		}
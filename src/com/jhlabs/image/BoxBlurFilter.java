@@ -79,11 +79,11 @@ public class BoxBlurFilter extends AbstractBufferedImageOp {
         if ( premultiplyAlpha )
 			ImageMath.premultiply( inPixels, 0, inPixels.length );
 		for (int i = 0; i < iterations; i++ ) {
-            blur( inPixels, outPixels, width, height, hRadius );
-            blur( outPixels, inPixels, height, width, vRadius );
+            blur( inPixels, outPixels, width, height, hRadius, true );
+            blur( outPixels, inPixels, height, width, vRadius, true );
         }
-        blurFractional( inPixels, outPixels, width, height, hRadius );
-        blurFractional( outPixels, inPixels, height, width, vRadius );
+        blurFractional( inPixels, outPixels, width, height, hRadius, true );
+        blurFractional( outPixels, inPixels, height, width, vRadius, true );
         if ( premultiplyAlpha )
 			ImageMath.unpremultiply( inPixels, 0, inPixels.length );
 
@@ -100,17 +100,43 @@ public class BoxBlurFilter extends AbstractBufferedImageOp {
      * @param radius the radius of blur
      */
     public static void blur( int[] in, int[] out, int width, int height, float radius ) {
-        int widthMinus1 = width-1;
-        int r = (int)radius;
+        blur( in, out, width, height, radius, false );
+    }
+
+    /**
+     * Blur and transpose a block of ARGB pixels, optionally spreading the rows over several threads.
+     * @param in the input pixels
+     * @param out the output pixels
+     * @param width the width of the pixel array
+     * @param height the height of the pixel array
+     * @param radius the radius of blur
+     * @param parallel true to blur the rows in bands on the ImageTiles pool
+     */
+    public static void blur( final int[] in, final int[] out, final int width, final int height, float radius, boolean parallel ) {
+        final int r = (int)radius;
         int tableSize = 2*r+1;
-        int divide[] = new int[256*tableSize];
+        final int divide[] = new int[256*tableSize];
 
         for ( int i = 0; i < 256*tableSize; i++ )
             divide[i] = i/tableSize;
 
-        int inIndex = 0;
+        // each input row becomes one output column, so the rows can be blurred independently
+        if ( parallel ) {
+            ImageTiles.filter( width, height, new ImageTiles.Tile() {
+                public void filter( int startRow, int endRow ) {
+                    blur( in, out, width, height, r, divide, startRow, endRow );
+                }
+            } );
+        } else {
+            blur( in, out, width, height, r, divide, 0, height );
+        }
+    }
+
+    private static void blur( int[] in, int[] out, int width, int height, int r, int[] divide, int startRow, int endRow ) {
+        int widthMinus1 = width-1;
+        int inIndex = startRow*width;
         
-        for ( int y = 0; y < height; y++ ) {
+        for ( int y = startRow; y < endRow; y++ ) {
             int outIndex = y;
             int ta = 0, tr = 0, tg = 0, tb = 0;
 
@@ -145,11 +171,36 @@ public class BoxBlurFilter extends AbstractBufferedImageOp {
     }
         
     public static void blurFractional( int[] in, int[] out, int width, int height, float radius ) {
-        radius -= (int)radius;
+        blurFractional( in, out, width, height, radius, false );
+    }
+
+    /**
+     * Blur and transpose a block of ARGB pixels by the fractional part of the radius, optionally spreading the rows over several threads.
+     * @param in the input pixels
+     * @param out the output pixels
+     * @param width the width of the pixel array
+     * @param height the height of the pixel array
+     * @param radius the radius of blur
+     * @param parallel true to blur the rows in bands on the ImageTiles pool
+     */
+    public static void blurFractional( final int[] in, final int[] out, final int width, final int height, float radius, boolean parallel ) {
+        final float fraction = radius - (int)radius;
+        if ( parallel ) {
+            ImageTiles.filter( width, height, new ImageTiles.Tile() {
+                public void filter( int startRow, int endRow ) {
+                    blurFractional( in, out, width, height, fraction, startRow, endRow );
+                }
+            } );
+        } else {
+            blurFractional( in, out, width, height, fraction, 0, height );
+        }
+    }
+
+    private static void blurFractional( int[] in, int[] out, int width, int height, float radius, int startRow, int endRow ) {
         float f = 1.0f/(1+2*radius);
-        int inIndex = 0;
+        int inIndex = startRow*width;
         
-        for ( int y = 0; y < height; y++ ) {
+        for ( int y = startRow; y < endRow; y++ ) {
             int outIndex = y;
 
             out[ outIndex ] = in[0];
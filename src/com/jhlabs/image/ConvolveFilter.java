@@ -171,21 +171,31 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
 	}
 
     public BufferedImage filter( BufferedImage src, BufferedImage dst ) {
-        int width = src.getWidth();
-        int height = src.getHeight();
+        final int width = src.getWidth();
+        final int height = src.getHeight();
 
         if ( dst == null )
             dst = createCompatibleDestImage( src, null );
 
-        int[] inPixels = new int[width*height];
-        int[] outPixels = new int[width*height];
+        final int[] inPixels = new int[width*height];
+        final int[] outPixels = new int[width*height];
         getRGB( src, 0, 0, width, height, inPixels );
 
-        if ( premultiplyAlpha )
-			ImageMath.premultiply( inPixels, 0, inPixels.length );
-		convolve(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
-        if ( premultiplyAlpha )
-			ImageMath.unpremultiply( outPixels, 0, outPixels.length );
+        if ( premultiplyAlpha ) {
+			ImageTiles.filter( width, height, new ImageTiles.Tile() {
+				public void filter( int startRow, int endRow ) {
+					ImageMath.premultiply( inPixels, startRow*width, (endRow-startRow)*width );
+				}
+			} );
+		}
+		// each band reads the rows around it but only writes its own, so the bands can run together
+		ImageTiles.filter( width, height, new ImageTiles.Tile() {
+			public void filter( int startRow, int endRow ) {
+				convolve( kernel, inPixels, outPixels, width, height, alpha, edgeAction, startRow, endRow );
+				if ( premultiplyAlpha )
+					ImageMath.unpremultiply( outPixels, startRow*width, (endRow-startRow)*width );
+			}
+		} );
 
         setRGB( dst, 0, 0, width, height, outPixels );
         return dst;
@@ -236,12 +246,28 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      * @param edgeAction what to do at the edges
      */
 	public static void convolve(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction) {
+		convolve(kernel, inPixels, outPixels, width, height, alpha, edgeAction, 0, height);
+	}
+
+    /**
+     * Convolve the rows from startRow up to, but not including, endRow of a block of pixels.
+     * @param kernel the kernel
+     * @param inPixels the input pixels
+     * @param outPixels the output pixels
+     * @param width the width
+     * @param height the height
+     * @param alpha include alpha channel
+     * @param edgeAction what to do at the edges
+     * @param startRow the first row to convolve
+     * @param endRow the row after the last row to convolve
+     */
+	public static void convolve(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction, int startRow, int endRow) {
 		if (kernel.getHeight() == 1)
-			convolveH(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
+			convolveH(kernel, inPixels, outPixels, width, height, alpha, edgeAction, startRow, endRow);
 		else if (kernel.getWidth() == 1)
-			convolveV(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
+			convolveV(kernel, inPixels, outPixels, width, height, alpha, edgeAction, startRow, endRow);
 		else
-			convolveHV(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
+			convolveHV(kernel, inPixels, outPixels, width, height, alpha, edgeAction, startRow, endRow);
 	}
 	
 	/**
@@ -255,14 +281,30 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      * @param edgeAction what to do at the edges
 	 */
 	public static void convolveHV(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction) {
-		int index = 0;
+		convolveHV(kernel, inPixels, outPixels, width, height, alpha, edgeAction, 0, height);
+	}
+
+	/**
+	 * Convolve with a 2D kernel.
+     * @param kernel the kernel
+     * @param inPixels the input pixels
+     * @param outPixels the output pixels
+     * @param width the width
+     * @param height the height
+     * @param alpha include alpha channel
+     * @param edgeAction what to do at the edges
+     * @param startRow the first row to convolve
+     * @param endRow the row after the last row to convolve
+	 */
+	public static void convolveHV(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction, int startRow, int endRow) {
+		int index = startRow*width;
 		float[] matrix = kernel.getKernelData( null );
 		int rows = kernel.getHeight();
 		int cols = kernel.getWidth();
 		int rows2 = rows/2;
 		int cols2 = cols/2;
 
-		for (int y = 0; y < height; y++) {
+		for (int y = startRow; y < endRow; y++) {
 			for (int x = 0; x < width; x++) {
 				float r = 0, g = 0, b = 0, a = 0;
 
@@ -319,12 +361,28 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      * @param edgeAction what to do at the edges
 	 */
 	public static void convolveH(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction) {
-		int index = 0;
+		convolveH(kernel, inPixels, outPixels, width, height, alpha, edgeAction, 0, height);
+	}
+
+	/**
+	 * Convolve with a kernel consisting of one row.
+     * @param kernel the kernel
+     * @param inPixels the input pixels
+     * @param outPixels the output pixels
+     * @param width the width
+     * @param height the height
+     * @param alpha include alpha channel
+     * @param edgeAction what to do at the edges
+     * @param startRow the first row to convolve
+     * @param endRow the row after the last row to convolve
+	 */
+	public static void convolveH(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction, int startRow, int endRow) {
+		int index = startRow*width;
 		float[] matrix = kernel.getKernelData( null );
 		int cols = kernel.getWidth();
 		int cols2 = cols/2;
 
-		for (int y = 0; y < height; y++) {
+		for (int y = startRow; y < endRow; y++) {
 			int ioffset = y*width;
 			for (int x = 0; x < width; x++) {
 				float r = 0, g = 0, b = 0, a = 0;
@@ -372,12 +430,28 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      * @param edgeAction what to do at the edges
 	 */
 	public static void convolveV(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction) {
-		int index = 0;
+		convolveV(kernel, inPixels, outPixels, width, height, alpha, edgeAction, 0, height);
+	}
+
+	/**
+	 * Convolve with a kernel consisting of one column.
+     * @param kernel the kernel
+     * @param inPixels the input pixels
+     * @param outPixels the output pixels
+     * @param width the width
+     * @param height the height
+     * @param alpha include alpha channel
+     * @param edgeAction what to do at the edges
+     * @param startRow the first row to convolve
+     * @param endRow the row after the last row to convolve
+	 */
+	public static void convolveV(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction, int startRow, int endRow) {
+		int index = startRow*width;
 		float[] matrix = kernel.getKernelData( null );
 		int rows = kernel.getHeight();
 		int rows2 = rows/2;
 
-		for (int y = 0; y < height; y++) {
+		for (int y = startRow; y < endRow; y++) {
 			for (int x = 0; x < width; x++) {
 				float r = 0, g = 0, b = 0, a = 0;
 
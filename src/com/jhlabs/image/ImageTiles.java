@@ -0,0 +1,111 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.jhlabs.image;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a filter over horizontal bands of an image on a shared ForkJoinPool. The filter must only write
+ * the rows it is given and only read rows the other bands do not write.
+ */
+public class ImageTiles {
+
+	/**
+	 * Images smaller than this many pixels are filtered on the calling thread.
+	 */
+	private static final int MIN_PIXELS = 256*256;
+
+	/**
+	 * The smallest band, in pixels, that is worth handing to another thread.
+	 */
+	private static final int MIN_BAND_PIXELS = 32*1024;
+
+	private static final AtomicInteger threadCount = new AtomicInteger(0);
+
+	private static final ForkJoinPool pool = new ForkJoinPool( Runtime.getRuntime().availableProcessors(), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+		public ForkJoinWorkerThread newThread( ForkJoinPool pool ) {
+			ForkJoinWorkerThread t = new ForkJoinWorkerThread( pool ) {};
+			t.setName( "ImageTiles-" + threadCount.incrementAndGet() );
+			return t;
+		}
+	}, null, false );
+
+	/**
+	 * A piece of work that filters the rows from startRow up to, but not including, endRow.
+	 */
+	public interface Tile {
+		public void filter( int startRow, int endRow );
+	}
+
+	/**
+	 * Filter all the rows of a width x height image, in parallel bands if the image is big enough.
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param tile the filter to run over each band
+	 */
+	public static void filter( int width, int height, Tile tile ) {
+		long pixels = (long)width*height;
+		if ( pixels < MIN_PIXELS || height < 2 ) {
+			tile.filter( 0, height );
+			return;
+		}
+
+		// a few bands per thread so an uneven band does not hold up the rest
+		int bands = pool.getParallelism()*4;
+		int bandRows = Math.max( (height+bands-1)/bands, (MIN_BAND_PIXELS+width-1)/width );
+		pool.invoke( new Band( tile, 0, height, Math.max( bandRows, 1 ) ) );
+	}
+
+	private static class Band extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Tile tile;
+		private final int startRow, endRow, bandRows;
+
+		Band( Tile tile, int startRow, int endRow, int bandRows ) {
+			this.tile = tile;
+			this.startRow = startRow;
+			this.endRow = endRow;
+			this.bandRows = bandRows;
+		}
+
+		protected void compute() {
+			if ( endRow-startRow <= bandRows ) {
+				tile.filter( startRow, endRow );
+			} else {
+				int middle = (startRow+endRow) >>> 1;
+				invokeAll( new Band( tile, startRow, middle, bandRows ), new Band( tile, middle, endRow, bandRows ) );
+			}
+		}
+	}
+}
@@ -17,42 +17,55 @@ limitations under the License.
 package com.jhlabs.image;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
 import java.awt.image.WritableRaster;
 
 /**
  * An abstract superclass for point filters. The interface is the same as the old RGBImageFilter.
+ * Large images are filtered in bands on several threads, so filterRGB must not change any state.
  */
 public abstract class PointFilter extends AbstractBufferedImageOp {
 
 	protected boolean canFilterIndexColorModel = false;
 
-    public BufferedImage filter( BufferedImage src, BufferedImage dst ) {
-        int width = src.getWidth();
+    public BufferedImage filter( final BufferedImage src, BufferedImage dst ) {
+        final int width = src.getWidth();
         int height = src.getHeight();
-		int type = src.getType();
-		WritableRaster srcRaster = src.getRaster();
+		final int type = src.getType();
+		final WritableRaster srcRaster = src.getRaster();
 
         if ( dst == null )
             dst = createCompatibleDestImage( src, null );
-		WritableRaster dstRaster = dst.getRaster();
+		final BufferedImage dstImage = dst;
+		final WritableRaster dstRaster = dst.getRaster();
 
         setDimensions( width, height);
 
-		int[] inPixels = new int[width];
-        for ( int y = 0; y < height; y++ ) {
-			// We try to avoid calling getRGB on images as it causes them to become unmanaged, causing horrible performance problems.
-			if ( type == BufferedImage.TYPE_INT_ARGB ) {
-				srcRaster.getDataElements( 0, y, width, 1, inPixels );
-				for ( int x = 0; x < width; x++ )
-					inPixels[x] = filterRGB( x, y, inPixels[x] );
-				dstRaster.setDataElements( 0, y, width, 1, inPixels );
-			} else {
-				src.getRGB( 0, y, width, 1, inPixels, 0, width );
-				for ( int x = 0; x < width; x++ )
-					inPixels[x] = filterRGB( x, y, inPixels[x] );
-				dst.setRGB( 0, y, width, 1, inPixels, 0, width );
+		ImageTiles.Tile tile = new ImageTiles.Tile() {
+			public void filter( int startRow, int endRow ) {
+				int[] inPixels = new int[width];
+				for ( int y = startRow; y < endRow; y++ ) {
+					// We try to avoid calling getRGB on images as it causes them to become unmanaged, causing horrible performance problems.
+					if ( type == BufferedImage.TYPE_INT_ARGB ) {
+						srcRaster.getDataElements( 0, y, width, 1, inPixels );
+						for ( int x = 0; x < width; x++ )
+							inPixels[x] = filterRGB( x, y, inPixels[x] );
+						dstRaster.setDataElements( 0, y, width, 1, inPixels );
+					} else {
+						src.getRGB( 0, y, width, 1, inPixels, 0, width );
+						for ( int x = 0; x < width; x++ )
+							inPixels[x] = filterRGB( x, y, inPixels[x] );
+						dstImage.setRGB( 0, y, width, 1, inPixels, 0, width );
+					}
+				}
 			}
-        }
+		};
+
+		// IndexColorModel keeps an unsynchronized lookup cache, so indexed images stay on one thread
+		if ( src.getColorModel() instanceof IndexColorModel || dst.getColorModel() instanceof IndexColorModel )
+			tile.filter( 0, height );
+		else
+			ImageTiles.filter( width, height, tile );
 
         return dst;
     }
@@ -0,0 +1,290 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.nary.util;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.naryx.tagfusion.cfm.engine.cfEngine;
+
+/**
+ * Takes log lines off the calling thread.
+ * 
+ * Callers claim a slot in a bounded multi-producer/single-consumer ring with a
+ * single CAS and return; one writer thread drains the ring, stamps each line
+ * and appends whole batches to each LogFile's channel, rotating files as it
+ * goes. What happens when the ring is full is down to the overflow policy:
+ * BLOCK waits for room, DROP discards the line and SAMPLE starts letting only
+ * every Nth line through once the ring is three-quarters full.
+ */
+final class LogAppender implements Runnable {
+
+	enum Overflow { BLOCK, DROP, SAMPLE }
+
+	private static final int	BATCH_SIZE			= 1024;
+	private static final long	IDLE_PARK				= 100000000L;		// 100ms
+	private static final long	DROP_REPORT_MS	= 10000;
+
+	private static volatile LogAppender instance;
+
+	private final Entry[]					entries;
+	private final AtomicLongArray	sequence;
+	private final int							mask;
+	private final AtomicLong			tail = new AtomicLong();
+	private volatile long					head = 0;
+
+	private final Overflow		overflow;
+	private final int					sampleRate;
+	private final AtomicLong	sampleCounter	= new AtomicLong();
+	private final AtomicLong	dropped				= new AtomicLong();
+	private long							lastDropReport = 0;
+
+	private final Thread			writer;
+	private volatile boolean	running		= true;
+	private volatile boolean	idle			= false;
+
+	private LogAppender( int capacity, Overflow overflow, int sampleRate ) {
+		int size = Integer.highestOneBit( Math.max( 64, capacity ) - 1 ) << 1;
+		entries		= new Entry[size];
+		sequence	= new AtomicLongArray( size );
+		for ( int x = 0; x < size; x++ ) {
+			entries[x] = new Entry();
+			sequence.set( x, x );
+		}
+		mask = size - 1;
+
+		this.overflow		= overflow;
+		this.sampleRate	= Math.max( 1, sampleRate );
+
+		writer = new Thread( this, "LogWriter" );
+		writer.setDaemon( true );
+		writer.start();
+	}
+
+
+	static LogAppender get() {
+		return instance;
+	}
+
+
+	static synchronized void start( int capacity, Overflow overflow, int sampleRate ) {
+		stop();
+		instance = new LogAppender( capacity, overflow, sampleRate );
+	}
+
+
+	/**
+	 * Stops taking lines and waits for the writer to empty the ring
+	 */
+	static synchronized void stop() {
+		LogAppender appender = instance;
+		if ( appender == null )
+			return;
+
+		instance = null;
+		appender.running = false;
+		LockSupport.unpark( appender.writer );
+		try {
+			appender.writer.join( 10000 );
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * Queues the line; false means the appender has stopped and the caller should
+	 * write it itself
+	 */
+	boolean offer( LogFile file, String line ) {
+		long now = System.currentTimeMillis();
+
+		if ( overflow == Overflow.SAMPLE && size() >= ( entries.length >> 2 ) * 3 ) {
+			if ( sampleCounter.incrementAndGet() % sampleRate != 0 ) {
+				dropped.incrementAndGet();
+				return true;
+			}
+		}
+
+		while ( !tryOffer( file, now, line ) ) {
+			if ( !running )
+				return false;
+
+			if ( overflow != Overflow.BLOCK ) {
+				dropped.incrementAndGet();
+				return true;
+			}
+
+			LockSupport.unpark( writer );
+			LockSupport.parkNanos( 100000L );
+		}
+
+		if ( idle )
+			LockSupport.unpark( writer );
+		return true;
+	}
+
+
+	private boolean tryOffer( LogFile file, long time, String line ) {
+		while ( running ) {
+			long pos = tail.get();
+			int index = (int) ( pos & mask );
+			long dif = sequence.get( index ) - pos;
+
+			if ( dif == 0 ) {
+				if ( tail.compareAndSet( pos, pos + 1 ) ) {
+					Entry entry = entries[index];
+					entry.file = file;
+					entry.time = time;
+					entry.line = line;
+					sequence.lazySet( index, pos + 1 );
+					return true;
+				}
+			} else if ( dif < 0 ) {
+				return false; // full
+			}
+		}
+		return false;
+	}
+
+
+	int size() {
+		return (int) ( tail.get() - head );
+	}
+
+
+	long getDropped() {
+		return dropped.get();
+	}
+
+
+	public void run() {
+		List<LogFile> touched = new ArrayList<LogFile>();
+
+		while ( true ) {
+			int drained = drain( touched );
+
+			if ( drained > 0 ) {
+				for ( int x = 0; x < touched.size(); x++ )
+					touched.get( x ).flushStaged();
+				touched.clear();
+				continue;
+			}
+
+			reportDropped();
+
+			if ( !running && size() == 0 )
+				break;
+
+			idle = true;
+			if ( size() == 0 && running )
+				LockSupport.parkNanos( this, IDLE_PARK );
+			idle = false;
+		}
+	}
+
+
+	private int drain( List<LogFile> touched ) {
+		long pos = head;
+		int count = 0;
+
+		while ( count < BATCH_SIZE ) {
+			int index = (int) ( pos & mask );
+			if ( sequence.get( index ) != pos + 1 )
+				break;
+
+			Entry entry = entries[index];
+			LogFile file = entry.file;
+			try {
+				if ( file.stage( entry.time, entry.line ) )
+					touched.add( file );
+			} catch ( Throwable t ) {
+				cfEngine.log( "LogFile.Failed:" + t.getMessage() );
+			}
+
+			entry.file = null;
+			entry.line = null;
+			sequence.lazySet( index, pos + entries.length );
+			pos++;
+			head = pos;
+			count++;
+		}
+
+		return count;
+	}
+
+
+	private void reportDropped() {
+		long now = System.currentTimeMillis();
+		if ( now - lastDropReport < DROP_REPORT_MS || dropped.get() == 0 )
+			return;
+
+		lastDropReport = now;
+		cfEngine.log( "LogFile: " + dropped.getAndSet( 0 ) + " log lines dropped; the log buffer was full (overflow=" + overflow.toString().toLowerCase() + ")" );
+	}
+
+
+	private static class Entry {
+		LogFile	file;
+		long		time;
+		String	line;
+	}
+
+
+	/*
+	 * The log stamp only changes once a second, so it is formatted once and shared
+	 */
+	private static final String LOG_DATE_FORMAT = "dd/MM/yy HH:mm.ss: ";
+	private static volatile Stamp lastStamp = new Stamp( -1, "" );
+
+	static String formatTimestamp( long time ) {
+		long second = time / 1000;
+		Stamp stamp = lastStamp;
+		if ( stamp.second != second ) {
+			stamp = new Stamp( second, new SimpleDateFormat( LOG_DATE_FORMAT ).format( new java.util.Date( time ) ) );
+			lastStamp = stamp;
+		}
+		return stamp.text;
+	}
+
+	private static class Stamp {
+		final long		second;
+		final String	text;
+
+		Stamp( long second, String text ) {
+			this.second	= second;
+			this.text		= text;
+		}
+	}
+}
@@ -33,6 +33,8 @@ package com.nary.util;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Enumeration;
 import java.util.Hashtable;
 
@@ -42,13 +44,19 @@ import com.naryx.tagfusion.cfm.engine.cfEngine;
  * This class provides an easy way for an application to maintain a log file that is unique to it.
  * 
  * The logfile has an auto-rotation facility, initially set at 25MB
+ * 
+ * Once the engine has started the appender (see setAsync()) lines are handed to
+ * the LogAppender writer thread and the caller returns straight away; until
+ * then, and after it has stopped, they are written on the calling thread.
  */
 
 public class LogFile extends Object {
 
-	private static final String LOG_DATE_FORMAT = "dd/MM/yy HH:mm.ss: ";
+	private static final int STAGE_SIZE = 64 * 1024;
 
 	private RandomAccessFile outFile;
+	private FileChannel channel;
+	private ByteBuffer staged;
 	private long logFileSize = 0;
 	private String filename;
 
@@ -57,8 +65,9 @@ public class LogFile extends Object {
 	private LogFile(String logPath) throws Exception {
 		filename = logPath;
 		outFile = new RandomAccessFile(logPath, "rw");
+		channel = outFile.getChannel();
 		logFileSize = outFile.length();
-		outFile.seek(logFileSize);
+		channel.position(logFileSize);
 	}
 
 	private void setMaxLogFileSize(long maxLogFileSize) {
@@ -66,44 +75,82 @@ public class LogFile extends Object {
 	}
 
 	private void println(String _line) {
-		try {
-			writeData(com.nary.util.Date.formatNow(LOG_DATE_FORMAT) + _line + "\r\n");
-		} catch (Exception e) {
-			// DateFormat.format() has been observed to throw NullPointerExceptions
-			cfEngine.log("Error " + e + " formatting date in LogFile.println( String _line )");
-		}
+		LogAppender appender = LogAppender.get();
+		if (appender != null && appender.offer(this, _line))
+			return;
+
+		writeData(System.currentTimeMillis(), _line);
 	}
 
 	private void println(Object _ob) {
-		writeData(com.nary.util.Date.formatNow(LOG_DATE_FORMAT) + _ob.toString() + "\r\n");
+		println(_ob.toString());
 	}
 
-	private void close() {
+	private synchronized void close() {
 		try {
+			flushStaged();
 			outFile.close();
 		} catch (Exception E) {
 		}
 	}
 
-	private synchronized void writeData(String _line) {
+	private synchronized void writeData(long _time, String _line) {
+		stage(_time, _line);
+		flushStaged();
+	}
+
+	/**
+	 * Adds the stamped line to the bytes waiting to go out; returns true if there
+	 * was nothing waiting before
+	 */
+	synchronized boolean stage(long _time, String _line) {
+		if (staged == null)
+			staged = ByteBuffer.allocate(STAGE_SIZE);
+
+		boolean wasEmpty = (staged.position() == 0);
+		put(LogAppender.formatTimestamp(_time));
+		put(_line);
+		put("\r\n");
+		return wasEmpty;
+	}
+
+	private void put(String _text) {
+		// one byte per char, as RandomAccessFile.writeBytes() has always done
+		int len = _text.length();
+		for (int x = 0; x < len; x++) {
+			if (!staged.hasRemaining())
+				flushStaged();
+			staged.put((byte) _text.charAt(x));
+		}
+	}
+
+	synchronized void flushStaged() {
+		if (staged == null || staged.position() == 0)
+			return;
+
+		staged.flip();
+		int length = staged.remaining();
 		try {
-			writeToFile(_line);
+			writeToFile(staged);
 		} catch (IOException EE) {
 			rotateLogFile();
+			staged.rewind();
 			try {
-				writeToFile(_line);
+				writeToFile(staged);
 			} catch (IOException e) {
 				cfEngine.log("LogFile.Failed:" + e.getMessage());
 			}
 		}
+		staged.clear();
+		logFileSize += length;
 
 		if (logFileSize > maxLogFileSize)
 			rotateLogFile();
 	}
 
-	private void writeToFile(String _line) throws IOException {
-		outFile.writeBytes(_line);
-		logFileSize += _line.length();
+	private void writeToFile(ByteBuffer _buffer) throws IOException {
+		while (_buffer.hasRemaining())
+			channel.write(_buffer);
 	}
 
 	private void rotateLogFile() {
@@ -140,6 +187,7 @@ public class LogFile extends Object {
 
 			// Open up the file
 			outFile = new RandomAccessFile(filename, "rw");
+			channel = outFile.getChannel();
 			logFileSize = 0;
 
 		} catch (IOException ignoreException) {
@@ -190,7 +238,31 @@ public class LogFile extends Object {
 			((LogFile) (logfiles.get(_Name.toUpperCase()))).setMaxLogFileSize(rotationSize);
 	}
 
+	/**
+	 * Moves the writing of log lines onto the LogAppender thread.
+	 * 
+	 * @param bufferSize the number of lines that can be waiting; 0 or less writes on the calling thread
+	 * @param overflow block|drop|sample; what to do with a line when the buffer is full
+	 * @param sampleRate when sampling, 1 in this many lines are kept once the buffer is three-quarters full
+	 */
+	public static void setAsync(int bufferSize, String overflow, int sampleRate) {
+		if (bufferSize <= 0) {
+			LogAppender.stop();
+			return;
+		}
+
+		LogAppender.Overflow policy = LogAppender.Overflow.BLOCK;
+		if ("drop".equalsIgnoreCase(overflow))
+			policy = LogAppender.Overflow.DROP;
+		else if ("sample".equalsIgnoreCase(overflow))
+			policy = LogAppender.Overflow.SAMPLE;
+
+		LogAppender.start(bufferSize, policy, sampleRate);
+	}
+
 	public static void closeAll() {
+		LogAppender.stop();
+
 		Enumeration E = logfiles.elements();
 		while (E.hasMoreElements())
 			((LogFile) E.nextElement()).close();
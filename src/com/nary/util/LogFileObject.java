@@ -47,7 +47,6 @@ import com.naryx.tagfusion.cfm.engine.cfEngine;
  */
 
 public class LogFileObject extends Object {
-	private static final String LOG_DATE_FORMAT = "dd/MM/yy HH:mm.ss: ";
 
 	private RandomAccessContent outFileRandomAccess;
 	private long logFileSize = 0;
@@ -71,7 +70,7 @@ public class LogFileObject extends Object {
 	
 	private void println(String _line) {
 		try {
-			writeData(com.nary.util.Date.formatNow(LOG_DATE_FORMAT) + _line + "\r\n");
+			writeData(LogAppender.formatTimestamp(System.currentTimeMillis()) + _line + "\r\n");
 		} catch (Exception e) {
 			// DateFormat.format() has been observed to throw NullPointerExceptions
 			cfEngine.log("Error " + e + " formatting date in LogFile.println( String _line )");
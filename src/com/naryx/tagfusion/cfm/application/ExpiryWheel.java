@@ -0,0 +1,162 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.cfm.application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A hashed timing wheel for expiring scopes.
+ * 
+ * Each entry sits in the slot of the tick it is due to expire on, so
+ * advancing the clock only visits the slots that have come due instead of
+ * every live entry. Entries work out their own deadline, so a touch is
+ * nothing more than updating the last used time; when a slot comes due any
+ * entry that has been used since it was placed is simply moved on to the
+ * slot of its new deadline. Entries due further out than one turn of the
+ * wheel are passed over until the turn they fall in.
+ */
+public class ExpiryWheel<E extends ExpiryWheel.Entry> {
+
+	private final long tickMs;
+	private final int mask;
+	private final Queue<E>[] slots;
+
+	// the last tick that has been processed
+	private volatile long lastTick;
+
+	/**
+	 * @param tickMs the resolution of the wheel
+	 * @param slotCount the number of slots; rounded up to a power of two
+	 */
+	@SuppressWarnings("unchecked")
+	public ExpiryWheel( long tickMs, int slotCount ) {
+		int size = Integer.highestOneBit( Math.max( slotCount, 2 ) - 1 ) << 1;
+
+		this.tickMs = tickMs;
+		this.mask = size - 1;
+		this.slots = new Queue[size];
+		for ( int i = 0; i < size; i++ )
+			slots[i] = new ConcurrentLinkedQueue<E>();
+
+		lastTick = System.currentTimeMillis() / tickMs;
+	}
+
+	public void schedule( E entry ) {
+		slot( entry, lastTick );
+	}
+
+	/**
+	 * Moves the wheel on to the given time, returning the entries that have
+	 * expired.  Cancelled entries are dropped along the way.
+	 */
+	public synchronized List<E> advance( long now ) {
+		List<E> expired = new ArrayList<E>();
+
+		long nowTick = now / tickMs;
+		long fromTick = Math.max( lastTick + 1, nowTick - mask );
+
+		for ( long tick = fromTick; tick <= nowTick; tick++ ) {
+			Queue<E> slot = slots[ (int)( tick & mask ) ];
+
+			// only look at what is in the slot now; entries moved back into it are due on a later turn
+			for ( int count = slot.size(); count > 0; count-- ) {
+				E entry = slot.poll();
+				if ( entry == null )
+					break;
+				if ( entry.isCancelled() )
+					continue;
+
+				if ( entry.getDeadline() <= now )
+					expired.add( entry );
+				else
+					slot( entry, tick );
+			}
+		}
+
+		lastTick = nowTick;
+		return expired;
+	}
+
+	// never into a slot at or before the current tick, as that would not be looked at until the next turn
+	private void slot( E entry, long currentTick ) {
+		long tick = Math.max( entry.getDeadline() / tickMs, currentTick + 1 );
+		slots[ (int)( tick & mask ) ].offer( entry );
+	}
+
+	public void clear() {
+		for ( Queue<E> slot : slots )
+			slot.clear();
+	}
+
+	public static abstract class Entry {
+		private volatile boolean cancelled = false;
+
+		public abstract long getDeadline();
+
+		public void cancel() {
+			cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+
+	/**
+	 * A cfStructExpireData held under a key, due once it has not been used for
+	 * the given time out
+	 */
+	public static class ScopeEntry<T extends cfStructExpireData> extends Entry {
+		private final String key;
+		private final T item;
+		private final long timeOut;
+
+		public ScopeEntry( String key, T item, long timeOut ) {
+			this.key = key;
+			this.item = item;
+			this.timeOut = timeOut;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public T getItem() {
+			return item;
+		}
+
+		public long getDeadline() {
+			return item.getLastUsed() + timeOut;
+		}
+	}
+}
@@ -66,6 +66,7 @@ public class cfAPPLICATION extends cfTag implements Serializable {
 	public static final String CUSTOMTAGPATHS		= "CUSTOMTAGPATHS";
 	public static final String DATASOURCE				= "DATASOURCE";
 	public static final String SESSIONSTORAGE		= "SESSIONSTORAGE";
+	public static final String REGEXENGINE			= "REGEXENGINE";
 
 	private static cfApplicationManager appManager;
 
@@ -150,6 +151,7 @@ public class cfAPPLICATION extends cfTag implements Serializable {
   		createAttInfo("SESSIONTIMEOUT",			"The timeout of this session when it will be unloaded from memory.  Defaults to 20 minutes", "", false ),
   		createAttInfo("SECUREJSON",					"Controls if the JSON RPC methods are made secure", "", false ),
   		createAttInfo("SECUREJSONPREFIX",		"The prefix if JSON RPC methods are made secure that is used", "", false ),
+  		createAttInfo("REGEXENGINE",				"The regular expression engine used by the RE* functions; oro (default) or java", "", false ),
 
   	};
   }
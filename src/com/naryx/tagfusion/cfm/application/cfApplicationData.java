@@ -49,6 +49,7 @@ import com.naryx.tagfusion.cfm.engine.cfcMethodData;
 import com.naryx.tagfusion.cfm.engine.cfmAbortException;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
 import com.naryx.tagfusion.cfm.engine.variableStore;
+import com.naryx.tagfusion.expression.function.string.RegexCache;
 
 /**
  * This class manages an individual application. Sets up the necessary SESSION, CLIENT and APPLICATION scopes.
@@ -80,6 +81,16 @@ public class cfApplicationData extends cfStructExpireData implements java.io.Ser
 			this.webroot = com.nary.io.FileUtils.getRealPath(Session.REQ, "/");
 	}
 
+	/**
+	 * Whatever is placed in the application scope is shared between requests, so
+	 * it is published first
+	 */
+	public void setData(String _key, cfData _data) {
+		if (_data != null)
+			_data.publish();
+		super.setData(_key, _data);
+	}
+
 	public final String getAppName() {
 		return appName;
 	}
@@ -92,6 +103,16 @@ public class cfApplicationData extends cfStructExpireData implements java.io.Ser
 		return SessionStorage.size();
 	}
 
+	public final cfStructData getSessionMetrics() {
+		SessionStorageInterface storage = SessionStorage;
+		if (storage == null)
+			return new cfStructData();
+
+		cfStructData s = storage.getMetrics();
+		s.setData("engine", new cfStringData(storage.getType().toString().toLowerCase()));
+		return s;
+	}
+
 	public final boolean isSessionEnabled() {
 		return SessionStorage.getType() != SessionStorageFactory.SessionEngine.NONE;
 	}
@@ -136,6 +157,8 @@ public class cfApplicationData extends cfStructExpireData implements java.io.Ser
 		if (session.getDataBin(cfAPPLICATION.CUSTOMTAGPATHS) != null)
 			s.setData(cfAPPLICATION.CUSTOMTAGPATHS, new cfStringData((String) session.getDataBin(cfAPPLICATION.CUSTOMTAGPATHS)));
 
+		s.setData(cfAPPLICATION.REGEXENGINE, new cfStringData(RegexCache.getEngine(session).toString().toLowerCase()));
+
 		return s;
 	}
 
@@ -199,7 +222,7 @@ public class cfApplicationData extends cfStructExpireData implements java.io.Ser
 
 		// Setup the necessary cookie/uri information to determining this client session
 		sessionUtility sessionInfo = null;
-		if (bClient || SessionStorage.getType() == SessionStorageFactory.SessionEngine.INTERNAL || SessionStorage.getType() == SessionStorageFactory.SessionEngine.MONGO || SessionStorage.getType() == SessionStorageFactory.SessionEngine.MEMCACHED) {
+		if (bClient || SessionStorage.getType() == SessionStorageFactory.SessionEngine.INTERNAL || SessionStorage.getType() == SessionStorageFactory.SessionEngine.MONGO || SessionStorage.getType() == SessionStorageFactory.SessionEngine.MEMCACHED || SessionStorage.getType() == SessionStorageFactory.SessionEngine.TIERED) {
 			sessionInfo = new sessionUtility(Session, setDomainCookies);
 			bCookiesWorking = (setClientCookies && sessionInfo.IsSessionFromCookie());
 		}
@@ -386,6 +409,25 @@ public class cfApplicationData extends cfStructExpireData implements java.io.Ser
 			SessionStorage.onRequestEnd(Session);
 	}
 
+	/**
+	 * Called as a CFTHREAD is created from the request, and again when it has finished,
+	 * so the session storage engine keeps the session the thread shares where it can see it
+	 * 
+	 * @param parent
+	 * @param thread
+	 */
+	public void onThreadStart(cfSession parent, cfSession thread) {
+		SessionStorageInterface storage = SessionStorage;
+		if (storage != null)
+			storage.onThreadStart(parent, thread);
+	}
+
+	public void onThreadEnd(cfSession thread) {
+		SessionStorageInterface storage = SessionStorage;
+		if (storage != null)
+			storage.onThreadEnd(thread);
+	}
+
 	private void applyScriptProtection(cfSession _Session, String scriptProtect) {
 		if (scriptProtect != null) {
 			if (scriptProtect.equalsIgnoreCase("none")) {
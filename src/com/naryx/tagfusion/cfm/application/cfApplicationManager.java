@@ -41,12 +41,14 @@ import com.naryx.tagfusion.cfm.engine.cfComponentData;
 import com.naryx.tagfusion.cfm.engine.cfData;
 import com.naryx.tagfusion.cfm.engine.cfEngine;
 import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
 import com.naryx.tagfusion.cfm.engine.cfcMethodData;
 import com.naryx.tagfusion.cfm.engine.cfmAbortException;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
 import com.naryx.tagfusion.cfm.engine.engineListener;
 import com.naryx.tagfusion.cfm.file.cfFile;
 import com.naryx.tagfusion.cfm.tag.cfTag;
+import com.naryx.tagfusion.expression.function.string.RegexCache;
 import com.naryx.tagfusion.util.dummyServletRequest;
 import com.naryx.tagfusion.util.dummyServletResponse;
 import com.naryx.tagfusion.xmlConfig.xmlCFML;
@@ -79,7 +81,8 @@ public class cfApplicationManager extends Object implements java.io.Serializable
 		cfApplicationManager appManager = new cfApplicationManager();
 		appManager.engineAdminUpdate(config);
 		cfEngine.registerEngineListener(appManager);
-		cfEngine.thisPlatform.timerSetListenerMinute(appManager, 5);
+		// session expiry only visits the sessions that have come due, so it can afford to run every minute
+		cfEngine.thisPlatform.timerSetListenerMinute(appManager);
 
 		cf5ClientData = config.getBoolean("server.cfapplication.cf5clientdata", false);
 		if (cf5ClientData) {
@@ -123,6 +126,14 @@ public class cfApplicationManager extends Object implements java.io.Serializable
 		return -1;
 	}
 	
+	public cfStructData getSessionMetrics(String name){
+		Object o = cfEngine.thisServletContext.getAttribute(name);
+		if ( o != null && o instanceof cfApplicationData ){
+			return ((cfApplicationData)o).getSessionMetrics();
+		}
+		return null;
+	}
+	
 	public int getSessionCount() {
 		int totalSessions = 0;
 		Enumeration<String> E = cfEngine.thisServletContext.getAttributeNames();
@@ -283,6 +294,10 @@ public class cfApplicationManager extends Object implements java.io.Serializable
 			}
 		}
 
+		// Set up the regular expression engine for the RE* functions
+		if (applicationCfc.containsKey(cfAPPLICATION.REGEXENGINE))
+			session.setDataBin(cfAPPLICATION.REGEXENGINE, RegexCache.Engine.fromString(applicationCfc.getData(cfAPPLICATION.REGEXENGINE).getString()) );
+
 		String datasource	= null;
 		if ( applicationCfc.containsKey(cfAPPLICATION.DATASOURCE))
 			datasource	= applicationCfc.getData(cfAPPLICATION.DATASOURCE).getString();
@@ -371,6 +386,9 @@ public class cfApplicationManager extends Object implements java.io.Serializable
 		if ( parentTag.containsAttribute(cfAPPLICATION.CUSTOMTAGPATHS) )
 			_Session.setDataBin(cfAPPLICATION.CUSTOMTAGPATHS, parentTag.getDynamic(_Session, cfAPPLICATION.CUSTOMTAGPATHS).getString() );
 
+		if ( parentTag.containsAttribute(cfAPPLICATION.REGEXENGINE) )
+			_Session.setDataBin(cfAPPLICATION.REGEXENGINE, RegexCache.Engine.fromString(parentTag.getDynamic(_Session, cfAPPLICATION.REGEXENGINE).getString()) );
+
 		// Setup the properties of this application
 		appData.onRequestStart(_Session, bJ2EESessionManagement, 
 				(long) (parentTag.getDynamic(_Session, cfAPPLICATION.APPLICATIONTIMEOUT).getDouble() * DateUtils.MILLIS_PER_DAY), 
@@ -361,8 +361,8 @@ public class cfClientSessionData extends cfStructData implements Serializable {
 		if (hashdata.containsKey("hitcount")) {
 			cfNumberData hitcount = ((cfData) hashdata.get("hitcount")).getNumber();
 			if (hitcount != null) {
-				hitcount.add(1);
-				hashdata.put("hitcount", hitcount);
+				// the stored number may be a shared instance, so never update it in place
+				hashdata.put("hitcount", new cfNumberData(hitcount.getInt() + 1));
 			} else {
 				hashdata.put("hitcount", new cfNumberData(1));
 			}
@@ -126,6 +126,7 @@ public class cfJ2EEApplicationData extends cfApplicationData {
 	 * Store objects in the J2EE application scope as "natural" Java objects; normalize key to lowercase. Put empty string instead of null.
 	 */
 	public void setData(String _key, cfData _data) {
+		_data.publish(); // shared between requests
 		Object obj = tagUtils.getNatural(_data);
 		applicationScope.setAttribute(_key.toLowerCase(), obj != null ? obj : "");
 		_data.invalidateLoopIndex(); // invalidate cfLoopIndex
@@ -104,6 +104,7 @@ public class cfJ2EESessionData extends cfSessionData {
 	 * Store objects in the J2EE application scope as "natural" Java objects; normalize key to lowercase. Put empty string instead of null.
 	 */
 	public void setData(String _key, cfData _data) {
+		_data.publish(); // shared between the session's requests
 		Object obj = tagUtils.getNatural(_data);
 		sessionScope.setAttribute(_key.toLowerCase(), obj != null ? obj : "");
 		_data.invalidateLoopIndex(); // invalidate cfLoopIndex
@@ -30,6 +30,8 @@
 
 package com.naryx.tagfusion.cfm.application;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
@@ -38,14 +40,18 @@ import java.util.Map;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpSession;
 
+import com.naryx.tagfusion.cfm.engine.cfArrayListData;
 import com.naryx.tagfusion.cfm.engine.cfComponentData;
 import com.naryx.tagfusion.cfm.engine.cfData;
+import com.naryx.tagfusion.cfm.engine.cfDateData;
 import com.naryx.tagfusion.cfm.engine.cfEngine;
 import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfStringData;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
 import com.naryx.tagfusion.cfm.engine.cfcMethodData;
 import com.naryx.tagfusion.cfm.engine.cfmAbortException;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.engine.dataNotSupportedException;
 import com.naryx.tagfusion.cfm.engine.variableStore;
 import com.naryx.tagfusion.cfm.file.cfFile;
 import com.naryx.tagfusion.util.dummyServletRequest;
@@ -61,11 +67,19 @@ public class cfSessionData extends cfStructExpireData implements java.io.Seriali
 	private static final String BD_ADMIN_APPNAME = "BLUEDRAGONADMIN";
 	public static final String ON_SESSION_END = "onSessionEnd";
 
+	/** Returned by getChangeVersion() when the scope holds values whose changes can't be seen */
+	public static final long UNTRACKABLE = Long.MIN_VALUE;
+	private static final int MAX_TRACK_DEPTH = 32;
+
 	private int defaultElements = 3;
 	private long timeout;
 	
 	transient private	String md5Digest = null;
 	transient private String storageid = null;
+	transient private long storedVersion = UNTRACKABLE;
+	transient private long changeVersion = 0;
+	transient private List<Object> snapshot = null;		// what the scope held when changeVersion last moved
+	transient private long lastStored = 0;
 
 	public cfSessionData(String appName) {
 		super();
@@ -83,6 +97,28 @@ public class cfSessionData extends cfStructExpireData implements java.io.Seriali
 		super(hashdata);
 	}
 
+	/**
+	 * A session is shared by every request, and CFTHREAD, made with it, so whatever
+	 * is placed in it is published first
+	 */
+	public void setData(String _key, cfData _data) {
+		if (_data != null)
+			_data.publish();
+		super.setData(_key, _data);
+	}
+
+	// a session read back by java serialization holds arrays on the unsynchronized store
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+
+		Object[] keys = keys();
+		for (int i = 0; i < keys.length; i++) {
+			cfData value = getData((String) keys[i]);
+			if (value != null)
+				value.publish();
+		}
+	}
+
 	public String getStorageID(){
 		return storageid;
 	}
@@ -220,4 +256,130 @@ public class cfSessionData extends cfStructExpireData implements java.io.Seriali
 	public String getMD5(){
 		return md5Digest;
 	}
+
+	/**
+	 * Returns a counter that goes up whenever anything held in the scope has been
+	 * added, removed or changed since it was last asked. Structures, arrays and
+	 * simple values are followed, and each call compares them against what was
+	 * recorded the last time rather than a hash of it, so no change is missed;
+	 * anything else (components, queries, java objects) can be changed without
+	 * us seeing it, so UNTRACKABLE is returned and the scope must be treated as
+	 * changed.
+	 */
+	public synchronized long getChangeVersion() {
+		List<Object> current = new ArrayList<Object>(snapshot == null ? 16 : snapshot.size());
+		if (!record(this, current, 0)) {
+			snapshot = null;
+			return UNTRACKABLE;
+		}
+
+		if (snapshot == null || !sameSnapshot(snapshot, current)) {
+			snapshot = current;
+			changeVersion++;
+		}
+		return changeVersion;
+	}
+
+	/**
+	 * True if the given version differs from the one last written to the
+	 * external session store; setTouched() records when that store last
+	 * had the session written or its expiry pushed out
+	 */
+	public boolean isDirty(long version) {
+		return version == UNTRACKABLE || version != storedVersion;
+	}
+
+	public void setStored(long version) {
+		storedVersion = version;
+	}
+
+	public void setTouched() {
+		lastStored = System.currentTimeMillis();
+	}
+
+	public long getLastStored() {
+		return lastStored;
+	}
+
+	/**
+	 * Adds what the value holds to the snapshot; structures and arrays are
+	 * recorded by identity and change count, simple values by value
+	 */
+	private static boolean record(cfData data, List<Object> snap, int depth) {
+		if (data == null) {
+			snap.add(null);
+			return true;
+		}
+
+		if (depth > MAX_TRACK_DEPTH)
+			return false;
+
+		byte type = data.getDataType();
+		try {
+			if (type == cfData.CFSTRINGDATA) {
+				snap.add(data.getString());
+				return true;
+			} else if (type == cfData.CFDATEDATA) {
+				snap.add(Long.valueOf(((cfDateData) data).getLong()));
+				return true;
+			} else if (type == cfData.CFNUMBERDATA || type == cfData.CFBOOLEANDATA) {
+				snap.add(Byte.valueOf(type));
+				snap.add(Long.valueOf(Double.doubleToLongBits(data.getDouble())));
+				return true;
+			} else if (type == cfData.CFNULLDATA) {
+				snap.add(Byte.valueOf(type));
+				return true;
+			}
+		} catch (dataNotSupportedException e) {
+			return false;
+		}
+
+		Class<?> c = data.getClass();
+		if (c == cfStructData.class || c == cfSessionData.class) {
+			cfStructData struct = (cfStructData) data;
+			snap.add(struct);
+			snap.add(Integer.valueOf(struct.getModCount()));
+
+			Object[] keys = struct.keys();
+			for (int i = 0; i < keys.length; i++) {
+				if (!record(struct.getData((String) keys[i]), snap, depth + 1))
+					return false;
+			}
+			return true;
+
+		} else if (c == cfArrayListData.class) {
+			cfArrayListData array = (cfArrayListData) data;
+			snap.add(array);
+			snap.add(Integer.valueOf(array.getModCount()));
+
+			int size = array.size();
+			for (int i = 1; i <= size; i++) {
+				if (!record(array.getElement(i), snap, depth + 1))
+					return false;
+			}
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Structures and arrays must be the very same objects; everything else is compared by value
+	 */
+	private static boolean sameSnapshot(List<Object> a, List<Object> b) {
+		if (a.size() != b.size())
+			return false;
+
+		for (int i = 0; i < a.size(); i++) {
+			Object x = a.get(i);
+			Object y = b.get(i);
+			if (x instanceof cfData || x == null) {
+				if (x != y)
+					return false;
+			} else if (!x.equals(y)) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
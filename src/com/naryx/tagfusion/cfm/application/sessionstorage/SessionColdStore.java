@@ -0,0 +1,262 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.cfm.application.sessionstorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The cold tier of the tiered session store; an append-only set of memory
+ * mapped segment files holding encoded sessions.
+ * 
+ * Records are never rewritten in place. Each segment keeps track of the
+ * records still live in it and is dropped, and its file removed, once the last
+ * of them has been released. As a handful of long lived sessions would
+ * otherwise keep a whole segment mapped, compact() moves the records out of
+ * any segment that has fallen below a quarter live into the current one, so
+ * the sparse segment can be dropped.
+ */
+public class SessionColdStore {
+
+	// a segment with less than 1/COMPACT_RATIO of it live is compacted
+	private static final int COMPACT_RATIO = 4;
+
+	private final File directory;
+	private final int segmentSize;
+
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private Segment current;
+	private int nextSegmentId = 0;
+
+	private final AtomicLong liveBytes = new AtomicLong( 0 );
+	private final AtomicLong relocatedBytes = new AtomicLong( 0 );
+
+	public SessionColdStore( File directory, int segmentSize ) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		directory.mkdirs();
+	}
+
+	public synchronized Record append( byte[] data ) throws IOException {
+		Record record = new Record( data.length );
+		write( record, data );
+		liveBytes.addAndGet( data.length );
+		return record;
+	}
+
+	/**
+	 * Writes the data at the end of the current segment, starting a new one if it
+	 * will not fit, and points the record at it; the caller holds the store lock
+	 */
+	private void write( Record record, byte[] data ) throws IOException {
+		if ( current == null || current.remaining() < data.length ) {
+			if ( current != null && current.records.isEmpty() )
+				drop( current );
+
+			current = new Segment( new File( directory, "segment-" + ( nextSegmentId++ ) + ".dat" ), Math.max( segmentSize, data.length ) );
+			segments.add( current );
+		}
+
+		int offset = current.position;
+		ByteBuffer buf = current.buffer.duplicate();
+		buf.position( offset );
+		buf.put( data );
+		current.position += data.length;
+
+		current.records.add( record );
+		current.live += data.length;
+		record.moveTo( current, offset );
+	}
+
+	public byte[] read( Record record ) {
+		Segment segment;
+		int offset;
+		synchronized ( record ) {
+			segment = record.segment;
+			offset = record.offset;
+		}
+
+		// a record relocated since is still intact in the old mapping, which stays valid while we hold it
+		byte[] data = new byte[ record.length ];
+		ByteBuffer buf = segment.buffer.duplicate();
+		buf.position( offset );
+		buf.get( data );
+		return data;
+	}
+
+	/**
+	 * The record is no longer wanted and must not be read again
+	 */
+	public synchronized void release( Record record ) {
+		Segment segment = record.segment;
+		if ( segment == null || !segment.records.remove( record ) )
+			return;
+
+		segment.live -= record.length;
+		liveBytes.addAndGet( -record.length );
+
+		if ( segment != current && segment.records.isEmpty() )
+			drop( segment );
+	}
+
+	/**
+	 * Relocates the live records of every sparse segment to the end of the store
+	 * and drops the segments they came from. Each segment is moved under its own
+	 * hold of the lock so appends are only ever kept waiting for one of them.
+	 */
+	public void compact() throws IOException {
+		List<Segment> sparse = new ArrayList<Segment>();
+		synchronized ( this ) {
+			for ( Segment segment : segments ) {
+				if ( segment != current && (long)segment.live * COMPACT_RATIO < segment.buffer.capacity() )
+					sparse.add( segment );
+			}
+		}
+
+		for ( Segment segment : sparse ) {
+			synchronized ( this ) {
+				if ( !segments.contains( segment ) )
+					continue;
+
+				for ( Record record : new ArrayList<Record>( segment.records ) ) {
+					write( record, read( record ) );
+					segment.records.remove( record );
+					segment.live -= record.length;
+					relocatedBytes.addAndGet( record.length );
+				}
+
+				drop( segment );
+			}
+		}
+	}
+
+	private void drop( Segment segment ) {
+		if ( segments.remove( segment ) ) {
+			// the mapping itself goes when the buffer is collected; where the file cannot be removed while mapped, leave it for exit
+			if ( !segment.file.delete() )
+				segment.file.deleteOnExit();
+		}
+	}
+
+	public synchronized void clear() {
+		for ( Segment segment : segments ) {
+			segment.records.clear();
+			if ( !segment.file.delete() )
+				segment.file.deleteOnExit();
+		}
+		segments.clear();
+		current = null;
+		liveBytes.set( 0 );
+	}
+
+	public synchronized void close() {
+		clear();
+		directory.delete();
+	}
+
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	public long getLiveBytes() {
+		return liveBytes.get();
+	}
+
+	/**
+	 * The total bytes copied by compact() so far
+	 */
+	public long getRelocatedBytes() {
+		return relocatedBytes.get();
+	}
+
+	public synchronized long getMappedBytes() {
+		long total = 0;
+		for ( Segment segment : segments )
+			total += segment.buffer.capacity();
+		return total;
+	}
+
+	/**
+	 * Where an encoded session is held; compact() can move it to another segment
+	 */
+	public static class Record {
+		private final int length;
+		private Segment segment;
+		private int offset;
+
+		private Record( int length ) {
+			this.length = length;
+		}
+
+		private synchronized void moveTo( Segment segment, int offset ) {
+			this.segment = segment;
+			this.offset = offset;
+		}
+
+		public int getLength() {
+			return length;
+		}
+	}
+
+	/**
+	 * A mapped file and the records live in it; all but the buffer is guarded by the store lock
+	 */
+	private static class Segment {
+		private final File file;
+		private final MappedByteBuffer buffer;
+		private final Set<Record> records = new HashSet<Record>();
+		private int live = 0;
+		private int position = 0;
+
+		private Segment( File file, int size ) throws IOException {
+			this.file = file;
+
+			RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+			try {
+				buffer = raf.getChannel().map( FileChannel.MapMode.READ_WRITE, 0, size );
+			} finally {
+				raf.close();
+			}
+		}
+
+		private int remaining() {
+			return buffer.capacity() - position;
+		}
+	}
+}
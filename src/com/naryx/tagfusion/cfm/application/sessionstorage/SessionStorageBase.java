@@ -29,17 +29,35 @@
  */
 package com.naryx.tagfusion.cfm.application.sessionstorage;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.naryx.tagfusion.cfm.application.cfApplicationData;
 import com.naryx.tagfusion.cfm.application.cfSessionData;
+import com.naryx.tagfusion.cfm.engine.cfEngine;
+import com.naryx.tagfusion.cfm.engine.cfNumberData;
 import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfStructData;
+import com.naryx.tagfusion.cfm.engine.codec.CodecFactory;
 import com.naryx.tagfusion.cfm.engine.variableStore;
+import com.naryx.tagfusion.xmlConfig.xmlCFML;
 
 /**
  * Abstract class for the SessionStorage Implementations to override and provide the minimal default processing
  */
 public abstract class SessionStorageBase {
 
+	protected static final int END_BATCH = 64;
+
+	private static ExecutorService endExecutor;
+
+	// sessions that have been expired but whose onSessionEnd() has yet to run
+	private final AtomicInteger ending = new AtomicInteger( 0 );
+	private volatile boolean bHasOnSessionEndMethod = true;
+
 	public SessionStorageBase(String appName) {
 		this.appName = appName;
 	}
@@ -54,9 +72,32 @@ public abstract class SessionStorageBase {
 
 	protected String appName;
 
+	/**
+	 * Turns what was read from the storage back into a session; the codec hands back a
+	 * plain structure unless the session had to be written with java serialization
+	 */
+	protected cfSessionData toSession(byte[] buf) throws Exception {
+		Object obj = CodecFactory.decode(buf);
+		if (obj instanceof cfSessionData)
+			return (cfSessionData) obj;
+
+		cfStructData struct = (cfStructData) obj;
+		cfSessionData sessData = new cfSessionData(appName);
+		Object[] keys = struct.keys();
+		for (int i = 0; i < keys.length; i++)
+			sessData.setData((String) keys[i], struct.getData((String) keys[i]));
+		return sessData;
+	}
+
 	public void onRequestEnd(cfSession session) {
 	}
 
+	public void onThreadStart(cfSession parent, cfSession thread) {
+	}
+
+	public void onThreadEnd(cfSession thread) {
+	}
+
 	public void onApplicationEnd(cfApplicationData applicationData) {
 	}
 
@@ -77,5 +118,99 @@ public abstract class SessionStorageBase {
 		return null;
 	}
 
+	public cfStructData getMetrics() {
+		cfStructData s = new cfStructData();
+		s.setData( "sessions", new cfNumberData( size() ) );
+		return s;
+	}
+
+	/**
+	 * Hands the onSessionEnd() calls for sessions already taken out of the store to
+	 * the session end pool, in batches, so the clock thread is not held up running them
+	 */
+	protected void endSessions( final cfApplicationData applicationData, List<cfSessionData> expired ) {
+		for ( int x = 0; x < expired.size(); x += END_BATCH ) {
+			final List<cfSessionData> batch = expired.subList( x, Math.min( x + END_BATCH, expired.size() ) );
+
+			runEnding( batch.size(), new Runnable(){
+				public void run(){
+					for ( cfSessionData sess : batch )
+						endSession( applicationData, sess );
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs the task on the session end pool, counting the given number of sessions
+	 * as ending until it has finished
+	 */
+	protected void runEnding( final int count, final Runnable task ) {
+		ending.addAndGet( count );
+		getEndExecutor().execute( new Runnable(){
+			public void run(){
+				try{
+					task.run();
+				}finally{
+					ending.addAndGet( -count );
+				}
+			}
+		});
+	}
+
+	/**
+	 * Called at the start of each sweep of the store, so the first session ended in it
+	 * asks again whether the application has an onSessionEnd(); Application.cfc may
+	 * have gained one since the last sweep
+	 */
+	protected void startSweep() {
+		bHasOnSessionEndMethod = true;
+	}
+
+	/**
+	 * The first time we call this method in a sweep it will let us know if the onSessionEnd() method is
+	 * actually available by returning true/false.  We don't need to keep calling this function if there is
+	 * no method to actually invoke.  But we must call it the first time around to see.
+	 */
+	protected void endSession( cfApplicationData applicationData, cfSessionData sess ) {
+		if ( bHasOnSessionEndMethod )
+			bHasOnSessionEndMethod = sess.onSessionEnd( applicationData );
+	}
+
+	/**
+	 * Sessions that have expired but are still running onSessionEnd(); these
+	 * should be counted in size() so the application is not ended underneath them
+	 */
+	protected int getEnding() {
+		return ending.get();
+	}
+
+	/**
+	 * false once this sweep has found the application has no onSessionEnd() to call
+	 */
+	protected boolean hasOnSessionEnd() {
+		return bHasOnSessionEndMethod;
+	}
+
+	private static synchronized ExecutorService getEndExecutor(){
+		if ( endExecutor == null ){
+			int threads = 4;
+			xmlCFML config = cfEngine.getConfig();
+			if ( config != null )
+				threads = config.getInt( "server.cfapplication.sessionendthreads", threads );
+
+			endExecutor = Executors.newFixedThreadPool( Math.max( 1, threads ), new ThreadFactory(){
+				private final AtomicInteger id = new AtomicInteger( 0 );
+
+				public Thread newThread( Runnable r ){
+					Thread t = new Thread( r, "SessionEnd-" + id.incrementAndGet() );
+					t.setDaemon( true );
+					return t;
+				}
+			});
+		}
+		return endExecutor;
+	}
+
 	
 }
\ No newline at end of file
@@ -34,7 +34,7 @@ import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
 public class SessionStorageFactory {
 
 	public enum SessionEngine {
-		NONE, INTERNAL, J2EE, MONGO, MEMCACHED
+		NONE, INTERNAL, J2EE, MONGO, MEMCACHED, TIERED
 	};
 
 	public static SessionStorageInterface NULL_STORAGESESSION = new SessionStorageNullImpl();
@@ -87,6 +87,22 @@ public class SessionStorageFactory {
 					}
 				}
 
+			} else if (storage.startsWith("tiered")) {
+
+				if (sessionStorage != null && sessionStorage.getType() == SessionEngine.TIERED && sessionStorage.getURI().equals(storage))
+					return sessionStorage;
+				else {
+
+					if (sessionStorage != null)
+						sessionStorage.shutdown();
+
+					try {
+						return new SessionStorageTieredImpl(appName, storage);
+					} catch (Exception e) {
+						throw new cfmRunTimeException(catchDataFactory.generalException("SessionStorageFactory", e.getMessage()));
+					}
+				}
+
 			} else
 				throw new cfmRunTimeException(catchDataFactory.generalException("SessionStorageFactory", "unknown storage: [" + storage + "]"));
 
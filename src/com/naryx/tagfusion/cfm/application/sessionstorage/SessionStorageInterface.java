@@ -32,6 +32,7 @@ package com.naryx.tagfusion.cfm.application.sessionstorage;
 import com.naryx.tagfusion.cfm.application.cfApplicationData;
 import com.naryx.tagfusion.cfm.application.sessionUtility;
 import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
 
 public interface SessionStorageInterface {
 	
@@ -55,6 +56,17 @@ public interface SessionStorageInterface {
 	 * @param session
 	 */
 	public void onRequestEnd( cfSession session );
+
+	/**
+	 * Called when a request with a session starts a CFTHREAD, and again when the
+	 * thread has finished; the thread shares the request's session in between
+	 * 
+	 * @param parent
+	 * @param thread
+	 */
+	public void onThreadStart( cfSession parent, cfSession thread );
+
+	public void onThreadEnd( cfSession thread );
 	
 	public void onApplicationEnd( cfApplicationData applicationData );
 	
@@ -65,4 +77,9 @@ public interface SessionStorageInterface {
 	public void shutdown();
 	
 	public String getURI();
+	
+	/**
+	 * Details on the sessions held, as returned by SessionStorageInfo()
+	 */
+	public cfStructData getMetrics();
 }
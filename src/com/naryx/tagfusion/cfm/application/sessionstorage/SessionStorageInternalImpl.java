@@ -29,10 +29,13 @@
  */
 package com.naryx.tagfusion.cfm.application.sessionstorage;
 
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import com.nary.util.FastMap;
+import com.naryx.tagfusion.cfm.application.ExpiryWheel;
 import com.naryx.tagfusion.cfm.application.cfApplicationData;
 import com.naryx.tagfusion.cfm.application.cfSessionData;
 import com.naryx.tagfusion.cfm.application.sessionUtility;
@@ -41,42 +44,44 @@ import com.naryx.tagfusion.cfm.engine.variableStore;
 
 public class SessionStorageInternalImpl extends SessionStorageBase implements SessionStorageInterface {
 
-	private Map<String, cfSessionData>	cfSessionStore;
+	static final long WHEEL_TICK = 5000;
+	static final int WHEEL_SLOTS = 2048;		// a turn of the wheel is a little under 3 hours
+
+	private ConcurrentMap<String, cfSessionData>	cfSessionStore;
+	private ExpiryWheel<ExpiryWheel.ScopeEntry<cfSessionData>> expiryWheel;
 	
 	public SessionStorageInternalImpl(String appName){
 		super(appName);
-		cfSessionStore	= new FastMap<String, cfSessionData>().shared();
+		cfSessionStore	= new ConcurrentHashMap<String, cfSessionData>();
+		expiryWheel			= new ExpiryWheel<ExpiryWheel.ScopeEntry<cfSessionData>>( WHEEL_TICK, WHEEL_SLOTS );
 	}
 	
 	public SessionStorageFactory.SessionEngine	getType(){
 		return SessionStorageFactory.SessionEngine.INTERNAL;
 	}
 	
+	/**
+	 * Only the sessions whose slot on the expiry wheel has come due are looked at
+	 */
 	public void onExpireAll( cfApplicationData applicationData ) {
-		boolean bHasOnSessionEndMethod	= true;
+		startSweep();
+		List<ExpiryWheel.ScopeEntry<cfSessionData>> due = expiryWheel.advance( System.currentTimeMillis() );
+		List<cfSessionData> expired = new ArrayList<cfSessionData>( due.size() );
 		
-		long nowTime = System.currentTimeMillis();
-		Iterator<cfSessionData> it = cfSessionStore.values().iterator();
-		while ( it.hasNext() ) {
-			cfSessionData sess = it.next();
-			if ( ( nowTime - sess.getLastUsed() ) > sess.getTimeOut() ) {
-				
-				/**
-				 * The first time we call this method it will let us know if the onSessionEnd() method is actually
-				 * available by returning true/false.  We don't need to keep calling this function if there is no method
-				 * to actually invoke.  But we must call it the first time around to see.
-				 */
-				if ( bHasOnSessionEndMethod )
-					bHasOnSessionEndMethod = sess.onSessionEnd( applicationData );
-				
-				it.remove();
-			}
+		for ( ExpiryWheel.ScopeEntry<cfSessionData> entry : due ){
+			// the key may since have been given a new session
+			if ( cfSessionStore.remove( entry.getKey(), entry.getItem() ) )
+				expired.add( entry.getItem() );
 		}
+		
+		endSessions( applicationData, expired );
 	}
 
 	
 	@Override
 	public void onApplicationEnd(cfApplicationData applicationData) {
+		expiryWheel.clear();
+		
 		Iterator<cfSessionData> it = cfSessionStore.values().iterator();
 		while ( it.hasNext() ) {
 			cfSessionData sess = it.next();
@@ -92,6 +97,7 @@ public class SessionStorageInternalImpl extends SessionStorageBase implements Se
 	@Override
 	public void clearAll() {
 		cfSessionStore.clear();
+		expiryWheel.clear();
 	}
 
 	
@@ -105,6 +111,7 @@ public class SessionStorageInternalImpl extends SessionStorageBase implements Se
 			sessData.setTimeOut( sessionTimeOut );
 			sessionStart = true;
 			cfSessionStore.put( sessionInfo.urlToken(), sessData );
+			expiryWheel.schedule( new ExpiryWheel.ScopeEntry<cfSessionData>( sessionInfo.urlToken(), sessData, sessionTimeOut ) );
 		}
 		
 		sessData.setSessionID( appName, sessionInfo.CFID, sessionInfo.CFTOKEN );
@@ -114,17 +121,22 @@ public class SessionStorageInternalImpl extends SessionStorageBase implements Se
 		return sessionStart;
 	}
 
+	/**
+	 * Sessions that have expired but are still running onSessionEnd() are counted, so the
+	 * application is not ended underneath them
+	 */
 	@Override
 	public int size() {
-		return cfSessionStore.size();
+		return cfSessionStore.size() + getEnding();
 	}
 
 	@Override
 	public void shutdown() {
 		cfSessionStore.clear();
+		expiryWheel.clear();
 	}
 	
 	public String getURI(){
 		return null;
 	}
-}
\ No newline at end of file
+}
@@ -29,29 +29,55 @@
  */
 package com.naryx.tagfusion.cfm.application.sessionstorage;
 
+import java.io.ByteArrayOutputStream;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 import net.spy.memcached.AddrUtil;
 import net.spy.memcached.BinaryConnectionFactory;
+import net.spy.memcached.CachedData;
 import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.transcoders.Transcoder;
 
 import com.naryx.tagfusion.cfm.application.cfSessionData;
-import com.naryx.tagfusion.cfm.application.sessionUtility;
 import com.naryx.tagfusion.cfm.application.sessionstorage.SessionStorageFactory.SessionEngine;
 import com.naryx.tagfusion.cfm.engine.cfEngine;
-import com.naryx.tagfusion.cfm.engine.cfSession;
-import com.naryx.tagfusion.cfm.engine.variableStore;
+import com.naryx.tagfusion.cfm.engine.codec.CodecFactory;
+import com.naryx.tagfusion.cfm.engine.codec.JavaCodec;
+import com.naryx.tagfusion.xmlConfig.xmlCFML;
 
-public class SessionStorageMemcachedImpl extends SessionStorageBase implements SessionStorageInterface {
+/**
+ * Sessions held in memcached. Either format is read, whatever this server writes:
+ * 
+ *   java     the serialized cfSessionData earlier releases wrote and can read; the default,
+ *            so servers on different releases can share sessions during a rolling upgrade
+ *   binary   the engine codec, which is smaller and quicker but only readable by this
+ *            release on; switch to it once every server sharing the memcached is upgraded
+ * 
+ * Configuration:
+ *   server.cfapplication.sessionmemcachedformat   java/binary, default java
+ */
+public class SessionStorageMemcachedImpl extends SessionStorageRemoteBase {
+
+	public static final String FORMAT_JAVA = "java", FORMAT_BINARY = "binary";
+
+	private static final Transcoder<Object> JAVA_FORMAT = new SerializedTranscoder();
 
 	private MemcachedClient memcache	= null;
 	private final String uri;
+	private final boolean javaFormat;
 	
 	public SessionStorageMemcachedImpl(String appName, String _connectionUri) throws Exception {
 		super(appName);
 		
 		this.uri = _connectionUri;
+
+		String format = FORMAT_JAVA;
+		xmlCFML config = cfEngine.getConfig();
+		if ( config != null )
+			format = config.getString( "server.cfapplication.sessionmemcachedformat", FORMAT_JAVA );
+		javaFormat = !format.equalsIgnoreCase( FORMAT_BINARY );
 		
 		// Are they using a user/pass
 		String connectionUri	= _connectionUri.substring( _connectionUri.indexOf("//")+2 );
@@ -63,60 +89,58 @@ public class SessionStorageMemcachedImpl extends SessionStorageBase implements S
 
 	
 	@Override
-	public boolean onRequestStart(cfSession Session, long sessionTimeOut, sessionUtility sessionInfo) {
-		boolean sessionStart = false;
-		cfSessionData sessData = null;
+	protected cfSessionData loadSession(String key) throws Exception {
+		Future<Object> future = memcache.asyncGet( key );
 		
-		// If the timeout is greater than 0, then lookup it from Mongo
-		if ( sessionTimeOut > 0 ){
-			Future<Object> future = memcache.asyncGet( appName + sessionInfo.getTokenShort() );
-			
-			try {
-				Object obj = future.get(3, TimeUnit.SECONDS);
-				
-				if ( obj != null ){
-					sessData	= (cfSessionData)obj;
-				}
-				
-			} catch (Exception e) {
-				cfEngine.log( "SessionStorageMemcached get Failed: " + e.getMessage() );
-				future.cancel(false);
-			}
+		try {
+			Object obj = future.get(3, TimeUnit.SECONDS);
+
+			if ( obj instanceof byte[] )
+				return toSession( (byte[])obj );
+			else
+				return (cfSessionData)obj;	// written by an earlier release
 			
+		} catch (Exception e) {
+			future.cancel(false);
+			throw e;
 		}
-		
-		if ( sessData == null ){
-			sessData = new cfSessionData( appName );
-			sessionStart = true;
-		}
+	}
 
-		sessData.setSessionID( appName, sessionInfo.CFID, sessionInfo.CFTOKEN );
-		sessData.setTimeOut( sessionTimeOut );
-		Session.setQualifiedData( variableStore.SESSION_SCOPE, sessData );
-		
-		
-		return sessionStart;
+	
+	@Override
+	protected byte[] encodeSession(cfSessionData sessData) throws Exception {
+		if ( javaFormat )
+			return CodecFactory.getCodec( JavaCodec.NAME ).encode( sessData, false );
+		else
+			return super.encodeSession( sessData );
 	}
 
+
+	@Override
+	protected void storeSession(String key, byte[] data, long timeOut) throws Exception {
+		if ( javaFormat )
+			waitFor( memcache.set( key, (int)(timeOut/1000), data, JAVA_FORMAT ) );
+		else
+			waitFor( memcache.set( key, (int)(timeOut/1000), data ) );
+	}
 	
-	public void onRequestEnd(cfSession Session) {
-		cfSessionData	sessData	= getSessionData( Session );
-		if ( sessData == null )
-			return;
-		
-		Future<Boolean> status = null;
-		status = memcache.set( appName + sessData.getStorageID(), (int)(sessData.getTimeOut()/1000), sessData );
-		
+	
+	@Override
+	protected void touchSession(String key, long timeOut) throws Exception {
+		waitFor( memcache.touch( key, (int)(timeOut/1000) ) );
+	}
+	
+	
+	private void waitFor( Future<Boolean> status ) throws Exception {
 		try{
 			status.get( 3, TimeUnit.SECONDS);
 		}catch(Exception e){
-			cfEngine.log( "SessionStorageMemcached set Failed: " + e.getMessage() );
 			status.cancel(false);
+			throw e;
 		}
 	}
 	
 	
-	
 	/**
 	 * We never really know how many items we have that are not expired in a memcached
 	 * server, so we'll always return 1 to stop other parts from closing this down
@@ -131,7 +155,8 @@ public class SessionStorageMemcachedImpl extends SessionStorageBase implements S
 	}
 
 	
-	public void shutdown() {
+	@Override
+	protected void closeStorage() {
 		if ( memcache != null )
 			memcache.shutdown();
 	}
@@ -139,4 +164,51 @@ public class SessionStorageMemcachedImpl extends SessionStorageBase implements S
 	public String getURI(){
 		return uri;
 	}
-}
\ No newline at end of file
+
+
+	/**
+	 * Stores the bytes of an already serialized cfSessionData the way spymemcached's own
+	 * SerializingTranscoder stores an object, gzipped over the same threshold, so that
+	 * transcoder, and so an earlier release, reads it back as the cfSessionData
+	 */
+	private static class SerializedTranscoder implements Transcoder<Object> {
+
+		// the flags used by net.spy.memcached.transcoders.SerializingTranscoder
+		private static final int SERIALIZED = 1, COMPRESSED = 2;
+		private static final int COMPRESSION_THRESHOLD = 16384;
+
+		public boolean asyncDecode( CachedData data ) {
+			return false;
+		}
+
+		public CachedData encode( Object o ) {
+			byte[] b = (byte[])o;
+			int flags = SERIALIZED;
+
+			if ( b.length > COMPRESSION_THRESHOLD ) {
+				try {
+					ByteArrayOutputStream bos = new ByteArrayOutputStream( b.length / 2 );
+					GZIPOutputStream gz = new GZIPOutputStream( bos );
+					gz.write( b );
+					gz.close();
+					if ( bos.size() < b.length ) {
+						b = bos.toByteArray();
+						flags |= COMPRESSED;
+					}
+				} catch ( java.io.IOException e ) {
+					// stored as it is
+				}
+			}
+
+			return new CachedData( flags, b, getMaxSize() );
+		}
+
+		public Object decode( CachedData data ) {
+			throw new UnsupportedOperationException( "only used for writing" );
+		}
+
+		public int getMaxSize() {
+			return CachedData.MAX_SIZE;
+		}
+	}
+}
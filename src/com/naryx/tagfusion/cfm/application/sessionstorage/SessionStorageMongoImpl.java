@@ -30,9 +30,6 @@ package com.naryx.tagfusion.cfm.application.sessionstorage;
 
 import java.util.Date;
 
-import org.aw20.io.ByteArrayOutputStreamRaw;
-import org.aw20.io.FileUtil;
-import org.aw20.security.MD5;
 import org.bson.Document;
 
 import com.bluedragon.mongo.MongoDSN;
@@ -44,13 +41,10 @@ import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.UpdateOptions;
 import com.naryx.tagfusion.cfm.application.cfApplicationData;
 import com.naryx.tagfusion.cfm.application.cfSessionData;
-import com.naryx.tagfusion.cfm.application.sessionUtility;
 import com.naryx.tagfusion.cfm.application.sessionstorage.SessionStorageFactory.SessionEngine;
 import com.naryx.tagfusion.cfm.engine.cfEngine;
-import com.naryx.tagfusion.cfm.engine.cfSession;
-import com.naryx.tagfusion.cfm.engine.variableStore;
 
-public class SessionStorageMongoImpl extends SessionStorageBase implements SessionStorageInterface {
+public class SessionStorageMongoImpl extends SessionStorageRemoteBase {
 	private MongoClient	mongo = null;
 	private MongoDatabase mdb = null;
 	private MongoCollection<Document> col = null;
@@ -126,7 +120,8 @@ public class SessionStorageMongoImpl extends SessionStorageBase implements Sessi
 	}
 	
 	
-	public void shutdown(){
+	@Override
+	protected void closeStorage(){
 		if ( mongo != null ){
 			mongo.close();
 			mongo	= null;
@@ -138,76 +133,40 @@ public class SessionStorageMongoImpl extends SessionStorageBase implements Sessi
 	
 	
 	@Override
-	public boolean onRequestStart(cfSession Session, long sessionTimeOut, sessionUtility sessionInfo) {
-		boolean sessionStart = false;
-		cfSessionData sessData = null;
-		
-		try{
+	protected cfSessionData loadSession(String key) throws Exception {
+		setIndexes();
+		Document	doc		= col.find( new Document( "_id", key ) ).first();
 		
-			// If the timeout is greater than 0, then lookup it from Mongo
-			if ( sessionTimeOut > 0 ){
-				setIndexes();
-				Document	keys	= new Document( "_id", appName + sessionInfo.getTokenShort() );
-				Document	doc		= col.find(keys).first();
-				
-				if ( doc != null  ){
-					Date et	= (Date)doc.get("et");
-					if ( et.getTime() > System.currentTimeMillis() ){
-						// Found a live one that we can use!!!
-						byte[]	buf	= (byte[])doc.get("d");
-						sessData	= (cfSessionData)FileUtil.loadClass(buf, true);
-						sessData.setMD5( MD5.getDigest(buf) );
-					}
-				}
+		if ( doc != null  ){
+			Date et	= (Date)doc.get("et");
+			if ( et.getTime() > System.currentTimeMillis() ){
+				// Found a live one that we can use!!!
+				return toSession( (byte[])doc.get("d") );
 			}
-		
-		} catch (Exception e) {
-			cfEngine.log( appName + " MongoDBException _id:" + sessionInfo.getTokenShort() + "; Exception: " + e );
 		}
-			
-		// We don't have a session so create a new one
-		if ( sessData == null ){
-			sessData = new cfSessionData( appName );
-			sessionStart = true;
-		}
-
-		sessData.setSessionID( appName, sessionInfo.CFID, sessionInfo.CFTOKEN );
-		sessData.setTimeOut( sessionTimeOut );
-		Session.setQualifiedData( variableStore.SESSION_SCOPE, sessData );
 		
-		return sessionStart;
+		return null;
 	}
 
 	
-	
 	/**
 	 * Need to page the session out to Mongo
-	 * @param session
 	 */
-	public void onRequestEnd(cfSession Session) {
-		cfSessionData	sessData	= getSessionData( Session );
-		if ( sessData == null )
-			return;
-	
-		try{
-			Document	keys	= new Document("_id", appName + sessData.getStorageID() );
-			Document	vals	= new Document("et", new Date(System.currentTimeMillis() + sessData.getTimeOut() ) );
-			
-			// Serialize the object
-			ByteArrayOutputStreamRaw	bos	= new ByteArrayOutputStreamRaw( 32000 );
-			FileUtil.saveClass(bos, sessData, true);
-
-			byte[]	buf	= bos.toByteArray();
-
-			// Has it really changed; we only update the last used date if it has
-			if ( !MD5.getDigest(buf).equals( sessData.getMD5() ) )
-				vals.append("d", buf);
-			
-			col.updateOne( keys, new Document("$set", vals), new UpdateOptions().upsert(true) );
+	@Override
+	protected void storeSession(String key, byte[] data, long timeOut) throws Exception {
+		Document	vals	= new Document("et", new Date(System.currentTimeMillis() + timeOut ) );
+		vals.append("d", data);
+		col.updateOne( new Document("_id", key ), new Document("$set", vals), new UpdateOptions().upsert(true) );
+	}
 
-		}catch(Exception e){
-			cfEngine.log( appName + "MongoDBException: " + e );
-		}
+	
+	/**
+	 * Nothing changed, we only update the expiry date
+	 */
+	@Override
+	protected void touchSession(String key, long timeOut) throws Exception {
+		Document	vals	= new Document("et", new Date(System.currentTimeMillis() + timeOut ) );
+		col.updateOne( new Document("_id", key ), new Document("$set", vals) );
 	}
 
 
@@ -33,6 +33,7 @@ package com.naryx.tagfusion.cfm.application.sessionstorage;
 import com.naryx.tagfusion.cfm.application.cfApplicationData;
 import com.naryx.tagfusion.cfm.application.sessionUtility;
 import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
 
 /**
  * Provides the default SessionStorageEngine which does NOTHING!  It is here
@@ -55,6 +56,12 @@ public class SessionStorageNullImpl implements SessionStorageInterface {
 	@Override
 	public final void onRequestEnd(cfSession session) {}
 
+	@Override
+	public final void onThreadStart(cfSession parent, cfSession thread) {}
+
+	@Override
+	public final void onThreadEnd(cfSession thread) {}
+
 	@Override
 	public final void onApplicationEnd(cfApplicationData applicationData) {}
 
@@ -66,5 +73,7 @@ public class SessionStorageNullImpl implements SessionStorageInterface {
 
 	public final String getURI(){ return null; }
 
+	public final cfStructData getMetrics(){ return new cfStructData(); }
+
 	
 }
\ No newline at end of file
@@ -0,0 +1,335 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+package com.naryx.tagfusion.cfm.application.sessionstorage;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.naryx.tagfusion.cfm.application.cfSessionData;
+import com.naryx.tagfusion.cfm.application.sessionUtility;
+import com.naryx.tagfusion.cfm.engine.cfEngine;
+import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.codec.CodecFactory;
+import com.naryx.tagfusion.cfm.engine.variableStore;
+import com.naryx.tagfusion.xmlConfig.xmlCFML;
+
+/**
+ * Common processing for the session stores that live outside of this server (Mongo, Memcached).
+ * 
+ * A session is only written back when something in it has actually changed; an unchanged session
+ * just has its expiry pushed out, and that no more than a few times per timeout period. Writes are
+ * handed to a background thread which collapses several writes for the same session into the last
+ * one, so the request does not wait on the remote store. The session is serialized on the request
+ * thread though, so what gets written is what the request left behind.
+ * 
+ * Sessions read or written recently can be held for a few seconds in a near-cache, which saves the
+ * remote read for the next request of the same user landing on this server. It is off unless asked
+ * for: with requests for the same session spread over several servers, a server could otherwise
+ * serve a copy that another server has since changed, so only turn it on where requests stick to
+ * the one server (sticky sessions).
+ * 
+ * Configuration:
+ *   server.cfapplication.sessionwritebehind   true/false, default true
+ *   server.cfapplication.sessionnearcache     seconds to hold a session locally, default 0 (off)
+ */
+public abstract class SessionStorageRemoteBase extends SessionStorageBase implements SessionStorageInterface {
+
+	private static final int NEARCACHE_MAX = 10000;
+
+	private final boolean writeBehind;
+	private final long nearCacheTime;
+
+	private final Map<String, CachedSession> nearCache = new ConcurrentHashMap<String, CachedSession>();
+
+	private final Map<String, PendingWrite> pending = new ConcurrentHashMap<String, PendingWrite>();
+	private final BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+	private Thread writer = null;
+	private volatile boolean closing = false;
+
+
+	public SessionStorageRemoteBase(String appName) {
+		super(appName);
+
+		xmlCFML config = cfEngine.getConfig();
+		if (config != null) {
+			writeBehind = config.getBoolean("server.cfapplication.sessionwritebehind", true);
+			nearCacheTime = config.getInt("server.cfapplication.sessionnearcache", 0) * 1000L;
+		} else {
+			writeBehind = true;
+			nearCacheTime = 0;
+		}
+
+		if (writeBehind || nearCacheTime > 0) {
+			writer = new Thread(new Runnable() {
+				public void run() {
+					writerLoop();
+				}
+			}, "SessionStorageWriter-" + appName);
+			writer.setDaemon(true);
+			writer.start();
+		}
+	}
+
+
+	/**
+	 * Read the session from the remote store; null if there isn't a live one
+	 */
+	protected abstract cfSessionData loadSession(String key) throws Exception;
+
+	/**
+	 * Write the serialized session out to the remote store
+	 */
+	protected abstract void storeSession(String key, byte[] data, long timeOut) throws Exception;
+
+	/**
+	 * Push out the expiry of a session whose contents have not changed
+	 */
+	protected abstract void touchSession(String key, long timeOut) throws Exception;
+
+	/**
+	 * Release the connection to the remote store; called once all writes have been flushed
+	 */
+	protected abstract void closeStorage();
+
+	/**
+	 * Serialize the session as it is to be written to the remote store
+	 */
+	protected byte[] encodeSession(cfSessionData sessData) throws Exception {
+		return CodecFactory.encode(sessData, true);
+	}
+
+
+	@Override
+	public boolean onRequestStart(cfSession Session, long sessionTimeOut, sessionUtility sessionInfo) {
+		boolean sessionStart = false;
+		boolean clean = false;
+		cfSessionData sessData = null;
+
+		if (sessionTimeOut > 0) {
+			String key = appName + sessionInfo.getTokenShort();
+			sessData = getLocalSession(key);
+
+			if (sessData != null) {
+				clean = !sessData.isDirty(sessData.getChangeVersion());
+			} else {
+				try {
+					sessData = loadSession(key);
+				} catch (Exception e) {
+					cfEngine.log(appName + "; SessionStorage get failed: " + key + "; " + e.getMessage());
+				}
+
+				if (sessData != null) {
+					clean = true;
+					cacheSession(key, sessData);
+				}
+			}
+		}
+
+		if (sessData == null) {
+			sessData = new cfSessionData(appName);
+			sessionStart = true;
+		}
+
+		sessData.setSessionID(appName, sessionInfo.CFID, sessionInfo.CFTOKEN);
+		sessData.setTimeOut(sessionTimeOut);
+
+		// setting the id re-writes the same keys, which on its own is no reason to store it again
+		if (clean)
+			sessData.setStored(sessData.getChangeVersion());
+
+		Session.setQualifiedData(variableStore.SESSION_SCOPE, sessData);
+		return sessionStart;
+	}
+
+
+	public void onRequestEnd(cfSession Session) {
+		cfSessionData sessData = getSessionData(Session);
+		if (sessData == null)
+			return;
+
+		String key = appName + sessData.getStorageID();
+		long timeOut = sessData.getTimeOut();
+		long version = sessData.getChangeVersion();
+
+		PendingWrite write;
+		if (sessData.isDirty(version)) {
+			try {
+				write = new PendingWrite(sessData, encodeSession(sessData), timeOut);
+			} catch (Exception e) {
+				cfEngine.log(appName + "; SessionStorage serialize failed: " + key + "; " + e.getMessage());
+				return;
+			}
+
+			sessData.setStored(version);
+			sessData.setTouched();
+			cacheSession(key, sessData);
+
+		} else if (System.currentTimeMillis() - sessData.getLastStored() > timeOut / 4) {
+			write = new PendingWrite(sessData, null, timeOut);
+			sessData.setTouched();
+		} else {
+			return;
+		}
+
+		if (!writeBehind || writer == null || closing) {
+			write(key, write);
+		} else if (write.data == null) {
+			// never let a touch replace a pending write of the contents
+			if (pending.putIfAbsent(key, write) == null)
+				queue.offer(key);
+		} else if (pending.put(key, write) == null) {
+			queue.offer(key);
+		}
+	}
+
+
+
+	/**
+	 * A session still waiting to be written is newer than anything in the remote store
+	 */
+	private cfSessionData getLocalSession(String key) {
+		PendingWrite write = pending.get(key);
+		if (write != null)
+			return write.sessData;
+
+		CachedSession cached = nearCache.get(key);
+		if (cached != null) {
+			if (cached.expires > System.currentTimeMillis())
+				return cached.sessData;
+			nearCache.remove(key);
+		}
+		return null;
+	}
+
+
+	private void cacheSession(String key, cfSessionData sessData) {
+		if (nearCacheTime <= 0 || (nearCache.size() >= NEARCACHE_MAX && !nearCache.containsKey(key)))
+			return;
+
+		nearCache.put(key, new CachedSession(sessData, System.currentTimeMillis() + nearCacheTime));
+	}
+
+
+	private void write(String key, PendingWrite write) {
+		try {
+			if (write.data != null)
+				storeSession(key, write.data, write.timeOut);
+			else
+				touchSession(key, write.timeOut);
+		} catch (Exception e) {
+			cfEngine.log(appName + "; SessionStorage " + (write.data != null ? "set" : "touch") + " failed: " + key + "; " + e.getMessage());
+
+			// make sure the next request tries again
+			write.sessData.setStored(cfSessionData.UNTRACKABLE);
+		}
+	}
+
+
+	private void writerLoop() {
+		long nextSweep = System.currentTimeMillis() + 1000;
+
+		while (true) {
+			String key;
+			try {
+				key = queue.poll(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				key = null;
+			}
+
+			if (key != null) {
+				PendingWrite write = pending.remove(key);
+				if (write != null)
+					write(key, write);
+			} else if (closing) {
+				break;
+			}
+
+			long now = System.currentTimeMillis();
+			if (now > nextSweep) {
+				Iterator<CachedSession> it = nearCache.values().iterator();
+				while (it.hasNext()) {
+					if (it.next().expires <= now)
+						it.remove();
+				}
+				nextSweep = now + 1000;
+			}
+		}
+	}
+
+
+	public void shutdown() {
+		closing = true;
+
+		if (writer != null) {
+			try {
+				writer.join(30000);
+			} catch (InterruptedException e) {}
+			writer = null;
+		}
+
+		// anything the writer did not get to
+		Iterator<Map.Entry<String, PendingWrite>> it = pending.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, PendingWrite> entry = it.next();
+			it.remove();
+			write(entry.getKey(), entry.getValue());
+		}
+
+		nearCache.clear();
+		closeStorage();
+	}
+
+
+	private static class PendingWrite {
+		final cfSessionData sessData;
+		final byte[] data;
+		final long timeOut;
+
+		PendingWrite(cfSessionData sessData, byte[] data, long timeOut) {
+			this.sessData = sessData;
+			this.data = data;
+			this.timeOut = timeOut;
+		}
+	}
+
+
+	private static class CachedSession {
+		final cfSessionData sessData;
+		final long expires;
+
+		CachedSession(cfSessionData sessData, long expires) {
+			this.sessData = sessData;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,616 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.cfm.application.sessionstorage;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.nary.io.FileUtils;
+import com.naryx.tagfusion.cfm.application.ExpiryWheel;
+import com.naryx.tagfusion.cfm.application.cfApplicationData;
+import com.naryx.tagfusion.cfm.application.cfSessionData;
+import com.naryx.tagfusion.cfm.application.sessionUtility;
+import com.naryx.tagfusion.cfm.engine.cfEngine;
+import com.naryx.tagfusion.cfm.engine.cfNumberData;
+import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
+import com.naryx.tagfusion.cfm.engine.codec.CodecFactory;
+import com.naryx.tagfusion.cfm.engine.variableStore;
+import com.naryx.tagfusion.xmlConfig.xmlCFML;
+
+/**
+ * Session storage that keeps only the most recently used sessions on the heap.
+ * 
+ * Once there are more than the configured number of hot sessions, those that
+ * have not been used recently and are not part of a running request, or of a
+ * CFTHREAD one started, are
+ * encoded and paged out to a SessionColdStore, and faulted back in the next
+ * time they are asked for. A faulted session keeps its copy on disk, so paging
+ * it out again unchanged costs nothing. Sessions that cannot be encoded are
+ * kept on the heap and tried again once PIN_RETRY has passed.
+ * 
+ * The hot list is a clock (second chance) queue rather than an access ordered
+ * map, so a request only sets a flag on its own session; only the one thread
+ * that is evicting walks the queue.
+ * 
+ * Expiry works across both tiers from the same timing wheel as the internal
+ * store, and onSessionEnd() is called for cold sessions as well, on the
+ * session end pool when the application itself ends.
+ * 
+ * 		sessionstorage="tiered"				hot limit from server.cfapplication.sessionhotmax
+ * 		sessionstorage="tiered://5000"	at most 5000 hot sessions
+ */
+public class SessionStorageTieredImpl extends SessionStorageBase implements SessionStorageInterface {
+
+	private static final int SEGMENT_SIZE = 32 * 1024 * 1024;
+
+	// how long a session that could not be encoded is left on the heap before it is tried again
+	private static final long PIN_RETRY = 60 * 1000;
+
+	// the slot a request (or a CFTHREAD it spawned) has checked out, held in its cfSession data bin
+	private static final String CHECKOUT_BIN = "SessionStorageTiered.slot";
+
+	private final String uri;
+	private final int maxHot;
+
+	private final ConcurrentMap<String, SessionSlot> index = new ConcurrentHashMap<String, SessionSlot>();
+	private final Queue<SessionSlot> hotQueue = new ConcurrentLinkedQueue<SessionSlot>();
+	private final AtomicInteger hotCount = new AtomicInteger( 0 );
+	private final AtomicInteger staleCount = new AtomicInteger( 0 );		// entries left in the hot queue by removed sessions
+	private final AtomicBoolean evicting = new AtomicBoolean( false );
+	private final ExpiryWheel<SessionSlot> expiryWheel;
+	private final SessionColdStore coldStore;
+
+	private final AtomicInteger coldCount = new AtomicInteger( 0 );
+	private final AtomicInteger pinnedCount = new AtomicInteger( 0 );
+	private final AtomicLong pageOuts = new AtomicLong( 0 );
+	private final AtomicLong faults = new AtomicLong( 0 );
+	private final AtomicLong faultNanos = new AtomicLong( 0 );
+	private volatile long maxFaultNanos = 0;
+
+	// application end batches still to run, and whether the store has been shut down underneath them
+	private final AtomicInteger endingBatches = new AtomicInteger( 0 );
+	private volatile boolean shutdown = false;
+
+	public SessionStorageTieredImpl( String appName, String uri ) throws Exception {
+		super( appName );
+		this.uri = uri;
+
+		int max = 10000;
+		xmlCFML config = cfEngine.getConfig();
+		if ( config != null )
+			max = config.getInt( "server.cfapplication.sessionhotmax", max );
+
+		if ( uri.startsWith( "tiered://" ) && uri.length() > 9 )
+			max = Integer.parseInt( uri.substring( 9 ).trim() );
+
+		maxHot = Math.max( 1, max );
+
+		File root = FileUtils.checkAndCreateDirectory( cfEngine.thisPlatform.getFileIO().getWorkingDirectory(), "sessionstore", false );
+		coldStore = new SessionColdStore( FileUtils.checkAndCreateDirectory( root, appName.replaceAll( "[^A-Za-z0-9_\\-]", "_" ), true ), SEGMENT_SIZE );
+		expiryWheel = new ExpiryWheel<SessionSlot>( SessionStorageInternalImpl.WHEEL_TICK, SessionStorageInternalImpl.WHEEL_SLOTS );
+	}
+
+	public SessionStorageFactory.SessionEngine getType() {
+		return SessionStorageFactory.SessionEngine.TIERED;
+	}
+
+	public String getURI() {
+		return uri;
+	}
+
+
+	@Override
+	public boolean onRequestStart( cfSession Session, long sessionTimeOut, sessionUtility sessionInfo ) {
+		boolean sessionStart = false;
+		String key = sessionInfo.getTokenShort();
+
+		SessionSlot held = (SessionSlot) Session.getDataBin( CHECKOUT_BIN );
+		SessionSlot slot = ( sessionTimeOut == 0 ) ? null : index.get( key );
+		cfSessionData sessData = ( slot == null ) ? null : checkOut( slot, held, sessionInfo );
+
+		if ( sessData == null ) {
+			sessData = new cfSessionData( appName );
+			sessData.setTimeOut( sessionTimeOut );
+			sessData.setSessionID( appName, sessionInfo.CFID, sessionInfo.CFTOKEN );
+			sessionStart = true;
+
+			slot = new SessionSlot( key, sessData, sessionTimeOut );
+			slot.inUse = 1;
+			SessionSlot previous = index.put( key, slot );
+			if ( previous != null )
+				discard( previous );
+
+			expiryWheel.schedule( slot );
+		}
+
+		// CFAPPLICATION run again in the same request has already checked this slot out
+		if ( held != null && held != slot )
+			checkIn( held );
+		Session.setDataBin( CHECKOUT_BIN, slot );
+
+		markHot( slot );
+		Session.setQualifiedData( variableStore.SESSION_SCOPE, sessData );
+
+		evict();
+		return sessionStart;
+	}
+
+
+	/**
+	 * Marks the session as being used by a request, faulting it in from the cold
+	 * tier if need be. The slot the request already holds is not counted twice.
+	 * Returns null if the session has since gone.
+	 */
+	private cfSessionData checkOut( SessionSlot slot, SessionSlot held, sessionUtility sessionInfo ) {
+		synchronized ( slot ) {
+			if ( slot.removed )
+				return null;
+
+			if ( slot.session == null ) {
+				long start = System.nanoTime();
+				try {
+					cfSessionData sessData = toSession( coldStore.read( slot.record ) );
+					sessData.setTimeOut( slot.timeOut );
+					sessData.setStored( sessData.getChangeVersion() );
+					slot.session = sessData;
+					coldCount.decrementAndGet();
+				} catch ( Exception e ) {
+					cfEngine.log( appName + "; SessionStorage fault failed: " + slot.key + "; " + e.getMessage() );
+					remove( slot );
+					return null;
+				}
+
+				long took = System.nanoTime() - start;
+				faults.incrementAndGet();
+				faultNanos.addAndGet( took );
+				if ( took > maxFaultNanos )
+					maxFaultNanos = took;
+			}
+
+			cfSessionData sessData = slot.session;
+			if ( slot != held )
+				slot.inUse++;
+
+			// give a session that could not be encoded another go at being paged out
+			if ( slot.pinned && System.currentTimeMillis() >= slot.retryAt ) {
+				slot.pinned = false;
+				pinnedCount.decrementAndGet();
+			}
+
+			// setting the id re-writes the same keys, which on its own is no reason to page it out again
+			boolean clean = slot.record != null && !sessData.isDirty( sessData.getChangeVersion() );
+			sessData.setSessionID( appName, sessionInfo.CFID, sessionInfo.CFTOKEN );
+			if ( clean )
+				sessData.setStored( sessData.getChangeVersion() );
+
+			sessData.setLastUsed();
+			return sessData;
+		}
+	}
+
+
+	@Override
+	public void onRequestEnd( cfSession session ) {
+		SessionSlot slot = (SessionSlot) session.getDataBin( CHECKOUT_BIN );
+		if ( slot == null )
+			return;
+
+		session.deleteDataBin( CHECKOUT_BIN );
+		checkIn( slot );
+		evict();
+	}
+
+
+	/**
+	 * A CFTHREAD shares the session of the request that spawned it, so it checks
+	 * the slot out as well; otherwise the session could be paged out once the
+	 * request ends and the thread's changes made to a copy no one will read
+	 */
+	@Override
+	public void onThreadStart( cfSession parent, cfSession thread ) {
+		SessionSlot slot = (SessionSlot) parent.getDataBin( CHECKOUT_BIN );
+		if ( slot == null )
+			return;
+
+		synchronized ( slot ) {
+			if ( slot.removed || slot.session == null )
+				return;
+			slot.inUse++;
+		}
+		thread.setDataBin( CHECKOUT_BIN, slot );
+	}
+
+
+	@Override
+	public void onThreadEnd( cfSession thread ) {
+		onRequestEnd( thread );
+	}
+
+
+	private void checkIn( SessionSlot slot ) {
+		synchronized ( slot ) {
+			if ( slot.inUse > 0 )
+				slot.inUse--;
+		}
+	}
+
+
+	/**
+	 * Flags the session as used, putting it on the hot queue if it is not already
+	 * there; pinned sessions stay off the queue until they are due to be retried
+	 */
+	private void markHot( SessionSlot slot ) {
+		if ( !slot.referenced )
+			slot.referenced = true;
+
+		if ( !slot.pinned )
+			enqueueHot( slot );
+	}
+
+
+	private void enqueueHot( SessionSlot slot ) {
+		if ( slot.hot.compareAndSet( false, true ) ) {
+			hotQueue.offer( slot );
+			hotCount.incrementAndGet();
+		}
+	}
+
+
+	/**
+	 * Takes the slot off the hot count; its entry is left in the queue for the
+	 * next eviction or purgeHot() to pass over
+	 */
+	private void unmarkHot( SessionSlot slot ) {
+		if ( slot.hot.compareAndSet( true, false ) ) {
+			hotCount.decrementAndGet();
+			staleCount.incrementAndGet();
+		}
+	}
+
+
+	/**
+	 * Pages out sessions over the hot limit. Only one thread sweeps at a time;
+	 * a session used since the sweep last passed it gets a second chance and
+	 * goes back on the end of the queue.
+	 */
+	private void evict() {
+		if ( hotCount.get() <= maxHot || !evicting.compareAndSet( false, true ) )
+			return;
+
+		try {
+			// bounded, as sessions held by running requests go straight back on the queue
+			for ( int budget = 2 * hotCount.get(); budget > 0 && hotCount.get() > maxHot; budget-- ) {
+				SessionSlot slot = hotQueue.poll();
+				if ( slot == null )
+					break;
+
+				if ( !slot.hot.compareAndSet( true, false ) ) {
+					staleCount.decrementAndGet();
+					continue;
+				}
+				hotCount.decrementAndGet();
+
+				if ( slot.referenced ) {
+					slot.referenced = false;
+					enqueueHot( slot );
+				} else if ( !pageOut( slot ) ) {
+					enqueueHot( slot );
+				}
+			}
+		} finally {
+			evicting.set( false );
+		}
+	}
+
+
+	/**
+	 * Drops the entries removed sessions have left in the hot queue, which would
+	 * otherwise build up for as long as the store stays under its hot limit
+	 */
+	private void purgeHot() {
+		if ( staleCount.get() <= 0 )
+			return;
+
+		Iterator<SessionSlot> it = hotQueue.iterator();
+		while ( it.hasNext() ) {
+			if ( !it.next().hot.get() ) {
+				it.remove();
+				staleCount.decrementAndGet();
+			}
+		}
+	}
+
+
+	/**
+	 * Returns false if the session is still part of a request and should stay hot
+	 */
+	private boolean pageOut( SessionSlot slot ) {
+		synchronized ( slot ) {
+			if ( slot.removed || slot.session == null || slot.pinned )
+				return true;
+
+			if ( slot.inUse > 0 )
+				return false;
+
+			cfSessionData sessData = slot.session;
+
+			try {
+				if ( slot.record == null || sessData.isDirty( sessData.getChangeVersion() ) ) {
+					byte[] data = CodecFactory.encode( sessData, true );
+					if ( slot.record != null ) {
+						coldStore.release( slot.record );
+						slot.record = null;
+					}
+					slot.record = coldStore.append( data );
+				}
+
+				slot.lastUsed = sessData.getLastUsed();
+				slot.session = null;
+				coldCount.incrementAndGet();
+				pageOuts.incrementAndGet();
+
+			} catch ( Exception e ) {
+				// it stays on the heap, off the hot queue until it is next used after PIN_RETRY
+				cfEngine.log( appName + "; SessionStorage page out failed: " + slot.key + "; " + e.getMessage() );
+				slot.pinned = true;
+				slot.retryAt = System.currentTimeMillis() + PIN_RETRY;
+				pinnedCount.incrementAndGet();
+			}
+			return true;
+		}
+	}
+
+
+	/**
+	 * Takes the slot out of the store; the caller holds the slot lock
+	 */
+	private void remove( SessionSlot slot ) {
+		slot.removed = true;
+		slot.cancel();
+		index.remove( slot.key, slot );
+
+		if ( slot.session != null ) {
+			unmarkHot( slot );
+			if ( slot.pinned )
+				pinnedCount.decrementAndGet();
+		} else {
+			coldCount.decrementAndGet();
+		}
+
+		if ( slot.record != null ) {
+			coldStore.release( slot.record );
+			slot.record = null;
+		}
+		slot.session = null;
+	}
+
+
+	private void discard( SessionSlot slot ) {
+		synchronized ( slot ) {
+			if ( !slot.removed )
+				remove( slot );
+		}
+	}
+
+
+	/**
+	 * Returns the session held in the slot, reading it in if it is cold and the
+	 * application has an onSessionEnd() that will want it
+	 */
+	private cfSessionData getForEnd( SessionSlot slot ) {
+		if ( slot.session != null )
+			return slot.session;
+
+		if ( !hasOnSessionEnd() || slot.record == null )
+			return null;
+
+		try {
+			cfSessionData sessData = toSession( coldStore.read( slot.record ) );
+			sessData.setTimeOut( slot.timeOut );
+			return sessData;
+		} catch ( Exception e ) {
+			cfEngine.log( appName + "; SessionStorage fault failed: " + slot.key + "; " + e.getMessage() );
+			return null;
+		}
+	}
+
+
+	public void onExpireAll( cfApplicationData applicationData ) {
+		startSweep();
+		List<SessionSlot> due = expiryWheel.advance( System.currentTimeMillis() );
+		List<cfSessionData> expired = new ArrayList<cfSessionData>( due.size() );
+
+		for ( SessionSlot slot : due ) {
+			synchronized ( slot ) {
+				if ( slot.removed )
+					continue;
+
+				// a request has been running for longer than the time out
+				if ( slot.inUse > 0 ) {
+					expiryWheel.schedule( slot );
+					continue;
+				}
+
+				cfSessionData sessData = getForEnd( slot );
+				remove( slot );
+
+				if ( sessData != null )
+					expired.add( sessData );
+			}
+		}
+
+		endSessions( applicationData, expired );
+		purgeHot();
+
+		try {
+			coldStore.compact();
+		} catch ( Exception e ) {
+			cfEngine.log( appName + "; SessionStorage compaction failed; " + e.getMessage() );
+		}
+	}
+
+
+	/**
+	 * Ends every session on the session end pool. Cold sessions are read back a
+	 * batch at a time as their onSessionEnd() comes round, so the cold store is
+	 * left open until the last batch has run.
+	 */
+	@Override
+	public void onApplicationEnd( final cfApplicationData applicationData ) {
+		startSweep();
+		expiryWheel.clear();
+		List<SessionSlot> slots = new ArrayList<SessionSlot>( index.values() );
+
+		for ( int x = 0; x < slots.size(); x += END_BATCH ) {
+			final List<SessionSlot> batch = slots.subList( x, Math.min( x + END_BATCH, slots.size() ) );
+
+			endingBatches.incrementAndGet();
+			runEnding( batch.size(), new Runnable(){
+				public void run(){
+					try{
+						for ( SessionSlot slot : batch ){
+							cfSessionData sessData;
+							synchronized ( slot ) {
+								if ( slot.removed )
+									continue;
+
+								sessData = getForEnd( slot );
+								remove( slot );
+							}
+
+							if ( sessData != null )
+								endSession( applicationData, sessData );
+						}
+					}finally{
+						if ( endingBatches.decrementAndGet() == 0 && shutdown )
+							closeStore();
+					}
+				}
+			});
+		}
+	}
+
+
+	@Override
+	public void clearAll() {
+		index.clear();
+		hotQueue.clear();
+		hotCount.set( 0 );
+		staleCount.set( 0 );
+		expiryWheel.clear();
+		coldStore.clear();
+		coldCount.set( 0 );
+		pinnedCount.set( 0 );
+	}
+
+
+	@Override
+	public int size() {
+		return index.size() + getEnding();
+	}
+
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		if ( endingBatches.get() == 0 )
+			closeStore();
+	}
+
+
+	private void closeStore() {
+		clearAll();
+		coldStore.close();
+	}
+
+
+	@Override
+	public cfStructData getMetrics() {
+		cfStructData s = super.getMetrics();
+
+		long faultCount = faults.get();
+		s.setData( "hot", new cfNumberData( hotCount.get() + pinnedCount.get() ) );
+		s.setData( "hotmax", new cfNumberData( maxHot ) );
+		s.setData( "pinned", new cfNumberData( pinnedCount.get() ) );
+		s.setData( "cold", new cfNumberData( coldCount.get() ) );
+		s.setData( "coldbytes", new cfNumberData( coldStore.getLiveBytes() ) );
+		s.setData( "coldsegments", new cfNumberData( coldStore.getSegmentCount() ) );
+		s.setData( "mappedbytes", new cfNumberData( coldStore.getMappedBytes() ) );
+		s.setData( "relocatedbytes", new cfNumberData( coldStore.getRelocatedBytes() ) );
+		s.setData( "pageouts", new cfNumberData( pageOuts.get() ) );
+		s.setData( "faults", new cfNumberData( faultCount ) );
+		s.setData( "faultavgms", new cfNumberData( faultCount == 0 ? 0 : faultNanos.get() / faultCount / 1000000.0 ) );
+		s.setData( "faultmaxms", new cfNumberData( maxFaultNanos / 1000000.0 ) );
+		return s;
+	}
+
+
+	/**
+	 * A session in either tier; all but the deadline and the hot queue flags is
+	 * guarded by the slot itself
+	 */
+	private static class SessionSlot extends ExpiryWheel.Entry {
+		private final String key;
+		private final long timeOut;
+
+		private volatile cfSessionData session;		// null when the session is cold
+		private volatile long lastUsed;
+		private SessionColdStore.Record record;
+		private int inUse = 0;
+		private boolean removed = false;
+		private volatile boolean pinned = false;
+		private long retryAt;
+
+		private final AtomicBoolean hot = new AtomicBoolean( false );	// on the hot queue
+		private volatile boolean referenced = false;						// used since the clock last passed it
+
+		private SessionSlot( String key, cfSessionData session, long timeOut ) {
+			this.key = key;
+			this.session = session;
+			this.timeOut = timeOut;
+			this.lastUsed = session.getLastUsed();
+		}
+
+		public long getDeadline() {
+			cfSessionData sessData = session;
+			return ( sessData != null ? sessData.getLastUsed() : lastUsed ) + timeOut;
+		}
+	}
+}
@@ -29,13 +29,27 @@
  */
 package com.naryx.tagfusion.cfm.cache.impl;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.aw20.io.FileUtil;
 
 import com.naryx.tagfusion.cfm.engine.cfData;
+import com.naryx.tagfusion.cfm.engine.codec.CodecFactory;
 
 
 public class CacheUnit implements Serializable {
 	private static final long serialVersionUID = 1L;
+
+	private static final byte[] MAGIC = { 'B', 'D', 'C', 'U', 1 };
 	
 	public String id;
 	public cfData	val;
@@ -59,5 +73,43 @@ public class CacheUnit implements Serializable {
 	public boolean stillYoung() {
 		return ( this.expireTime > System.currentTimeMillis() );
 	}
-	
-}
\ No newline at end of file
+
+
+	/**
+	 * Pages the unit out to disk; the id and times go in a small header ahead
+	 * of the value, which is written with the engine codec
+	 */
+	public void save( File file ) throws IOException {
+		DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), 32000 ) );
+		try {
+			out.write( MAGIC );
+			out.writeUTF( id );
+			out.writeLong( createdTime );
+			out.writeLong( expireTime );
+			out.write( CodecFactory.encode( val, false ) );
+		} finally {
+			out.close();
+		}
+	}
+
+
+	/**
+	 * Reads back a unit written by save(), or one serialized whole by an earlier release
+	 */
+	public static CacheUnit load( File file ) throws IOException {
+		byte[] buf = Files.readAllBytes( file.toPath() );
+		if ( buf.length < MAGIC.length || !Arrays.equals( MAGIC, Arrays.copyOf( buf, MAGIC.length ) ) )
+			return (CacheUnit)FileUtil.loadClass( file );
+
+		DataInputStream in = new DataInputStream( new ByteArrayInputStream( buf, MAGIC.length, buf.length - MAGIC.length ) );
+		String id = in.readUTF();
+		long createdTime = in.readLong();
+		long expireTime = in.readLong();
+
+		int valueAt = buf.length - in.available();
+		CacheUnit cu = new CacheUnit( id, (cfData)CodecFactory.decode( Arrays.copyOfRange( buf, valueAt, buf.length ) ), 0 );
+		cu.createdTime = createdTime;
+		cu.expireTime = expireTime;
+		return cu;
+	}
+}
@@ -48,6 +48,7 @@ import com.naryx.tagfusion.cfm.engine.cfEngine;
 import com.naryx.tagfusion.cfm.engine.cfJavaObjectData;
 import com.naryx.tagfusion.cfm.engine.cfStringData;
 import com.naryx.tagfusion.cfm.engine.cfStructData;
+import com.naryx.tagfusion.cfm.engine.codec.CodecFactory;
 
 public class MemcachedCacheImpl implements CacheInterface {
 	private static long MONTH_MS = 30l * 24l * 60l * 60l * 1000l;
@@ -97,7 +98,7 @@ public class MemcachedCacheImpl implements CacheInterface {
 			if ( data instanceof cfStringData )
 				status = memcache.set( id, ageSecs, ((cfStringData)data).getString() );
 			else
-				status = memcache.set( id, ageSecs, data );
+				status = memcache.set( id, ageSecs, CodecFactory.encode( data, true ) );
 
 			status.get(waitTimeSeconds, TimeUnit.SECONDS);
 		}catch(Exception e){
@@ -118,6 +119,8 @@ public class MemcachedCacheImpl implements CacheInterface {
 				return null;
 			else if ( obj instanceof String )
 				return new cfStringData( (String)obj );
+			else if ( obj instanceof byte[] && CodecFactory.canDecode( (byte[])obj ) )
+				return (cfData)CodecFactory.decode( (byte[])obj );
 			else if ( obj instanceof cfData )
 				return (cfData)obj;
 			else
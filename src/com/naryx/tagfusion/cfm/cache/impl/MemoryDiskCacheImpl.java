@@ -38,8 +38,6 @@ package com.naryx.tagfusion.cfm.cache.impl;
 import java.io.File;
 import java.io.IOException;
 
-import org.aw20.io.FileUtil;
-
 import com.nary.io.FileUtils;
 import com.naryx.tagfusion.cfm.cache.CacheFactory;
 import com.naryx.tagfusion.cfm.cache.CacheInterface;
@@ -138,6 +136,8 @@ public class MemoryDiskCacheImpl extends java.util.LinkedHashMap<String,CacheUni
 		statsSet++;
 		
 		String idMd5	= CacheFactory.createCacheKey(id);
+		if ( data != null )
+			data.publish(); // handed to every request that reads it back
 
 		synchronized(this){
 			CacheUnit	cu	= new CacheUnit( id, data, ageMS );
@@ -179,11 +179,18 @@ public class MemoryDiskCacheImpl extends java.util.LinkedHashMap<String,CacheUni
 				File fu	= new File( cacheDir, idMd5 + ".cache" );
 				if ( fu.isFile() ){
 	
-					CacheUnit	cu = (CacheUnit)org.aw20.io.FileUtil.loadClass(fu);
+					CacheUnit	cu = null;
+					try{
+						cu = CacheUnit.load(fu);
+					}catch(Exception e){
+						cfEngine.log( getName() + " " + e.getMessage() );
+					}
 					fu.delete();
 	
 					if ( cu != null ){
 						if ( cu.stillYoung() ){
+							if ( cu.val != null )
+								cu.val.publish();
 							super.put( idMd5, cu );
 							statsHitDisk++;
 							return cu.val;
@@ -267,7 +274,7 @@ public class MemoryDiskCacheImpl extends java.util.LinkedHashMap<String,CacheUni
 						File f = new File( cacheDir, eldest.getKey() + ".cache" );
 						f.delete();
 	
-						FileUtil.saveClass( f, cu );
+						cu.save( f );
 						statsDiskPage++;
 						pruneDiskSpace();
 					}catch(Exception e){
@@ -32,8 +32,6 @@ package com.naryx.tagfusion.cfm.cache.impl;
 import java.io.IOException;
 import java.util.Date;
 
-import org.aw20.io.ByteArrayOutputStreamRaw;
-import org.aw20.io.FileUtil;
 import org.aw20.util.SystemClock;
 import org.aw20.util.SystemClockEvent;
 import org.bson.Document;
@@ -52,6 +50,7 @@ import com.naryx.tagfusion.cfm.engine.cfData;
 import com.naryx.tagfusion.cfm.engine.cfEngine;
 import com.naryx.tagfusion.cfm.engine.cfStringData;
 import com.naryx.tagfusion.cfm.engine.cfStructData;
+import com.naryx.tagfusion.cfm.engine.codec.CodecFactory;
 import com.naryx.tagfusion.cfm.engine.dataNotSupportedException;
 
 public class MongoCacheImpl implements CacheInterface, SystemClockEvent {
@@ -120,10 +119,8 @@ public class MongoCacheImpl implements CacheInterface, SystemClockEvent {
 			vals.append( "vs", ((cfStringData)data).getString() );
 		else{
 			
-			ByteArrayOutputStreamRaw	bos	= new ByteArrayOutputStreamRaw( 32000 );
 			try {
-				FileUtil.saveClass(bos, data, true);
-				vals.append( "vb", bos.toByteArray() );
+				vals.append( "vb", CodecFactory.encode( data, true ) );
 			} catch (IOException e) {
 				cfEngine.log( getName() + " id:" + id + "; Exception: " + e ); 
 				return;
@@ -157,7 +154,7 @@ public class MongoCacheImpl implements CacheInterface, SystemClockEvent {
 			else{
 				byte[]	buf	= (byte[])doc.get("vb");
 				try {
-					return (cfData)FileUtil.loadClass(buf, true);
+					return (cfData)CodecFactory.decode(buf);
 				} catch (Exception e) {
 					cfEngine.log( getName() + " id:" + id + "; Exception: " + e );
 				}
@@ -51,6 +51,8 @@ public class ComponentFactory {
 
 	private static cfmlURI _globalComponentURI = null;
 
+	private static cfFile _defaultGlobalComponentFile = null;
+
 	public static void init(xmlCFML configFile) {
 		// Determine the location of component.cfc
 		String uri = configFile.getString("server.system.component-cfc");
@@ -265,10 +267,17 @@ public class ComponentFactory {
 	}
 
 
-	private static cfFile createGlobalComponentFile() throws cfmBadFileException {
-		cfFile f = new cfFile(new cfmlURI((String) null).setComponentName(GLOBAL_CFC_NAME), new StringReader("<cfcomponent></cfcomponent>"), "UTF-8");
-		f.setRawComponentName(GLOBAL_CFC_NAME);
-		return f;
+	/**
+	 * The stand-in for an empty or missing component.cfc never changes, so it is parsed once and
+	 * shared; this lets its prototype be reused by every component that inherits from it
+	 */
+	private static synchronized cfFile createGlobalComponentFile() throws cfmBadFileException {
+		if (_defaultGlobalComponentFile == null) {
+			cfFile f = new cfFile(new cfmlURI((String) null).setComponentName(GLOBAL_CFC_NAME), new StringReader("<cfcomponent></cfcomponent>"), "UTF-8");
+			f.setRawComponentName(GLOBAL_CFC_NAME);
+			_defaultGlobalComponentFile = f;
+		}
+		return _defaultGlobalComponentFile;
 	}
 
 	public static boolean emptyComponentFile(cfFile componentFile) {
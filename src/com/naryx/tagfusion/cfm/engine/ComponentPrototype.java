@@ -0,0 +1,189 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.cfm.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.naryx.tagfusion.cfm.file.cfFile;
+
+/**
+ * ComponentPrototype
+ *
+ * Holds everything about a component that is decided by its template (and the
+ * templates it extends or implements) rather than by any one instance: the
+ * resolved inheritance chain, the method table, the "is-type-of" lists, the
+ * IMPLEMENTS metadata and, for interfaces, the method contract.
+ *
+ * One prototype hangs off each cfFile, so a template reload naturally starts
+ * a fresh one. Instances built from the same template share it, which means
+ * only the pseudo-constructor and the per-instance scopes are rebuilt for
+ * each createObject()/new.
+ */
+public class ComponentPrototype {
+
+	// the super-component templates, nearest first, that this prototype was built against
+	private volatile List<cfFile> superChain;
+
+	// the method table: the names of the UDFs the template puts in the variables scope
+	private volatile String[] methodNames;
+
+	// "is-type-of" lists; keys are lower-cased, mirroring the case-insensitive FastList comparator
+	private final Set<String> polymorphNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final Set<String> polymorphPaths = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private volatile boolean polymorphBuilt = false;
+
+	// IMPLEMENTS resolution, valid while the interface templates are unchanged
+	private volatile List<cfFile> interfaceFiles;
+	private volatile cfArrayData implementsMetaData;
+
+	// for interfaces: the methods an implementing component must provide
+	private volatile String[] interfaceMethods;
+	private volatile cfStructData interfaceMetaData;
+
+
+	/**
+	 * Returns the prototype for the given super-component chain, replacing the
+	 * one held by the cfFile if any of the super templates have since been
+	 * reloaded.
+	 */
+	public static ComponentPrototype getPrototype(cfFile componentFile, cfComponentData superComponent) {
+		List<cfFile> chain = new ArrayList<cfFile>(4);
+		while (superComponent != null) {
+			chain.add(superComponent.getComponentFile());
+			superComponent = superComponent.getSuperComponent();
+		}
+
+		ComponentPrototype prototype = componentFile.getComponentPrototype();
+		List<cfFile> currentChain = prototype.superChain;
+		if (currentChain == null) {
+			prototype.superChain = chain;
+		} else if (!sameFiles(currentChain, chain)) {
+			prototype = new ComponentPrototype();
+			prototype.superChain = chain;
+			componentFile.setComponentPrototype(prototype);
+		}
+		return prototype;
+	}
+
+
+	private static boolean sameFiles(List<cfFile> a, List<cfFile> b) {
+		if (a.size() != b.size())
+			return false;
+
+		for (int i = 0; i < a.size(); i++) {
+			if (a.get(i) != b.get(i))
+				return false;
+		}
+		return true;
+	}
+
+
+	/*
+	 * Method table
+	 */
+	public String[] getMethodNames() {
+		return methodNames;
+	}
+
+	public void setMethodNames(String[] names) {
+		methodNames = names;
+	}
+
+
+	/*
+	 * Inheritance / IMPLEMENTS "is-type-of" support
+	 */
+	public boolean isPolymorphBuilt() {
+		return polymorphBuilt;
+	}
+
+	public synchronized void buildPolymorphList(List<String> names, List<String> paths) {
+		if (polymorphBuilt)
+			return;
+
+		for (int i = 0; i < names.size(); i++)
+			polymorphNames.add(names.get(i).toLowerCase());
+
+		for (int i = 0; i < paths.size(); i++)
+			polymorphPaths.add(paths.get(i).toLowerCase());
+
+		polymorphBuilt = true;
+	}
+
+	public boolean containsName(String name) {
+		return polymorphNames.contains(name.toLowerCase());
+	}
+
+	public void addName(String name) {
+		polymorphNames.add(name.toLowerCase());
+	}
+
+	public boolean containsPath(String path) {
+		return polymorphPaths.contains(path.toLowerCase());
+	}
+
+
+	/*
+	 * IMPLEMENTS support for the component that implements the interfaces; the
+	 * metadata goes out to user code, so only copies are handed out
+	 */
+	public cfArrayData getImplementsMetaData(List<cfFile> currentInterfaceFiles) {
+		List<cfFile> files = interfaceFiles;
+		if (files == null || !sameFiles(files, currentInterfaceFiles))
+			return null;
+		return (cfArrayData) implementsMetaData.duplicate();
+	}
+
+	public synchronized void setImplementsMetaData(List<cfFile> currentInterfaceFiles, cfArrayData metaData) {
+		implementsMetaData = (cfArrayData) metaData.duplicate();
+		interfaceFiles = currentInterfaceFiles;
+	}
+
+
+	/*
+	 * Interface contract, held by the prototype of the interface itself
+	 */
+	public String[] getInterfaceMethods() {
+		return interfaceMethods;
+	}
+
+	public cfStructData getInterfaceMetaData() {
+		return (cfStructData) interfaceMetaData.duplicate();
+	}
+
+	public synchronized void setInterface(String[] methods, cfStructData metaData) {
+		interfaceMetaData = (cfStructData) metaData.duplicate();
+		interfaceMethods = methods;
+	}
+}
@@ -29,6 +29,10 @@
 
 package com.naryx.tagfusion.cfm.engine;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -41,7 +45,7 @@ import com.naryx.tagfusion.cfm.tag.cfDUMP;
 
 /**
  * The <B>cfArrayData</B> class represents a tagServlet array. As a tagServlet array can 
- * dynamically increase its size, a Vector is used to hold the cfDatas that make up the 
+ * dynamically increase its size, a cfArrayStore is used to hold the cfDatas that make up the 
  * elements rather than an array.  Note multi-dimensional arrays are not supported.
  */
  
@@ -49,9 +53,15 @@ public abstract class cfArrayData extends cfArrayDataBase implements java.io.Ser
   
   static final long serialVersionUID = 1;
   
-  /** The vector that represents the tagServlet array. */
-	protected Vector<cfData> data;
+  /** The store that represents the tagServlet array. */
+	protected cfArrayStore data;
 	protected int	dimensions;
+
+	// the store is written out as a Vector so serialized arrays stay compatible
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField( "data", Vector.class ),
+		new ObjectStreamField( "dimensions", int.class )
+	};
 	
 	protected cfArrayData() {
 		// purely for subclasses
@@ -59,16 +69,16 @@ public abstract class cfArrayData extends cfArrayDataBase implements java.io.Ser
 	
 	protected cfArrayData( int _dimensions ) {
 		super();
-		data = new Vector<cfData>();
+		data = cfArrayStore.newStore( 0 );
 		setInstance( this );
 		dimensions = _dimensions;
 		
 		if ( dimensions < 0 ) dimensions = 1;
 	}
 	
-	protected cfArrayData( int _dimensions, Vector<? extends cfData> _data ) {
+	protected cfArrayData( int _dimensions, List<? extends cfData> _data ) {
 		super();
-		data = new Vector<cfData>( _data );
+		data = cfArrayStore.newStore( _data );
 		setInstance( this );
 		dimensions = _dimensions;
 	}
@@ -117,6 +127,35 @@ public abstract class cfArrayData extends cfArrayDataBase implements java.io.Ser
     return newArr;
   }
   
+	/**
+	 * Moves this array over to the synchronized store, and publishes its elements, as it
+	 * is about to become reachable from other threads. Elements added afterwards are
+	 * published by the store as they arrive.
+	 */
+	public void publish(){
+		cfArrayStore store = data;
+		if ( store == null || store.isSynchronized() )
+			return;
+
+		data = store.synchronizedCopy();
+		for ( int i = 0; i < store.size(); i++ ){
+			cfData element = store.get( i );
+			if ( element != null )
+				element.publish();
+		}
+	}
+
+	public boolean isSynchronized(){
+		return data != null && data.isSynchronized();
+	}
+
+	/**
+	 * A counter that moves whenever the elements are changed
+	 */
+	public int getModCount(){
+		return data == null ? 0 : data.getVersion();
+	}
+
 	public byte getDataType(){ return cfData.CFARRAYDATA; }
 	public String getDataTypeName() { return "array"; }
 	public int getDimension(){ return dimensions; }
@@ -215,10 +254,9 @@ public abstract class cfArrayData extends cfArrayDataBase implements java.io.Ser
 		data.set( x-1, _value);
 	}
 	
-	@SuppressWarnings("unchecked")
 	public cfArrayData copy() {
 		cfArrayData arr = createArray( dimensions );
-		arr.data = (Vector<cfData>)data.clone(); // unchecked cast is OK here
+		arr.data = data.copy();
 		for ( int i = 0; i < arr.data.size(); i++ ) {
 			cfData nextData = arr.data.get( i );
 			if ( nextData != null && nextData.getDataType() == cfData.CFARRAYDATA ) {
@@ -235,8 +273,8 @@ public abstract class cfArrayData extends cfArrayDataBase implements java.io.Ser
 	public cfData duplicate( boolean _deepCopy ){
 
 		cfArrayData arrCopy = copy();
-		Vector<cfData> theData = arrCopy.data;
-		Vector<cfData> clonedArrData = new Vector<cfData>();
+		cfArrayStore theData = arrCopy.data;
+		cfArrayStore clonedArrData = cfArrayStore.newStore( theData.size() );
 		cfData clonedData;
     Object nextElement = null;
 		
@@ -334,6 +372,18 @@ public abstract class cfArrayData extends cfArrayDataBase implements java.io.Ser
 	
   public String toString(){	return "{ARRAY:" + data + "}"; }
 	
+	private static final Comparator<cfData> NUMERIC_ASC = new Comparator<cfData>(){
+		public int compare( cfData o1, cfData o2 ){
+			return Double.compare( ( (cfNumberData)o1 ).getDouble(), ( (cfNumberData)o2 ).getDouble() );
+		}
+	};
+
+	private static final Comparator<cfData> NUMERIC_DESC = new Comparator<cfData>(){
+		public int compare( cfData o1, cfData o2 ){
+			return Double.compare( ( (cfNumberData)o2 ).getDouble(), ( (cfNumberData)o1 ).getDouble() );
+		}
+	};
+
 	/**
 	 * Decides what type of sort to carry out on this cfArrayData.
 	 *
@@ -353,6 +403,10 @@ public abstract class cfArrayData extends cfArrayDataBase implements java.io.Ser
 	}
 	
 	private void sortNumeric( String _order ) {
+	  // all numbers; compare the primitive values directly
+	  if ( data.sortNumbers( ( _order == null || _order.equalsIgnoreCase("asc") ) ? NUMERIC_ASC : NUMERIC_DESC ) )
+	  	return;
+
 	  if ( _order == null || _order.equalsIgnoreCase("asc") ){
 
       Collections.sort( data, new Comparator<cfData>(){ 
@@ -567,6 +621,21 @@ public abstract class cfArrayData extends cfArrayDataBase implements java.io.Ser
 	}
 
 	
+	private void writeObject( ObjectOutputStream out ) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put( "data", ( data == null ) ? null : new Vector<cfData>( data ) );
+		fields.put( "dimensions", dimensions );
+		out.writeFields();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		Vector<cfData> vector = (Vector<cfData>)fields.get( "data", null );
+		data = ( vector == null ) ? null : cfArrayStore.newStore( vector );
+		dimensions = fields.get( "dimensions", 1 );
+	}
+
 	/**
 	 * Special function for looping around the data with a UserDefinedFunction
 	 * 
@@ -35,7 +35,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
-import java.util.Vector;
 
 import com.naryx.tagfusion.cfm.tag.tagUtils;
 
@@ -47,7 +46,7 @@ public class cfArrayListData extends cfArrayData implements List<Object> {
 		super( _dimensions );
 	}
 	
-	protected cfArrayListData( int _dimensions, Vector<? extends cfData> _data ) {
+	protected cfArrayListData( int _dimensions, List<? extends cfData> _data ) {
 		super( _dimensions, _data );
 	}
   
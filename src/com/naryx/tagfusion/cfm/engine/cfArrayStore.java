@@ -0,0 +1,320 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.cfm.engine;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.RandomAccess;
+
+/**
+ * The element store behind cfArrayData.
+ * 
+ * A plain cfData[] that grows by half again each time it fills. Almost every
+ * array lives and dies inside one request, so arrays start on this
+ * unsynchronized store. Once an array can be reached from another thread (it
+ * is put in the application, session or server scope, a cache, or a scope a
+ * CFTHREAD shares) cfArrayData.publish() moves it over to the synchronized
+ * subclass, which holds the monitor for every operation as the Vector it
+ * replaces did, and publishes whatever is added to it from then on.
+ */
+public class cfArrayStore extends AbstractList<cfData> implements RandomAccess, Cloneable, java.io.Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final cfData[] EMPTY = new cfData[0];
+
+	protected cfData[] elements;
+	protected int count;
+
+	// bumped on every change, including set(); lets session storage spot untouched arrays
+	private transient int version;
+
+
+	public cfArrayStore() {
+		elements = EMPTY;
+	}
+
+	public cfArrayStore( int _capacity ) {
+		elements = ( _capacity > 0 ) ? new cfData[ _capacity ] : EMPTY;
+	}
+
+	public cfArrayStore( Collection<? extends cfData> _data ) {
+		elements = _data.toArray( new cfData[ _data.size() ] );
+		count = elements.length;
+	}
+
+
+	/**
+	 * Returns a new, empty store for an array that is not yet shared
+	 */
+	public static cfArrayStore newStore( int _capacity ) {
+		return new cfArrayStore( _capacity );
+	}
+
+	/**
+	 * Returns a store, for an array that is not yet shared, holding the given elements
+	 */
+	public static cfArrayStore newStore( Collection<? extends cfData> _data ) {
+		return new cfArrayStore( _data );
+	}
+
+
+	/**
+	 * Returns an unsynchronized store holding the same elements
+	 */
+	public cfArrayStore copy() {
+		return copyInto( new cfArrayStore( count ) );
+	}
+
+	/**
+	 * Returns a synchronized store holding the same elements
+	 */
+	public cfArrayStore synchronizedCopy() {
+		return copyInto( new cfArrayStoreSynchronized( count ) );
+	}
+
+	protected final cfArrayStore copyInto( cfArrayStore _store ) {
+		System.arraycopy( elements, 0, _store.elements, 0, count );
+		_store.count = count;
+		_store.version = version + 1;
+		return _store;
+	}
+
+	public boolean isSynchronized() {
+		return false;
+	}
+
+	public Object clone() {
+		return copy();
+	}
+
+
+	public int getVersion() {
+		return version;
+	}
+
+	private void changed() {
+		modCount++;
+		version++;
+	}
+
+	private void ensureCapacity( int _minCapacity ) {
+		if ( _minCapacity > elements.length ) {
+			int newCapacity = elements.length + ( elements.length >> 1 ) + 1;
+			if ( newCapacity < _minCapacity )
+				newCapacity = _minCapacity;
+			if ( newCapacity < 10 )
+				newCapacity = 10;
+			elements = Arrays.copyOf( elements, newCapacity );
+		}
+	}
+
+	private void checkIndex( int _index ) {
+		if ( _index < 0 || _index >= count )
+			throw new ArrayIndexOutOfBoundsException( "Array index out of range: " + _index );
+	}
+
+
+	public int size() {
+		return count;
+	}
+
+	public cfData get( int _index ) {
+		checkIndex( _index );
+		return elements[ _index ];
+	}
+
+	public cfData set( int _index, cfData _element ) {
+		checkIndex( _index );
+		cfData old = elements[ _index ];
+		elements[ _index ] = _element;
+		version++;
+		return old;
+	}
+
+	public boolean add( cfData _element ) {
+		ensureCapacity( count + 1 );
+		elements[ count++ ] = _element;
+		changed();
+		return true;
+	}
+
+	public void add( int _index, cfData _element ) {
+		if ( _index < 0 || _index > count )
+			throw new ArrayIndexOutOfBoundsException( "Array index out of range: " + _index );
+
+		ensureCapacity( count + 1 );
+		System.arraycopy( elements, _index, elements, _index + 1, count - _index );
+		elements[ _index ] = _element;
+		count++;
+		changed();
+	}
+
+	public cfData remove( int _index ) {
+		checkIndex( _index );
+		cfData old = elements[ _index ];
+		int moved = count - _index - 1;
+		if ( moved > 0 )
+			System.arraycopy( elements, _index + 1, elements, _index, moved );
+		elements[ --count ] = null;
+		changed();
+		return old;
+	}
+
+	public void clear() {
+		Arrays.fill( elements, 0, count, null );
+		count = 0;
+		changed();
+	}
+
+	/**
+	 * Sets the size of the store; new slots are null and slots beyond the
+	 * new size are discarded, as with Vector.setSize()
+	 */
+	public void setSize( int _newSize ) {
+		if ( _newSize > count ) {
+			ensureCapacity( _newSize );
+		} else {
+			Arrays.fill( elements, _newSize, count, null );
+		}
+		count = _newSize;
+		changed();
+	}
+
+	public void sort( Comparator<? super cfData> _comparator ) {
+		Arrays.sort( elements, 0, count, _comparator );
+		changed();
+	}
+
+
+	/**
+	 * Sorts the elements with the given comparator, which may assume every element
+	 * is a cfNumberData, if they all are. Returns false, leaving the order alone, if
+	 * any element is not a number.
+	 */
+	public boolean sortNumbers( Comparator<? super cfData> _comparator ) {
+		for ( int i = 0; i < count; i++ ) {
+			if ( !( elements[ i ] instanceof cfNumberData ) )
+				return false;
+		}
+		sort( _comparator );
+		return true;
+	}
+
+
+
+	/***
+	 * The store used for arrays shared between threads; every operation holds
+	 * the store's monitor, matching the guarantees the Vector store had
+	 */
+	static class cfArrayStoreSynchronized extends cfArrayStore {
+
+		private static final long serialVersionUID = 1L;
+
+		cfArrayStoreSynchronized( int _capacity ) {
+			super( _capacity );
+		}
+
+		public boolean isSynchronized() {
+			return true;
+		}
+
+		public synchronized cfArrayStore copy() {
+			return super.copy();
+		}
+
+		public synchronized cfArrayStore synchronizedCopy() {
+			return super.synchronizedCopy();
+		}
+
+		public synchronized int size() {
+			return super.size();
+		}
+
+		public synchronized cfData get( int _index ) {
+			return super.get( _index );
+		}
+
+		// anything put in a shared array is shared too; published before taking the monitor
+		public cfData set( int _index, cfData _element ) {
+			if ( _element != null )
+				_element.publish();
+			synchronized ( this ) {
+				return super.set( _index, _element );
+			}
+		}
+
+		public boolean add( cfData _element ) {
+			if ( _element != null )
+				_element.publish();
+			synchronized ( this ) {
+				return super.add( _element );
+			}
+		}
+
+		public void add( int _index, cfData _element ) {
+			if ( _element != null )
+				_element.publish();
+			synchronized ( this ) {
+				super.add( _index, _element );
+			}
+		}
+
+		public synchronized cfData remove( int _index ) {
+			return super.remove( _index );
+		}
+
+		public synchronized void clear() {
+			super.clear();
+		}
+
+		public synchronized void setSize( int _newSize ) {
+			super.setSize( _newSize );
+		}
+
+		public synchronized void sort( Comparator<? super cfData> _comparator ) {
+			super.sort( _comparator );
+		}
+
+		public synchronized boolean sortNumbers( Comparator<? super cfData> _comparator ) {
+			return super.sortNumbers( _comparator );
+		}
+
+		public synchronized boolean equals( Object o ) {
+			return super.equals( o );
+		}
+
+		public synchronized int hashCode() {
+			return super.hashCode();
+		}
+	}
+}
@@ -39,12 +39,11 @@ import java.io.File;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import javolution.util.FastList;
-
 import com.naryx.tagfusion.cfm.application.cfAPPLICATION;
 import com.naryx.tagfusion.cfm.application.cfApplicationManager;
 import com.naryx.tagfusion.cfm.file.cfFile;
@@ -81,9 +80,9 @@ public class cfComponentData extends cfComponentDataBase implements Serializable
 	// variables scopes
 	private cfStructData _variablesScope = new cfStructData();
 
-	// for inheritance/implements "is-type-of" checks
-	private FastList<String> _polymorphNames;
-	private FastList<String> _polymorphPaths;
+	// template-level state shared with every other instance of this component;
+	// rebuilt lazily for instances that arrive through deserialization
+	private transient ComponentPrototype _prototype;
 	
 	// simple constructor
 	public cfComponentData(cfSession session, String componentName ) throws cfmRunTimeException {
@@ -185,6 +184,7 @@ public class cfComponentData extends cfComponentDataBase implements Serializable
 		// be duplicated
 		cfComponentData dupComponent = new cfComponentData();
 		dupComponent._superComponent = this._superComponent;
+		dupComponent._prototype = this._prototype;
 
 		// duplicate the "this" scope
 		Object[] keys = this.keys();
@@ -240,17 +240,45 @@ public class cfComponentData extends cfComponentDataBase implements Serializable
 	}
 
 	public void setSuperComponent(cfComponentData superComponent) {
+		if (isShared() && superComponent != null)
+			superComponent.publish();
 		_superComponent = superComponent;
 	}
 
+	public ComponentPrototype getPrototype() {
+		if (_prototype == null) {
+			_prototype = new ComponentPrototype();
+		}
+		return _prototype;
+	}
+
+	// set within cfCOMPONENT.render() once the super-component has been resolved
+	public void setPrototype(ComponentPrototype prototype) {
+		_prototype = prototype;
+	}
+
 	public cfStructData getVariablesScope() {
 		return _variablesScope;
 	}
 
 	public void setVariablesScope(cfStructData newVariables) {
+		if (isShared() && newVariables != null)
+			newVariables.publish();
 		_variablesScope = newVariables;
 	}
 
+	// a shared instance shares its VARIABLES scope and super component too
+	public void publish() {
+		if (isShared())
+			return;
+		super.publish();
+
+		if (_variablesScope != null)
+			_variablesScope.publish();
+		if (_superComponent != null)
+			_superComponent.publish();
+	}
+
 	// identify component by name
 	public String getComponentName() {
 		return _componentName;
@@ -300,19 +328,19 @@ public class cfComponentData extends cfComponentDataBase implements Serializable
 
 	// check to see if this component inherits from the type specified
 	public boolean isTypeOf(cfSession session, String type) {
-		if (_polymorphNames == null) {
-			buildPolymorphList();
+		ComponentPrototype prototype = getPrototype();
+		if (!prototype.isPolymorphBuilt()) {
+			buildPolymorphList(prototype);
 		}
 
 		// first check based on component names
-		if (_polymorphNames.contains(type)) {
+		if (prototype.containsName(type)) {
 			return true;
 		}
 
 		if (type.indexOf('.') == -1) {
 			type = ComponentFactory.getFullComponentName(session, type);
-			if (_polymorphNames.contains(type)) {
-				_polymorphNames.add(type);
+			if (prototype.containsName(type)) {
 				return true;
 			}
 		}
@@ -322,8 +350,8 @@ public class cfComponentData extends cfComponentDataBase implements Serializable
 		try {
 			cfFile typeFile = ComponentFactory.loadRawComponent(session, type, null);
 			String typePath = typeFile.getCfmlURI().getRealPath(session.REQ);
-			if (_polymorphPaths.contains(typePath)) {
-				_polymorphNames.add(type); // save the name for next time
+			if (prototype.containsPath(typePath)) {
+				prototype.addName(type); // save the name for next time
 				return true;
 			}
 		} catch (cfmRunTimeException e) {
@@ -334,28 +362,22 @@ public class cfComponentData extends cfComponentDataBase implements Serializable
 	}
 
 	// build the list of components with which this one is polymorphic; basically
-	// the
-	// inheritance chain, plus the IMPLEMENTS list, used for "is-type-of" checking
-	private synchronized void buildPolymorphList() {
-		if (_polymorphNames != null) {
-			return;
-		}
-		_polymorphNames = new FastList<String>();
-		_polymorphNames.setValueComparator(com.nary.util.FastMap.stringComparatorIgnoreCase);
-
-		_polymorphPaths = new FastList<String>();
-		_polymorphPaths.setValueComparator(com.nary.util.FastMap.stringComparatorIgnoreCase);
+	// the inheritance chain, plus the IMPLEMENTS list, used for "is-type-of" checking.
+	// The list is held by the prototype so it is only built once per template
+	private void buildPolymorphList(ComponentPrototype prototype) {
+		List<String> polymorphNames = new ArrayList<String>();
+		List<String> polymorphPaths = new ArrayList<String>();
 
 		// add this component into list
-		_polymorphNames.add(_componentName);
-		_polymorphPaths.add(_componentPath);
+		polymorphNames.add(_componentName);
+		polymorphPaths.add(_componentPath);
 
 		// add inheritance chain to the list
 		cfComponentData inst = _superComponent;
 		while (inst != null) {
 			// add type of super class
-			_polymorphNames.add(inst.getComponentName());
-			_polymorphPaths.add(inst.getComponentPath());
+			polymorphNames.add(inst.getComponentName());
+			polymorphPaths.add(inst.getComponentPath());
 			// check for next super class
 			inst = inst.getSuperComponent();
 		}
@@ -365,10 +387,12 @@ public class cfComponentData extends cfComponentDataBase implements Serializable
 		if (implementsData != null) {
 			for (int i = 1; i <= implementsData.size(); i++) {
 				cfStructData interfaceData = (cfStructData) implementsData.getElement(i);
-				_polymorphNames.add(interfaceData.getData(NAME).toString());
-				_polymorphPaths.add(interfaceData.getData(PATH).toString());
+				polymorphNames.add(interfaceData.getData(NAME).toString());
+				polymorphPaths.add(interfaceData.getData(PATH).toString());
 			}
 		}
+
+		prototype.buildPolymorphList(polymorphNames, polymorphPaths);
 	}
 
 	// NOTE:
@@ -124,6 +124,15 @@ public abstract class cfData extends Object implements java.io.Serializable {
 	public void setExpression(boolean _exp) {
 		expression = _exp;
 	}
+
+	/**
+	 * Called when this value becomes reachable from more than one thread, such as
+	 * when it is put in the application, session or server scope. Arrays and
+	 * structures switch themselves, and everything they hold, over to their thread
+	 * safe form; other values have nothing to do.
+	 */
+	public void publish() {
+	}
 
 	// --[ returns the type of cfData. Use instead of instanceof when you already
 	// know you have a cfData object.
@@ -87,6 +87,18 @@ public class cfDateData extends cfJavaObjectData implements java.io.Serializable
 		formatString = "HH:mm:ss";
 	}
 
+	/**
+	 * Rebuilds a date from the parts returned by getFormat(), getFormatPrefix()
+	 * and getStringIfSet(), so it renders exactly as the original did
+	 */
+	public cfDateData(long _time, String _formatString, String _formatStringPrefix, String _dateString) {
+		super(new java.util.Date(_time));
+		time = _time;
+		formatString = _formatString;
+		formatStringPrefix = _formatStringPrefix;
+		dateString = _dateString;
+	}
+
 	public byte getDataType() {
 		return cfData.CFDATEDATA;
 	}
@@ -103,6 +115,18 @@ public class cfDateData extends cfJavaObjectData implements java.io.Serializable
 		dateString = _dateString;
 	}
 
+	public String getFormat() {
+		return formatString;
+	}
+
+	public String getFormatPrefix() {
+		return formatStringPrefix;
+	}
+
+	public String getStringIfSet() {
+		return dateString;
+	}
+
 	public boolean isDateConvertible() {
 		return true;
 	}
@@ -63,14 +63,19 @@ import com.nary.io.StreamUtils;
 import com.nary.util.AverageTracker;
 import com.nary.util.FastMap;
 import com.nary.util.Localization;
+import com.nary.util.LogFile;
 import com.naryx.tagfusion.cfm.application.ScriptProtect;
 import com.naryx.tagfusion.cfm.cache.CacheFactory;
+import com.naryx.tagfusion.cfm.engine.codec.CodecFactory;
 import com.naryx.tagfusion.cfm.file.cfFile;
 import com.naryx.tagfusion.cfm.file.cfmlFileCache;
+import com.naryx.tagfusion.cfm.http.HttpClientPool;
 import com.naryx.tagfusion.cfm.sql.ODBCNativeLib;
 import com.naryx.tagfusion.cfm.sql.cfDataSourceStatus;
 import com.naryx.tagfusion.cfm.sql.pool.DataSourcePoolFactory;
 import com.naryx.tagfusion.cfm.tag.tagChecker;
+import com.naryx.tagfusion.cfm.tag.ext.thread.cfParallelLoop;
+import com.naryx.tagfusion.cfm.tag.ext.thread.cfThreadPool;
 import com.naryx.tagfusion.cfm.tag.ext.thread.cfThreadRunner;
 import com.naryx.tagfusion.expression.compile.expressionEngine;
 import com.naryx.tagfusion.expression.function.string.deserializejson;
@@ -252,6 +257,18 @@ public class cfEngine extends Object implements cfEngineMBean {
 			// CFCs
 			ComponentFactory.init( getSystemParameters() );
 
+			// CFTHREAD pool
+			cfThreadPool.init( getSystemParameters() );
+
+			// Serialization codec for sessions, caches and DataSave()
+			CodecFactory.init( getSystemParameters() );
+
+			// Log lines are written by a background appender
+			LogFile.setAsync( getSystemParameters().getInt( "server.system.logbuffer", 16384 ), getSystemParameters().getString( "server.system.logoverflow", "block" ), getSystemParameters().getInt( "server.system.logsample", 10 ) );
+
+			// Shared, pooled client for CFHTTP
+			HttpClientPool.init( getSystemParameters() );
+
 			startTime = System.currentTimeMillis();
 
 		} catch ( Exception E ) {
@@ -385,10 +402,14 @@ public class cfEngine extends Object implements cfEngineMBean {
 		bEngineActive = false;
 
 		cfThreadRunner.stopAllThreads();
+		cfThreadPool.shutdown();
+		cfParallelLoop.shutdown();
 
 		notifyAllListenersShutdown();
 
 		thisInstance.pluginManager.shutdown();
+		com.naryx.tagfusion.cfm.schedule.ScheduleDispatcher.shutdown();
+		HttpClientPool.shutdown();
 
 		com.naryx.tagfusion.cfm.engine.variableStore.shutdown();
 
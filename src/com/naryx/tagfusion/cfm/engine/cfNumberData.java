@@ -30,6 +30,8 @@
 
 package com.naryx.tagfusion.cfm.engine;
 
+import java.util.List;
+
 import com.nary.util.NumberUtils;
 import com.nary.util.string;
 import com.naryx.tagfusion.cfm.parser.CFContext;
@@ -52,6 +54,20 @@ public class cfNumberData extends cfJavaObjectData {
 
 	private transient cfDateData	dateData;
 
+	private static final int			CACHE_LOW					= -128;
+	private static final int			CACHE_HIGH				= 1024;
+	private static final cfNumberData[]	cache;
+	private static final cfNumberData[]	doubleCache;
+
+	static {
+		cache = new cfNumberData[ CACHE_HIGH - CACHE_LOW + 1 ];
+		doubleCache = new cfNumberData[ CACHE_HIGH - CACHE_LOW + 1 ];
+		for ( int i = 0; i < cache.length; i++ ) {
+			cache[ i ] = new cfNumberDataStatic( i + CACHE_LOW );
+			doubleCache[ i ] = new cfNumberDataStatic( ( double )( i + CACHE_LOW ) );
+		}
+	}
+
 
 
 	/**
@@ -77,13 +93,19 @@ public class cfNumberData extends cfJavaObjectData {
 	/*
 	 * When the float constructor was added, long values would call it instead of the
 	 * double constructor causing the value to be truncated. This constructor was added
-	 * to force a long to be cast to a double.
+	 * to force a long to be cast to a double. Values that fit in an int are kept as an
+	 * int so they never take the round trip through a double.
 	 */
 	public cfNumberData( long _data ) {
 		super( string.EMPTY_STRING );
-		doubleNo = _data;
-		bIntNo = false;
-		this.image = String.valueOf( _data );
+		if ( _data >= Integer.MIN_VALUE && _data <= Integer.MAX_VALUE ) {
+			intNo = ( int )_data;
+			bIntNo = true;
+		} else {
+			doubleNo = _data;
+			bIntNo = false;
+			this.image = String.valueOf( _data );
+		}
 	}
 
 
@@ -162,6 +184,63 @@ public class cfNumberData extends cfJavaObjectData {
 
 
 
+	/**
+	 * Returns a number for the given value, sharing the instances of the most common
+	 * small integers. The shared instances are read-only; use the constructors where
+	 * the number is going to be modified in place (a CFLOOP index for example).
+	 */
+	public static cfNumberData valueOf( int _data ) {
+		if ( _data >= CACHE_LOW && _data <= CACHE_HIGH )
+			return cache[ _data - CACHE_LOW ];
+		else
+			return new cfNumberData( _data );
+	}
+
+
+
+	/**
+	 * Results that fit in an int stay as an int; anything larger keeps the
+	 * historical double representation, and its formatting.
+	 */
+	public static cfNumberData valueOf( long _data ) {
+		if ( _data >= CACHE_LOW && _data <= CACHE_HIGH )
+			return cache[ ( int )_data - CACHE_LOW ];
+		else if ( _data >= Integer.MIN_VALUE && _data <= Integer.MAX_VALUE )
+			return new cfNumberData( ( int )_data );
+		else
+			return new cfNumberData( ( double )_data );
+	}
+
+
+
+	/**
+	 * Whole numbers within the cached range are returned as shared instances;
+	 * these stay double-typed, so isInt() answers the same as for a new instance.
+	 */
+	public static cfNumberData valueOf( double _data ) {
+		if ( _data >= CACHE_LOW && _data <= CACHE_HIGH && _data == ( int )_data && !isNegativeZero( _data ) )
+			return doubleCache[ ( int )_data - CACHE_LOW ];
+		else
+			return new cfNumberData( _data );
+	}
+
+
+
+	private static boolean isNegativeZero( double _data ) {
+		return _data == 0 && Double.doubleToRawLongBits( _data ) != 0;
+	}
+
+
+
+	/**
+	 * true if this is one of the shared read-only instances handed out by valueOf()
+	 */
+	public boolean isStatic() {
+		return false;
+	}
+
+
+
 	public byte getDataType() {
 		return cfData.CFNUMBERDATA;
 	}
@@ -192,6 +271,15 @@ public class cfNumberData extends cfJavaObjectData {
 
 
 
+	/**
+	 * The string this number was created from, if it is to be shown that way
+	 */
+	public String getImage() {
+		return image;
+	}
+
+
+
 	public void add( int inc ) {
 		set( intNo + inc );
 	}
@@ -439,4 +527,69 @@ public class cfNumberData extends cfJavaObjectData {
 			return instCls;
 	}
 
+
+
+
+	/***
+	 * private subclass for the shared small integer instances
+	 */
+	private static class cfNumberDataStatic extends cfNumberData {
+
+		private static final long serialVersionUID = 1L;
+
+		public cfNumberDataStatic( int _data ) {
+			super( _data );
+		}
+
+		public cfNumberDataStatic( double _data ) {
+			super( _data );
+		}
+
+		public boolean isStatic() {
+			return true;
+		}
+
+		/**
+		 * A shared instance is never a CFLOOP index, so there is nothing to invalidate;
+		 * assignment calls this on whatever value a variable held before.
+		 */
+		public void invalidateLoopIndex() {
+		}
+
+		/**
+		 * The following methods are not allowed to be invoked for static instances.
+		 */
+		public void add( int inc ) {
+			throw new UnsupportedOperationException( "static instance" );
+		}
+
+		public void add( double inc ) {
+			throw new UnsupportedOperationException( "static instance" );
+		}
+
+		public void set( int _newValue ) {
+			throw new UnsupportedOperationException( "static instance" );
+		}
+
+		public void set( double _newValue ) {
+			throw new UnsupportedOperationException( "static instance" );
+		}
+
+		public void setQueryTableData( List<List<cfData>> queryTableData, int queryColumn ) {
+			throw new UnsupportedOperationException( "static instance" );
+		}
+
+		public void setExpression( boolean exp ) {
+			throw new UnsupportedOperationException( "static instance" );
+		}
+
+		protected void setImplicit( boolean implicit ) {
+			throw new UnsupportedOperationException( "static instance" );
+		}
+
+		public void setJavaCast( Javacast _cast ) {
+			throw new UnsupportedOperationException( "static instance" );
+		}
+	}
+
 }
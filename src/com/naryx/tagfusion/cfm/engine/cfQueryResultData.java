@@ -131,7 +131,7 @@ public class cfQueryResultData extends cfJavaObjectData implements cfQueryInterf
 		populate( rs, maxRows );
 	}
 
-	private cfQueryResultData( cfQueryResultSetMetaData rsmd, String querySource ) {
+	public cfQueryResultData( cfQueryResultSetMetaData rsmd, String querySource ) {
 		super( "" ); // fudge
 		setInstance( this );
 		this.tableRows		= new ArrayList<List<cfData>>();
@@ -904,11 +904,13 @@ public class cfQueryResultData extends cfJavaObjectData implements cfQueryInterf
 	}
 	
 	private static cfData getUniqueCellData( cfData cellData ) {
-		// we need to copy booleans to avoid setQueryTableData() being
-		// called on static cfData instances
+		// we need to copy booleans and the shared small numbers to avoid
+		// setQueryTableData() being called on static cfData instances
 		byte dataType = cellData.getDataType();
 		if ( dataType == cfData.CFBOOLEANDATA ) {
 			return cellData.duplicate();
+		} else if ( cellData instanceof cfNumberData && ((cfNumberData)cellData).isStatic() ) {
+			return cellData.duplicate();
 		} else if ( dataType == cfData.CFNULLDATA ) {
 			return ((cfNullData)cellData).getDbNull();
 		}
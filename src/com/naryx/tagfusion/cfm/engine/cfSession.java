@@ -38,6 +38,8 @@ package com.naryx.tagfusion.cfm.engine;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -65,6 +67,7 @@ import com.naryx.tagfusion.cfm.application.cfApplicationData;
 import com.naryx.tagfusion.cfm.file.cfFile;
 import com.naryx.tagfusion.cfm.file.cfmlFileCache;
 import com.naryx.tagfusion.cfm.file.cfmlURI;
+import com.naryx.tagfusion.cfm.http.HttpResponseStream;
 import com.naryx.tagfusion.cfm.parser.CFCall;
 import com.naryx.tagfusion.cfm.parser.CFCallStack;
 import com.naryx.tagfusion.cfm.parser.CFContext;
@@ -1237,6 +1240,53 @@ public class cfSession {
 		totalPageOut += buffer.length;
 	}
 
+	public void write( char[] buffer, int off, int len ) {
+		if ( !bProcessingCFOUTPUT && cfSettingCounter > 0 )
+			return;
+
+		RES.write(buffer, off, len);
+		totalPageOut += len;
+	}
+
+	/**
+	 * A Writer over the page output, for content (such as serializeJSON) that
+	 * can be streamed out instead of first being built up as a String
+	 */
+	public Writer getWriter() {
+		return new Writer() {
+			public void write( char[] cbuf, int off, int len ) {
+				cfSession.this.write( cbuf, off, len );
+			}
+
+			public void write( String str ) {
+				cfSession.this.write( str );
+			}
+
+			public void flush() {}
+
+			public void close() {}
+		};
+	}
+
+	/**
+	 * An OutputStream over the binary response, as used by CFCONTENT
+	 */
+	public OutputStream getOutputStream() {
+		return new OutputStream() {
+			public void write( int b ) throws IOException {
+				write( new byte[] { (byte) b }, 0, 1 );
+			}
+
+			public void write( byte[] buf, int off, int len ) throws IOException {
+				try {
+					cfSession.this.write( buf, off, len );
+				} catch ( cfmRunTimeException e ) {
+					throw new IOException( e.getMessage() );
+				}
+			}
+		};
+	}
+
 	public void write( byte[] buf ) throws cfmRunTimeException {
 		try {
 			RES.write(this,buf);
@@ -1598,6 +1648,9 @@ public class cfSession {
 		if ( DI != null )
 			DI.deleteFiles();
 
+		// Let go of any CFHTTP response streams the page did not close
+		HttpResponseStream.closeAll(this);
+
 		// Tell the debugger this is it
 		debugger.endSession();
 		recorder.endRequest();
@@ -1613,6 +1666,7 @@ public class cfSession {
 	 */
 	public void sessionEnd() {
 		closeAllConnections();
+		HttpResponseStream.closeAll(this);
 	}
 
 	/* ----------------------------------------------------------------
@@ -2079,7 +2133,7 @@ public class cfSession {
 			if (rsp.getDataType() != cfData.CFNULLDATA) {
 				boolean processingCfOutput = setProcessingCfOutput(true);
       	resetBuffer();
-			  write( invocationData.formatReturnData( this, comp, rsp, formatMethod, serializeQueryByColumns, jsonpCallback, jsonCase ) );
+			  invocationData.writeReturnData( this, getWriter(), comp, rsp, formatMethod, serializeQueryByColumns, jsonpCallback, jsonCase );
 				setProcessingCfOutput(processingCfOutput);
 			}
 			
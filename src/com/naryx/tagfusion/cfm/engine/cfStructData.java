@@ -82,6 +82,12 @@ public class cfStructData extends cfStructDataBase implements Map, java.io.Seria
 
 	protected boolean isBDAdminStruct = false;
 
+	// bumped by every change made through this class; lets session storage spot untouched structs
+	private transient int modCount = 0;
+
+	// set once this struct can be reached from more than one thread, see publish()
+	private transient volatile boolean shared = false;
+
 	public cfStructData() {
 		this(FastMap.CASE_INSENSITIVE);
 	}
@@ -135,28 +141,39 @@ public class cfStructData extends cfStructDataBase implements Map, java.io.Seria
 		return hashdata.get(_key);
 	}
 
-	public synchronized void setData(String _key, cfData _data) {
-		hashdata.put(_key, _data);
+	public void setData(String _key, cfData _data) {
+		if (shared && _data != null)
+			_data.publish();
+
+		synchronized (this) {
+			hashdata.put(_key, _data);
+			modCount++;
+		}
 	}
 
 	public synchronized void setData(String _key, String _data) {
 		hashdata.put(_key, new cfStringData(_data) );
+		modCount++;
 	}
 
 	public synchronized void setData(String _key, int _data) {
 		hashdata.put(_key, new cfNumberData(_data) );
+		modCount++;
 	}
 
 	public synchronized void setData(String _key, long _data) {
 		hashdata.put(_key, new cfNumberData(_data) );
+		modCount++;
 	}
 
 	public synchronized void setData(String _key, Date _data) {
 		hashdata.put(_key, new cfDateData(_data) );
+		modCount++;
 	}
 
 	public synchronized void deleteData(String _key) throws cfmRunTimeException {
 		hashdata.remove(_key);
+		modCount++;
 	}
 
 	public synchronized boolean containsKey(String _key) {
@@ -174,6 +191,32 @@ public class cfStructData extends cfStructDataBase implements Map, java.io.Seria
 	// Map interface method
 	public synchronized void clear() {
 		hashdata.clear();
+		modCount++;
+	}
+
+	public int getModCount() {
+		return modCount;
+	}
+
+	/**
+	 * Marks this struct as shared between threads and publishes everything in it;
+	 * anything stored in it afterwards is published by setData() on the way in
+	 */
+	public void publish() {
+		if (shared)
+			return;
+		shared = true;
+
+		Object[] keys = keys();
+		for (int i = 0; i < keys.length; i++) {
+			cfData value = getData((String) keys[i]);
+			if (value != null)
+				value.publish();
+		}
+	}
+
+	public boolean isShared() {
+		return shared;
 	}
 
 	// Map interface method
@@ -63,6 +63,13 @@ public class cfStructSelectiveReadOnlyData extends cfStructData implements java.
 		}
 	}
 	
+	// values held in the server scope are shared between requests
+	public void setData( String _key, cfData _data ){
+		if ( _data != null )
+			_data.publish();
+		super.setData( _key, _data );
+	}
+
 	public void deleteData( String _key ) throws cfmRunTimeException {
 		
 		// Check if the key is read only
@@ -30,6 +30,9 @@
 
 package com.naryx.tagfusion.cfm.engine;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -125,65 +128,75 @@ public class cfcMethodData implements javaMethodDataInterface {
 	 * Used primarily by remote callers to format the outgoing data
 	 */
 	public String formatReturnData(cfSession session, cfComponentData comp, cfData rsp, String formatMethod, boolean serializeQueryByColumns, String jsonpCallback, String jsonCase ) throws cfmRunTimeException	 {
+		StringWriter out = new StringWriter( 5000 );
+		writeReturnData( session, out, comp, rsp, formatMethod, serializeQueryByColumns, jsonpCallback, jsonCase );
+		return out.toString();
+	}
+	
+	
+	/*
+	 * As formatReturnData(), but written to the Writer; JSON goes out as it is
+	 * generated rather than being built up as one string first
+	 */
+	public void writeReturnData(cfSession session, Writer out, cfComponentData comp, cfData rsp, String formatMethod, boolean serializeQueryByColumns, String jsonpCallback, String jsonCase ) throws cfmRunTimeException	 {
 		cfFUNCTION.ReturnFormat returnFormat	= ( formatMethod == null ) ? comp.getReturnFormat(this) : cfFUNCTION.getReturnFormat(formatMethod);
 		
-		if ( returnFormat == null || returnFormat == cfFUNCTION.ReturnFormat.WDDX ){
-	  	
-			if ( rsp instanceof cfXmlData )
-	  		return ( (cfXmlData)rsp ).getString();
-	  	else
-			  return cfWDDX.cfml2Wddx( rsp );
-	  	
-		}else if ( returnFormat == cfFUNCTION.ReturnFormat.JSON ){
-
-			StringBuilder buffer = new StringBuilder( 5000 );
-			String jsonDate	= ( formatMethod == null ) ? comp.getReturnJSONDate(this) : cfEngine.DefaultJSONReturnDate;
-			
-			if (jsonCase == null)
-				jsonCase	= comp.getReturnJSONCase(this);
-			
-			serializejson sj = new serializejson();
-			sj.encodeJSON(buffer, rsp, serializeQueryByColumns, serializejson.getCaseType(jsonCase), serializejson.getDateType(jsonDate) );
-			
-			cfApplicationData appData = session.getApplicationData();
-			boolean secureJson = false;
-			if ( appData != null && appData.containsKey("securejson") ){
-				secureJson = appData.getData("securejson").getBoolean();
-			}else{
-				secureJson = comp.isSecureJSon(this);
-			}
-
-			if ( secureJson ){
-				/* Do we need to prefix this JSON string with anything */
-				if ( appData != null && appData.containsKey("securejsonprefix") ){
-					buffer.insert( 0, appData.getData("securejsonprefix").getString() );
+		try {
+			if ( returnFormat == null || returnFormat == cfFUNCTION.ReturnFormat.WDDX ){
+		  	
+				if ( rsp instanceof cfXmlData )
+		  		out.write( ( (cfXmlData)rsp ).getString() );
+		  	else
+		  		out.write( cfWDDX.cfml2Wddx( rsp ) );
+		  	
+			}else if ( returnFormat == cfFUNCTION.ReturnFormat.JSON ){
+	
+				String jsonDate	= ( formatMethod == null ) ? comp.getReturnJSONDate(this) : cfEngine.DefaultJSONReturnDate;
+				
+				if (jsonCase == null)
+					jsonCase	= comp.getReturnJSONCase(this);
+				
+				cfApplicationData appData = session.getApplicationData();
+				boolean secureJson = false;
+				if ( appData != null && appData.containsKey("securejson") ){
+					secureJson = appData.getData("securejson").getBoolean();
 				}else{
-					buffer.insert( 0, "//");
+					secureJson = comp.isSecureJSon(this);
 				}
+	
+				if ( secureJson ){
+					/* Do we need to prefix this JSON string with anything */
+					if ( appData != null && appData.containsKey("securejsonprefix") ){
+						out.write( appData.getData("securejsonprefix").getString() );
+					}else{
+						out.write( "//" );
+					}
+				}
+	
+				serializejson.writeJSON(out, rsp, serializeQueryByColumns, serializejson.getCaseType(jsonCase), serializejson.getDateType(jsonDate) );
+	
+			}else if ( returnFormat == cfFUNCTION.ReturnFormat.JSONP ){
+	
+				String jsonDate	= ( formatMethod == null ) ? comp.getReturnJSONDate(this) : cfEngine.DefaultJSONReturnDate;
+				if (jsonCase == null)
+					jsonCase	= comp.getReturnJSONCase(this);
+				
+				out.write( jsonpCallback + "(" );
+				serializejson.writeJSON(out, rsp, serializeQueryByColumns, serializejson.getCaseType(jsonCase), serializejson.getDateType(jsonDate) );
+				out.write( ")" );
+				
+			}else{
+				if ( rsp instanceof cfXmlData )
+		  		out.write( ( (cfXmlData)rsp ).getString() );
+				else
+					out.write( rsp.getString() );
 			}
-
-			return buffer.toString();
-
-		}else if ( returnFormat == cfFUNCTION.ReturnFormat.JSONP ){
-
-			StringBuilder buffer = new StringBuilder( 5000 );
-			String jsonDate	= ( formatMethod == null ) ? comp.getReturnJSONDate(this) : cfEngine.DefaultJSONReturnDate;
-			if (jsonCase == null)
-				jsonCase	= comp.getReturnJSONCase(this);
-			
-			serializejson sj = new serializejson();
-			sj.encodeJSON(buffer, rsp, serializeQueryByColumns, serializejson.getCaseType(jsonCase), serializejson.getDateType(jsonDate) );
-
-			buffer.insert(0, jsonpCallback + "(");
-			buffer.append( ")" );
-			
-			return buffer.toString();
-			
-		}else{
-			if ( rsp instanceof cfXmlData )
-	  		return ( (cfXmlData)rsp ).getString();
-			else
-				return rsp.getString();
+		} catch (IOException e) {
+			cfCatchData catchData = new cfCatchData();
+			catchData.setType(cfCatchData.TYPE_TEMPLATE);
+			catchData.setDetail("Writing the return data failed due to IO Exception: " + e);
+			catchData.setMessage("Writing the return data failed due to IO Exception");
+			throw new cfmRunTimeException(catchData);
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,798 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+package com.naryx.tagfusion.cfm.engine.codec;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.naryx.tagfusion.cfm.application.cfSessionData;
+import com.naryx.tagfusion.cfm.application.cfStructExpireData;
+import com.naryx.tagfusion.cfm.engine.cfArrayData;
+import com.naryx.tagfusion.cfm.engine.cfArrayListData;
+import com.naryx.tagfusion.cfm.engine.cfBinaryData;
+import com.naryx.tagfusion.cfm.engine.cfBooleanData;
+import com.naryx.tagfusion.cfm.engine.cfData;
+import com.naryx.tagfusion.cfm.engine.cfDateData;
+import com.naryx.tagfusion.cfm.engine.cfNullData;
+import com.naryx.tagfusion.cfm.engine.cfNumberData;
+import com.naryx.tagfusion.cfm.engine.cfQueryResultData;
+import com.naryx.tagfusion.cfm.engine.cfQueryResultSetMetaData;
+import com.naryx.tagfusion.cfm.engine.cfStringData;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
+import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.sql.cfSQLQueryData;
+
+/**
+ * A compact, tagged binary form of the cfData types: structures, arrays, queries,
+ * strings, numbers, dates, binary, booleans and null, along with the plain java
+ * strings, numbers, maps and lists some services keep on disk.
+ *
+ * <pre>
+ *   'B' 'D' 'C' version flags [uncompressed length] value
+ * </pre>
+ *
+ * Each value is a one byte tag followed by its body. Whole numbers are written as
+ * var-ints, and short strings are written once and after that referred to by their
+ * index, so repeated structure keys and query values cost a byte or two. Queries
+ * are written a column at a time. When the compressed flag is set the value is
+ * deflated at the fastest level.
+ *
+ * Anything else (components, java objects, xml), or a graph where the same
+ * structure, array or query is reached twice, can't be written this way without
+ * losing something; the whole graph is then written with java serialization
+ * inside a single SERIALIZED tag instead.
+ */
+public class BinaryCodec implements Codec {
+
+	public static final String NAME = "binary";
+
+	private static final byte	VERSION = 1;
+	private static final int	FLAG_COMPRESSED = 1;
+	private static final int	HEADER = 5;
+
+	// longer strings are rarely repeated, so aren't worth a table entry
+	private static final int	MAX_INTERN = 64;
+
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	private static final byte
+		T_JAVANULL				= 0,
+		T_NULL						= 1,
+		T_TRUE						= 2,
+		T_FALSE						= 3,
+		T_BOOLEAN					= 4,
+		T_INT							= 5,
+		T_INT_IMAGE				= 6,
+		T_DOUBLE					= 7,
+		T_DOUBLE_IMAGE		= 8,
+		T_STRING					= 9,
+		T_DATE						= 10,
+		T_BINARY					= 11,
+		T_STRUCT					= 12,
+		T_ARRAY						= 13,
+		T_QUERY						= 14,
+		T_SERIALIZED			= 15,
+		T_JSTRING					= 20,
+		T_JINTEGER				= 21,
+		T_JLONG						= 22,
+		T_JDOUBLE					= 23,
+		T_JTRUE						= 24,
+		T_JFALSE					= 25,
+		T_JBYTES					= 26,
+		T_JDATE						= 27,
+		T_JHASHMAP				= 28,
+		T_JLINKEDHASHMAP	= 29,
+		T_JARRAYLIST			= 30;
+
+	private static final int	NULL_DB = 1, NULL_JAVA = 2;
+
+	private static final JavaCodec javaCodec = new JavaCodec();
+
+
+	public String getName() {
+		return NAME;
+	}
+
+
+	public byte[] encode( Object data, boolean compress ) throws IOException {
+		Writer out = new Writer();
+		out.writeHeader( compress );
+
+		try {
+			out.writeValue( data );
+		} catch ( NotRepresentable e ) {
+			out.count = HEADER;
+			out.writeByte( T_SERIALIZED );
+			out.writeBytes( javaCodec.encode( data, false ) );
+		}
+
+		if ( !compress )
+			return out.toByteArray();
+
+		// deflate everything after the header, noting the size it has to be inflated back to
+		int length = out.count - HEADER;
+		Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+		try {
+			deflater.setInput( out.buf, HEADER, length );
+			deflater.finish();
+
+			Writer zout = new Writer();
+			zout.writeHeader( true );
+			zout.writeVarInt( length );
+			while ( !deflater.finished() ) {
+				zout.ensure( 8192 );
+				zout.count += deflater.deflate( zout.buf, zout.count, zout.buf.length - zout.count );
+			}
+			return zout.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+
+	public boolean canDecode( byte[] buf ) {
+		return buf.length >= HEADER && buf[0] == 'B' && buf[1] == 'D' && buf[2] == 'C';
+	}
+
+
+	public Object decode( byte[] buf ) throws IOException {
+		if ( !canDecode( buf ) )
+			throw new IOException( "not binary codec data" );
+		if ( buf[3] > VERSION )
+			throw new IOException( "binary codec data version " + buf[3] + " is newer than this engine supports" );
+
+		try {
+			Reader in;
+			if ( ( buf[4] & FLAG_COMPRESSED ) != 0 ) {
+				Reader header = new Reader( buf, HEADER );
+				int length = header.readVarInt();
+				in = new Reader( inflate( buf, header.pos, length ), 0 );
+			} else {
+				in = new Reader( buf, HEADER );
+			}
+
+			return in.readValue( false );
+
+		} catch ( ArrayIndexOutOfBoundsException e ) {
+			throw new IOException( "binary codec data is truncated" );
+		} catch ( cfmRunTimeException e ) {
+			throw new IOException( e.getMessage(), e );
+		}
+	}
+
+
+	private static byte[] inflate( byte[] buf, int offset, int length ) throws IOException {
+		byte[] inflated = new byte[ length ];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput( buf, offset, buf.length - offset );
+			int n = 0;
+			while ( n < length && !inflater.finished() ) {
+				int r = inflater.inflate( inflated, n, length - n );
+				if ( r == 0 && ( inflater.needsInput() || inflater.needsDictionary() ) )
+					break;
+				n += r;
+			}
+			if ( n != length )
+				throw new IOException( "binary codec data is truncated" );
+			return inflated;
+		} catch ( DataFormatException e ) {
+			throw new IOException( e.getMessage(), e );
+		} finally {
+			inflater.end();
+		}
+	}
+
+
+	/**
+	 * Thrown while writing when the graph has to fall back to java serialization
+	 */
+	private static class NotRepresentable extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		public Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+
+	private static final NotRepresentable NOT_REPRESENTABLE = new NotRepresentable();
+
+
+
+	private static class Writer {
+		byte[] buf = new byte[ 1024 ];
+		int count = 0;
+
+		private final Map<String, Integer> strings = new HashMap<String, Integer>();
+		private final Map<Object, Object> containers = new IdentityHashMap<Object, Object>();
+
+
+		void writeHeader( boolean compress ) {
+			writeByte( 'B' );
+			writeByte( 'D' );
+			writeByte( 'C' );
+			writeByte( VERSION );
+			writeByte( compress ? FLAG_COMPRESSED : 0 );
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf( buf, count );
+		}
+
+		void ensure( int extra ) {
+			if ( count + extra > buf.length )
+				buf = Arrays.copyOf( buf, Math.max( buf.length << 1, count + extra ) );
+		}
+
+		void writeByte( int b ) {
+			ensure( 1 );
+			buf[ count++ ] = (byte) b;
+		}
+
+		void writeVarInt( int v ) {
+			ensure( 5 );
+			while ( ( v & ~0x7F ) != 0 ) {
+				buf[ count++ ] = (byte) ( ( v & 0x7F ) | 0x80 );
+				v >>>= 7;
+			}
+			buf[ count++ ] = (byte) v;
+		}
+
+		void writeVarLong( long v ) {
+			ensure( 10 );
+			while ( ( v & ~0x7FL ) != 0 ) {
+				buf[ count++ ] = (byte) ( ( v & 0x7F ) | 0x80 );
+				v >>>= 7;
+			}
+			buf[ count++ ] = (byte) v;
+		}
+
+		void writeZigZag( int v ) {
+			writeVarInt( ( v << 1 ) ^ ( v >> 31 ) );
+		}
+
+		void writeLong( long v ) {
+			ensure( 8 );
+			for ( int s = 56; s >= 0; s -= 8 )
+				buf[ count++ ] = (byte) ( v >>> s );
+		}
+
+		void writeBytes( byte[] b ) {
+			writeVarInt( b.length );
+			ensure( b.length );
+			System.arraycopy( b, 0, buf, count, b.length );
+			count += b.length;
+		}
+
+		/**
+		 * 0 = null, 1 = a new string that goes into the table, 2 = a string not
+		 * worth keeping, n > 2 = the string at table index n - 3
+		 */
+		void writeString( String s ) {
+			if ( s == null ) {
+				writeByte( 0 );
+				return;
+			}
+
+			if ( s.length() <= MAX_INTERN ) {
+				Integer index = strings.get( s );
+				if ( index != null ) {
+					writeVarInt( index.intValue() + 3 );
+					return;
+				}
+				strings.put( s, strings.size() );
+				writeByte( 1 );
+			} else {
+				writeByte( 2 );
+			}
+			writeBytes( s.getBytes( UTF8 ) );
+		}
+
+		void enter( Object container ) throws NotRepresentable {
+			if ( containers.put( container, container ) != null )
+				throw NOT_REPRESENTABLE;
+		}
+
+
+		void writeValue( Object o ) throws NotRepresentable {
+			if ( o == null ) {
+				writeByte( T_JAVANULL );
+			} else if ( o instanceof cfData ) {
+				writeData( (cfData) o );
+			} else {
+				writeJava( o );
+			}
+		}
+
+
+		private void writeData( cfData data ) throws NotRepresentable {
+			switch ( data.getDataType() ) {
+			case cfData.CFSTRINGDATA:
+				if ( !( data instanceof cfStringData ) )
+					throw NOT_REPRESENTABLE;
+				writeByte( T_STRING );
+				writeString( ( (cfStringData) data ).getString() );
+				break;
+
+			case cfData.CFNUMBERDATA:
+				if ( !( data instanceof cfNumberData ) || ( (cfNumberData) data ).isJavaNumeric() )
+					throw NOT_REPRESENTABLE;
+				cfNumberData number = (cfNumberData) data;
+				String image = number.getImage();
+				if ( number.isInt() ) {
+					writeByte( image == null ? T_INT : T_INT_IMAGE );
+					writeZigZag( number.getInt() );
+				} else {
+					writeByte( image == null ? T_DOUBLE : T_DOUBLE_IMAGE );
+					writeLong( Double.doubleToRawLongBits( number.getDouble() ) );
+				}
+				if ( image != null )
+					writeString( image );
+				break;
+
+			case cfData.CFBOOLEANDATA:
+				if ( !( data instanceof cfBooleanData ) || ( (cfBooleanData) data ).isJavaBoolean() )
+					throw NOT_REPRESENTABLE;
+				cfBooleanData bool = (cfBooleanData) data;
+				String str = bool.getString();
+				if ( str.equals( bool.getBoolean() ? "YES" : "NO" ) ) {
+					writeByte( bool.getBoolean() ? T_TRUE : T_FALSE );
+				} else {
+					writeByte( T_BOOLEAN );
+					writeByte( bool.getBoolean() ? 1 : 0 );
+					writeString( str );
+				}
+				break;
+
+			case cfData.CFDATEDATA:
+				if ( !( data instanceof cfDateData ) )
+					throw NOT_REPRESENTABLE;
+				cfDateData date = (cfDateData) data;
+				writeByte( T_DATE );
+				writeLong( date.getLong() );
+				writeString( date.getFormat() );
+				writeString( date.getFormatPrefix() );
+				writeString( date.getStringIfSet() );
+				break;
+
+			case cfData.CFNULLDATA:
+				if ( !( data instanceof cfNullData ) )
+					throw NOT_REPRESENTABLE;
+				cfNullData nul = (cfNullData) data;
+				writeByte( T_NULL );
+				writeByte( ( nul.isDBNull() ? NULL_DB : 0 ) | ( nul.isJavaNull() ? NULL_JAVA : 0 ) );
+				break;
+
+			case cfData.CFBINARYDATA:
+				if ( !( data instanceof cfBinaryData ) )
+					throw NOT_REPRESENTABLE;
+				writeByte( T_BINARY );
+				writeBytes( ( (cfBinaryData) data ).getByteArray() );
+				break;
+
+			case cfData.CFSTRUCTDATA:
+				Class<?> c = data.getClass();
+				if ( c != cfStructData.class && c != cfStructExpireData.class && c != cfSessionData.class )
+					throw NOT_REPRESENTABLE;
+				writeStruct( (cfStructData) data );
+				break;
+
+			case cfData.CFARRAYDATA:
+				if ( data.getClass() != cfArrayListData.class )
+					throw NOT_REPRESENTABLE;
+				writeArray( (cfArrayData) data );
+				break;
+
+			case cfData.CFQUERYRESULTDATA:
+				if ( data.getClass() != cfQueryResultData.class && data.getClass() != cfSQLQueryData.class )
+					throw NOT_REPRESENTABLE;
+				writeQuery( (cfQueryResultData) data );
+				break;
+
+			default:
+				throw NOT_REPRESENTABLE;
+			}
+		}
+
+
+		private void writeStruct( cfStructData struct ) throws NotRepresentable {
+			enter( struct );
+
+			boolean caseSensitive;
+			try {
+				caseSensitive = struct.isCaseSensitive();
+			} catch ( UnsupportedOperationException e ) {
+				throw NOT_REPRESENTABLE;
+			}
+
+			Object[] keys = struct.keys();
+			writeByte( T_STRUCT );
+			writeByte( caseSensitive ? 1 : 0 );
+			writeVarInt( keys.length );
+			for ( int i = 0; i < keys.length; i++ ) {
+				writeString( (String) keys[i] );
+				writeValue( struct.getData( (String) keys[i] ) );
+			}
+		}
+
+
+		private void writeArray( cfArrayData array ) throws NotRepresentable {
+			enter( array );
+
+			int size = array.size();
+			writeByte( T_ARRAY );
+			writeByte( array.getDimension() );
+			writeVarInt( size );
+			for ( int i = 1; i <= size; i++ )
+				writeValue( array.getElement( i ) );
+		}
+
+
+		private void writeQuery( cfQueryResultData query ) throws NotRepresentable {
+			enter( query );
+
+			List<List<cfData>> rows = query.getQueryTableData();
+			int noRows = rows.size();
+			int noCols = query.getNoColumns();
+
+			writeByte( T_QUERY );
+			writeString( query.getQuerySource() );
+			writeString( query.getQueryString() );
+			writeVarLong( query.getExecuteTime() );
+
+			// the column meta data is small and self contained, so it travels as it is
+			try {
+				writeBytes( javaCodec.encode( query.getMetaData(), false ) );
+			} catch ( Exception e ) {
+				throw NOT_REPRESENTABLE;
+			}
+
+			writeVarInt( noRows );
+			writeVarInt( noCols );
+			for ( int c = 0; c < noCols; c++ ) {
+				for ( int r = 0; r < noRows; r++ ) {
+					List<cfData> row = rows.get( r );
+					writeValue( c < row.size() ? row.get( c ) : null );
+				}
+			}
+		}
+
+
+		private void writeJava( Object o ) throws NotRepresentable {
+			Class<?> c = o.getClass();
+
+			if ( c == String.class ) {
+				writeByte( T_JSTRING );
+				writeString( (String) o );
+			} else if ( c == Integer.class ) {
+				writeByte( T_JINTEGER );
+				writeZigZag( ( (Integer) o ).intValue() );
+			} else if ( c == Long.class ) {
+				long l = ( (Long) o ).longValue();
+				writeByte( T_JLONG );
+				writeVarLong( ( l << 1 ) ^ ( l >> 63 ) );
+			} else if ( c == Double.class ) {
+				writeByte( T_JDOUBLE );
+				writeLong( Double.doubleToRawLongBits( ( (Double) o ).doubleValue() ) );
+			} else if ( c == Boolean.class ) {
+				writeByte( ( (Boolean) o ).booleanValue() ? T_JTRUE : T_JFALSE );
+			} else if ( c == byte[].class ) {
+				writeByte( T_JBYTES );
+				writeBytes( (byte[]) o );
+			} else if ( c == java.util.Date.class ) {
+				writeByte( T_JDATE );
+				writeLong( ( (java.util.Date) o ).getTime() );
+			} else if ( c == HashMap.class || c == LinkedHashMap.class ) {
+				enter( o );
+				Map<?, ?> map = (Map<?, ?>) o;
+				writeByte( c == HashMap.class ? T_JHASHMAP : T_JLINKEDHASHMAP );
+				writeVarInt( map.size() );
+				Iterator<? extends Map.Entry<?, ?>> it = map.entrySet().iterator();
+				while ( it.hasNext() ) {
+					Map.Entry<?, ?> entry = it.next();
+					if ( !( entry.getKey() instanceof String ) )
+						throw NOT_REPRESENTABLE;
+					writeString( (String) entry.getKey() );
+					writeValue( entry.getValue() );
+				}
+			} else if ( c == ArrayList.class ) {
+				enter( o );
+				List<?> list = (List<?>) o;
+				writeByte( T_JARRAYLIST );
+				writeVarInt( list.size() );
+				for ( int i = 0; i < list.size(); i++ )
+					writeValue( list.get( i ) );
+			} else {
+				throw NOT_REPRESENTABLE;
+			}
+		}
+	}
+
+
+
+	private static class Reader {
+		private final byte[] buf;
+		int pos;
+
+		private final List<String> strings = new ArrayList<String>();
+
+		Reader( byte[] buf, int pos ) {
+			this.buf = buf;
+			this.pos = pos;
+		}
+
+		int readByte() {
+			return buf[ pos++ ];
+		}
+
+		int readVarInt() {
+			int v = 0;
+			for ( int shift = 0;; shift += 7 ) {
+				int b = buf[ pos++ ];
+				v |= ( b & 0x7F ) << shift;
+				if ( ( b & 0x80 ) == 0 )
+					return v;
+			}
+		}
+
+		long readVarLong() {
+			long v = 0;
+			for ( int shift = 0;; shift += 7 ) {
+				int b = buf[ pos++ ];
+				v |= (long) ( b & 0x7F ) << shift;
+				if ( ( b & 0x80 ) == 0 )
+					return v;
+			}
+		}
+
+		int readZigZag() {
+			int v = readVarInt();
+			return ( v >>> 1 ) ^ -( v & 1 );
+		}
+
+		long readLong() {
+			long v = 0;
+			for ( int i = 0; i < 8; i++ )
+				v = ( v << 8 ) | ( buf[ pos++ ] & 0xFF );
+			return v;
+		}
+
+		private int checkLength( int length ) {
+			if ( length < 0 || pos + length > buf.length )
+				throw new ArrayIndexOutOfBoundsException( pos + length );
+			return length;
+		}
+
+		byte[] readBytes() {
+			int length = checkLength( readVarInt() );
+			byte[] b = Arrays.copyOfRange( buf, pos, pos + length );
+			pos += length;
+			return b;
+		}
+
+		String readString() {
+			int ref = readVarInt();
+			if ( ref == 0 )
+				return null;
+			if ( ref > 2 )
+				return strings.get( ref - 3 );
+
+			int length = checkLength( readVarInt() );
+			String s = new String( buf, pos, length, UTF8 );
+			pos += length;
+
+			if ( ref == 1 )
+				strings.add( s );
+			return s;
+		}
+
+
+		/**
+		 * @param inQuery true for query cells, which must not be the shared static instances
+		 */
+		Object readValue( boolean inQuery ) throws IOException, cfmRunTimeException {
+			int tag = readByte();
+			switch ( tag ) {
+			case T_JAVANULL:
+				return null;
+
+			case T_NULL:
+				int flags = readByte();
+				if ( ( flags & NULL_DB ) != 0 )
+					return new cfNullData().setDBNull( true );
+				if ( inQuery )
+					return new cfNullData();
+				return ( ( flags & NULL_JAVA ) != 0 ) ? cfNullData.JAVA_NULL : cfNullData.NULL;
+
+			case T_TRUE:
+				return inQuery ? cfBooleanData.getcfBooleanData( true, "YES" ) : cfBooleanData.TRUE;
+
+			case T_FALSE:
+				return inQuery ? cfBooleanData.getcfBooleanData( false, "NO" ) : cfBooleanData.FALSE;
+
+			case T_BOOLEAN:
+				boolean b = readByte() != 0;
+				return cfBooleanData.getcfBooleanData( b, readString() );
+
+			case T_INT:
+				return new cfNumberData( readZigZag() );
+
+			case T_INT_IMAGE:
+				int i = readZigZag();
+				return new cfNumberData( i, readString() );
+
+			case T_DOUBLE:
+				return new cfNumberData( Double.longBitsToDouble( readLong() ) );
+
+			case T_DOUBLE_IMAGE:
+				double d = Double.longBitsToDouble( readLong() );
+				return new cfNumberData( d, readString() );
+
+			case T_STRING:
+				return new cfStringData( readString() );
+
+			case T_DATE:
+				long time = readLong();
+				String format = readString();
+				String prefix = readString();
+				return new cfDateData( time, format, prefix, readString() );
+
+			case T_BINARY:
+				return new cfBinaryData( readBytes() );
+
+			case T_STRUCT:
+				return readStruct();
+
+			case T_ARRAY:
+				return readArray();
+
+			case T_QUERY:
+				return readQuery();
+
+			case T_SERIALIZED:
+				return javaCodec.decode( readBytes() );
+
+			case T_JSTRING:
+				return readString();
+
+			case T_JINTEGER:
+				return Integer.valueOf( readZigZag() );
+
+			case T_JLONG:
+				long l = readVarLong();
+				return Long.valueOf( ( l >>> 1 ) ^ -( l & 1 ) );
+
+			case T_JDOUBLE:
+				return Double.valueOf( Double.longBitsToDouble( readLong() ) );
+
+			case T_JTRUE:
+				return Boolean.TRUE;
+
+			case T_JFALSE:
+				return Boolean.FALSE;
+
+			case T_JBYTES:
+				return readBytes();
+
+			case T_JDATE:
+				return new java.util.Date( readLong() );
+
+			case T_JHASHMAP:
+			case T_JLINKEDHASHMAP:
+				int size = readVarInt();
+				Map<String, Object> map = ( tag == T_JHASHMAP ) ? new HashMap<String, Object>() : new LinkedHashMap<String, Object>();
+				for ( int x = 0; x < size; x++ ) {
+					String key = readString();
+					map.put( key, readValue( false ) );
+				}
+				return map;
+
+			case T_JARRAYLIST:
+				int length = readVarInt();
+				List<Object> list = new ArrayList<Object>( Math.min( length, 1024 ) );
+				for ( int x = 0; x < length; x++ )
+					list.add( readValue( false ) );
+				return list;
+
+			default:
+				throw new IOException( "unknown binary codec tag " + tag );
+			}
+		}
+
+
+		private cfStructData readStruct() throws IOException, cfmRunTimeException {
+			boolean caseSensitive = readByte() != 0;
+			int size = readVarInt();
+
+			cfStructData struct = new cfStructData( caseSensitive );
+			for ( int x = 0; x < size; x++ ) {
+				String key = readString();
+				struct.setData( key, (cfData) readValue( false ) );
+			}
+			return struct;
+		}
+
+
+		private cfArrayData readArray() throws IOException, cfmRunTimeException {
+			int dimension = readByte();
+			int size = readVarInt();
+
+			cfArrayData array = cfArrayData.createArray( dimension );
+			for ( int x = 0; x < size; x++ )
+				array.addElement( (cfData) readValue( false ) );
+			return array;
+		}
+
+
+		private cfQueryResultData readQuery() throws IOException, cfmRunTimeException {
+			String querySource = readString();
+			String queryString = readString();
+			long executeTime = readVarLong();
+			cfQueryResultSetMetaData rsmd = (cfQueryResultSetMetaData) javaCodec.decode( readBytes() );
+
+			cfQueryResultData query = new cfQueryResultData( rsmd, querySource );
+			if ( queryString != null )
+				query.setQueryString( queryString );
+			query.executeTime = executeTime;
+
+			int noRows = readVarInt();
+			int noCols = readVarInt();
+
+			List<List<cfData>> rows = query.getQueryTableData();
+			for ( int r = 0; r < noRows; r++ )
+				rows.add( new ArrayList<cfData>( noCols ) );
+
+			for ( int c = 0; c < noCols; c++ ) {
+				for ( int r = 0; r < noRows; r++ ) {
+					cfData cell = (cfData) readValue( true );
+					if ( cell == null || ( cell.getDataType() == cfData.CFNULLDATA && ( (cfNullData) cell ).isDBNull() ) ) {
+						cell = query.getNull( c + 1 );
+					} else {
+						cell.setQueryTableData( rows, c + 1 );
+					}
+					rows.get( r ).add( cell );
+				}
+			}
+
+			query.setQueryData( rows );
+			return query;
+		}
+	}
+}
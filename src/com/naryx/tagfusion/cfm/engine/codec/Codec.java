@@ -0,0 +1,55 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+package com.naryx.tagfusion.cfm.engine.codec;
+
+import java.io.IOException;
+
+/**
+ * Turns the data held by the engine (cfData values, and the plain java maps, lists
+ * and values some services keep on disk) into bytes and back again.
+ * 
+ * Implementations are registered with the CodecFactory; the one named by
+ * server.system.codec is used for writing, while reading asks each registered
+ * codec in turn if it recognises the bytes, so data written by an earlier codec
+ * can still be read.
+ */
+public interface Codec {
+
+	public String getName();
+
+	public byte[] encode( Object data, boolean compress ) throws IOException;
+
+	/**
+	 * True if the bytes were written by this codec
+	 */
+	public boolean canDecode( byte[] buf );
+
+	public Object decode( byte[] buf ) throws IOException;
+
+}
@@ -0,0 +1,171 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+package com.naryx.tagfusion.cfm.engine.codec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.aw20.io.ByteArrayOutputStreamRaw;
+
+import com.naryx.tagfusion.cfm.engine.cfEngine;
+import com.naryx.tagfusion.xmlConfig.xmlCFML;
+
+/**
+ * Holds the codecs the engine can read and the one it writes with.
+ * 
+ * Everything that keeps cfData outside of memory (external session stores, the
+ * disk and remote caches, spool files, DataSave/ObjectSave) goes through here, so
+ * swapping the format is a matter of registering another Codec and naming it in
+ * server.system.codec.
+ * 
+ * Reading is by recognition rather than configuration: each registered codec is
+ * asked in turn, so data written before the codec was changed can still be read.
+ */
+public class CodecFactory {
+
+	private static final List<Codec> codecs = new CopyOnWriteArrayList<Codec>();
+	private static volatile Codec	writeCodec;
+
+	static {
+		writeCodec = new BinaryCodec();
+		codecs.add( writeCodec );
+		codecs.add( new JavaCodec() );
+	}
+
+
+	public static void init( xmlCFML config ) {
+		String name = config.getString( "server.system.codec", BinaryCodec.NAME );
+		Codec codec = getCodec( name );
+		if ( codec == null ) {
+			cfEngine.log( "CodecFactory: unknown codec [" + name + "]; using " + writeCodec.getName() );
+		} else {
+			writeCodec = codec;
+		}
+	}
+
+
+	/**
+	 * Adds a codec that data can be read with; the most recently registered
+	 * codec is asked first
+	 */
+	public static void register( Codec codec ) {
+		codecs.add( 0, codec );
+	}
+
+
+	public static void setCodec( Codec codec ) {
+		if ( !codecs.contains( codec ) )
+			register( codec );
+		writeCodec = codec;
+	}
+
+
+	/**
+	 * The codec used for writing
+	 */
+	public static Codec getCodec() {
+		return writeCodec;
+	}
+
+
+	public static Codec getCodec( String name ) {
+		for ( Codec codec : codecs ) {
+			if ( codec.getName().equalsIgnoreCase( name ) )
+				return codec;
+		}
+		return null;
+	}
+
+
+	public static byte[] encode( Object data, boolean compress ) throws IOException {
+		return writeCodec.encode( data, compress );
+	}
+
+
+	public static boolean canDecode( byte[] buf ) {
+		for ( Codec codec : codecs ) {
+			if ( codec.canDecode( buf ) )
+				return true;
+		}
+		return false;
+	}
+
+
+	public static Object decode( byte[] buf ) throws IOException {
+		for ( Codec codec : codecs ) {
+			if ( codec.canDecode( buf ) )
+				return codec.decode( buf );
+		}
+		throw new IOException( "data is not in a recognised format" );
+	}
+
+
+	public static void write( OutputStream out, Object data, boolean compress ) throws IOException {
+		out.write( encode( data, compress ) );
+	}
+
+
+	public static Object read( InputStream in ) throws IOException {
+		ByteArrayOutputStreamRaw bos = new ByteArrayOutputStreamRaw( 8192 );
+		byte[] buffer = new byte[ 8192 ];
+		int r;
+		while ( ( r = in.read( buffer ) ) != -1 )
+			bos.write( buffer, 0, r );
+
+		return decode( bos.toByteArray() );
+	}
+
+
+	public static void write( File file, Object data, boolean compress ) throws IOException {
+		OutputStream out = new BufferedOutputStream( new FileOutputStream( file ), 32000 );
+		try {
+			write( out, data, compress );
+		} finally {
+			out.close();
+		}
+	}
+
+
+	public static Object read( File file ) throws IOException {
+		InputStream in = new BufferedInputStream( new FileInputStream( file ), 32000 );
+		try {
+			return read( in );
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+package com.naryx.tagfusion.cfm.engine.codec;
+
+import java.io.IOException;
+
+import org.aw20.io.ByteArrayOutputStreamRaw;
+import org.aw20.io.FileUtil;
+
+/**
+ * Standard java object serialization, optionally deflated; the format everything was
+ * stored in before the binary codec, and what the binary codec falls back to for
+ * object graphs it cannot represent.
+ */
+public class JavaCodec implements Codec {
+
+	public static final String NAME = "java";
+
+	public String getName() {
+		return NAME;
+	}
+
+	public byte[] encode( Object data, boolean compress ) throws IOException {
+		ByteArrayOutputStreamRaw bos = new ByteArrayOutputStreamRaw( 8192 );
+		FileUtil.saveClass( bos, data, compress );
+		return bos.toByteArray();
+	}
+
+	/**
+	 * A serialization stream starts 0xACED; the compressed form is a zlib stream
+	 */
+	public boolean canDecode( byte[] buf ) {
+		if ( buf.length < 2 )
+			return false;
+		return isSerialized( buf ) || ( buf[0] == 0x78 );
+	}
+
+	public Object decode( byte[] buf ) throws IOException {
+		try {
+			return FileUtil.loadClass( buf, !isSerialized( buf ) );
+		} catch ( IOException e ) {
+			throw e;
+		} catch ( Exception e ) {
+			throw new IOException( e.getMessage(), e );
+		}
+	}
+
+	private static boolean isSerialized( byte[] buf ) {
+		return buf[0] == (byte) 0xAC && buf[1] == (byte) 0xED;
+	}
+}
@@ -100,6 +100,8 @@ public class registerTagsExpressions extends java.lang.Object {
     functions.put( "arraytrimvalue", 	"com.naryx.tagfusion.expression.function.array.ArrayTrimValue" );
     functions.put( "arrayeach", 			"com.naryx.tagfusion.expression.function.array.arrayEach" );
     functions.put( "arrayfilter",			"com.naryx.tagfusion.expression.function.array.arrayFilter" );
+    functions.put( "arraymap",				"com.naryx.tagfusion.expression.function.array.arrayMap" );
+    functions.put( "arrayreduce",			"com.naryx.tagfusion.expression.function.array.arrayReduce" );
     functions.put( "arrayfindall",		"com.naryx.tagfusion.expression.function.array.arrayFindAll" );
 
     functions.put( "listtoarray", 			"com.naryx.tagfusion.expression.function.list.listToArray" );
@@ -165,6 +167,7 @@ public class registerTagsExpressions extends java.lang.Object {
     functions.put( "structequals", 		"com.naryx.tagfusion.expression.function.struct.structEquals" );
     functions.put( "structeach", 			"com.naryx.tagfusion.expression.function.struct.structEach" );
     functions.put( "structfilter", 		"com.naryx.tagfusion.expression.function.struct.structFilter" );
+    functions.put( "structmap", 			"com.naryx.tagfusion.expression.function.struct.structMap" );
 
 
     functions.put( "listappend", 					"com.naryx.tagfusion.expression.function.list.listAppend" );
@@ -514,6 +517,7 @@ public class registerTagsExpressions extends java.lang.Object {
 		functions.put( "querydeletecolumn",						"com.naryx.tagfusion.expression.function.query.queryDeleteColumn" );
 		functions.put( "queryrenamecolumn",						"com.naryx.tagfusion.expression.function.query.queryRenameColumn" );
 		functions.put( "queryeach",										"com.naryx.tagfusion.expression.function.query.queryEach" );
+		functions.put( "querymap",										"com.naryx.tagfusion.expression.function.query.queryMap" );
 
 		functions.put( "throwobject",									"com.naryx.tagfusion.expression.function.ext.ThrowObject" );
 		functions.put( "throw",												"com.naryx.tagfusion.expression.function.ext.Throw" );
@@ -538,6 +542,8 @@ public class registerTagsExpressions extends java.lang.Object {
 
 		functions.put("datasave",											"com.naryx.tagfusion.expression.function.ext.dataSave");
 		functions.put("dataload",											"com.naryx.tagfusion.expression.function.ext.dataLoad");
+		functions.put("objectsave",										"com.naryx.tagfusion.expression.function.ext.ObjectSave");
+		functions.put("objectload",										"com.naryx.tagfusion.expression.function.ext.ObjectLoad");
 
 		functions.put("applicationlist",							"com.naryx.tagfusion.cfm.application.applicationListFunction");
 		functions.put("applicationremove",						"com.naryx.tagfusion.cfm.application.applicationRemoveFunction");
@@ -547,8 +553,11 @@ public class registerTagsExpressions extends java.lang.Object {
 		functions.put("systemfilecachelist",					"com.naryx.tagfusion.expression.function.ext.SystemFileCacheList");
 		functions.put("systemfilecacheflush",					"com.naryx.tagfusion.expression.function.ext.SystemFileCacheFlush");
 		functions.put("systemfilecacheinfo",					"com.naryx.tagfusion.expression.function.ext.SystemFileCacheInfo");
+		functions.put("systemthreadpoolinfo",					"com.naryx.tagfusion.expression.function.ext.SystemThreadPoolInfo");
+		functions.put("systemlockinfo",								"com.naryx.tagfusion.expression.function.ext.SystemLockInfo");
 		functions.put("systemmemory",									"com.naryx.tagfusion.expression.function.ext.SystemMemory");
 		functions.put("sessioncount",									"com.naryx.tagfusion.cfm.application.SessionCountFunction");
+		functions.put("sessionstorageinfo",						"com.naryx.tagfusion.cfm.application.SessionStorageInfoFunction");
 
 		functions.put("logger",												"com.naryx.tagfusion.expression.function.ext.LoggerF");
 		functions.put("gethttpstatuslabel",						"com.naryx.tagfusion.expression.function.GetHttpStatusLabel");
@@ -565,6 +574,8 @@ public class registerTagsExpressions extends java.lang.Object {
 		functions.put("mappingadd",										"com.naryx.tagfusion.cfm.file.mapping.FunctionAddMapping");
 
 		functions.put("http",													"com.naryx.tagfusion.expression.function.remote.Http");
+		functions.put("httpmulti",										"com.naryx.tagfusion.expression.function.remote.HttpMulti");
+		functions.put("httppoolinfo",									"com.naryx.tagfusion.cfm.http.HttpPoolInfoFunction");
 
 		/* FTP functions */
 		functions.put("ftpopen",											"com.naryx.tagfusion.cfm.tag.net.ftp.FtpOpen");
@@ -42,6 +42,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import com.naryx.tagfusion.cfm.engine.ComponentPrototype;
 import com.naryx.tagfusion.cfm.engine.catchDataFactory;
 import com.naryx.tagfusion.cfm.engine.cfCatchData;
 import com.naryx.tagfusion.cfm.engine.cfComponentData;
@@ -73,6 +74,7 @@ public class cfFile implements java.io.Serializable {
 	
 	private transient List<userDefinedFunction> udfList;
 	private transient Map<String,cfmlURI> componentCache;
+	private transient ComponentPrototype componentPrototype;
 
 	private List<String> importPaths;
 
@@ -194,6 +196,21 @@ public class cfFile implements java.io.Serializable {
 		componentCache.put( _name, _path );
 	}
 
+	/**
+	 * The prototype shared by all component instances created from this
+	 * version of the template
+	 */
+	public synchronized ComponentPrototype getComponentPrototype(){
+		if ( componentPrototype == null )
+			componentPrototype = new ComponentPrototype();
+
+		return componentPrototype;
+	}
+
+	public synchronized void setComponentPrototype( ComponentPrototype _prototype ){
+		componentPrototype = _prototype;
+	}
+
 	public cfmlURI getComponentPath( String _name ){
 		if ( componentCache == null ){
 			return null;
@@ -0,0 +1,340 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.cfm.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ProxySelector;
+import java.net.UnknownHostException;
+import java.security.KeyStore;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLContexts;
+import org.apache.http.conn.ssl.X509HostnameVerifier;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
+import org.apache.http.pool.PoolStats;
+
+import com.naryx.tagfusion.cfm.engine.cfEngine;
+import com.naryx.tagfusion.cfm.engine.cfNumberData;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
+import com.naryx.tagfusion.xmlConfig.xmlCFML;
+
+/**
+ * The engine-wide HTTP clients used by CFHTTP, Http() and scheduled tasks.
+ * 
+ * There is one pooled client for the default TLS setup and one for each client
+ * certificate in use; proxies are part of the route, so they share the pool of
+ * the TLS setup they go out with. Connections are kept alive between requests,
+ * limited per route and in total, and closed once they have sat idle for
+ * server.cfhttp.idletimeout seconds. Host lookups are cached for
+ * server.cfhttp.dnsttl seconds.
+ */
+public class HttpClientPool {
+
+	private static final String DEFAULT_POOL = "default";
+
+	private static int	maxTotal		= 200;
+	private static int	maxPerRoute	= 20;
+	private static long	idleTimeout	= 60000;
+	private static long	dnsTtl			= 60000;
+
+	private static final Map<String, Pool>	pools		= new ConcurrentHashMap<String, Pool>();
+	private static final CachingDnsResolver	dns			= new CachingDnsResolver();
+	private static Thread										evictor	= null;
+
+
+	public static synchronized void init( xmlCFML config ) {
+		maxTotal		= Math.max( 1, config.getInt( "server.cfhttp.maxconnections", maxTotal ) );
+		maxPerRoute	= Math.max( 1, config.getInt( "server.cfhttp.maxperroute", maxPerRoute ) );
+		idleTimeout	= Math.max( 1, config.getInt( "server.cfhttp.idletimeout", (int)( idleTimeout / 1000 ) ) ) * 1000L;
+		dnsTtl			= Math.max( 0, config.getInt( "server.cfhttp.dnsttl", (int)( dnsTtl / 1000 ) ) ) * 1000L;
+
+		cfEngine.log( "HttpClientPool: maxconnections=" + maxTotal + "; maxperroute=" + maxPerRoute + "; idletimeout=" + ( idleTimeout / 1000 ) + "s; dnsttl=" + ( dnsTtl / 1000 ) + "s" );
+	}
+
+
+	public static synchronized void shutdown() {
+		if ( evictor != null ) {
+			evictor.interrupt();
+			evictor = null;
+		}
+
+		Iterator<Pool> it = pools.values().iterator();
+		while ( it.hasNext() ) {
+			it.next().close();
+			it.remove();
+		}
+		dns.clear();
+	}
+
+
+	/**
+	 * The client for requests made without a client certificate
+	 */
+	public static CloseableHttpClient getClient() throws Exception {
+		return getPool( DEFAULT_POOL, null, null ).client;
+	}
+
+
+	/**
+	 * The client for requests presenting the given PKCS12 client certificate. The
+	 * pool is keyed on the file, its modification time and the password, so
+	 * replacing the certificate starts a new one.
+	 */
+	public static CloseableHttpClient getClient( File clientCert, String clientPassword ) throws Exception {
+		if ( clientCert == null )
+			return getClient();
+
+		String key = "cert:" + clientCert.getCanonicalPath() + ":" + clientCert.lastModified() + ":" + ( clientPassword == null ? 0 : clientPassword.hashCode() );
+		return getPool( key, clientCert, clientPassword ).client;
+	}
+
+
+	private static Pool getPool( String key, File clientCert, String clientPassword ) throws Exception {
+		Pool pool = pools.get( key );
+		if ( pool == null ) {
+			synchronized ( HttpClientPool.class ) {
+				pool = pools.get( key );
+				if ( pool == null ) {
+					pool = new Pool( key, clientCert == null ? defaultSocketFactory() : certSocketFactory( clientCert, clientPassword ) );
+					pools.put( key, pool );
+					startEvictor();
+				}
+			}
+		}
+
+		pool.lastUsed = System.currentTimeMillis();
+		return pool;
+	}
+
+
+	private static SSLConnectionSocketFactory defaultSocketFactory() throws Exception {
+		X509HostnameVerifier hostVerifier = SSLConnectionSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
+
+		if ( System.getProperty( "com.naryx.cfm.http.X509HostnameVerifier" ) != null ) {
+			String hostnameVerifier = System.getProperty( "com.naryx.cfm.http.X509HostnameVerifier" );
+			cfEngine.log( "-] Using alternative CFHTTP hostname verifier: " + hostnameVerifier );
+			hostVerifier = (X509HostnameVerifier) Class.forName( hostnameVerifier ).newInstance();
+		}
+
+		return new SSLConnectionSocketFactory( SSLContext.getDefault(), hostVerifier );
+	}
+
+
+	private static SSLConnectionSocketFactory certSocketFactory( File clientCert, String clientPassword ) throws Exception {
+		KeyStore keyStore = KeyStore.getInstance( "PKCS12" );
+		char[] password = clientPassword == null ? new char[0] : clientPassword.toCharArray();
+
+		InputStream keyInput = new FileInputStream( clientCert );
+		try {
+			keyStore.load( keyInput, password );
+		} finally {
+			try {
+				keyInput.close();
+			} catch ( IOException ignored ) {
+			}
+		}
+
+		SSLContext sslContext = SSLContexts.custom().loadKeyMaterial( keyStore, password ).build();
+		return new SSLConnectionSocketFactory( sslContext, SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER );
+	}
+
+
+	private static void startEvictor() {
+		if ( evictor != null )
+			return;
+
+		evictor = new Thread( "HttpClientPoolEvictor" ) {
+			public void run() {
+				while ( !isInterrupted() ) {
+					try {
+						Thread.sleep( Math.max( 1000, idleTimeout / 2 ) );
+					} catch ( InterruptedException e ) {
+						break;
+					}
+					evict();
+				}
+			}
+		};
+		evictor.setDaemon( true );
+		evictor.start();
+	}
+
+
+	/**
+	 * Closes connections that have sat idle too long; client certificate pools
+	 * that have not been used for ten idle periods are dropped altogether
+	 */
+	private static void evict() {
+		long now = System.currentTimeMillis();
+
+		Iterator<Pool> it = pools.values().iterator();
+		while ( it.hasNext() ) {
+			Pool pool = it.next();
+			pool.manager.closeExpiredConnections();
+			pool.manager.closeIdleConnections( idleTimeout, TimeUnit.MILLISECONDS );
+
+			if ( !pool.name.equals( DEFAULT_POOL ) && now - pool.lastUsed > idleTimeout * 10 && pool.manager.getTotalStats().getLeased() == 0 ) {
+				it.remove();
+				pool.close();
+			}
+		}
+
+		dns.expire( now );
+	}
+
+
+	public static cfStructData getMetrics() {
+		cfStructData metrics = new cfStructData();
+		metrics.setData( "maxconnections", new cfNumberData( maxTotal ) );
+		metrics.setData( "maxperroute", new cfNumberData( maxPerRoute ) );
+		metrics.setData( "idletimeout", new cfNumberData( idleTimeout / 1000 ) );
+		metrics.setData( "dnsttl", new cfNumberData( dnsTtl / 1000 ) );
+		metrics.setData( "dnscached", new cfNumberData( dns.size() ) );
+
+		cfStructData poolData = new cfStructData();
+		for ( Pool pool : pools.values() ) {
+			PoolStats stats = pool.manager.getTotalStats();
+
+			cfStructData s = new cfStructData();
+			s.setData( "leased", new cfNumberData( stats.getLeased() ) );
+			s.setData( "available", new cfNumberData( stats.getAvailable() ) );
+			s.setData( "pending", new cfNumberData( stats.getPending() ) );
+			s.setData( "max", new cfNumberData( stats.getMax() ) );
+			poolData.setData( pool.name.startsWith( "cert:" ) ? pool.name.substring( 0, pool.name.lastIndexOf( ':' ) ) : pool.name, s );
+		}
+		metrics.setData( "pools", poolData );
+
+		return metrics;
+	}
+
+
+	private static class Pool {
+		final String															name;
+		final PoolingHttpClientConnectionManager	manager;
+		final CloseableHttpClient									client;
+		volatile long															lastUsed;
+
+		Pool( String name, SSLConnectionSocketFactory sslFactory ) {
+			this.name = name;
+
+			Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory> create()
+					.register( "http", PlainConnectionSocketFactory.getSocketFactory() )
+					.register( "https", sslFactory )
+					.build();
+
+			manager = new PoolingHttpClientConnectionManager( registry, dns );
+			manager.setMaxTotal( maxTotal );
+			manager.setDefaultMaxPerRoute( maxPerRoute );
+
+			// every request brings its own cookie store, credentials and proxy; the
+			// pool is already split by client certificate, so connection state is not tracked
+			client = HttpClientBuilder.create()
+					.setConnectionManager( manager )
+					.setRoutePlanner( new SystemDefaultRoutePlanner( ProxySelector.getDefault() ) )
+					.disableConnectionState()
+					.build();
+		}
+
+		void close() {
+			try {
+				client.close();
+			} catch ( IOException ignored ) {
+			}
+			manager.shutdown();
+		}
+	}
+
+
+	/**
+	 * Remembers successful lookups for dnsttl; failures are not cached
+	 */
+	private static class CachingDnsResolver implements DnsResolver {
+		private final Map<String, Resolved> cache = new ConcurrentHashMap<String, Resolved>();
+
+		public InetAddress[] resolve( String host ) throws UnknownHostException {
+			if ( dnsTtl <= 0 )
+				return SystemDefaultDnsResolver.INSTANCE.resolve( host );
+
+			long now = System.currentTimeMillis();
+			Resolved resolved = cache.get( host );
+			if ( resolved != null && resolved.expires > now )
+				return resolved.addresses.clone();
+
+			InetAddress[] addresses = SystemDefaultDnsResolver.INSTANCE.resolve( host );
+			cache.put( host, new Resolved( addresses, now + dnsTtl ) );
+			return addresses.clone();
+		}
+
+		void expire( long now ) {
+			Iterator<Resolved> it = cache.values().iterator();
+			while ( it.hasNext() ) {
+				if ( it.next().expires <= now )
+					it.remove();
+			}
+		}
+
+		int size() {
+			return cache.size();
+		}
+
+		void clear() {
+			cache.clear();
+		}
+	}
+
+	private static class Resolved {
+		final InetAddress[]	addresses;
+		final long					expires;
+
+		Resolved( InetAddress[] addresses, long expires ) {
+			this.addresses	= addresses;
+			this.expires		= expires;
+		}
+	}
+}
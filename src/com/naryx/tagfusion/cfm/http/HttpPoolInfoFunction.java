@@ -0,0 +1,60 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.cfm.http;
+
+import com.naryx.tagfusion.cfm.engine.cfArgStructData;
+import com.naryx.tagfusion.cfm.engine.cfData;
+import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.expression.function.functionBase;
+
+public class HttpPoolInfoFunction extends functionBase {
+	private static final long serialVersionUID = 1L;
+
+	public HttpPoolInfoFunction() {
+		min = max = 0;
+	}
+
+	public String[] getParamInfo() {
+		return new String[] {};
+	}
+
+
+	public java.util.Map getInfo(){
+		return makeInfo(
+				"remote", 
+				"Returns details on the shared connection pools used by CFHTTP, Http() and scheduled tasks {maxconnections, maxperroute, idletimeout, dnsttl, dnscached, pools}; each pool has {leased, available, pending, max}", 
+				ReturnType.STRUCTURE );
+	}
+
+	public cfData execute( cfSession _session, cfArgStructData argStruct ) throws cfmRunTimeException{
+		return HttpClientPool.getMetrics();
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.cfm.http;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.naryx.tagfusion.cfm.engine.cfSession;
+
+/**
+ * The body of a CFHTTP response made with RESPONSETYPE=STREAM.
+ * 
+ * It is handed to the page as cfhttp.filecontent while the connection is still
+ * reading, so a large body can be worked through a line or a block at a time
+ * without holding it in memory. Closing it hands the connection back to the
+ * pool; whatever the page leaves open is closed when the request ends.
+ */
+public class HttpResponseStream extends InputStream {
+
+	static final String DATA_BIN_KEY = "CFHTTP_STREAMS";
+
+	private final Closeable		response;
+	private final InputStream	in;
+	private final String			charset;
+	private BufferedReader		reader;
+	private String						nextLine;
+	private boolean						closed = false;
+
+	HttpResponseStream( Closeable response, InputStream in, String charset ) {
+		this.response	= response;
+		this.in				= in;
+		this.charset	= charset;
+	}
+
+
+	/**
+	 * Keeps track of the stream so that it gets closed at the end of the request
+	 */
+	@SuppressWarnings("unchecked")
+	void register( cfSession session ) {
+		if ( session == null )
+			return;
+
+		List<HttpResponseStream> streams = (List<HttpResponseStream>) session.getDataBin( DATA_BIN_KEY );
+		if ( streams == null ) {
+			streams = new ArrayList<HttpResponseStream>( 2 );
+			session.setDataBin( DATA_BIN_KEY, streams );
+		}
+		streams.add( this );
+	}
+
+
+	/**
+	 * Called at the end of the request for anything the page left open
+	 */
+	@SuppressWarnings("unchecked")
+	public static void closeAll( cfSession session ) {
+		List<HttpResponseStream> streams = (List<HttpResponseStream>) session.getDataBin( DATA_BIN_KEY );
+		if ( streams == null )
+			return;
+
+		session.deleteDataBin( DATA_BIN_KEY );
+		for ( int x = 0; x < streams.size(); x++ ) {
+			try {
+				streams.get( x ).close();
+			} catch ( IOException ignore ) {}
+		}
+	}
+
+
+	public String getCharset() {
+		return charset;
+	}
+
+
+	public BufferedReader getReader() throws UnsupportedEncodingException {
+		if ( reader == null )
+			reader = new BufferedReader( new InputStreamReader( this, charset ), 8192 );
+		return reader;
+	}
+
+
+	/**
+	 * Returns the next line, or null once the body has been read
+	 */
+	public String readLine() throws IOException {
+		if ( nextLine != null ) {
+			String line = nextLine;
+			nextLine = null;
+			return line;
+		}
+		return getReader().readLine();
+	}
+
+
+	public boolean hasNextLine() throws IOException {
+		if ( nextLine == null )
+			nextLine = getReader().readLine();
+		return nextLine != null;
+	}
+
+
+	public String nextLine() throws IOException {
+		String line = readLine();
+		if ( line == null )
+			throw new IOException( "no more lines in the response" );
+		return line;
+	}
+
+
+	public int read() throws IOException {
+		return in.read();
+	}
+
+
+	public int read( byte[] b, int off, int len ) throws IOException {
+		return in.read( b, off, len );
+	}
+
+
+	public int available() throws IOException {
+		return in.available();
+	}
+
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+
+	public void close() throws IOException {
+		if ( closed )
+			return;
+
+		// closing the response rather than the entity stream drops the connection
+		// without reading the rest of a body the page has finished with
+		closed = true;
+		response.close();
+	}
+}
@@ -70,6 +70,7 @@ public class cfHTTP extends cfTag implements cfOptionalBodyTag, java.io.Serializ
 				createAttInfo( "RESOLVEURL", 						"Controls if the internal links are resolved", "false", false ), 
 				createAttInfo( "REDIRECT", 							"Automatically follow the redirects from the remote server", "true", true ), 
 				createAttInfo( "GETASBINARY", 					"Return the body back as a binary object", "false", false ), 
+				createAttInfo( "RESPONSETYPE", 					"BUFFER reads the whole body into FILECONTENT; STREAM makes FILECONTENT a stream to read from (readLine(), hasNextLine(), read(), close()); JSON parses the body into CFML data as it arrives. Ignored when FILE/PATH is given", "BUFFER", false ), 
 				createAttInfo( "THROWONERROR", 					"If an error occurs throw an exception", "false", false ), 
 				createAttInfo( "PORT", 									"Override the port to connect to", "", false ), 
 				createAttInfo( "USERAGENT", 						"The UserAgent string to use for the request", "BlueDragon", false ), 
@@ -100,6 +101,7 @@ public class cfHTTP extends cfTag implements cfOptionalBodyTag, java.io.Serializ
 	protected void defaultParameters( String _tag ) throws cfmBadFileException {
 		defaultAttribute( "RESOLVEURL", 		"false" );
 		defaultAttribute( "GETASBINARY", 		"no" );
+		defaultAttribute( "RESPONSETYPE", 	"buffer" );
 		defaultAttribute( "REDIRECT", 			"true" );
 		defaultAttribute( "THROWONERROR", 	"no" );
 		defaultAttribute( "PORT", 					-1 );
@@ -251,6 +253,7 @@ public class cfHTTP extends cfTag implements cfOptionalBodyTag, java.io.Serializ
 
 			httpConnection.setGetAsBinary( getDynamic( attributes, _Session, "GETASBINARY" ).getString().toLowerCase() );
 			httpConnection.setResolveLinks( getDynamic( attributes, _Session, "RESOLVEURL" ).getBoolean() );
+			httpConnection.setResponseType( getDynamic( attributes, _Session, "RESPONSETYPE" ).getString().toLowerCase() );
 			httpConnection.connect();
 
 		} finally {
@@ -37,36 +37,37 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
-import java.net.ProxySelector;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
-import java.security.KeyManagementException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import javax.net.ssl.KeyManagerFactory;
-import javax.net.ssl.SSLContext;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
-import org.apache.http.HttpVersion;
 import org.apache.http.StatusLine;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.CookieStore;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
@@ -76,18 +77,9 @@ import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpTrace;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.client.params.ClientPNames;
-import org.apache.http.client.params.CookiePolicy;
-import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.URIUtils;
-import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.ConnectTimeoutException;
-import org.apache.http.conn.params.ConnRoutePNames;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.ssl.SSLSocketFactory;
-import org.apache.http.conn.ssl.X509HostnameVerifier;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
@@ -95,17 +87,9 @@ import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.StringBody;
 import org.apache.http.impl.client.BasicCookieStore;
-import org.apache.http.impl.client.ContentEncodingHttpClient;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.ProxySelectorRoutePlanner;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.cookie.BasicClientCookie;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpParams;
-import org.apache.http.params.HttpProtocolParams;
-import org.apache.http.protocol.BasicHttpContext;
-import org.apache.http.protocol.HTTP;
-import org.apache.http.protocol.HttpContext;
 import org.aw20.io.StreamUtil;
 import org.aw20.util.StringUtil;
 
@@ -124,6 +108,7 @@ import com.naryx.tagfusion.cfm.engine.cfStringData;
 import com.naryx.tagfusion.cfm.engine.cfStructData;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
 import com.naryx.tagfusion.cfm.file.fileDescriptor;
+import com.naryx.tagfusion.expression.function.string.DeserializeJSONJackson;
 
 /*
  * Created on each render of a CFHTTP tag
@@ -132,31 +117,11 @@ import com.naryx.tagfusion.cfm.file.fileDescriptor;
 @SuppressWarnings("deprecation")
 public class cfHttpConnection implements cfHttpConnectionI {
 
-	private static Scheme					https;
-	private static SchemeRegistry	scheme;
-	static {
-		try {
-			X509HostnameVerifier hostVerifier = SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
-
-			if ( System.getProperty( "com.naryx.cfm.http.X509HostnameVerifier" ) != null ) {
-				String hostnameVerifier = System.getProperty( "com.naryx.cfm.http.X509HostnameVerifier" );
-				cfEngine.log( "-] Using alternative CFHTTP hostname verifier: " + hostnameVerifier );
-				hostVerifier = ( X509HostnameVerifier )Class.forName( hostnameVerifier ).newInstance();
-			}
-
-			SSLContext sslcontext = SSLContext.getDefault();
-			SSLSocketFactory socketFactory = new SSLSocketFactory( sslcontext, hostVerifier );
-
-			https = new Scheme( "https", 443, socketFactory );
-			scheme = new SchemeRegistry();
-			scheme.register( https );
-
-		} catch ( Exception e ) {
-			cfEngine.log( "-] Failed due to " + e.getClass().getName() + ": " + e.getMessage() );
-		}
-	}
-
-	private DefaultHttpClient			client;
+	private CloseableHttpClient		client;
+	private RequestConfig.Builder	requestConfig;
+	private HttpClientContext			context;
+	private CredentialsProvider		credentials;
+	private CloseableHttpResponse	response;
 	private HttpUriRequest				message;
 	private boolean								isMultipart;
 
@@ -170,16 +135,24 @@ public class cfHttpConnection implements cfHttpConnectionI {
 
 	public cfHttpConnection( cfSession _session, cfHttpData _httpData, File _clientCert, String _clientPassword ) throws cfmRunTimeException {
 		init( _session, _httpData );
-		if ( _clientCert != null ) {
-			try {
-				client = getHttpClient( _clientCert, _clientPassword );
-			} catch ( Exception e ) {
+		try {
+			client = HttpClientPool.getClient( _clientCert, _clientPassword );
+		} catch ( Exception e ) {
+			if ( _clientCert != null )
 				throw newRunTimeException( "Failed to instantiate http client due to certificate issue. " + e.getClass().getName() + " was thrown: " + e.getMessage() );
-			}
-		} else {
-			client = new ContentEncodingHttpClient();
+			else
+				throw newRunTimeException( "Failed to instantiate http client. " + e.getClass().getName() + " was thrown: " + e.getMessage() );
 		}
-		client.getParams().setBooleanParameter( ClientPNames.ALLOW_CIRCULAR_REDIRECTS, true );
+
+		// the client is shared; everything particular to this request goes in its config and context
+		requestConfig = RequestConfig.custom()
+				.setCircularRedirectsAllowed( true )
+				.setMaxRedirects( 5 )
+				.setCookieSpec( CookieSpecs.BROWSER_COMPATIBILITY );
+
+		credentials = new BasicCredentialsProvider();
+		context = HttpClientContext.create();
+		context.setCredentialsProvider( credentials );
 		resolveLinks = false;
 	}
 
@@ -223,22 +196,21 @@ public class cfHttpConnection implements cfHttpConnectionI {
 	public void setProxyServer( String _proxyServer, int _proxyPort ) {
 		proxyServer = _proxyServer;
 		proxyPort = _proxyPort;
-		HttpHost proxy = new HttpHost( proxyServer, proxyPort );
-		client.getParams().setParameter( ConnRoutePNames.DEFAULT_PROXY, proxy );
+		requestConfig.setProxy( new HttpHost( proxyServer, proxyPort ) );
 	}
 
 
 
 	@Override
 	public void authenticate( String _user, String _password ) {
-		client.getCredentialsProvider().setCredentials( AuthScope.ANY, new UsernamePasswordCredentials( _user, _password ) );
+		credentials.setCredentials( AuthScope.ANY, new UsernamePasswordCredentials( _user, _password ) );
 	}
 
 
 
 	@Override
 	public void authenticateProxy( String _user, String _password ) {
-		client.getCredentialsProvider().setCredentials( new AuthScope( proxyServer, proxyPort ), new UsernamePasswordCredentials( _user, _password ) );
+		credentials.setCredentials( new AuthScope( proxyServer, proxyPort ), new UsernamePasswordCredentials( _user, _password ) );
 	}
 
 
@@ -246,51 +218,14 @@ public class cfHttpConnection implements cfHttpConnectionI {
 	@Override
 	public void setFollowRedirects( boolean _follow ) {
 		followRedirects = _follow;
-		client.getParams().setParameter( "http.protocol.handle-redirects", followRedirects );
+		requestConfig.setRedirectsEnabled( followRedirects );
 	}
 
 
 
 	@Override
 	public void setTimeout( int _timeout ) {
-		client.getParams().setParameter( "http.connection.timeout", _timeout );
-		client.getParams().setParameter( "http.socket.timeout", _timeout );
-	}
-
-
-
-	private DefaultHttpClient getHttpClient( File pKeyFile, String pKeyPassword ) throws NoSuchAlgorithmException, KeyStoreException, CertificateException, IOException, UnrecoverableKeyException, KeyManagementException {
-		KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance( "SunX509" );
-		KeyStore keyStore = KeyStore.getInstance( "PKCS12" );
-
-		InputStream keyInput = null;
-		try {
-			keyInput = new FileInputStream( pKeyFile );
-			keyStore.load( keyInput, pKeyPassword.toCharArray() );
-		} finally {
-			if ( keyInput != null )
-				try {
-					keyInput.close();
-				} catch ( IOException ignored ) {
-				}
-		}
-
-		keyManagerFactory.init( keyStore, pKeyPassword.toCharArray() );
-
-		SSLSocketFactory sf = new SSLSocketFactory( keyStore, pKeyPassword );
-		sf.setHostnameVerifier( SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER );
-
-		HttpParams params = new BasicHttpParams();
-		HttpProtocolParams.setVersion( params, HttpVersion.HTTP_1_1 );
-		HttpProtocolParams.setContentCharset( params, HTTP.UTF_8 );
-
-		SchemeRegistry registry = new SchemeRegistry();
-		registry.register( new Scheme( "http", PlainSocketFactory.getSocketFactory(), 80 ) );
-		registry.register( new Scheme( "https", sf, 443 ) );
-
-		ClientConnectionManager ccm = new ThreadSafeClientConnManager( params, registry );
-
-		return new DefaultHttpClient( ccm, params );
+		requestConfig.setConnectTimeout( _timeout ).setSocketTimeout( _timeout ).setConnectionRequestTimeout( _timeout );
 	}
 
 
@@ -305,7 +240,6 @@ public class cfHttpConnection implements cfHttpConnectionI {
 		addFormData();
 		addFiles();
 		setBody();
-		setDefaultProxy();
 
 		// if we are building up a multipart then we should add this to the message
 		if ( multipartEntityBuilder != null ){
@@ -317,12 +251,10 @@ public class cfHttpConnection implements cfHttpConnectionI {
 
 		// Execute the method.
 		int statusCode = -1;
-		int redirectLimit = 5;
-		HttpResponse response;
 		try {
-			client.getParams().setParameter( "http.protocol.max-redirects", redirectLimit );
+			( ( HttpRequestBase )message ).setConfig( requestConfig.build() );
 
-			response = client.execute( message );
+			response = client.execute( message, context );
 			statusCode = response.getStatusLine().getStatusCode();
 
 		} catch ( ConnectTimeoutException ce ) {
@@ -356,17 +288,6 @@ public class cfHttpConnection implements cfHttpConnectionI {
 
 
 
-	private void setDefaultProxy() {
-		HttpHost currentProxy = ( HttpHost )client.getParams().getParameter( ConnRoutePNames.DEFAULT_PROXY );
-
-		if ( currentProxy == null ) {
-			ProxySelectorRoutePlanner routePlanner = new ProxySelectorRoutePlanner( client.getConnectionManager().getSchemeRegistry(), ProxySelector.getDefault() );
-			client.setRoutePlanner( routePlanner );
-		}
-	}
-
-
-
 	private void handleResponse( HttpResponse response, int _statusCode ) throws cfmRunTimeException {
 		// if the status code is not 2xx and throwOnError is true then throw an exception
 		if ( throwOnError && ( _statusCode < 200 || _statusCode > 299 ) ) {
@@ -423,6 +344,19 @@ public class cfHttpConnection implements cfHttpConnectionI {
 			httpData.setData( "charset", new cfStringData( "" ) );
 		}
 
+		// the body can be handed over unread, or parsed as it arrives, rather than buffered
+		if ( outFile == null && response.getEntity() != null ) {
+			if ( responseType.equals( "stream" ) ) {
+				handleStream( response, _statusCode, charsetFromHeader );
+				return;
+			} else if ( responseType.equals( "json" ) ) {
+				handleJson( response, _statusCode, charsetFromHeader );
+				return;
+			} else if ( !responseType.equals( "buffer" ) ) {
+				throw newRunTimeException( "Invalid RESPONSETYPE value specified: " + responseType + ". Supported values are BUFFER, STREAM and JSON." );
+			}
+		}
+
 		byte[] responseBody = getResponseBody( response, outFile );
 		if ( responseBody == null ) {
 			throw newRunTimeException( "Failed to read response body." );
@@ -471,9 +405,111 @@ public class cfHttpConnection implements cfHttpConnectionI {
 
 
 
+	/**
+	 * RESPONSETYPE=STREAM; the page gets the body as a HttpResponseStream, and
+	 * the connection stays with it until it is closed or the request ends
+	 */
+	private void handleStream( HttpResponse _response, int _statusCode, String _charsetFromHeader ) throws cfmRunTimeException {
+		String encoding = getResponseEncoding( _charsetFromHeader );
+		HttpResponseStream stream;
+		try {
+			stream = new HttpResponseStream( response, _response.getEntity().getContent(), encoding == null ? "UTF-8" : encoding );
+		} catch ( IOException e ) {
+			throw newRunTimeException( "Failed to read response body: " + e.getMessage() );
+		}
+
+		// the stream now owns the response, so close() must leave it be
+		response = null;
+		stream.register( session );
+
+		httpData.setData( "filecontent", new cfJavaObjectData( stream ) );
+		httpData.setData( "statuscode", new cfStringData( _statusCode + " " + _response.getStatusLine().getReasonPhrase() ) );
+		httpData.setData( "errordetail", new cfStringData( "" ) );
+		httpData.setData( "text", cfBooleanData.FALSE );
+
+		cleanHttpData();
+	}
+
+
+
+	/**
+	 * RESPONSETYPE=JSON; the entity stream goes straight into the JSON parser, so
+	 * the body is never held as bytes or text
+	 */
+	private void handleJson( HttpResponse _response, int _statusCode, String _charsetFromHeader ) throws cfmRunTimeException {
+		String encoding = getResponseEncoding( _charsetFromHeader );
+		cfData fileContent;
+		String errorDetail = "";
+
+		JsonParser jp = null;
+		try {
+			InputStream in = _response.getEntity().getContent();
+			JsonFactory f = DeserializeJSONJackson.getFactory();
+
+			// Jackson works out UTF-8/16/32 from the bytes itself; anything else is decoded first
+			if ( encoding == null || encoding.toUpperCase().startsWith( "UTF" ) )
+				jp = f.createParser( in );
+			else
+				jp = f.createParser( new InputStreamReader( in, encoding ) );
+
+			fileContent = DeserializeJSONJackson.parse( jp, true );
+
+		} catch ( JsonParseException e ) {
+			errorDetail = "[Invalid JSON] Line=" + e.getLocation().getLineNr() + "; Column=" + e.getLocation().getColumnNr() + "; Offset=" + e.getLocation().getByteOffset();
+			if ( throwOnError )
+				throw newRunTimeException( errorDetail );
+			fileContent = cfStringData.EMPTY_STRING;
+		} catch ( IOException e ) {
+			throw newRunTimeException( "Failed to read response body: " + e.getMessage() );
+		} finally {
+			if ( jp != null ) {
+				try {
+					jp.close();
+				} catch ( IOException ignored ) {}
+			}
+		}
+
+		httpData.setData( "filecontent", fileContent );
+		httpData.setData( "statuscode", new cfStringData( _statusCode + " " + _response.getStatusLine().getReasonPhrase() ) );
+		httpData.setData( "errordetail", new cfStringData( errorDetail ) );
+		httpData.setData( "text", fileContent.getDataType() == cfData.CFSTRINGDATA ? cfBooleanData.TRUE : cfBooleanData.FALSE );
+
+		cleanHttpData();
+	}
+
+
+
+	/**
+	 * The Java encoding for the body: CHARSET if given, else the one in the
+	 * Content-Type; null if neither
+	 */
+	private String getResponseEncoding( String _charsetFromHeader ) {
+		String useCharset = ( charset == null ) ? _charsetFromHeader : charset.toString();
+		if ( useCharset == null || useCharset.length() == 0 )
+			return null;
+		return com.nary.util.Localization.convertCharSetToCharEncoding( useCharset );
+	}
+
+
+
+	/**
+	 * Abandons the request from another thread; the thread in connect() sees an
+	 * IOException and finishes as it would for any other connection failure
+	 */
+	public void abort() {
+		if ( message instanceof HttpRequestBase )
+			( ( HttpRequestBase )message ).abort();
+	}
+
+
+
 	@Override
 	public void close() throws IOException {
-		client.getConnectionManager().shutdown();
+		// hands the connection back to the pool, or closes it if the response was not read to the end
+		if ( response != null ) {
+			response.close();
+			response = null;
+		}
 	}
 
 
@@ -654,9 +690,14 @@ public class cfHttpConnection implements cfHttpConnectionI {
 				InputStream in = _response.getEntity().getContent();
 
 				if ( file != null ) {
+					// straight from the connection into the file, a block at a time
 					FileOutputStream out = new FileOutputStream( file );
 					try {
-						StreamUtil.copyTo( in, out );
+						FileChannel fileChannel = out.getChannel();
+						ReadableByteChannel source = Channels.newChannel( in );
+						long position = 0, copied;
+						while ( ( copied = fileChannel.transferFrom( source, position, 1024 * 1024 ) ) > 0 )
+							position += copied;
 					} finally {
 						out.close();
 					}
@@ -682,8 +723,6 @@ public class cfHttpConnection implements cfHttpConnectionI {
 		// There is no need to add HOST header since this is done by the
 		// "Jakarta Commons-HttpClient" HttpClient class.
 
-		message.addHeader( "Connection", "close" );
-
 		Map<String, String> headers = httpData.getHeaders();
 		Iterator<String> keys = headers.keySet().iterator();
 		boolean addUserAgent = true;
@@ -714,12 +753,6 @@ public class cfHttpConnection implements cfHttpConnectionI {
 		domain = message.getURI().getHost();
 		CookieStore cookieStore = new BasicCookieStore();
 
-		HttpContext localContext = new BasicHttpContext();
-
-		// Bind custom cookie store to the local context
-		localContext.setAttribute( ClientContext.COOKIE_STORE, cookieStore );
-		client.getParams().setParameter( ClientPNames.COOKIE_POLICY, CookiePolicy.BROWSER_COMPATIBILITY );
-
 		while ( keys.hasNext() ) {
 			String nextKey = keys.next();
 			List<String> values = cookies.get( nextKey );
@@ -734,7 +767,7 @@ public class cfHttpConnection implements cfHttpConnectionI {
 				cookie.setSecure( false );
 			}
 		}
-		client.setCookieStore( cookieStore );
+		context.setCookieStore( cookieStore );
 	}
 
 
@@ -774,8 +807,12 @@ public class cfHttpConnection implements cfHttpConnectionI {
 
 	protected boolean				throwOnError;
 
+	protected boolean				detached = false;
+
 	protected String				getAsBinary;
 
+	protected String				responseType = "buffer";
+
 	protected File					outFile	= null;
 
 	protected queryDetails	query		= null;
@@ -864,7 +901,8 @@ public class cfHttpConnection implements cfHttpConnectionI {
 
 
 	protected cfmRunTimeException newRunTimeException( String _msg ) {
-		cfCatchData catchData = new cfCatchData( session );
+		// a detached exchange is running on another thread, so must not go reading the session's tag stack
+		cfCatchData catchData = detached ? new cfCatchData() : new cfCatchData( session );
 		catchData.setMessage( _msg );
 		return new cfmRunTimeException( catchData );
 	}
@@ -908,6 +946,16 @@ public class cfHttpConnection implements cfHttpConnectionI {
 
 
 
+	/**
+	 * Marks the connection as run off the request's own thread; from then on it
+	 * leaves the session alone
+	 */
+	public void setDetached( boolean b ) {
+		detached = b;
+	}
+
+
+
 	@Override
 	public void setFile( File _out ) {
 		outFile = _out;
@@ -954,14 +1002,7 @@ public class cfHttpConnection implements cfHttpConnectionI {
 
 
 	protected void handleError( String _error, String _content ) {
-		httpData.setData( "charset", new cfStringData( "" ) );
-		httpData.setData( "errordetail", new cfStringData( _error ) );
-		httpData.setData( "filecontent", new cfStringData( _content ) );
-		httpData.setData( "header", new cfStructData() );
-		httpData.setData( "mimetype", new cfStringData( "Unable to determine MIME type of file" ) );
-		httpData.setData( "responseheader", new cfStructData() );
-		httpData.setData( "statuscode", new cfStringData( "Status code unavailable" ) );
-		httpData.setData( "text", cfBooleanData.TRUE );
+		httpData.setError( _error, _content );
 	}
 
 
@@ -1005,6 +1046,13 @@ public class cfHttpConnection implements cfHttpConnectionI {
 
 
 
+	@Override
+	public void setResponseType( String _type ) {
+		responseType = _type;
+	}
+
+
+
 	@Override
 	public void setResolveLinks( boolean _resolve ) {
 		resolveLinks = _resolve;
@@ -38,6 +38,7 @@ public interface cfHttpConnectionI {
 
 	public void setThrowOnError(boolean boolean1);
 	public void setMethod(String methodStr, boolean boolean1) throws cfmRunTimeException;
+	public void setResponseType(String lowerCase);
 	public void setURL(String url, int port) throws cfmRunTimeException ;
 	public void setProxyServer(String proxyserver, int proxyPort);
 	public void setUserAgent(String string);
@@ -38,6 +38,8 @@ import java.util.Map;
 
 import com.nary.net.http.urlEncoder;
 import com.nary.util.FastMap;
+import com.naryx.tagfusion.cfm.engine.cfBooleanData;
+import com.naryx.tagfusion.cfm.engine.cfStringData;
 import com.naryx.tagfusion.cfm.engine.cfStructData;
 import com.naryx.tagfusion.cfm.file.fileDescriptor;
 
@@ -91,6 +93,20 @@ public class cfHttpData extends cfStructData implements Serializable{
   public String getCharset(){
   	return charset;
   }
+
+  /**
+   * Fills in the result as CFHTTP does when no response could be had
+   */
+  public void setError( String _error, String _content ){
+    setData( "charset", new cfStringData( "" ) );
+    setData( "errordetail", new cfStringData( _error ) );
+    setData( "filecontent", new cfStringData( _content ) );
+    setData( "header", new cfStructData() );
+    setData( "mimetype", new cfStringData( "Unable to determine MIME type of file" ) );
+    setData( "responseheader", new cfStructData() );
+    setData( "statuscode", new cfStringData( "Status code unavailable" ) );
+    setData( "text", cfBooleanData.TRUE );
+  }
   
   public void setUsesGet(boolean _usesGet){
     usesGet = _usesGet;
@@ -118,6 +118,14 @@ public class CFBinaryExpression extends CFExpression implements java.io.Serializ
 			}
 		}
 
+		// whole number arithmetic is done on longs, without going through double
+		if ( rightVal instanceof cfNumberData && leftVal instanceof cfNumberData ) {
+			val = evaluateInt(_kind, (cfNumberData) leftVal, (cfNumberData) rightVal);
+			if ( val != null ) {
+				return context._lastExpr = val;
+			}
+		}
+
 		// Convert the operands to appropriate types
 		switch (_kind) {
 
@@ -456,7 +464,7 @@ public class CFBinaryExpression extends CFExpression implements java.io.Serializ
 		// Construct the expression value
 		switch (valType) {
 		case _NUM:
-			val = new cfNumberData(valNum);
+			val = cfNumberData.valueOf(valNum);
 			break;
 
 		case _STR:
@@ -502,6 +510,13 @@ public class CFBinaryExpression extends CFExpression implements java.io.Serializ
 		// boolean
 		int valType = _ERR;
 
+		if ( _left instanceof cfNumberData && _right instanceof cfNumberData ) {
+			cfData val = evaluateInt(_op, (cfNumberData) _left, (cfNumberData) _right);
+			if ( val != null ) {
+				return val;
+			}
+		}
+
 		switch (_op) {
 
 		// numeric operations
@@ -595,7 +610,7 @@ public class CFBinaryExpression extends CFExpression implements java.io.Serializ
 		// Construct the expression value
 		switch (valType) {
 		case _NUM:
-			val = new cfNumberData(valNum);
+			val = cfNumberData.valueOf(valNum);
 			break;
 
 		case _STR:
@@ -614,6 +629,41 @@ public class CFBinaryExpression extends CFExpression implements java.io.Serializ
 		return val;
 	}
 
+	/**
+	 * Arithmetic on two int operands. The result stays an int when it fits, which
+	 * for the common small values means one of the shared cfNumberData instances.
+	 * Returns null when the operation has to take the general (double) path.
+	 */
+	private static cfData evaluateInt( int _op, cfNumberData _left, cfNumberData _right ) {
+		if ( !_left.isInt() || !_right.isInt() ) {
+			return null;
+		}
+
+		long leftNum = _left.getInt();
+		long rightNum = _right.getInt();
+
+		switch (_op) {
+		case CFMLLexer.PLUS:
+			return cfNumberData.valueOf(leftNum + rightNum);
+
+		case CFMLLexer.MINUS:
+			return cfNumberData.valueOf(leftNum - rightNum);
+
+		case CFMLLexer.STAR:
+			return cfNumberData.valueOf(leftNum * rightNum);
+
+		case CFMLLexer.MOD:
+			// leave the divide by zero to the general path
+			if ( rightNum != 0 ) {
+				return cfNumberData.valueOf(leftNum % rightNum);
+			}
+			return null;
+
+		default:
+			return null;
+		}
+	}
+
 	public String Decompile( int indent ) {
 		String endChar = "";
 		if ( _kind == CFMLLexer.LEFTBRACKET ) {
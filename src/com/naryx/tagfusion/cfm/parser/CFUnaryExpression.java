@@ -73,7 +73,7 @@ public class CFUnaryExpression extends CFExpression implements
 				// if subVal is a numeric then we know it's safe to apply the MINUS
 				if ( subVal.getDataType() == cfData.CFNUMBERDATA ) {
 					if ( ((cfNumberData) subVal).isInt() ) {
-						val = new cfNumberData(subVal.getInt() * -1);
+						val = cfNumberData.valueOf(-(long) subVal.getInt());
 					} else {
 						val = new cfNumberData(subVal.getDouble() * -1.0);
 					}
@@ -129,7 +129,7 @@ public class CFUnaryExpression extends CFExpression implements
 		cfData returnVal;
 		cfNumberData newValue;
 		if ( numVal.isInt() ) {
-			newValue = new cfNumberData(numVal.getInt() + _additive);
+			newValue = cfNumberData.valueOf((long) numVal.getInt() + _additive);
 		} else {
 			newValue = new cfNumberData(numVal.getDouble() + (double) _additive);
 		}
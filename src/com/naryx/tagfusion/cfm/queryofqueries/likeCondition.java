@@ -38,18 +38,13 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.oro.text.regex.MalformedPatternException;
-import org.apache.oro.text.regex.Pattern;
-import org.apache.oro.text.regex.PatternCompiler;
-import org.apache.oro.text.regex.PatternMatcher;
-import org.apache.oro.text.regex.PatternMatcherInput;
-import org.apache.oro.text.regex.Perl5Compiler;
-import org.apache.oro.text.regex.Perl5Matcher;
 
 import com.nary.util.string;
 import com.naryx.tagfusion.cfm.engine.cfData;
 import com.naryx.tagfusion.cfm.engine.cfEngine;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
 import com.naryx.tagfusion.cfm.engine.dataNotSupportedException;
+import com.naryx.tagfusion.expression.function.string.RegexCache;
  
 class likeCondition extends condition{
 
@@ -84,27 +79,15 @@ class likeCondition extends condition{
 		String strToSearch = _str1.getString();
  		String likeString = getLikeExpression( _str2 );
 		
-		PatternMatcher matcher;
- 		PatternCompiler compiler;
- 		Pattern pattern;
- 		PatternMatcherInput input;
-
- 		compiler = new Perl5Compiler();
- 		matcher  = new Perl5Matcher();
+		RegexCache.Regex pattern;
 
 		try {
-			pattern = compiler.compile( likeString );
+			pattern = RegexCache.getPattern( likeString, 0 );
  		} catch( MalformedPatternException e ) {
    		return false;
 		}
 		
-		input   = new PatternMatcherInput( strToSearch );
-		
-		if( matcher.matches( input, pattern ) ) {
-   		return true;
-		}else{
-			return false;
-		}
+		return pattern.matches( strToSearch );
 	}
 	
 	
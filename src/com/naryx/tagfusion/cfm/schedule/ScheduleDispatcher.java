@@ -0,0 +1,503 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.cfm.schedule;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.naryx.tagfusion.cfm.engine.cfArrayData;
+import com.naryx.tagfusion.cfm.engine.cfBooleanData;
+import com.naryx.tagfusion.cfm.engine.cfDateData;
+import com.naryx.tagfusion.cfm.engine.cfEngine;
+import com.naryx.tagfusion.cfm.engine.cfNumberData;
+import com.naryx.tagfusion.cfm.engine.cfStringData;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
+import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.xmlConfig.xmlCFML;
+
+/**
+ * Runs scheduled jobs, for CFSCHEDULE and anything else that needs a clock
+ * (the crontab plugin), at the time they are due.
+ * 
+ * Jobs sit in a queue ordered by their next run time; a single dispatcher
+ * thread sleeps until the earliest of them is due and hands it to a bounded
+ * worker pool, working out the job's next run time as it does so. A slow job
+ * therefore never holds up any other.
+ * 
+ * Per job, what happens when it comes due while its previous run is still
+ * going (overlap) and when it is picked up late (misfire) can be set:
+ * 
+ * 		Overlap.SKIP		the run is skipped
+ * 		Overlap.QUEUE		the job runs again as soon as the current run finishes
+ * 
+ * 		Misfire.FIRE		a late job still runs, once, however many runs were missed
+ * 		Misfire.SKIP		a job more than the misfire threshold late does not run
+ * 
+ * 		server.cfschedule.threads						worker threads; defaults to 4
+ * 		server.cfschedule.queuesize					runs waiting for a worker; defaults to 100
+ * 		server.cfschedule.misfirethreshold		seconds late before a run is a misfire; defaults to 60
+ */
+public class ScheduleDispatcher {
+
+	public enum Overlap { SKIP, QUEUE }
+	public enum Misfire { FIRE, SKIP }
+
+	/**
+	 * Something that can be run on a schedule
+	 */
+	public interface Job {
+		public String getName();
+
+		/**
+		 * Works out when the job should next run; returns the absolute time, or 0 or
+		 * less if it is not to run again
+		 * 
+		 * @param alreadyRun true if the job has just been dispatched for its current run time
+		 */
+		public long scheduleNext( boolean alreadyRun );
+
+		/**
+		 * A paused job stays due, and is looked at again every few seconds
+		 */
+		public boolean isPaused();
+
+		public void execute() throws Throwable;
+	}
+
+	private static final long PAUSE_RECHECK = 5000;
+	private static final int HISTORY_SIZE = 20;
+
+	private static ScheduleDispatcher instance;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private final PriorityQueue<Slot> queue = new PriorityQueue<Slot>();
+	private long sequence = 0;
+
+	private final ThreadPoolExecutor workers;
+	private final Thread dispatcher;
+	private final long misfireThreshold;
+	private volatile boolean running = true;
+
+	private final AtomicLong dispatched = new AtomicLong( 0 );
+	private final AtomicLong rejected = new AtomicLong( 0 );
+
+
+	public static synchronized ScheduleDispatcher getInstance() {
+		if ( instance == null )
+			instance = new ScheduleDispatcher( cfEngine.getConfig() );
+		return instance;
+	}
+
+
+	public static synchronized void shutdown() {
+		if ( instance != null ) {
+			instance.stop();
+			instance = null;
+		}
+	}
+
+
+	private ScheduleDispatcher( xmlCFML config ) {
+		int threads = 4, queueSize = 100, misfireSecs = 60;
+		if ( config != null ) {
+			threads = config.getInt( "server.cfschedule.threads", threads );
+			queueSize = config.getInt( "server.cfschedule.queuesize", queueSize );
+			misfireSecs = config.getInt( "server.cfschedule.misfirethreshold", misfireSecs );
+		}
+
+		misfireThreshold = Math.max( 0, misfireSecs ) * 1000L;
+
+		workers = new ThreadPoolExecutor( Math.max( 1, threads ), Math.max( 1, threads ), 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>( Math.max( 1, queueSize ) ), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger( 0 );
+
+			public Thread newThread( Runnable r ) {
+				Thread t = new Thread( r, "scheduleWorker-" + count.incrementAndGet() );
+				t.setDaemon( true );
+				t.setPriority( Thread.MIN_PRIORITY );
+				return t;
+			}
+		} );
+		workers.allowCoreThreadTimeOut( true );
+
+		dispatcher = new Thread( "scheduleDispatcher" ) {
+			public void run() {
+				dispatchLoop();
+			}
+		};
+		dispatcher.setDaemon( true );
+		dispatcher.start();
+
+		cfEngine.log( "ScheduleDispatcher: threads=" + workers.getMaximumPoolSize() + "; queuesize=" + queueSize + "; misfirethreshold=" + misfireSecs + "s" );
+	}
+
+
+	private void stop() {
+		running = false;
+		dispatcher.interrupt();
+		workers.shutdownNow();
+	}
+
+
+	/**
+	 * Starts running the job on its schedule; the returned handle controls it from then on
+	 */
+	public Handle schedule( Job job, Overlap overlap, Misfire misfire ) {
+		Handle handle = new Handle( job, overlap, misfire );
+		enqueue( handle, job.scheduleNext( false ) );
+		return handle;
+	}
+
+
+	/**
+	 * Picks up a change to the job's schedule
+	 */
+	public void reschedule( Handle handle ) {
+		handle.pausedDue = 0;
+		if ( !handle.cancelled )
+			enqueue( handle, handle.job.scheduleNext( false ) );
+	}
+
+
+	public void cancel( Handle handle ) {
+		handle.cancelled = true;
+		lock.lock();
+		try {
+			handle.current = null;
+			handle.nextRun = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Runs the job now, outside of its schedule; subject to the overlap policy
+	 */
+	public void runNow( Handle handle ) {
+		submit( handle, System.currentTimeMillis() );
+	}
+
+
+	private void enqueue( Handle handle, long runTime ) {
+		lock.lock();
+		try {
+			handle.current = null;
+			handle.nextRun = runTime;
+			if ( runTime > 0 && !handle.cancelled ) {
+				Slot slot = new Slot( runTime, sequence++, handle );
+				handle.current = slot;
+				queue.add( slot );
+				if ( queue.peek() == slot )
+					changed.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	private void dispatchLoop() {
+		while ( running ) {
+			Slot due;
+
+			lock.lock();
+			try {
+				Slot head = queue.peek();
+				long now = System.currentTimeMillis();
+
+				if ( head == null ) {
+					changed.await();
+					continue;
+				} else if ( head.time > now ) {
+					changed.await( head.time - now, TimeUnit.MILLISECONDS );
+					continue;
+				}
+
+				due = queue.poll();
+
+				// entries left behind by a reschedule or cancel are dropped here
+				if ( due.handle.current != due )
+					continue;
+				due.handle.current = null;
+			} catch ( InterruptedException e ) {
+				continue;
+			} finally {
+				lock.unlock();
+			}
+
+			Handle handle = due.handle;
+			try {
+				dispatch( handle, due.time );
+			} catch ( Throwable t ) {
+				scheduleEngine.log( "ScheduleDispatcher(" + handle.job.getName() + "): " + t.getMessage() );
+			}
+		}
+	}
+
+
+	private void dispatch( Handle handle, long dueTime ) {
+		long now = System.currentTimeMillis();
+
+		if ( handle.job.isPaused() ) {
+			// keep it due, but only look at it every so often
+			if ( handle.pausedDue == 0 )
+				handle.pausedDue = dueTime;
+			enqueue( handle, now + PAUSE_RECHECK );
+			return;
+		}
+
+		if ( handle.pausedDue > 0 ) {
+			dueTime = handle.pausedDue;
+			handle.pausedDue = 0;
+		}
+
+		if ( handle.misfire == Misfire.SKIP && now - dueTime > misfireThreshold ) {
+			handle.misfires.incrementAndGet();
+			scheduleEngine.log( "ScheduleDispatcher(" + handle.job.getName() + ").misfire: " + ( now - dueTime ) + "ms late; skipped" );
+		} else {
+			submit( handle, dueTime );
+		}
+
+		enqueue( handle, handle.job.scheduleNext( true ) );
+	}
+
+
+	private void submit( final Handle handle, final long dueTime ) {
+		if ( !handle.running.compareAndSet( false, true ) ) {
+			if ( handle.overlap == Overlap.QUEUE ) {
+				handle.queued = true;
+			} else {
+				handle.overlaps.incrementAndGet();
+				scheduleEngine.log( "ScheduleDispatcher(" + handle.job.getName() + ").overlap: still running; skipped" );
+			}
+			return;
+		}
+
+		try {
+			workers.execute( new Runnable() {
+				public void run() {
+					execute( handle, dueTime );
+				}
+			} );
+			dispatched.incrementAndGet();
+		} catch ( RejectedExecutionException e ) {
+			handle.running.set( false );
+			rejected.incrementAndGet();
+			scheduleEngine.log( "ScheduleDispatcher(" + handle.job.getName() + ").rejected: all workers busy" );
+		}
+	}
+
+
+	private void execute( Handle handle, long dueTime ) {
+		for ( ;; ) {
+			try {
+				do {
+					handle.queued = false;
+					long start = System.currentTimeMillis();
+					String error = null;
+
+					try {
+						handle.job.execute();
+					} catch ( Throwable t ) {
+						error = ( t.getMessage() == null ) ? t.toString() : t.getMessage();
+					}
+
+					handle.record( start, System.currentTimeMillis() - start, Math.max( 0, start - dueTime ), error );
+					dueTime = System.currentTimeMillis();
+
+				} while ( handle.queued && !handle.cancelled && running );
+			} finally {
+				handle.running.set( false );
+			}
+
+			// a run queued between the last check and running being cleared would otherwise be lost; if
+			// another submit has got in first the queued run is its to do
+			if ( !handle.queued || handle.cancelled || !running || !handle.running.compareAndSet( false, true ) )
+				return;
+		}
+	}
+
+
+	public cfStructData getMetrics() {
+		cfStructData s = new cfStructData();
+		int scheduled;
+		lock.lock();
+		try {
+			scheduled = queue.size();
+		} finally {
+			lock.unlock();
+		}
+
+		s.setData( "scheduled", new cfNumberData( scheduled ) );
+		s.setData( "active", new cfNumberData( workers.getActiveCount() ) );
+		s.setData( "waiting", new cfNumberData( workers.getQueue().size() ) );
+		s.setData( "threads", new cfNumberData( workers.getMaximumPoolSize() ) );
+		s.setData( "dispatched", new cfNumberData( dispatched.get() ) );
+		s.setData( "rejected", new cfNumberData( rejected.get() ) );
+		s.setData( "misfirethreshold", new cfNumberData( misfireThreshold / 1000 ) );
+		return s;
+	}
+
+
+	/**
+	 * A job held by the dispatcher, along with its run history
+	 */
+	public static class Handle {
+		private final Job job;
+		private final Overlap overlap;
+		private final Misfire misfire;
+
+		private Slot current;		// guarded by the dispatcher lock
+		private volatile long nextRun;
+		private volatile long pausedDue = 0;
+		private volatile boolean cancelled = false, queued = false;
+		private final AtomicBoolean running = new AtomicBoolean( false );
+
+		private final AtomicLong runs = new AtomicLong( 0 );
+		private final AtomicLong failures = new AtomicLong( 0 );
+		private final AtomicLong overlaps = new AtomicLong( 0 );
+		private final AtomicLong misfires = new AtomicLong( 0 );
+
+		private long totalTime = 0, maxTime = 0, totalLateness = 0, maxLateness = 0;
+		private final RunRecord[] history = new RunRecord[ HISTORY_SIZE ];
+		private int historyNext = 0;
+
+		private Handle( Job job, Overlap overlap, Misfire misfire ) {
+			this.job = job;
+			this.overlap = overlap;
+			this.misfire = misfire;
+		}
+
+		public Job getJob() {
+			return job;
+		}
+
+		public long getNextRunTime() {
+			return nextRun;
+		}
+
+		public boolean isRunning() {
+			return running.get();
+		}
+
+		private synchronized void record( long start, long time, long lateness, String error ) {
+			runs.incrementAndGet();
+			if ( error != null )
+				failures.incrementAndGet();
+
+			totalTime += time;
+			totalLateness += lateness;
+			maxTime = Math.max( maxTime, time );
+			maxLateness = Math.max( maxLateness, lateness );
+
+			history[ historyNext ] = new RunRecord( start, time, lateness, error );
+			historyNext = ( historyNext + 1 ) % HISTORY_SIZE;
+		}
+
+		public synchronized cfStructData getMetrics() throws cfmRunTimeException {
+			cfStructData s = new cfStructData();
+			long runCount = runs.get();
+
+			s.setData( "name", new cfStringData( job.getName() ) );
+			s.setData( "overlap", new cfStringData( overlap.toString().toLowerCase() ) );
+			s.setData( "misfire", new cfStringData( misfire.toString().toLowerCase() ) );
+			s.setData( "running", cfBooleanData.getcfBooleanData( running.get() ) );
+			if ( nextRun > 0 )
+				s.setData( "nextrun", new cfDateData( nextRun ) );
+
+			s.setData( "runs", new cfNumberData( runCount ) );
+			s.setData( "failures", new cfNumberData( failures.get() ) );
+			s.setData( "overlaps", new cfNumberData( overlaps.get() ) );
+			s.setData( "misfires", new cfNumberData( misfires.get() ) );
+			s.setData( "avgms", new cfNumberData( runCount == 0 ? 0 : totalTime / runCount ) );
+			s.setData( "maxms", new cfNumberData( maxTime ) );
+			s.setData( "avglatenessms", new cfNumberData( runCount == 0 ? 0 : totalLateness / runCount ) );
+			s.setData( "maxlatenessms", new cfNumberData( maxLateness ) );
+
+			// most recent first
+			cfArrayData runsArray = cfArrayData.createArray( 1 );
+			for ( int x = 1; x <= HISTORY_SIZE; x++ ) {
+				RunRecord r = history[ ( historyNext - x + HISTORY_SIZE ) % HISTORY_SIZE ];
+				if ( r == null )
+					break;
+
+				cfStructData rs = new cfStructData();
+				rs.setData( "start", new cfDateData( r.start ) );
+				rs.setData( "ms", new cfNumberData( r.time ) );
+				rs.setData( "latenessms", new cfNumberData( r.lateness ) );
+				rs.setData( "error", new cfStringData( r.error == null ? "" : r.error ) );
+				runsArray.addElement( rs );
+			}
+			s.setData( "history", runsArray );
+			return s;
+		}
+	}
+
+
+	private static class RunRecord {
+		private final long start, time, lateness;
+		private final String error;
+
+		private RunRecord( long start, long time, long lateness, String error ) {
+			this.start = start;
+			this.time = time;
+			this.lateness = lateness;
+			this.error = error;
+		}
+	}
+
+
+	private static class Slot implements Comparable<Slot> {
+		private final long time, seq;
+		private final Handle handle;
+
+		private Slot( long time, long seq, Handle handle ) {
+			this.time = time;
+			this.seq = seq;
+			this.handle = handle;
+		}
+
+		public int compareTo( Slot o ) {
+			if ( time != o.time )
+				return time < o.time ? -1 : 1;
+			return seq < o.seq ? -1 : ( seq == o.seq ? 0 : 1 );
+		}
+	}
+}
@@ -64,14 +64,17 @@ public class cfSCHEDULE extends cfTag implements Serializable {
 	public java.util.Map[] getAttInfo() {
 		return new java.util.Map[] { 
 			createAttInfo("ATTRIBUTECOLLECTION", "A structure containing the tag attributes", 	"", false ),
-			createAttInfo("ACTION", "DELETE|PAUSE|RESUME|RUN|UPDATE|LISTALL", "", true), 
+			createAttInfo("ACTION", "DELETE|PAUSE|RESUME|RUN|UPDATE|LISTALL|METRICS", "", true), 
 			createAttInfo("ACTION=PAUSE", "If you specify a TASK then that task will be paused, otherwise the whole scheduler will be paused", "", false), 
 			createAttInfo("ACTION=RESUME", "If you specify a TASK then that task will be resumed, otherwise the whole scheduler will resume", "", false), 
+			createAttInfo("ACTION=METRICS", "If you specify a TASK then the run history of that task is returned, otherwise the state of the scheduler as a whole", "", false), 
 			createAttInfo("TASK", "The name of the task", "", false), 
 			createAttInfo("ENDDATE", "The date the task will run until", "", false), 
 			createAttInfo("ENDTIME", "The time the task will run until", "", false), 
 			createAttInfo("FILE", "The name of the file to save the result in", "", false),
 			createAttInfo("INTERVAL", "DAILY|MONTHLY|ONCE|WEEKLY", "", false), 
+			createAttInfo("MISFIRE", "FIRE|SKIP, whether a run picked up late should still be made or left for the next one", "FIRE", false), 
+			createAttInfo("OVERLAP", "SKIP|QUEUE, whether a run due while the previous one is still going is dropped or made once it finishes", "SKIP", false), 
 			createAttInfo("PASSWORD", "Password, if url requires authentication", "", false), 
 			createAttInfo("PATH", "The file path where the published file will be ", "", false), 
 			createAttInfo("PORT", "The port number", "", false), 
@@ -86,7 +89,7 @@ public class cfSCHEDULE extends cfTag implements Serializable {
 			createAttInfo("STARTTIME", "The time the task will run from", "", false), 
 			createAttInfo("URL", "The URL that will be requested", "", false), 
 			createAttInfo("USERNAME", "Username, if url requires authentication", "", false),
-			createAttInfo("RESULT", "if action=listall then this is the variable to return the data in", "", false),
+			createAttInfo("RESULT", "if action=listall or action=metrics then this is the variable to return the data in", "", false),
 		};
 	}
 
@@ -157,6 +160,17 @@ public class cfSCHEDULE extends cfTag implements Serializable {
 			else
 				scheduleEngine.resumeTask( getDynamic(attributes,_Session, "TASK").getString() );
 			
+		} else if (action.equalsIgnoreCase("METRICS")) {
+			
+			cfStructData metrics = scheduleEngine.getMetrics( containsAttribute(attributes,"TASK") ? getDynamic(attributes,_Session, "TASK").getString() : null );
+			if ( metrics == null )
+				metrics = new cfStructData();
+			
+			if (containsAttribute(attributes,"RESULT"))
+				_Session.setData(getDynamic(attributes,_Session, "RESULT").getString(), metrics);
+			else
+				_Session.setData("schedulemetrics", metrics);
+			
 		} else {
 			// TASK required when action isn't LISTALL
 			if (!containsAttribute(attributes,"TASK"))
@@ -320,10 +334,16 @@ public class cfSCHEDULE extends cfTag implements Serializable {
 				if (containsAttribute(attributes,"REQUESTTIMEOUT"))
 					task.setRequestTimeout(getDynamic(attributes,_Session, "REQUESTTIMEOUT").getInt());
 
+				if (containsAttribute(attributes,"OVERLAP"))
+					task.setOverlap(getDynamic(attributes,_Session, "OVERLAP").getString());
+
+				if (containsAttribute(attributes,"MISFIRE"))
+					task.setMisfire(getDynamic(attributes,_Session, "MISFIRE").getString());
+
 				scheduleEngine.updateTask(taskName, task);
 
 			} else {
-				throw this.newRunTimeException("Invalid ACTION attribute. Possible valid values are DELETE, LISTALL, RUN, READ, & UPDATE");
+				throw this.newRunTimeException("Invalid ACTION attribute. Possible valid values are DELETE, LISTALL, METRICS, PAUSE, RESUME, RUN, READ, & UPDATE");
 			}
 		}
 
@@ -32,28 +32,35 @@ package com.naryx.tagfusion.cfm.schedule;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.nary.io.FileUtils;
 import com.nary.util.LogFile;
+import com.naryx.tagfusion.cfm.engine.cfBooleanData;
 import com.naryx.tagfusion.cfm.engine.cfEngine;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
+import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
 import com.naryx.tagfusion.xmlConfig.xmlCFML;
 
-public class scheduleEngine extends Thread {
+/**
+ * Holds the CFSCHEDULE tasks; the running of them is left to the ScheduleDispatcher
+ */
+public class scheduleEngine extends Object {
 
 	private static scheduleEngine engine = null;
 	private File taskDirectory;
-	private Hashtable<String, scheduleTask> taskList;
+	private Map<String, scheduleTask> taskList;
 	private File outFile;
-	private boolean bPauseSchedule = false;
+	private volatile boolean bPauseSchedule = false;
+	private ScheduleDispatcher dispatcher;
 
 	// -------------------------
 
 	private scheduleEngine(xmlCFML configFile) {
-		super("scheduleEngine");
-
 		try {
 			taskDirectory = FileUtils.checkAndCreateDirectory( cfEngine.thisPlatform.getFileIO().getWorkingDirectory(), "cfschedule", false );
 		} catch (Exception e) {
@@ -61,51 +68,21 @@ public class scheduleEngine extends Thread {
 			return;
 		}
 
-		taskList 	= new Hashtable<String, scheduleTask>(10);
+		taskList 	= new ConcurrentHashMap<String, scheduleTask>(10);
 		outFile 	= new File(taskDirectory, "schedule.log");
-		setDaemon(false);
-		setPriority(MIN_PRIORITY);
+		dispatcher	= ScheduleDispatcher.getInstance();
 	}
 
 	public static void pause( boolean bPause ){
 		engine.bPauseSchedule	= bPause;
 	}
-	
-	public void run(){
-		cfEngine.log("ScheduleEngine: Started. Initial Tasks=" + taskList.size() );
-		
-		while (cfEngine.bEngineActive){
-			try {
-				sleep(30000);
-			} catch (InterruptedException e) {continue;}
 
-			if ( bPauseSchedule )
-				continue;
-			
-			// Run around the tasks to see who is waiting for running
-			try{
-				
-				Enumeration<scheduleTask>	e	= taskList.elements();
-				while ( e.hasMoreElements() ){
-					scheduleTask	sT	= e.nextElement();
-					long cT	= System.currentTimeMillis();
-					long nT	= sT.getNextRunTime();
-					
-					if ( !sT.isPause() && nT > 0 && nT <= cT ){
-						sT.runAndSchedule();
-					}
-				}
-				
-			}catch(Exception e){
-				LogFile.println(engine.outFile, "scheduleEngine.run(): " + e.getMessage() );
-			}
-		}
-	
-		cfEngine.log("ScheduleEngine: Shutdown");
+	public static boolean isPaused(){
+		return engine.bPauseSchedule;
 	}
 	
 	public static Enumeration<String> getTasks() {
-		return engine.taskList.keys();
+		return Collections.enumeration( engine.taskList.keySet() );
 	}
 
 	public static synchronized void init(xmlCFML configFile) {
@@ -117,7 +94,6 @@ public class scheduleEngine extends Thread {
 			LogFile.println(engine.outFile, "scheduleEngine started");
 
 			engine.loadTasks(configFile);
-			engine.start();
 			
 			LogFile.println(engine.outFile, "Active Tasks=" + engine.taskList.size() + "; Directory=" + engine.taskDirectory);
 			cfEngine.log("scheduleEngine started; logfile=" + engine.outFile.toString() );
@@ -137,7 +113,10 @@ public class scheduleEngine extends Thread {
 	}
 
 	public static void log(String _line) {
-		LogFile.println(engine.outFile, _line);
+		if (engine != null && engine.outFile != null)
+			LogFile.println(engine.outFile, _line);
+		else
+			cfEngine.log(_line);
 	}
 
 	public static scheduleTask getTask(String taskName) {
@@ -147,8 +126,9 @@ public class scheduleEngine extends Thread {
 	// -------------------------
 
 	private void _updateTask(String taskName, scheduleTask task) {
-		if (taskList.containsKey(taskName))
-			taskList.remove(taskName);
+		scheduleTask previous = taskList.remove(taskName);
+		if (previous != null && previous.getHandle() != null)
+			dispatcher.cancel(previous.getHandle());
 
 		task.setName(taskName.toLowerCase());
 		taskList.put(taskName, task);
@@ -156,13 +136,15 @@ public class scheduleEngine extends Thread {
 
 		LogFile.println(outFile, "scheduleEngine: UpdateTask: " + taskName );
 		LogFile.println(outFile, task.toString());
-		task.schedule();
+		task.setHandle( dispatcher.schedule(task, task.getOverlap(), task.getMisfire()) );
 	}
 
 	private void _deleteTask(String taskName) {
-		if (taskList.containsKey(taskName)) {
-			// Remove task from task list
-			taskList.remove(taskName);
+		scheduleTask task = taskList.remove(taskName);
+		if (task != null) {
+			// Stop it running
+			if (task.getHandle() != null)
+				dispatcher.cancel(task.getHandle());
 
 			// Remove task from XML config data
 			String taskKey = "server.cfschedule.task[" + taskName.toLowerCase() + "]";
@@ -182,12 +164,34 @@ public class scheduleEngine extends Thread {
 	}
 
 	private void _runTask(String taskName) {
-		if (taskList.containsKey(taskName))
-			(taskList.get(taskName)).run();
+		scheduleTask task = taskList.get(taskName);
+		if (task != null && task.getHandle() != null)
+			dispatcher.runNow(task.getHandle());
 		else
 			LogFile.println(outFile, "scheduleEngine: RunTask: " + taskName );
 	}
 
+	/**
+	 * The run history of the given task, or of all the tasks along with the dispatcher
+	 */
+	public static cfStructData getMetrics(String taskName) throws cfmRunTimeException {
+		if (taskName != null) {
+			scheduleTask task = engine._getTask(taskName.toLowerCase());
+			return (task == null || task.getHandle() == null) ? null : task.getHandle().getMetrics();
+		}
+
+		cfStructData s = engine.dispatcher.getMetrics();
+		s.setData("paused", cfBooleanData.getcfBooleanData(engine.bPauseSchedule));
+
+		cfStructData tasks = new cfStructData();
+		for (scheduleTask task : engine.taskList.values()) {
+			if (task.getHandle() != null)
+				tasks.setData(task.getName(), task.getHandle().getMetrics());
+		}
+		s.setData("tasks", tasks);
+		return s;
+	}
+
 	private void loadTasks(xmlCFML configFile) {
 
 		scheduleTask task;
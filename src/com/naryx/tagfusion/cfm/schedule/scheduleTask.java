@@ -53,7 +53,7 @@ import com.naryx.tagfusion.util.dummyServletRequest;
 import com.naryx.tagfusion.util.dummyServletResponse;
 import com.naryx.tagfusion.xmlConfig.xmlCFML;
 
-public class scheduleTask extends Object implements java.io.Serializable {
+public class scheduleTask extends Object implements java.io.Serializable, ScheduleDispatcher.Job {
 	static final long serialVersionUID = 1;
 
 	private String name;
@@ -88,6 +88,8 @@ public class scheduleTask extends Object implements java.io.Serializable {
 	private long	nextRunTime = -1;
 
 	private boolean bPause	= false;
+	private String overlap = "skip", misfire = "fire";
+	transient private ScheduleDispatcher.Handle handle;
 	private int requestTimeout; // stored as milliseconds, but the admin UI uses
 															// seconds so conversions take place between here
 															// and the view.
@@ -168,6 +170,36 @@ public class scheduleTask extends Object implements java.io.Serializable {
 		interval = _interval;
 	}
 
+	/**
+	 * What to do if the task comes round again while it is still running; skip|queue
+	 */
+	public void setOverlap(String _overlap) {
+		overlap = ( _overlap != null && _overlap.equalsIgnoreCase("queue") ) ? "queue" : "skip";
+	}
+
+	/**
+	 * What to do if the task is picked up late; fire|skip
+	 */
+	public void setMisfire(String _misfire) {
+		misfire = ( _misfire != null && _misfire.equalsIgnoreCase("skip") ) ? "skip" : "fire";
+	}
+
+	public ScheduleDispatcher.Overlap getOverlap() {
+		return "queue".equals(overlap) ? ScheduleDispatcher.Overlap.QUEUE : ScheduleDispatcher.Overlap.SKIP;
+	}
+
+	public ScheduleDispatcher.Misfire getMisfire() {
+		return "skip".equals(misfire) ? ScheduleDispatcher.Misfire.SKIP : ScheduleDispatcher.Misfire.FIRE;
+	}
+
+	public ScheduleDispatcher.Handle getHandle() {
+		return handle;
+	}
+
+	public void setHandle(ScheduleDispatcher.Handle _handle) {
+		handle = _handle;
+	}
+
 	public void setRequestTimeout(int _interval) {
 		if (_interval <= 0)
 			requestTimeout = 0;
@@ -298,6 +330,8 @@ public class scheduleTask extends Object implements java.io.Serializable {
 		}
 
 		taskData.setData("resolveurl", cfBooleanData.getcfBooleanData(bResolveLinks));
+		taskData.setData("overlap", new cfStringData(overlap == null ? "skip" : overlap));
+		taskData.setData("misfire", new cfStringData(misfire == null ? "fire" : misfire));
 		taskData.setData("requesttimeout", new cfNumberData(requestTimeout / 1000));
 
 		if (bPublish) {
@@ -349,6 +383,15 @@ public class scheduleTask extends Object implements java.io.Serializable {
 	public long getNextRunTime(){
 		return nextRunTime;
 	}
+
+	public long scheduleNext(boolean alreadyRun){
+		schedule(alreadyRun);
+		return nextRunTime;
+	}
+
+	public boolean isPaused(){
+		return bPause || scheduleEngine.isPaused();
+	}
 	
 	public String print(GregorianCalendar startDateG) {
 		return com.nary.util.Date.formatDate(startDateG.getTime().getTime());
@@ -572,13 +615,10 @@ public class scheduleTask extends Object implements java.io.Serializable {
 	// ------------------------------------------------------------
 	// ------------------------------------------------------------
 
-	public void runAndSchedule() {
-		nextRunTime = Long.MIN_VALUE;	// while it is running in a schedule, let us disable it
-		run();
-		schedule(true);
-	}
-
-	public void run() {
+	/**
+	 * Makes the request; called on one of the dispatcher's workers
+	 */
+	public void execute() throws Throwable {
 		scheduleEngine.log("scheduleTask.run(" + name + ").started");
 
 		HttpServletRequest REQ = new dummyServletRequest(cfEngine.thisPlatform.getFileIO().getTempDirectory().getAbsolutePath());
@@ -592,7 +632,7 @@ public class scheduleTask extends Object implements java.io.Serializable {
 			con = new cfHttpConnection(tmpSession, httpData);
 		} catch (cfmRunTimeException e) {
 			handleException(e);
-			return;
+			throw e;
 		}
 		
 		con.setUserAgent("BlueDragon");
@@ -607,7 +647,7 @@ public class scheduleTask extends Object implements java.io.Serializable {
 			} catch (IOException ignored) {
 			}
 			
-			return;
+			throw t;
 		}
 
 		con.setGetAsBinary("auto");
@@ -632,9 +672,19 @@ public class scheduleTask extends Object implements java.io.Serializable {
 			con.setFile(new File(publishPath, publishFile));
 		}
 
-		// Create the thread that will do the processing
-		new runThread(con);
+		try {
+			con.connect();
+			scheduleEngine.log("scheduleTask.run(" + name + ").finished");
 
+		} catch (Throwable t) {
+			handleException(t);
+			throw t;
+		} finally {
+			try {
+				con.close();
+			} catch (IOException ignored) {
+			}
+		}
 	}
 
 	private void handleException(Throwable t) {
@@ -673,34 +723,6 @@ public class scheduleTask extends Object implements java.io.Serializable {
 
 	// -------------------------------------------------
 
-	private class runThread extends Thread {
-		private cfHttpConnection con;
-
-		public runThread(cfHttpConnection con) {
-			this.setName("scheduleTask." + name);
-			this.con = con;
-			setPriority(Thread.MIN_PRIORITY);
-			start();
-		}
-
-		public void run() {
-			try {
-				con.connect();
-				scheduleEngine.log("scheduleTask.run(" + name + ").finished");
-
-			} catch (Throwable t) {
-				handleException(t);
-			} finally {
-				try {
-					con.close();
-				} catch (IOException ignored) {
-				}
-			}
-		}
-	}
-
-	// -------------------------------------------------
-
 	public void writeToConfig(xmlCFML configFile) {
 		String taskKey = "server.cfschedule.task[" + name.toLowerCase() + "]";
 
@@ -763,6 +785,8 @@ public class scheduleTask extends Object implements java.io.Serializable {
 			configFile.setData(taskKey + ".password", password);
 
 		configFile.setData(taskKey + ".requesttimeout", Integer.toString(requestTimeout / 1000));
+		configFile.setData(taskKey + ".overlap", overlap == null ? "skip" : overlap);
+		configFile.setData(taskKey + ".misfire", misfire == null ? "fire" : misfire);
 	}
 
 	public static scheduleTask getTaskConfig(xmlCFML configFile, String taskKey) {
@@ -824,6 +848,8 @@ public class scheduleTask extends Object implements java.io.Serializable {
 		task.setUsername(configFile.getString(taskKey + ".username", null));
 		task.setPassword(configFile.getString(taskKey + ".password", null));
 		task.setRequestTimeout(configFile.getInt(taskKey + ".requesttimeout", 30));
+		task.setOverlap(configFile.getString(taskKey + ".overlap", "skip"));
+		task.setMisfire(configFile.getString(taskKey + ".misfire", "fire"));
 
 		return task;
 	}
@@ -562,13 +562,13 @@ public class cfSQLQueryData extends cfQueryResultData implements cfQueryInterfac
 		if (cfdata != null && cfdata.getDataType() != cfData.CFQUERYRESULTDATA)
 			throw new cfmRunTimeException(_Session, new Exception("Cached Data is not a QUERY object"));
 
-		cfSQLQueryData newQuery = (cfSQLQueryData) cfdata;
+		// a cache that keeps its entries outside of memory hands back a plain query
+		cfQueryResultData newQuery = (cfQueryResultData) cfdata;
 
 		if (newQuery != null) {
 			queryRun 		= true;
 			resultSet 	= true;
 			setQueryData(newQuery, "SQLCacheRegion: " + cacheRegion);
-			usingCache 	= newQuery.usingCache;
 		} else {
 
 			// Get a lock just for this entry
@@ -576,13 +576,12 @@ public class cfSQLQueryData extends cfQueryResultData implements cfQueryInterfac
 				try {
 
 					// we need to check the cache again since another thread might have set this entry
-					newQuery = (cfSQLQueryData)cacheEngine.get(internalCacheName);
+					newQuery = (cfQueryResultData)cacheEngine.get(internalCacheName);
 
 					if (newQuery != null) {
 						queryRun 	= true;
 						resultSet = true;
 						setQueryData(newQuery, "SQLCacheRegion: " + cacheRegion);
-						usingCache = newQuery.usingCache;
 					} else {
 						
 						// The query was not found in the cache, so lets run it
@@ -35,9 +35,7 @@
  */
 package com.naryx.tagfusion.cfm.sql.platform.java;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -53,6 +51,7 @@ import com.nary.util.LogFile;
 import com.naryx.tagfusion.cfm.engine.cfEngine;
 import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.engine.codec.CodecFactory;
 import com.naryx.tagfusion.cfm.engine.engineListener;
 import com.naryx.tagfusion.cfm.sql.cfDataSource;
 import com.naryx.tagfusion.cfm.sql.cfSQLQueryData;
@@ -142,7 +141,11 @@ public class queryBatchServer extends Thread implements engineListener {
 		}
 
 		// Save the file
-		com.nary.Debug.saveClass( fileToUse, sql );
+		try{
+			CodecFactory.write( new File( fileToUse ), sql, false );
+		}catch(IOException e){
+			LogFile.println( "QUERYBATCH-ERROR", e.getMessage() + "; SQL=" + sql.getSqlString() );
+		}
 	}
 	
 
@@ -222,7 +225,7 @@ public class queryBatchServer extends Thread implements engineListener {
 		cfSession  tmpSession = null;
 		queryBatchSQL	sql = null;
 	  try{
-		  sql	= (queryBatchSQL)com.nary.Debug.loadClass( new BufferedInputStream( new FileInputStream(filename.toString() ), 32000 ) );
+		  sql	= (queryBatchSQL)CodecFactory.read( filename );
 		  if ( sql == null )	return -2;
 	    
 	    tmpSession = new cfSession( dummyReq, dummyRes, cfEngine.thisServletContext);
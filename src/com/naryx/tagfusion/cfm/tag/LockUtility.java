@@ -19,51 +19,164 @@
 
 package com.naryx.tagfusion.cfm.tag;
 
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.naryx.tagfusion.cfm.engine.cfData;
+import com.naryx.tagfusion.cfm.engine.cfNumberData;
 import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
-import com.naryx.tagfusion.cfm.parser.cfLData;
-import com.naryx.tagfusion.cfm.parser.runTime;
+import com.naryx.tagfusion.cfm.engine.variableStore;
 
+/**
+ * The registry of CFLOCK locks currently in use.
+ *
+ * A lock exists only while at least one request is holding or waiting for
+ * it; the last one out removes it. Lookups go through a ConcurrentHashMap
+ * and each lock counts its own users, so no monitor is shared between
+ * different lock names.
+ *
+ * SERVER scope and named locks are keyed by name alone. APPLICATION and
+ * SESSION scope locks also carry the application name or session id, so each
+ * application and each session has its own.
+ *
+ * Wait times and timeouts are kept per lock name for SystemLockInfo().
+ */
 public class LockUtility {
 
-	public static synchronized cfLockingObject getLock( cfSession _Session, String _name ) throws cfmRunTimeException {
-		cfLockingObject lockOb = getLockingObject( _Session, _name );
-		if ( lockOb == null ) {
-			lockOb = new cfLockingObject();
-			_Session.setData( _name, lockOb );
+	private static final ConcurrentMap<String, cfLockingObject> locks = new ConcurrentHashMap<String, cfLockingObject>();
+
+	// statistics are kept for this many distinct names, after which they are pooled
+	private static final int MAX_STATS = 1000;
+	private static final String OTHER_STATS = "*other*";
+	private static final ConcurrentMap<String, LockStats> stats = new ConcurrentHashMap<String, LockStats>();
+
+	public static cfLockingObject getLock( cfSession _Session, String _name ) throws cfmRunTimeException {
+		String key = getKey( _Session, _name );
+
+		for (;;) {
+			cfLockingObject lockOb = locks.get( key );
+			if ( lockOb == null ) {
+				cfLockingObject newLock = new cfLockingObject( _name, getStats( _name ) );
+				lockOb = locks.putIfAbsent( key, newLock );
+				if ( lockOb == null )
+					lockOb = newLock;
+			}
+
+			// a lock that has just been retired is replaced on the next pass
+			if ( lockOb.retain() )
+				return lockOb;
+			locks.remove( key, lockOb );
 		}
-		lockOb.incrRefCount();
-		return lockOb;
 	}
 	
-	public static synchronized void freeLock( cfSession _Session, String _name, cfLockingObject lockOb ) throws cfmRunTimeException {
-		lockOb.decrRefCount();
-		if ( lockOb.isFree() ) {
-			_Session.deleteData( _name );
+	public static void freeLock( cfSession _Session, String _name, cfLockingObject lockOb ) throws cfmRunTimeException {
+		if ( lockOb.release() ) {
+			locks.remove( getKey( _Session, _name ), lockOb );
 		}
 	}
 
+	/**
+	 * Returns the lock of this name if some request is currently using it
+	 */
 	public static cfLockingObject getLockingObject( cfSession _Session, String _name ) {
-		cfData lockOb = null;
-		
-		try {
-			lockOb = runTime.runExpression( _Session, _name, false );
-			if ( lockOb instanceof cfLData ) {
-				if ( ((cfLData)lockOb).exists() ) {
-					lockOb = ((cfLData)lockOb).Get( _Session.getCFContext() );
-				} else {
-					lockOb = null;
-				}
+		return locks.get( getKey( _Session, _name ) );
+	}
+
+	/*
+	 * APPLICATION and SESSION scope objects can be rebuilt on every request
+	 * (J2EE and external session storage), so their locks are keyed by the
+	 * application name or session id rather than by the scope instance
+	 */
+	private static String getKey( cfSession _Session, String _name ) {
+		cfStructData scopeData = null;
+		String idKey = null;
+
+		if ( _name.startsWith( "application." ) ) {
+			scopeData = _Session.getQualifiedData( variableStore.APPLICATION_SCOPE );
+			idKey = "applicationname";
+		} else if ( _name.startsWith( "session." ) ) {
+			scopeData = _Session.getQualifiedData( variableStore.SESSION_SCOPE );
+			idKey = "sessionid";
+		}
+
+		if ( scopeData != null ) {
+			cfData id = scopeData.getData( idKey );
+			if ( id != null ) {
+				try {
+					return _name + "@" + id.getString().toLowerCase();
+				} catch ( cfmRunTimeException ignored ) {}
+			}
+		}
+		return _name;
+	}
+
+
+	/*
+	 * Statistics
+	 */
+	private static LockStats getStats( String _name ) {
+		LockStats lockStats = stats.get( _name );
+		if ( lockStats == null ) {
+			String statsName = ( stats.size() < MAX_STATS ) ? _name : OTHER_STATS;
+			LockStats newStats = new LockStats();
+			lockStats = stats.putIfAbsent( statsName, newStats );
+			if ( lockStats == null )
+				lockStats = newStats;
+		}
+		return lockStats;
+	}
+
+	public static cfStructData getLockInfo() {
+		cfStructData info = new cfStructData();
+		Iterator<Map.Entry<String, LockStats>> it = stats.entrySet().iterator();
+		while ( it.hasNext() ) {
+			Map.Entry<String, LockStats> entry = it.next();
+			info.setData( entry.getKey(), entry.getValue().toStruct() );
+		}
+		return info;
+	}
+
+
+	static class LockStats {
+		private final AtomicLong acquired = new AtomicLong( 0 );
+		private final AtomicLong contended = new AtomicLong( 0 );
+		private final AtomicLong timeouts = new AtomicLong( 0 );
+		private final AtomicLong totalWait = new AtomicLong( 0 );
+		private volatile long maxWait = 0;
+
+		void acquired( long waited ) {
+			acquired.incrementAndGet();
+			if ( waited > 0 ) {
+				contended.incrementAndGet();
+				addWait( waited );
 			}
-		} catch( cfmRunTimeException ignored ) {
-		} // lockOb doesn't exist
-		
-		if ( lockOb instanceof cfLockingObject ) {
-			return (cfLockingObject)lockOb;
 		}
-		
-		return null;
+
+		void timedOut( long waited ) {
+			timeouts.incrementAndGet();
+			addWait( waited );
+		}
+
+		private void addWait( long waited ) {
+			totalWait.addAndGet( waited );
+			if ( waited > maxWait )
+				maxWait = waited;
+		}
+
+		cfStructData toStruct() {
+			cfStructData s = new cfStructData();
+			s.setData( "acquired", new cfNumberData( acquired.get() ) );
+			s.setData( "contended", new cfNumberData( contended.get() ) );
+			s.setData( "timeouts", new cfNumberData( timeouts.get() ) );
+			s.setData( "totalwaitms", new cfNumberData( totalWait.get() ) );
+			s.setData( "maxwaitms", new cfNumberData( maxWait ) );
+			return s;
+		}
 	}
 
 }
@@ -55,12 +55,6 @@ import javax.servlet.RequestDispatcher;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.oro.text.regex.MalformedPatternException;
-import org.apache.oro.text.regex.Pattern;
-import org.apache.oro.text.regex.PatternMatcherInput;
-import org.apache.oro.text.regex.Perl5Compiler;
-import org.apache.oro.text.regex.Perl5Matcher;
-import org.apache.oro.text.regex.Perl5Substitution;
-import org.apache.oro.text.regex.Util;
 
 import com.nary.util.Lock;
 import com.naryx.tagfusion.cfm.engine.catchDataFactory;
@@ -68,6 +62,7 @@ import com.naryx.tagfusion.cfm.engine.cfEngine;
 import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfmBadFileException;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.expression.function.string.RegexCache;
 import com.naryx.tagfusion.servlet.jsp.cfIncludeHttpServletResponseWrapper;
 
 public class cfCACHE extends cfTag implements Serializable, cfOptionalBodyTag
@@ -490,9 +485,7 @@ public class cfCACHE extends cfTag implements Serializable, cfOptionalBodyTag
 		File thisFile;
 		String firstline;
 
-		Perl5Compiler 			compiler 	= new Perl5Compiler();
-		Perl5Matcher				matcher 	= new Perl5Matcher();
-		Pattern 						pattern 	= null;
+		RegexCache.Regex		pattern 	= null;
 
 		if ( !deleteAll ){
 			try {
@@ -505,7 +498,7 @@ public class cfCACHE extends cfTag implements Serializable, cfOptionalBodyTag
 						expireURL = virtualServer + "/" + expireURL;
 				}
 
-				pattern		= compiler.compile( escapeExpireUrl( expireURL ) );
+				pattern		= RegexCache.getPattern( escapeExpireUrl( expireURL ), 0 );
 			} catch (MalformedPatternException e) {
 				throw new cfmRunTimeException( catchDataFactory.extendedException( "errorCode.runtimeError",
 						 "cfcache.expireUrl",
@@ -532,7 +525,7 @@ public class cfCACHE extends cfTag implements Serializable, cfOptionalBodyTag
   			firstline	= getURIFromFile( thisFile );
   			if ( firstline != null ){
 
-  				if( pattern != null && matcher.contains( new PatternMatcherInput( firstline ), pattern ) )
+  				if( pattern != null && pattern.contains( firstline ) )
   					deleteCachedFile( thisFile );
 
   			}
@@ -551,13 +544,8 @@ public class cfCACHE extends cfTag implements Serializable, cfOptionalBodyTag
   }
 
   private static String escapeExpireUrl(String expireURL){
-		Perl5Compiler 			compiler 	= new Perl5Compiler();
-		Perl5Matcher				matcher 	= new Perl5Matcher();
-		Pattern 						pattern 	= null;
-
 		try{
-			pattern		= compiler.compile( "([+?.])" );
-		  expireURL = Util.substitute(matcher, pattern, new Perl5Substitution( "\\\\$1" ), expireURL, Util.SUBSTITUTE_ALL );
+		  expireURL = RegexCache.getPattern( "([+?.])", 0 ).substitute( expireURL, "\\\\$1" );
 		  return com.nary.util.string.replaceString(expireURL,"*",".*");
 		}catch(Exception E){
 			return null;
@@ -31,10 +31,12 @@ package com.naryx.tagfusion.cfm.tag;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.nary.util.string;
 import com.naryx.tagfusion.cfm.engine.ComponentFactory;
+import com.naryx.tagfusion.cfm.engine.ComponentPrototype;
 import com.naryx.tagfusion.cfm.engine.catchDataFactory;
 import com.naryx.tagfusion.cfm.engine.cfArrayData;
 import com.naryx.tagfusion.cfm.engine.cfCatchData;
@@ -294,8 +296,12 @@ public class cfCOMPONENT extends cfTag implements Serializable {
 				renderExtends(session, componentData, attribExtends);
 			}
 
+			// everything decided by the templates alone is shared through the prototype
+			ComponentPrototype prototype = ComponentPrototype.getPrototype(componentData.getComponentFile(), componentData.getSuperComponent());
+			componentData.setPrototype(prototype);
+
 			if (implementsList != null) {
-				renderImplements(session, componentData);
+				renderImplements(session, componentData, prototype);
 			}
 
 			componentData.setComponentType(componentType);
@@ -330,7 +336,8 @@ public class cfCOMPONENT extends cfTag implements Serializable {
 	}
 
 	private void renderExtends(cfSession session, cfComponentData componentData, String attribExtends) throws cfmRunTimeException, dataNotSupportedException {
-		cfComponentData superComponent = new cfComponentData(session, attribExtends, true); // true == allow abstract
+		cfFile superFile = ComponentFactory.loadRawComponent(session, attribExtends, null);
+		cfComponentData superComponent = new cfComponentData(session, superFile, true); // true == allow abstract
 		int superType = superComponent.getComponentType();
 
 		// if this CFC is an interface, then the EXTENDS attribute can only specify another interface
@@ -346,7 +353,8 @@ public class cfCOMPONENT extends cfTag implements Serializable {
 		}
 
 		// set supercomponent references for functions
-		setFunctionSuperScope(componentData, superComponent);
+		ComponentPrototype prototype = ComponentPrototype.getPrototype(componentData.getComponentFile(), superComponent);
+		setFunctionSuperScope(componentData, superComponent, prototype);
 
 		// inherit "variables" and "this" scopes from parent
 		inherit(superComponent, componentData);
@@ -358,43 +366,93 @@ public class cfCOMPONENT extends cfTag implements Serializable {
 		metaData.setData(EXTENDS, superComponent.getMetaData());
 	}
 
-	private void renderImplements(cfSession session, cfComponentData componentData) throws cfmRunTimeException, cfmBadFileException {
-		cfArrayData implementsMetadata = cfArrayData.createArray(1);
+	private void renderImplements(cfSession session, cfComponentData componentData, ComponentPrototype prototype) throws cfmRunTimeException, cfmBadFileException {
+		List<cfFile> interfaceFiles = new ArrayList<cfFile>(implementsList.size());
+		for (int i = 0; i < implementsList.size(); i++) {
+			interfaceFiles.add(ComponentFactory.loadRawComponent(session, implementsList.get(i), null));
+		}
+
+		// the metadata only needs building again if one of the interfaces has been reloaded
+		cfArrayData implementsMetadata = prototype.getImplementsMetaData(interfaceFiles);
+		boolean buildMetadata = (implementsMetadata == null);
+		if (buildMetadata) {
+			implementsMetadata = cfArrayData.createArray(1);
+		}
+
 		for (int i = 0; i < implementsList.size(); i++) {
 			String interfaceName = implementsList.get(i);
-			cfComponentData interfaceData = new cfComponentData(session, interfaceName, true); // true == allow abstract
-			implementsMetadata.addElement(interfaceData.getMetaData());
+			ComponentPrototype interfacePrototype = getInterfacePrototype(session, interfaceFiles.get(i));
+			if (buildMetadata) {
+				implementsMetadata.addElement(interfacePrototype.getInterfaceMetaData());
+			}
 
 			// check that all interface methods are implemented
-			Object[] keys = interfaceData.keys();
-			for (int j = 0; j < keys.length; j++) {
-				String key = keys[j].toString();
-				// interface "this" scope will only contain UDFs
-				if (!componentData.containsKey(key)) {
-					throw newBadFileException("Invalid Attribute", "Component must implement function \"" + key + "\" from interface \"" + interfaceName + "\"");
+			String[] methods = interfacePrototype.getInterfaceMethods();
+			for (int j = 0; j < methods.length; j++) {
+				if (!componentData.containsKey(methods[j])) {
+					throw newBadFileException("Invalid Attribute", "Component must implement function \"" + methods[j] + "\" from interface \"" + interfaceName + "\"");
 				}
 			}
 		}
+
+		if (buildMetadata) {
+			prototype.setImplementsMetaData(interfaceFiles, implementsMetadata);
+		}
 		metaData.setData(IMPLEMENTS, implementsMetadata);
 	}
 
+	/**
+	 * The interface is instantiated once per template version to discover its methods; after that the
+	 * contract is read straight from its prototype
+	 */
+	private static ComponentPrototype getInterfacePrototype(cfSession session, cfFile interfaceFile) throws cfmRunTimeException {
+		ComponentPrototype interfacePrototype = interfaceFile.getComponentPrototype();
+		if (interfacePrototype.getInterfaceMethods() == null) {
+			cfComponentData interfaceData = new cfComponentData(session, interfaceFile, true); // true == allow abstract
+
+			// interface "this" scope will only contain UDFs
+			Object[] keys = interfaceData.keys();
+			String[] methods = new String[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				methods[i] = keys[i].toString();
+			}
+
+			interfacePrototype = interfaceData.getPrototype();
+			interfacePrototype.setInterface(methods, interfaceData.getMetaData());
+		}
+		return interfacePrototype;
+	}
+
 	/**
 	 * The supercomponent reference in a UDF is a runtime attribute, so duplicate UDFs in the variables scope, setting the supercomponent reference, and place the duplicate copy back in the variables and CFC "this" scope.
 	 */
-	private static void setFunctionSuperScope(cfComponentData componentData, cfComponentData superComponent) {
-		// UDFs were placed in the variables and "this" scopes by cfFile.render()
+	private static void setFunctionSuperScope(cfComponentData componentData, cfComponentData superComponent, ComponentPrototype prototype) {
+		// UDFs were placed in the variables and "this" scopes by cfFile.render(); which ones is fixed by the template
 		cfStructData variablesScope = componentData.getVariablesScope();
+		String[] names = prototype.getMethodNames();
+		if (names == null) {
+			names = getMethodNames(variablesScope);
+			prototype.setMethodNames(names);
+		}
+
+		for (int i = 0; i < names.length; i++) {
+			userDefinedFunction udf = ((userDefinedFunction) variablesScope.getData(names[i])).duplicateAndInherit(superComponent);
+			variablesScope.setData(names[i], udf);
+			componentData.setData(names[i], udf); // put udf into the this scope
+		}
+	}
+
+	private static String[] getMethodNames(cfStructData variablesScope) {
 		Object[] keys = variablesScope.keys();
+		List<String> names = new ArrayList<String>(keys.length);
 		for (int i = 0; i < keys.length; i++) {
 			String key = keys[i].toString();
-			cfData cfdata = variablesScope.getData(key);
 			// there should only be UDFs in variables scope at this point
-			if (cfdata.getDataType() == cfData.CFUDFDATA) {
-				userDefinedFunction udf = ((userDefinedFunction) cfdata).duplicateAndInherit(superComponent);
-				variablesScope.setData(key, udf);
-				componentData.setData(key, udf); // put udf into the this scope
+			if (variablesScope.getData(key).getDataType() == cfData.CFUDFDATA) {
+				names.add(key);
 			}
 		}
+		return names.toArray(new String[names.size()]);
 	}
 
 	// inherit the "variables" and "this" scopes from the parent
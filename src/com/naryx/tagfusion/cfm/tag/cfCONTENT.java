@@ -57,6 +57,7 @@ import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfStructData;
 import com.naryx.tagfusion.cfm.engine.cfmBadFileException;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.expression.function.string.serializejson;
 
 
 public class cfCONTENT extends cfTag implements Serializable {
@@ -79,7 +80,7 @@ public class cfCONTENT extends cfTag implements Serializable {
 				createAttInfo( "FILE", "The path to the file", "", false ),
 				createAttInfo( "REMOTE", "Structure detailing the remote object to fetch and send straight to the client without buffering. S3 and HTTP supported", "", false ),
 				createAttInfo( "OUTPUT", "The variable that contains the content to send to the request", "", false ),
-				createAttInfo( "VARIABLE", "The variable that contains the content to send to the request", "", false ),
+				createAttInfo( "VARIABLE", "The variable that contains the content to send to the request; a structure, array or query is sent as JSON", "", false ),
 				createAttInfo( "URIDIRECTORY", "Is the path to the file relative to the document root", "false", false ),
 		};
 	}
@@ -128,6 +129,8 @@ public class cfCONTENT extends cfTag implements Serializable {
 
 		if ( outputData.getDataType() == cfData.CFBINARYDATA )
 			_Session.write( ( (cfBinaryData) outputData ).getByteArray() );
+		else if ( outputData.getDataType() == cfData.CFSTRUCTDATA || outputData.getDataType() == cfData.CFARRAYDATA || outputData.getDataType() == cfData.CFQUERYRESULTDATA )
+			outputJSON( attributes, _Session, outputData );
 		else
 			_Session.write( outputData.getString().getBytes() );
 
@@ -135,6 +138,22 @@ public class cfCONTENT extends cfTag implements Serializable {
 	}
 
 
+	/*
+	 * Structures, arrays and queries go out as JSON (as serializeJSON() with its defaults), 
+	 * written to the response as UTF-8 as they are serialized
+	 */
+	private void outputJSON( cfStructData attributes, cfSession _Session, cfData outputData ) throws cfmRunTimeException {
+		if ( !containsAttribute( attributes, "TYPE" ) )
+			_Session.setContentType( "application/json; charset=UTF-8" );
+
+		try {
+			serializejson.writeJSON( _Session.getOutputStream(), outputData, false, serializejson.getCaseType( null ), serializejson.getDateType( null ) );
+		} catch ( IOException E ) {
+			throw newRunTimeException( E.toString() );
+		}
+	}
+
+
 	private void readFile( cfStructData attributes, cfSession _Session ) throws cfmRunTimeException {
 		// Create File object
 		File thisFile;
@@ -31,14 +31,11 @@ package com.naryx.tagfusion.cfm.tag;
 
 import java.io.Serializable;
 
-import com.naryx.tagfusion.cfm.engine.cfData;
 import com.naryx.tagfusion.cfm.engine.cfEngine;
 import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfStructData;
 import com.naryx.tagfusion.cfm.engine.cfmBadFileException;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
-import com.naryx.tagfusion.cfm.parser.cfLData;
-import com.naryx.tagfusion.cfm.parser.runTime;
 
  
 public class cfLOCK extends cfTag implements Serializable {
@@ -146,43 +143,16 @@ public class cfLOCK extends cfTag implements Serializable {
 		return cfTagReturnType.NORMAL;
 	}
 	
-	public static synchronized cfLockingObject getLock( cfSession _Session, String _name ) throws cfmRunTimeException {
-		cfLockingObject lockOb = getLockingObject( _Session, _name );
-		if ( lockOb == null ) {
-			lockOb = new cfLockingObject();
-			_Session.setData( _name, lockOb );
-		}
-		lockOb.incrRefCount();
-		return lockOb;
+	public static cfLockingObject getLock( cfSession _Session, String _name ) throws cfmRunTimeException {
+		return LockUtility.getLock( _Session, _name );
 	}
 	
-	public static synchronized void freeLock( cfSession _Session, String _name, cfLockingObject lockOb ) throws cfmRunTimeException {
-		lockOb.decrRefCount();
-		if ( lockOb.isFree() ) {
-			_Session.deleteData( _name );
-		}
+	public static void freeLock( cfSession _Session, String _name, cfLockingObject lockOb ) throws cfmRunTimeException {
+		LockUtility.freeLock( _Session, _name, lockOb );
 	}
 
 	public static cfLockingObject getLockingObject( cfSession _Session, String _name ) {
-		cfData lockOb = null;
-		
-		try {
-			lockOb = runTime.runExpression( _Session, _name, false );
-			if ( lockOb instanceof cfLData ) {
-				if ( ((cfLData)lockOb).exists() ) {
-					lockOb = ((cfLData)lockOb).Get( _Session.getCFContext() );
-				} else {
-					lockOb = null;
-				}
-			}
-		} catch( cfmRunTimeException ignored ) {
-		} // lockOb doesn't exist
-		
-		if ( lockOb instanceof cfLockingObject ) {
-			return (cfLockingObject)lockOb;
-		}
-		
-		return null;
+		return LockUtility.getLockingObject( _Session, _name );
 	}
 
   public static String cleanupLockName( String _s ){
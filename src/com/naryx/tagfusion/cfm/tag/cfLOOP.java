@@ -312,6 +312,11 @@ public class cfLOOP extends cfTag implements Serializable {
 		else if (iStep == 0)
 			return cfTagReturnType.NORMAL;
 		
+		// whole number ranges (by far the most common) count on a long and keep the
+		// index as an int, so it never has to be formatted as a double
+		if ( isWholeNumber( iFrom ) && isWholeNumber( iTo ) && isWholeNumber( iStep ) )
+			return renderIndex( _Session, INDEX, (long)iFrom, (long)iTo, (long)iStep );
+
 		cfLoopNumberData loopIndex = new cfLoopNumberData( iFrom );
 		_Session.setData( INDEX, loopIndex );
 		
@@ -358,6 +363,42 @@ public class cfLOOP extends cfTag implements Serializable {
 		return cfTagReturnType.NORMAL;
 	}
 
+	private static boolean isWholeNumber( double _d ){
+		return _d == (int)_d;
+	}
+
+	private cfTagReturnType renderIndex( cfSession _Session, String INDEX, long iFrom, long iTo, long iStep ) throws cfmRunTimeException {
+		cfLoopNumberData loopIndex = new cfLoopNumberData( (int)iFrom );
+		_Session.setData( INDEX, loopIndex );
+
+		for (; ( iStep > 0 ) ? iFrom <= iTo : iFrom >= iTo; iFrom += iStep) {
+			loopIndex.set( (int)iFrom );
+			if ( !loopIndex.isValidLoopIndex() ) {
+				_Session.setData( INDEX, loopIndex );
+			}
+			cfTagReturnType rt = super.render( _Session );
+			if ( rt.isContinue() ) {
+				continue;
+			} else if ( rt.isBreak() ) {
+				break;
+			} else if ( !rt.isNormal() ) {
+				return rt;
+			}
+		}
+
+		// for consistency with CF5/MX, leave index one step past end
+		if ( iFrom >= Integer.MIN_VALUE && iFrom <= Integer.MAX_VALUE )
+			loopIndex.set( (int)iFrom );
+		else
+			loopIndex.set( (double)iFrom );
+
+		if ( !loopIndex.isValidLoopIndex() ) {
+			_Session.setData( INDEX, loopIndex );
+		}
+
+		return cfTagReturnType.NORMAL;
+	}
+
 	private cfTagReturnType renderCondition(cfSession _Session) throws cfmRunTimeException {
 		if ( conditionExpr == null ) {
 			throw newRunTimeException( "Error evaluating CONDITION" );
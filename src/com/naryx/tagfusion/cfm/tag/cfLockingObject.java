@@ -30,20 +30,49 @@
 package com.naryx.tagfusion.cfm.tag;
 
 import java.io.Serializable;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-import com.nary.util.FastMap;
 import com.naryx.tagfusion.cfm.engine.cfData;
 
+/**
+ * The lock behind a CFLOCK name or scope. Waiting threads queue in the order
+ * they arrived and are woken as soon as the lock is released, rather than
+ * polling for it.
+ *
+ * Instances are handed out and reclaimed by LockUtility, which counts the
+ * requests currently using each one.
+ *
+ * Locks are reentrant per thread. A thread holding the exclusive lock may nest
+ * read-only ones, and a thread holding only read-only locks may nest an
+ * exclusive one, which it gets once every other reader has let go; it keeps
+ * its read-only locks while it waits, so no other writer can get in between.
+ * A thread re-entering a lock it already holds does not queue behind others.
+ */
 public class cfLockingObject extends cfData implements Serializable {
 	private static final long serialVersionUID = 1L;
 
-	private FastMap readOnly = new FastMap(); // keyed by Thread, holds readonly counters
-	private FastMap exclusive = new FastMap(); // keyed by Thread, hold exclusive counters
+	// all guarded by this
+	private final Map<Thread, Integer> readHolds = new HashMap<Thread, Integer>();
+	private final List<Waiter> waiting = new ArrayList<Waiter>();
+	private transient Thread writer;
+	private int writeHolds;
+
+	private final String name;
+	private transient LockUtility.LockStats stats;
 
 	private int refCount;
+	private boolean retired = false;
 
 	public cfLockingObject() {
+		this( null, null );
+	}
+
+	cfLockingObject( String _name, LockUtility.LockStats _stats ) {
+		name = _name;
+		stats = _stats;
 		setImplicit(true); // part of fix for bug #2083
 	}
 
@@ -51,8 +80,12 @@ public class cfLockingObject extends cfData implements Serializable {
 		return "";
 	}
 
+	public String getName() {
+		return name;
+	}
+
 	public synchronized boolean isFree() {
-		return ((refCount == 0) && (readOnly.size() == 0) && (exclusive.size() == 0));
+		return ( refCount == 0 && writer == null && readHolds.isEmpty() );
 	}
 
 	public synchronized void incrRefCount() {
@@ -63,150 +96,155 @@ public class cfLockingObject extends cfData implements Serializable {
 		refCount -= 1;
 	}
 
-	public String toString() {
-		return "cfLockingObject; exclusive = " + exclusive + ", read-only = "
-				+ readOnly;
-	}
-
-	public boolean lock(String type, long msecs) {
-		return (type.equals(cfLOCK.TYPE_EXCLUSIVE) ? lockExclusive(msecs)
-				: lockReadOnly(msecs));
-	}
-
-	public void unlock(String type) {
-		if (type.equals(cfLOCK.TYPE_EXCLUSIVE))
-			unlockExclusive();
-		else
-			unlockReadOnly();
+	/**
+	 * Registers another user of the lock; fails once the lock has been dropped
+	 * from the registry, in which case the caller looks it up again
+	 */
+	synchronized boolean retain() {
+		if ( retired )
+			return false;
+		refCount += 1;
+		return true;
 	}
 
 	/**
-	 * Return true if no thread other than the current thread has an exclusive
-	 * lock.
+	 * Returns true when this was the last user, at which point the lock is
+	 * retired and can no longer be retained
 	 */
-	private synchronized boolean canGetReadOnlyLock(Thread currentThread) {
-		Iterator iter = exclusive.keySet().iterator();
-		while (iter.hasNext()) {
-			if ((Thread) iter.next() != currentThread)
-				return false;
+	synchronized boolean release() {
+		refCount -= 1;
+		if ( refCount <= 0 ) {
+			retired = true;
+			return true;
 		}
-		return true;
+		return false;
 	}
 
-	private synchronized boolean getReadOnlyLock() {
-		Thread currentThread = Thread.currentThread();
+	public synchronized String toString() {
+		return "cfLockingObject; exclusive = " + writer + ", read-only = " + readHolds.keySet() + ", waiting = " + waiting.size();
+	}
 
-		// make sure no other thread has an exclusive lock
-		if (!canGetReadOnlyLock(currentThread))
-			return false;
+	public boolean lock(String type, long msecs) {
+		return acquire( type.equals(cfLOCK.TYPE_EXCLUSIVE), msecs );
+	}
 
-		// increment the read-only counter for this thread
-		Integer readOnlyCount = (Integer) readOnly.get(currentThread);
-		if (readOnlyCount == null) {
-			readOnlyCount = new Integer(0);
+	public synchronized void unlock(String type) {
+		Thread current = Thread.currentThread();
+
+		if ( type.equals(cfLOCK.TYPE_EXCLUSIVE) ) {
+			if ( writer != current )
+				return;
+			if ( --writeHolds == 0 )
+				writer = null;
+		} else {
+			Integer count = readHolds.get( current );
+			if ( count == null )
+				return;
+			if ( count.intValue() == 1 )
+				readHolds.remove( current );
+			else
+				readHolds.put( current, count.intValue() - 1 );
 		}
-		readOnly.put(currentThread, new Integer(readOnlyCount.intValue() + 1));
-		return true;
-	}
 
-	private boolean lockReadOnly(long msecs) {
-		if (getReadOnlyLock())
-			return true;
+		notifyAll();
+	}
 
-		long startTime = System.currentTimeMillis();
-		long timeElapsed = 0;
-		long sleepInterval = 1;
+	private synchronized boolean acquire( boolean exclusive, long msecs ) {
+		Thread current = Thread.currentThread();
+		Waiter waiter = new Waiter( current, exclusive );
 
-		while (timeElapsed < msecs) {
-			try {
-				Thread.sleep(sleepInterval);
-			} catch (InterruptedException e) {
-			}
-			if (getReadOnlyLock()) {
-				return true;
-			}
-			if (sleepInterval < 128) {
-				sleepInterval = sleepInterval * 2;
-			}
-			timeElapsed = System.currentTimeMillis() - startTime;
+		if ( canGrant( waiter ) ) {
+			grant( waiter );
+			recordAcquired( 0 );
+			return true;
 		}
 
-		return getReadOnlyLock();
-	}
+		long start = System.nanoTime();
+		long deadline = start + msecs * 1000000;
+		boolean locked = false;
+
+		waiting.add( waiter );
+		try {
+			while ( !( locked = canGrant( waiter ) ) ) {
+				long left = deadline - System.nanoTime();
+				if ( left <= 0 )
+					break;
+
+				try {
+					wait( Math.max( 1, left / 1000000 ) );
+				} catch ( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
 
-	private synchronized void unlockReadOnly() {
-		Thread currentThread = Thread.currentThread();
-		if (readOnly.containsKey(currentThread)) {
-			// decrement the read-only counter for this thread
-			int readOnlyCount = ((Integer) readOnly.get(currentThread)).intValue() - 1;
-			if (readOnlyCount == 0)
-				readOnly.remove(currentThread);
-			else
-				readOnly.put(currentThread, new Integer(readOnlyCount));
+			if ( locked )
+				grant( waiter );
+		} finally {
+			waiting.remove( waiter );
+			notifyAll(); // those queued behind this one may go now
 		}
+
+		long waited = ( System.nanoTime() - start ) / 1000000;
+		if ( locked )
+			recordAcquired( waited );
+		else if ( stats != null )
+			stats.timedOut( waited );
+		return locked;
 	}
 
 	/**
-	 * Return true if no thread other than the current thread has an exclusive or
-	 * read-only lock.
+	 * True if the lock is free for the waiter and it is its turn; a thread that
+	 * already holds the lock either way goes ahead of the queue
 	 */
-	private synchronized boolean getExclusiveLock() {
-		Thread currentThread = Thread.currentThread();
+	private boolean canGrant( Waiter waiter ) {
+		Thread t = waiter.thread;
 
-		// make sure no other thread has an exclusive lock
-		if (!canGetReadOnlyLock(currentThread))
+		if ( writer != null && writer != t )
 			return false;
 
-		// make sure no other thread has a read-only lock
-		Iterator iter = readOnly.keySet().iterator();
-		while (iter.hasNext()) {
-			if ((Thread) iter.next() != currentThread)
-				return false;
+		if ( waiter.exclusive ) {
+			for ( Thread reader : readHolds.keySet() ) {
+				if ( reader != t )
+					return false;
+			}
 		}
 
-		// increment the exclusive counter for this thread
-		Integer exclusiveCount = (Integer) exclusive.get(currentThread);
-		if (exclusiveCount == null) {
-			exclusiveCount = new Integer(0);
+		if ( writer == t || readHolds.containsKey( t ) )
+			return true;
+
+		// otherwise wait behind any exclusive request queued first; readers queued together go in together
+		for ( Waiter w : waiting ) {
+			if ( w == waiter )
+				return true;
+			if ( waiter.exclusive || w.exclusive )
+				return false;
 		}
-		exclusive.put(currentThread, new Integer(exclusiveCount.intValue() + 1));
 		return true;
 	}
 
-	private boolean lockExclusive(long msecs) {
-		if (getExclusiveLock())
-			return true;
-
-		long startTime = System.currentTimeMillis();
-		long timeElapsed = 0;
-		long sleepInterval = 1;
-
-		while (timeElapsed < msecs) {
-			try {
-				Thread.sleep(sleepInterval);
-			} catch (InterruptedException e) {
-			}
-			if (getExclusiveLock()) {
-				return true;
-			}
-			if (sleepInterval < 128) {
-				sleepInterval = sleepInterval * 2;
-			}
-			timeElapsed = System.currentTimeMillis() - startTime;
+	private void grant( Waiter waiter ) {
+		if ( waiter.exclusive ) {
+			writer = waiter.thread;
+			writeHolds++;
+		} else {
+			Integer count = readHolds.get( waiter.thread );
+			readHolds.put( waiter.thread, count == null ? 1 : count.intValue() + 1 );
 		}
+	}
 
-		return getExclusiveLock();
+	private void recordAcquired( long waited ) {
+		if ( stats != null )
+			stats.acquired( waited );
 	}
 
-	private synchronized void unlockExclusive() {
-		Thread currentThread = Thread.currentThread();
-		if (exclusive.containsKey(currentThread)) {
-			// decrement the exclusive counter for this thread
-			int exclusiveCount = ((Integer) exclusive.get(currentThread)).intValue() - 1;
-			if (exclusiveCount == 0)
-				exclusive.remove(currentThread);
-			else
-				exclusive.put(currentThread, new Integer(exclusiveCount));
+	private static class Waiter {
+		private final Thread thread;
+		private final boolean exclusive;
+
+		private Waiter( Thread _thread, boolean _exclusive ) {
+			thread = _thread;
+			exclusive = _exclusive;
 		}
 	}
 }
@@ -0,0 +1,203 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.cfm.tag.ext.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.naryx.tagfusion.cfm.engine.cfArrayData;
+import com.naryx.tagfusion.cfm.engine.cfCatchData;
+import com.naryx.tagfusion.cfm.engine.cfData;
+import com.naryx.tagfusion.cfm.engine.cfEngine;
+import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
+import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.engine.variableStore;
+import com.naryx.tagfusion.xmlConfig.xmlCFML;
+
+/**
+ * Runs the iterations of arrayEach(), structMap() and friends across the
+ * shared parallel pool when they are called with parallel=true.
+ *
+ * Each worker gets its own session forked from the calling request, the same
+ * way CFTHREAD builds one, with a shallow copy of the caller's VARIABLES scope
+ * so the function sees the page it was declared in. Assignments a function
+ * makes to VARIABLES stay with its worker and are dropped when the loop ends;
+ * structs and arrays held in VARIABLES are still the caller's own, as are the
+ * variables of a component whose method is the function. Results are returned in
+ * iteration order regardless of which worker ran them, and every failure is
+ * collected rather than just the first.
+ *
+ * The pool is sized by server.system.parallelthreads in bluedragon.xml and
+ * defaults to the number of processors.
+ */
+public class cfParallelLoop {
+
+	public interface Iteration {
+		public cfData run( cfSession _session, int _index ) throws cfmRunTimeException;
+	}
+
+	private static ForkJoinPool pool;
+
+	private static synchronized ForkJoinPool getPool() {
+		if ( pool == null ) {
+			int size = Runtime.getRuntime().availableProcessors();
+			xmlCFML config = cfEngine.getConfig();
+			if ( config != null )
+				size = config.getInt( "server.system.parallelthreads", size );
+
+			pool = new ForkJoinPool( Math.max( 1, size ), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+				public ForkJoinWorkerThread newThread( ForkJoinPool _pool ) {
+					ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread( _pool );
+					thread.setName( "OpenBD Parallel-" + thread.getPoolIndex() );
+					thread.setDaemon( true );
+					return thread;
+				}
+			}, null, false );
+		}
+		return pool;
+	}
+
+	public static synchronized void shutdown() {
+		if ( pool != null ) {
+			pool.shutdownNow();
+			pool = null;
+		}
+	}
+
+	public static int getParallelism() {
+		return getPool().getParallelism();
+	}
+
+	/**
+	 * Runs _count iterations on at most _maxThreads workers (0 meaning the size
+	 * of the pool) and returns their results indexed by iteration.
+	 */
+	public static cfData[] run( cfSession _session, int _count, int _maxThreads, final Iteration _iteration ) throws cfmRunTimeException {
+		final cfData[] results = new cfData[ _count ];
+		if ( _count == 0 )
+			return results;
+
+		ForkJoinPool executor = getPool();
+		int workers = ( _maxThreads <= 0 || _maxThreads > executor.getParallelism() ) ? executor.getParallelism() : _maxThreads;
+		workers = Math.min( workers, _count );
+
+		final cfmRunTimeException[] errors = new cfmRunTimeException[ _count ];
+		final AtomicInteger nextIndex = new AtomicInteger( 0 );
+		final int count = _count;
+
+		final cfSession[] sessions = new cfSession[ workers ];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>( workers );
+		for ( int w = 0; w < workers; w++ ) {
+			final cfSession workerSession = forkSession( _session );
+			sessions[ w ] = workerSession;
+
+			tasks.add( new Callable<Void>() {
+				public Void call() {
+					try {
+						int index;
+						while ( ( index = nextIndex.getAndIncrement() ) < count ) {
+							try {
+								results[ index ] = _iteration.run( workerSession, index );
+							} catch ( cfmRunTimeException e ) {
+								errors[ index ] = e;
+							} catch ( Throwable t ) {
+								errors[ index ] = new cfmRunTimeException( workerSession, t );
+							}
+						}
+					} finally {
+						workerSession.sessionEnd();
+					}
+					return null;
+				}
+			} );
+		}
+
+		try {
+			executor.invokeAll( tasks );
+		} finally {
+			// output from the workers is appended in worker order once they have all finished
+			for ( int w = 0; w < sessions.length; w++ ) {
+				String output = sessions[ w ].getOutputAsString();
+				if ( output != null && output.length() > 0 )
+					_session.write( output );
+			}
+		}
+
+		throwErrors( errors );
+		return results;
+	}
+
+	/**
+	 * A single failure is rethrown as is; several are folded into one
+	 * exception that carries them all in its ERRORS array
+	 */
+	private static void throwErrors( cfmRunTimeException[] _errors ) throws cfmRunTimeException {
+		cfmRunTimeException first = null;
+		cfArrayData all = cfArrayData.createArray( 1 );
+		StringBuilder info = new StringBuilder( 128 );
+
+		for ( int x = 0; x < _errors.length; x++ ) {
+			if ( _errors[ x ] == null )
+				continue;
+
+			if ( first == null )
+				first = _errors[ x ];
+
+			cfCatchData catchData = _errors[ x ].getCatchData();
+			all.addElement( catchData );
+			info.append( "[" ).append( x + 1 ).append( "] " ).append( catchData.getMessage() ).append( "\n" );
+		}
+
+		if ( first == null )
+			return;
+		if ( all.size() == 1 )
+			throw first;
+
+		cfCatchData catchData = new cfCatchData();
+		catchData.setMessage( all.size() + " of " + _errors.length + " parallel iterations failed: " + first.getCatchData().getMessage() );
+		catchData.setDetail( first.getCatchData().getDetail() );
+		catchData.setExtendedInfo( info.toString() );
+		catchData.setData( "errors", all );
+		throw new cfmRunTimeException( catchData );
+	}
+
+	private static cfSession forkSession( cfSession _session ) throws cfmRunTimeException {
+		cfSession workerSession = cfTHREAD.createVirtualSession( _session, null, new cfStructData(), true );
+		cfStructData variables = (cfStructData) _session.getQualifiedData( variableStore.VARIABLES_SCOPE ).clone();
+		variables.publish(); // its own copy, but of values every worker can reach
+		workerSession.setQualifiedData( variableStore.VARIABLES_SCOPE, variables );
+		return workerSession;
+	}
+}
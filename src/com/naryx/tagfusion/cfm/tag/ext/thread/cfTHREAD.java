@@ -95,6 +95,9 @@ public class cfTHREAD extends cfTag implements Serializable {
 	
 	private static FastMap<String,cfData> DEFAULTS = new FastMap<String,cfData>( FastMap.CASE_INSENSITIVE );
 
+	private static final int[] SHARED_SCOPES = { variableStore.REQUEST_SCOPE, variableStore.FORM_SCOPE, variableStore.URL_SCOPE,
+			variableStore.COOKIE_SCOPE, variableStore.FILE_SCOPE, variableStore.CFTHREAD_SCOPE };
+
 	static{
 		DEFAULTS.put( "OUTPUT",  cfBooleanData.TRUE );
 		DEFAULTS.put( "ACTION",  new cfStringData( "run" ) );
@@ -345,6 +348,8 @@ public class cfTHREAD extends cfTag implements Serializable {
 		cfStructData sessionScope = _Session.getQualifiedData( variableStore.SESSION_SCOPE );
 		if ( sessionScope != null ){
 			tmpSession.setQualifiedData( variableStore.SESSION_SCOPE, sessionScope );
+			if ( appScope != null )
+				appScope.onThreadStart( _Session, tmpSession ); // released by cfThreadRunner once the thread has finished
 		}
 		cfStructData clientScope = _Session.getQualifiedData( variableStore.CLIENT_SCOPE );
 		if ( clientScope != null ){
@@ -359,9 +364,17 @@ public class cfTHREAD extends cfTag implements Serializable {
 		tmpSession.setQualifiedData( variableStore.COOKIE_SCOPE, _Session.getQualifiedData( variableStore.COOKIE_SCOPE ) );
 		tmpSession.setQualifiedData( variableStore.FILE_SCOPE, _Session.getQualifiedData( variableStore.FILE_SCOPE ) );
 		tmpSession.setQualifiedData( variableStore.CFTHREAD_SCOPE, _Session.getQualifiedData( variableStore.CFTHREAD_SCOPE ) );
+
+		// the thread now shares these with the request; the application, session and server scopes publish their own values
+		for ( int i = 0; i < SHARED_SCOPES.length; i++ ) {
+			cfStructData scope = tmpSession.getQualifiedData( SHARED_SCOPES[ i ] );
+			if ( scope != null )
+				scope.publish();
+		}
 		
 		cfComponentData componentData = _Session.getActiveComponentData();
 		if ( componentData != null ) {
+			componentData.publish();
 			tmpSession.pushComponentData( componentData, cfFUNCTION.EMPTY_FUNCTION );
 			tmpSession.setQualifiedData( variableStore.SUPER_SCOPE, componentData.getSuperComponent() ); // set up SUPER scope
 		}
@@ -0,0 +1,406 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.cfm.tag.ext.thread;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.naryx.tagfusion.cfm.application.cfApplicationData;
+import com.naryx.tagfusion.cfm.engine.cfBooleanData;
+import com.naryx.tagfusion.cfm.engine.cfCatchData;
+import com.naryx.tagfusion.cfm.engine.cfData;
+import com.naryx.tagfusion.cfm.engine.cfEngine;
+import com.naryx.tagfusion.cfm.engine.cfNumberData;
+import com.naryx.tagfusion.cfm.engine.cfStringData;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
+import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.engine.variableStore;
+import com.naryx.tagfusion.xmlConfig.xmlCFML;
+
+/**
+ * The engine wide pool that every CFTHREAD runs on.
+ *
+ * At most maxthreads bodies run at once and up to queuesize more wait behind
+ * them. When both are used up the policy decides what happens to the next
+ * one: "block" waits up to blocktimeout milliseconds for room, "callerruns"
+ * runs it on the requesting thread and "reject" throws straight away. An
+ * application may also be held to applicationquota queued or running
+ * threads of its own.
+ *
+ * A body that starts threads of its own and then JOINs them would deadlock
+ * if those children had to wait for a slot held by their parent and its
+ * siblings, so threads started from inside a body run on a separate pool
+ * of up to nestedmaxthreads threads that never queues; they still count
+ * against the application quota. When that pool is busy too, a child runs
+ * on its parent's thread, which cannot deadlock, unless the policy is
+ * "reject", in which case it is refused.
+ *
+ * With virtualthreads set, and a JDK that has them, each body gets its own
+ * virtual thread instead of a pooled one. Virtual threads are cheap to park,
+ * so maxthreads and queuesize do not apply; only the application quota does.
+ *
+ * Settings live under server.cfthread in bluedragon.xml.
+ */
+public class cfThreadPool {
+
+	private static final byte POLICY_BLOCK = 0, POLICY_CALLERRUNS = 1, POLICY_REJECT = 2;
+	private static final String[] POLICY_NAMES = new String[]{ "block", "callerruns", "reject" };
+
+	private static ExecutorService executor;
+	private static ExecutorService nestedExecutor;
+	private static Semaphore slots;
+
+	// set while a CFTHREAD body is running on the current thread
+	private static final ThreadLocal<Boolean> inBody = new ThreadLocal<Boolean>();
+
+	private static int maxThreads = 100;
+	private static int nestedMaxThreads = 100;
+	private static int queueSize = 1000;
+	private static int applicationQuota = 0;
+	private static long blockTimeout = 30000;
+	private static byte policy = POLICY_BLOCK;
+	private static boolean virtualThreads = false;
+
+	private static final Map<String, AtomicInteger> perApplication = new ConcurrentHashMap<String, AtomicInteger>();
+	private static final AtomicInteger running = new AtomicInteger( 0 );
+	private static final AtomicLong submitted = new AtomicLong( 0 );
+	private static final AtomicLong completed = new AtomicLong( 0 );
+	private static final AtomicLong rejected = new AtomicLong( 0 );
+	private static final AtomicLong callerRuns = new AtomicLong( 0 );
+	private static final AtomicLong nested = new AtomicLong( 0 );
+
+
+	public static synchronized void init( xmlCFML config ) {
+		maxThreads = Math.max( 1, config.getInt( "server.cfthread.maxthreads", 100 ) );
+		queueSize = Math.max( 0, config.getInt( "server.cfthread.queuesize", 1000 ) );
+		nestedMaxThreads = Math.max( 1, config.getInt( "server.cfthread.nestedmaxthreads", maxThreads ) );
+		applicationQuota = Math.max( 0, config.getInt( "server.cfthread.applicationquota", 0 ) );
+		blockTimeout = Math.max( 0, config.getInt( "server.cfthread.blocktimeout", 30000 ) );
+		virtualThreads = config.getBoolean( "server.cfthread.virtualthreads", false );
+
+		String policyName = config.getString( "server.cfthread.policy", "block" );
+		policy = POLICY_BLOCK;
+		for ( byte p = 0; p < POLICY_NAMES.length; p++ ) {
+			if ( POLICY_NAMES[ p ].equalsIgnoreCase( policyName ) )
+				policy = p;
+		}
+
+		shutdown();
+		getExecutor();
+
+		cfEngine.log( "CFTHREAD pool: maxthreads=" + maxThreads + "; queuesize=" + queueSize + "; nestedmaxthreads=" + nestedMaxThreads + "; policy=" + POLICY_NAMES[ policy ]
+				+ "; applicationquota=" + applicationQuota + "; virtualthreads=" + ( executor instanceof ThreadPoolExecutor ? "false" : "true" ) );
+	}
+
+
+	private static synchronized ExecutorService getExecutor() {
+		if ( executor == null ) {
+			if ( virtualThreads )
+				executor = newVirtualThreadExecutor();
+
+			if ( executor == null ) {
+				ThreadPoolExecutor pool = new ThreadPoolExecutor( maxThreads, maxThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), newThreadFactory( "CFTHREAD-pool-" ) );
+				pool.allowCoreThreadTimeOut( true );
+				executor = pool;
+				slots = new Semaphore( maxThreads + queueSize );
+			} else {
+				slots = null;
+			}
+		}
+		return executor;
+	}
+
+
+	/*
+	 * Threads started from inside a body; grows on demand up to nestedMaxThreads
+	 * and, having no queue, refuses the next one rather than holding it back
+	 */
+	private static synchronized ExecutorService getNestedExecutor() {
+		if ( nestedExecutor == null )
+			nestedExecutor = new ThreadPoolExecutor( 0, nestedMaxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), newThreadFactory( "CFTHREAD-nested-" ) );
+		return nestedExecutor;
+	}
+
+
+	private static ThreadFactory newThreadFactory( final String prefix ) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger( 0 );
+
+			public Thread newThread( Runnable r ) {
+				Thread t = new Thread( cfThreadRunner.cfThreadGroup, r, prefix + count.incrementAndGet() );
+				t.setDaemon( true );
+				return t;
+			}
+		};
+	}
+
+
+	/*
+	 * Executors.newVirtualThreadPerTaskExecutor() is looked up reflectively so
+	 * the engine still builds and runs on JDKs that predate it
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = java.util.concurrent.Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+			return (ExecutorService) factory.invoke( null );
+		} catch ( Exception e ) {
+			cfEngine.log( "CFTHREAD pool: virtual threads are not available on this JVM, using platform threads" );
+			return null;
+		}
+	}
+
+
+	public static synchronized void shutdown() {
+		if ( executor != null ) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		if ( nestedExecutor != null ) {
+			nestedExecutor.shutdownNow();
+			nestedExecutor = null;
+		}
+	}
+
+
+	static void submit( cfThreadRunner runner ) throws cfmRunTimeException {
+		ExecutorService pool;
+		Semaphore poolSlots;
+		synchronized ( cfThreadPool.class ) {
+			pool = getExecutor();
+			poolSlots = slots;
+		}
+
+		runner.applicationKey = getApplicationKey( runner );
+		if ( runner.applicationKey != null && applicationQuota > 0 ) {
+			AtomicInteger count = getApplicationCount( runner.applicationKey );
+			if ( count.incrementAndGet() > applicationQuota ) {
+				count.decrementAndGet();
+				runner.applicationKey = null;
+				rejected.incrementAndGet();
+				throw newException( "The application has reached its limit of " + applicationQuota + " CFTHREADs queued or running" );
+			}
+		} else if ( runner.applicationKey != null ) {
+			getApplicationCount( runner.applicationKey ).incrementAndGet();
+		}
+
+		submitted.incrementAndGet();
+
+		// virtual threads, and the children of a running body, are not held to the slots
+		if ( poolSlots == null || inBody.get() != null ) {
+			ExecutorService target = pool;
+			if ( poolSlots != null ) {
+				target = getNestedExecutor();
+				nested.incrementAndGet();
+			}
+
+			runner.holdsSlot = false;
+			try {
+				target.execute( runner );
+			} catch ( RejectedExecutionException e ) {
+				if ( target == pool || target.isShutdown() ) {
+					releaseApplication( runner );
+					rejected.incrementAndGet();
+					throw newException( "The CFTHREAD pool is not accepting new threads" );
+				}
+
+				// every nested thread is busy
+				if ( policy == POLICY_REJECT ) {
+					releaseApplication( runner );
+					rejected.incrementAndGet();
+					throw newException( "The CFTHREAD pool is full; " + nestedMaxThreads + " threads started from other threads are running" );
+				}
+
+				callerRuns.incrementAndGet();
+				runner.run();
+			}
+			return;
+		}
+
+		boolean haveSlot = poolSlots.tryAcquire();
+		if ( !haveSlot && policy == POLICY_BLOCK ) {
+			try {
+				haveSlot = poolSlots.tryAcquire( blockTimeout, TimeUnit.MILLISECONDS );
+			} catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if ( !haveSlot ) {
+			if ( policy == POLICY_CALLERRUNS ) {
+				callerRuns.incrementAndGet();
+				runner.holdsSlot = false;
+				runner.run();
+				return;
+			}
+
+			releaseApplication( runner );
+			rejected.incrementAndGet();
+			throw newException( "The CFTHREAD pool is full; " + maxThreads + " threads are running and " + queueSize + " are queued" );
+		}
+
+		runner.holdsSlot = true;
+		try {
+			pool.execute( runner );
+		} catch ( RejectedExecutionException e ) { // the pool is being shut down
+			runner.holdsSlot = false;
+			poolSlots.release();
+			releaseApplication( runner );
+			rejected.incrementAndGet();
+			throw newException( "The CFTHREAD pool is not accepting new threads" );
+		}
+	}
+
+
+	/**
+	 * Marks the current thread as running a body; returns true if it already was,
+	 * as when the callerruns policy runs a child on its parent's thread
+	 */
+	static boolean started() {
+		running.incrementAndGet();
+		if ( inBody.get() != null )
+			return true;
+		inBody.set( Boolean.TRUE );
+		return false;
+	}
+
+
+	static void finished( boolean wasInBody ) {
+		if ( !wasInBody )
+			inBody.remove();
+	}
+
+
+	static void release( cfThreadRunner runner, boolean ran ) {
+		if ( ran )
+			running.decrementAndGet();
+		completed.incrementAndGet();
+		if ( runner.holdsSlot ) {
+			runner.holdsSlot = false;
+			Semaphore poolSlots = slots;
+			if ( poolSlots != null )
+				poolSlots.release();
+		}
+		releaseApplication( runner );
+	}
+
+
+	private static void releaseApplication( cfThreadRunner runner ) {
+		if ( runner.applicationKey != null ) {
+			AtomicInteger count = perApplication.get( runner.applicationKey );
+			if ( count != null )
+				count.decrementAndGet();
+			runner.applicationKey = null;
+		}
+	}
+
+
+	private static AtomicInteger getApplicationCount( String key ) {
+		AtomicInteger count = perApplication.get( key );
+		if ( count == null ) {
+			synchronized ( perApplication ) {
+				count = perApplication.get( key );
+				if ( count == null ) {
+					count = new AtomicInteger( 0 );
+					perApplication.put( key, count );
+				}
+			}
+		}
+		return count;
+	}
+
+
+	private static String getApplicationKey( cfThreadRunner runner ) {
+		cfData appScope = runner.getThreadSession().getQualifiedData( variableStore.APPLICATION_SCOPE );
+		if ( appScope instanceof cfApplicationData )
+			return ( (cfApplicationData) appScope ).getAppName().toLowerCase();
+		return null;
+	}
+
+
+	private static cfmRunTimeException newException( String message ) {
+		cfCatchData catchData = new cfCatchData();
+		catchData.setMessage( message );
+		catchData.setDetail( "See the server.cfthread settings in bluedragon.xml" );
+		return new cfmRunTimeException( catchData );
+	}
+
+
+	/**
+	 * Pool metrics: the number of threads running and queued, the lifetime
+	 * counters and the per-application counts
+	 */
+	public static cfStructData getMetrics() {
+		cfStructData s = new cfStructData();
+
+		int inUse = 0;
+		Semaphore poolSlots = slots;
+		if ( poolSlots != null )
+			inUse = ( maxThreads + queueSize ) - poolSlots.availablePermits();
+
+		int active = running.get();
+		s.setData( "active", new cfNumberData( active ) );
+		s.setData( "queued", new cfNumberData( Math.max( 0, inUse - active ) ) );
+		s.setData( "submitted", new cfNumberData( submitted.get() ) );
+		s.setData( "completed", new cfNumberData( completed.get() ) );
+		s.setData( "rejected", new cfNumberData( rejected.get() ) );
+		s.setData( "callerruns", new cfNumberData( callerRuns.get() ) );
+		s.setData( "nested", new cfNumberData( nested.get() ) );
+		s.setData( "maxthreads", new cfNumberData( maxThreads ) );
+		s.setData( "queuesize", new cfNumberData( queueSize ) );
+		s.setData( "nestedmaxthreads", new cfNumberData( nestedMaxThreads ) );
+		s.setData( "applicationquota", new cfNumberData( applicationQuota ) );
+		s.setData( "policy", new cfStringData( POLICY_NAMES[ policy ] ) );
+		s.setData( "virtualthreads", cfBooleanData.getcfBooleanData( executor != null && !( executor instanceof ThreadPoolExecutor ) ) );
+
+		cfStructData apps = new cfStructData();
+		Iterator<Map.Entry<String, AtomicInteger>> it = perApplication.entrySet().iterator();
+		while ( it.hasNext() ) {
+			Map.Entry<String, AtomicInteger> entry = it.next();
+			int count = entry.getValue().get();
+			if ( count > 0 )
+				apps.setData( entry.getKey(), new cfNumberData( count ) );
+		}
+		s.setData( "applications", apps );
+
+		return s;
+	}
+}
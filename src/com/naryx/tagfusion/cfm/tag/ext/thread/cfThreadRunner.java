@@ -29,36 +29,62 @@
 
 package com.naryx.tagfusion.cfm.tag.ext.thread;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.naryx.tagfusion.cfm.application.cfApplicationData;
 import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfThreadData;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
 
-public abstract class cfThreadRunner extends Thread {
+/**
+ * A single CFTHREAD body. It is no longer a Thread in its own right; start()
+ * hands it to the cfThreadPool and it runs on one of the pool's workers, while
+ * join/interrupt/isAlive keep the semantics the CFML functions expect.
+ */
+public abstract class cfThreadRunner implements Runnable {
 
 	public static final ThreadGroup cfThreadGroup = new ThreadGroup( "BlueDragon CFTHREAD" );
+
+	private static final AtomicLong threadIds = new AtomicLong( 0 );
+
+	// runners that have been started and not yet finished, queued or running
+	private static final Set<cfThreadRunner> activeRunners = Collections.newSetFromMap( new ConcurrentHashMap<cfThreadRunner, Boolean>() );
 	
 	protected cfSession threadSession;
 	protected cfThreadData threadData;
 	
+	private final String name;
+	private final int priority;
+	private final CountDownLatch finished = new CountDownLatch( 1 );
+	private volatile Thread worker;
+	private volatile boolean interruptPending = false;
+
+	// filled in by the cfThreadPool when the runner is submitted
+	String applicationKey;
+	boolean holdsSlot;
+
 	protected long startTime;
 	protected long runningTime;
-	protected byte executionStatus;
+	protected volatile byte executionStatus;
 	protected static final byte NOT_STARTED = 0, RUNNING = 1, TERMINATED = 2, COMPLETED = 3, WAITING = 4;
 	protected static final String [] STATUS_STRING = new String[]{ "NOT_STARTED", "RUNNING", "TERMINATED", "COMPLETED", "WAITING" };
 	  
 	protected cfThreadRunner( String threadName, cfSession tmpSession, int _priority )
 	{
-		super( cfThreadGroup, (Runnable)null );
-		
 		this.threadSession = tmpSession;
-		this.setPriority( _priority );
+		this.priority = _priority;
 		this.startTime = System.currentTimeMillis();
+		this.name = ( threadName != null ) ? threadName : "CFTHREAD-" + threadIds.incrementAndGet();
 		
 		if ( threadName != null ) { // named threads have associated data
-			super.setName( threadName );
 			this.threadData = new cfThreadData( this );
-		} else {
-			super.setName( "CFTHREAD-" + super.getId() );
 		}
 		executionStatus = NOT_STARTED;
 		
@@ -67,9 +93,98 @@ public abstract class cfThreadRunner extends Thread {
 		} catch (cfmRunTimeException ignored) {} // won't happen
 	}
 	
+	public String getName() {
+		return name;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
 	public cfThreadData getThreadData() {
 		return this.threadData;
 	}
+
+	public cfSession getThreadSession() {
+		return this.threadSession;
+	}
+
+	/**
+	 * Queues the body on the shared pool; depending on the pool's policy this
+	 * may wait for room, run the body on the calling thread, or throw
+	 */
+	public void start() throws cfmRunTimeException {
+		activeRunners.add( this );
+		try {
+			cfThreadPool.submit( this );
+		} catch ( cfmRunTimeException e ) {
+			activeRunners.remove( this );
+			releaseSession();
+			executionStatus = TERMINATED;
+			finished.countDown();
+			throw e;
+		}
+	}
+
+	public final void run() {
+		Thread current = Thread.currentThread();
+		String poolName = current.getName();
+		int poolPriority = current.getPriority();
+
+		boolean ran = false;
+		boolean wasInBody = false;
+		worker = current;
+		try {
+			// terminated while it was still waiting in the queue
+			if ( executionStatus == TERMINATED )
+				return;
+
+			wasInBody = cfThreadPool.started();
+			ran = true;
+
+			current.setName( name );
+			current.setPriority( priority );
+			if ( interruptPending )
+				current.interrupt();
+
+			execute();
+		} finally {
+			worker = null;
+			Thread.interrupted(); // don't leave an interrupt behind for the next task on this worker
+			current.setName( poolName );
+			current.setPriority( poolPriority );
+
+			activeRunners.remove( this );
+			releaseSession();
+			cfThreadPool.release( this, ran );
+			if ( ran )
+				cfThreadPool.finished( wasInBody );
+			finished.countDown();
+		}
+	}
+
+	protected abstract void execute();
+
+	/**
+	 * Hands back the session the thread was sharing with the request that started it
+	 */
+	private void releaseSession() {
+		cfApplicationData appData = threadSession.getApplicationData();
+		if ( appData != null )
+			appData.onThreadEnd( threadSession );
+	}
+
+	public void interrupt() {
+		Thread t = worker;
+		if ( t != null )
+			t.interrupt();
+		else
+			interruptPending = true;
+	}
+
+	public boolean isAlive() {
+		return finished.getCount() > 0;
+	}
 	
 	public void stopThread() {
 		threadSession.stopThread();
@@ -78,24 +193,33 @@ public abstract class cfThreadRunner extends Thread {
 	}
 	
 	public static void stopAllThreads() {
-		cfThreadRunner[] activeThreads = new cfThreadRunner[ cfThreadGroup.activeCount() ];
-		cfThreadGroup.enumerate( activeThreads );
+		cfThreadRunner[] activeThreads = getActiveThreads();
 
 		for ( int i = 0; i < activeThreads.length; i++ ) {
 			activeThreads[ i ].stopThread();
 	    }
 	}
+
+	public static cfThreadRunner[] getActiveThreads() {
+		List<cfThreadRunner> runners = new ArrayList<cfThreadRunner>( activeRunners );
+		return runners.toArray( new cfThreadRunner[ runners.size() ] );
+	}
 	
 	public void joinThread() throws InterruptedException {
 		if ( executionStatus == RUNNING )
 			executionStatus = WAITING;
-		this.join();
+		finished.await();
 	}
 		
 	public void joinThread( long timeout ) throws InterruptedException {
+		if ( timeout == 0 ) { // same as Thread.join(0), wait for ever
+			joinThread();
+			return;
+		}
+
 		if ( executionStatus == RUNNING )
 			executionStatus = WAITING;
-		this.join( timeout );
+		finished.await( timeout, TimeUnit.MILLISECONDS );
 	}
 		
   
@@ -107,8 +231,6 @@ public abstract class cfThreadRunner extends Thread {
 		return STATUS_STRING[ executionStatus ];
 	}
 
-	abstract public void run();
-
 	public long getRunningTime() {
 		if ( runningTime > 0 ) {
 			return runningTime;
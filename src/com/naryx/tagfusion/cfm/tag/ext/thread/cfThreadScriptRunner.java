@@ -48,7 +48,7 @@ public class cfThreadScriptRunner extends cfThreadRunner{
 		threadBody = _body;
 	}
 
-	public void run(){
+	protected void execute(){
 		executionStatus = RUNNING;
 		try {
 			CFStatementResult result = threadBody.Exec( context );
@@ -45,7 +45,7 @@ public class cfThreadTagRunner extends cfThreadRunner{
 		this.cfThreadTag = cfThreadTag;
 	}
 
-	public void run(){
+	protected void execute(){
 		executionStatus = RUNNING;
 		try {
 			cfTagReturnType rt = cfThreadTag.coreRender( threadSession );
@@ -33,7 +33,7 @@ package com.naryx.tagfusion.cfm.xml;
 
 import java.io.Serializable;
 import java.util.Iterator;
-import java.util.Vector;
+import java.util.List;
 
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Node;
@@ -41,6 +41,7 @@ import org.w3c.dom.Node;
 import com.naryx.tagfusion.cfm.engine.catchDataFactory;
 import com.naryx.tagfusion.cfm.engine.cfArrayData;
 import com.naryx.tagfusion.cfm.engine.cfArrayListData;
+import com.naryx.tagfusion.cfm.engine.cfArrayStore;
 import com.naryx.tagfusion.cfm.engine.cfData;
 import com.naryx.tagfusion.cfm.engine.cfStringData;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
@@ -54,7 +55,7 @@ public class cfXmlDataArray extends cfArrayListData implements Serializable {
 
 
 
-	public cfXmlDataArray(cfXmlData p, Vector<? extends cfData> children) {
+	public cfXmlDataArray(cfXmlData p, List<? extends cfData> children) {
 		super(1, children);
 		parent = p;
 	}
@@ -230,7 +231,7 @@ public class cfXmlDataArray extends cfArrayListData implements Serializable {
 	public cfArrayData copy() {
 		cfXmlDataArray arr = new cfXmlDataArray(parent, data);
 
-		arr.data = (Vector<cfData>) data.clone();
+		arr.data = data.copy();
 		return arr;
 	}
 
@@ -238,8 +239,8 @@ public class cfXmlDataArray extends cfArrayListData implements Serializable {
 
 	public cfData duplicate() {
 		cfXmlDataArray arrCopy = (cfXmlDataArray) copy();
-		Vector<cfData> theData = arrCopy.data;
-		Vector<cfData> clonedArrData = new Vector<cfData>();
+		cfArrayStore theData = arrCopy.data;
+		cfArrayStore clonedArrData = cfArrayStore.newStore(theData.size());
 		int arrLen = theData.size();
 
 		for (int i = 0; i < arrLen; i++) {
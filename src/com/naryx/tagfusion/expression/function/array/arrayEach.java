@@ -30,6 +30,9 @@
 
 package com.naryx.tagfusion.expression.function.array;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.naryx.tagfusion.cfm.engine.cfArgStructData;
 import com.naryx.tagfusion.cfm.engine.cfArrayData;
 import com.naryx.tagfusion.cfm.engine.cfBooleanData;
@@ -37,20 +40,25 @@ import com.naryx.tagfusion.cfm.engine.cfData;
 import com.naryx.tagfusion.cfm.engine.cfDataSession;
 import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.parser.script.userDefinedFunction;
+import com.naryx.tagfusion.cfm.tag.ext.thread.cfParallelLoop;
 import com.naryx.tagfusion.expression.function.functionBase;
 
 public class arrayEach extends functionBase {
 	private static final long serialVersionUID = 1L;
 
 	public arrayEach() {
-		min = max = 2;
-		setNamedParams( new String[]{ "array", "function" } );
+		min = 2;
+		max = 4;
+		setNamedParams( new String[]{ "array", "function", "parallel", "maxthreads" } );
 	}
 
 	public String[] getParamInfo(){
 		return new String[]{
 			"Array Object",
-			"function to loop over the data, passing in the element as the parameter to each. function(el){}"
+			"function to loop over the data, passing in the element as the parameter to each. function(el){}",
+			"flag to run the function across the parallel thread pool; defaults to false",
+			"maximum number of threads to use when parallel; defaults to the size of the pool"
 		};
 	}
 	
@@ -70,7 +78,21 @@ public class arrayEach extends functionBase {
 
 		if (array.getDataType() == cfData.CFARRAYDATA) {
 			cfArrayData	arrData	= (cfArrayData)array;
-			arrData.each( new cfDataSession(_session), func );
+
+			if ( getNamedBooleanParam(argStruct, "parallel", false) ){
+				final cfArrayData	elements	= arrData;
+				final userDefinedFunction	udf	= (userDefinedFunction)func;
+
+				cfParallelLoop.run( _session, elements.size(), getNamedIntParam(argStruct, "maxthreads", 0), new cfParallelLoop.Iteration(){
+					public cfData run( cfSession _workerSession, int _index ) throws cfmRunTimeException {
+						List<cfData>	args	= new ArrayList<cfData>(1);
+						args.add( elements.getData(_index+1) );
+						return udf.execute( _workerSession, args );
+					}
+				});
+			} else
+				arrData.each( new cfDataSession(_session), func );
+
 			return cfBooleanData.TRUE;
 		} else {
 			throwException(_session, "the parameter is not an Array");
@@ -39,20 +39,24 @@ import com.naryx.tagfusion.cfm.engine.cfData;
 import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
 import com.naryx.tagfusion.cfm.parser.script.userDefinedFunction;
+import com.naryx.tagfusion.cfm.tag.ext.thread.cfParallelLoop;
 import com.naryx.tagfusion.expression.function.functionBase;
 
 public class arrayFilter extends functionBase {
 	private static final long serialVersionUID = 1L;
 
 	public arrayFilter() {
-		min = max = 2;
-		setNamedParams( new String[]{ "array", "function" } );
+		min = 2;
+		max = 4;
+		setNamedParams( new String[]{ "array", "function", "parallel", "maxthreads" } );
 	}
 
 	public String[] getParamInfo(){
 		return new String[]{
 			"Array Object",
-			"function to loop over the data, passing in the element as the parameter to each. each function call should return true or false; function(element){}"
+			"function to loop over the data, passing in the element as the parameter to each. each function call should return true or false; function(element){}",
+			"flag to run the function across the parallel thread pool; defaults to false",
+			"maximum number of threads to use when parallel; defaults to the size of the pool"
 		};
 	}
 	
@@ -71,11 +75,27 @@ public class arrayFilter extends functionBase {
 			throwException(_session, "the parameter is not a function");
 
 		if (array.getDataType() == cfData.CFARRAYDATA) {
-			cfArrayData	arrData	= (cfArrayData)array;
+			final cfArrayData	arrData	= (cfArrayData)array;
 			cfArrayData	newArr	= cfArrayData.createArray(1);
 			
-			
-			userDefinedFunction	udf	= (userDefinedFunction)func;
+			final userDefinedFunction	udf	= (userDefinedFunction)func;
+
+			if ( getNamedBooleanParam(argStruct, "parallel", false) ){
+				cfData[] results = cfParallelLoop.run( _session, arrData.size(), getNamedIntParam(argStruct, "maxthreads", 0), new cfParallelLoop.Iteration(){
+					public cfData run( cfSession _workerSession, int _index ) throws cfmRunTimeException {
+						List<cfData>	args	= new ArrayList<cfData>(1);
+						args.add( arrData.getData(_index+1) );
+						return udf.execute( _workerSession, args );
+					}
+				});
+
+				for ( int x = 0; x < results.length; x++ ){
+					if ( results[x] != null && results[x].isBooleanConvertible() && results[x].getBoolean() )
+						newArr.addElement( arrData.getData(x+1) );
+				}
+				return newArr;
+			}
+
 			List<cfData>	args	= new ArrayList<cfData>(1);
 			cfData result;
 
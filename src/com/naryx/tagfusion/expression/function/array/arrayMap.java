@@ -0,0 +1,109 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.expression.function.array;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.naryx.tagfusion.cfm.engine.cfArgStructData;
+import com.naryx.tagfusion.cfm.engine.cfArrayData;
+import com.naryx.tagfusion.cfm.engine.cfData;
+import com.naryx.tagfusion.cfm.engine.cfNullData;
+import com.naryx.tagfusion.cfm.engine.cfNumberData;
+import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.parser.CFUndefinedValue;
+import com.naryx.tagfusion.cfm.parser.script.userDefinedFunction;
+import com.naryx.tagfusion.cfm.tag.ext.thread.cfParallelLoop;
+import com.naryx.tagfusion.expression.function.functionBase;
+
+public class arrayMap extends functionBase {
+	private static final long serialVersionUID = 1L;
+
+	public arrayMap() {
+		min = 2;
+		max = 4;
+		setNamedParams( new String[]{ "array", "function", "parallel", "maxthreads" } );
+	}
+
+	public String[] getParamInfo(){
+		return new String[]{
+			"Array Object",
+			"function to loop over the data, passing in the element and its index; the value returned is placed in the new array. function(element, index){}",
+			"flag to run the function across the parallel thread pool; defaults to false",
+			"maximum number of threads to use when parallel; defaults to the size of the pool"
+		};
+	}
+	
+	public java.util.Map getInfo(){
+		return makeInfo(
+				"array", 
+				"Creates a new array holding the result of the function applied to each element of the array", 
+				ReturnType.ARRAY );
+	}
+	
+	public cfData execute(cfSession _session, cfArgStructData argStruct) throws cfmRunTimeException {
+		cfData array = getNamedParam(argStruct, "array");
+		cfData	func = getNamedParam(argStruct, "function" );
+
+		if ( func.getDataType() != cfData.CFUDFDATA )
+			throwException(_session, "the parameter is not a function");
+
+		if (array.getDataType() != cfData.CFARRAYDATA)
+			throwException(_session, "the parameter is not an Array");
+
+		final cfArrayData	arrData	= (cfArrayData)array;
+		final userDefinedFunction	udf	= (userDefinedFunction)func;
+
+		cfParallelLoop.Iteration	iteration	= new cfParallelLoop.Iteration(){
+			public cfData run( cfSession _runSession, int _index ) throws cfmRunTimeException {
+				List<cfData>	args	= new ArrayList<cfData>(2);
+				args.add( arrData.getData(_index+1) );
+				args.add( cfNumberData.valueOf(_index+1) );
+				return udf.execute( _runSession, args );
+			}
+		};
+
+		cfData[] results;
+		if ( getNamedBooleanParam(argStruct, "parallel", false) ){
+			results = cfParallelLoop.run( _session, arrData.size(), getNamedIntParam(argStruct, "maxthreads", 0), iteration );
+		} else {
+			results = new cfData[ arrData.size() ];
+			for ( int x = 0; x < results.length; x++ )
+				results[x] = iteration.run( _session, x );
+		}
+
+		cfArrayData	newArr	= cfArrayData.createArray(1);
+		for ( int x = 0; x < results.length; x++ )
+			newArr.addElement( results[x] == null || results[x] instanceof CFUndefinedValue ? cfNullData.NULL : results[x] );
+
+		return newArr;
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.expression.function.array;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.naryx.tagfusion.cfm.engine.cfArgStructData;
+import com.naryx.tagfusion.cfm.engine.cfArrayData;
+import com.naryx.tagfusion.cfm.engine.cfData;
+import com.naryx.tagfusion.cfm.engine.cfNullData;
+import com.naryx.tagfusion.cfm.engine.cfNumberData;
+import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.parser.CFUndefinedValue;
+import com.naryx.tagfusion.cfm.parser.script.userDefinedFunction;
+import com.naryx.tagfusion.expression.function.functionBase;
+
+/**
+ * Folds the array down to a single value. Each call depends on the value the
+ * previous one returned, so unlike arrayMap() there is no parallel option.
+ */
+public class arrayReduce extends functionBase {
+	private static final long serialVersionUID = 1L;
+
+	public arrayReduce() {
+		min = 2;
+		max = 3;
+		setNamedParams( new String[]{ "array", "function", "initialvalue" } );
+	}
+
+	public String[] getParamInfo(){
+		return new String[]{
+			"Array Object",
+			"function called for each element, passing in the value so far, the element and its index; it returns the new value. function(result, element, index){}",
+			"starting value; if not given the first element of the array is used"
+		};
+	}
+	
+	public java.util.Map getInfo(){
+		return makeInfo(
+				"array", 
+				"Reduces the array to a single value by applying the function to each element in turn, feeding the result of each call into the next", 
+				ReturnType.OBJECT );
+	}
+	
+	public cfData execute(cfSession _session, cfArgStructData argStruct) throws cfmRunTimeException {
+		cfData array = getNamedParam(argStruct, "array");
+		cfData	func = getNamedParam(argStruct, "function" );
+
+		if ( func.getDataType() != cfData.CFUDFDATA )
+			throwException(_session, "the parameter is not a function");
+
+		if (array.getDataType() != cfData.CFARRAYDATA)
+			throwException(_session, "the parameter is not an Array");
+
+		cfArrayData	arrData	= (cfArrayData)array;
+		userDefinedFunction	udf	= (userDefinedFunction)func;
+
+		cfData	result	= getNamedParam(argStruct, "initialvalue", null);
+		int start = 0;
+		if ( result == null ){
+			if ( arrData.size() == 0 )
+				return cfNullData.NULL;
+
+			result = arrData.getData(1);
+			start = 1;
+		}
+
+		List<cfData>	args	= new ArrayList<cfData>(3);
+		for ( int x = start; x < arrData.size(); x++ ){
+			args.clear();
+			args.add( result );
+			args.add( arrData.getData(x+1) );
+			args.add( cfNumberData.valueOf(x+1) );
+			result = udf.execute( _session, args );
+
+			if ( result == null || result instanceof CFUndefinedValue )
+				result = cfNullData.NULL;
+		}
+
+		return result;
+	}
+}
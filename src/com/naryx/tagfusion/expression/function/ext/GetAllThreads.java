@@ -57,15 +57,12 @@ public class GetAllThreads extends functionBase {
  
 
 	public cfData execute(cfSession _session, List<cfData> parameters) throws cfmRunTimeException {
-		Thread[] activeThreads = new Thread[cfThreadRunner.cfThreadGroup.activeCount()];
-		cfThreadRunner.cfThreadGroup.enumerate(activeThreads);
+		cfThreadRunner[] activeThreads = cfThreadRunner.getActiveThreads();
 
 		cfArrayData array = cfArrayData.createArray(1);
 
 		for (int i = 0; i < activeThreads.length; i++) {
-			if (activeThreads[i] instanceof cfThreadRunner) {
-				array.addElement(new cfThreadData((cfThreadRunner) activeThreads[i]));
-			}
+			array.addElement(new cfThreadData(activeThreads[i]));
 		}
 
 		return array;
@@ -0,0 +1,83 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.expression.function.ext;
+
+import java.io.File;
+
+import com.naryx.tagfusion.cfm.engine.cfArgStructData;
+import com.naryx.tagfusion.cfm.engine.cfBinaryData;
+import com.naryx.tagfusion.cfm.engine.cfBooleanData;
+import com.naryx.tagfusion.cfm.engine.cfData;
+import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.engine.codec.CodecFactory;
+import com.naryx.tagfusion.expression.function.functionBase;
+
+public class ObjectSave extends functionBase {
+	private static final long serialVersionUID = 1L;
+
+	public ObjectSave() {
+		min = 1; max = 3;
+		setNamedParams( new String[]{ "object", "filepath", "compress" } );
+	}
+
+	public String[] getParamInfo(){
+		return new String[]{
+			"the data to serialize",
+			"optional file to write the serialized data to; if omitted the binary is returned",
+			"flag to compress the serialized form; defaults to true"
+		};
+	}
+	
+	public java.util.Map getInfo(){
+		return makeInfo(
+				"system", 
+				"Serializes the data using the server codec, returning the binary or writing it to the given file. Use ObjectLoad() to restore it", 
+				ReturnType.BINARY );
+	}
+	
+	public cfData execute( cfSession _session, cfArgStructData argStruct ) throws cfmRunTimeException{
+		cfData data	= getNamedParam(argStruct, "object" );
+		boolean compress	= getNamedBooleanParam(argStruct, "compress", true );
+		String filepath	= getNamedStringParam(argStruct, "filepath", null );
+
+		try{
+			if ( filepath == null ){
+				return new cfBinaryData( CodecFactory.encode( data, compress ) );
+			}else{
+				CodecFactory.write( new File( filepath ), data, compress );
+				return cfBooleanData.TRUE;
+			}
+		}catch(Exception e){
+			throwException( _session, "ObjectSave caused an error (" + e.getMessage() + ")" );
+			return null;
+		}
+	}
+}
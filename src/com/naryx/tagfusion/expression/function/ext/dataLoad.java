@@ -30,7 +30,6 @@
 
 package com.naryx.tagfusion.expression.function.ext;
 
-import java.io.BufferedInputStream;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -40,6 +39,7 @@ import com.naryx.tagfusion.cfm.engine.cfData;
 import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfStructData;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.engine.codec.CodecFactory;
 import com.naryx.tagfusion.cfm.file.vfs.cfVFSData;
 import com.naryx.tagfusion.expression.function.functionBase;
 
@@ -55,7 +55,7 @@ public class dataLoad extends functionBase {
 	public String[] getParamInfo(){
 		return new String[]{
 			"fileurl - url to the serialized file, or previously opened file object (FileOpen)",
-			"if the file was saved in a compressed format then it needs to be loaded with the flag set to true; defaults to false"
+			"no longer required; compressed files are detected automatically"
 		};
 	}
 	
@@ -83,8 +83,8 @@ public class dataLoad extends functionBase {
 	  		throwException( _session, "this file object is not opened in read mode" );
 	  	}
 	  	
-	  	/* Read the file */
-	  	Object o = com.nary.Debug.loadClass( new BufferedInputStream( fileObj.getStreamReader(), 32000 ), getNamedBooleanParam(argStruct, "compress", false) );
+	  	/* Read the file; the format, and whether it was compressed, is picked up from the data itself */
+	  	Object o = CodecFactory.read( fileObj.getStreamReader() );
 	  	
 	  	if ( o instanceof cfData ){
 	  	 	return (cfData)o;
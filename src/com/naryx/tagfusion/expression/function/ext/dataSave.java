@@ -34,6 +34,7 @@ import com.naryx.tagfusion.cfm.engine.cfBooleanData;
 import com.naryx.tagfusion.cfm.engine.cfData;
 import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.engine.codec.CodecFactory;
 import com.naryx.tagfusion.cfm.file.vfs.cfVFSData;
 import com.naryx.tagfusion.expression.function.functionBase;
 
@@ -78,7 +79,7 @@ public class dataSave extends functionBase {
 	  	}
 	  	
 			cfData data	= getNamedParam(argStruct, "data" );
-	  	com.nary.Debug.saveClass( fileObj.getStreamWriter(), data, getNamedBooleanParam(argStruct, "compress", false) );
+	  	CodecFactory.write( fileObj.getStreamWriter(), data, getNamedBooleanParam(argStruct, "compress", false) );
 	  	fileObj.flushWrite();
 
   	}catch(Exception e){
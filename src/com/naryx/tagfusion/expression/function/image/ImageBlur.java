@@ -71,9 +71,15 @@ public class ImageBlur extends ImageInfo {
 		//Check boundaries
 		BufferedImage	bim	= im.getImage();
 		
-		BoxBlurFilter	filter	= new BoxBlurFilter();
-		filter.setRadius( (float)radius );
-		im.setImage( filter.filter(bim, null) );
+		String operation	= "blur(" + (float)radius + ")";
+		BufferedImage blurred	= ImageDerivativeCache.get( im.getDerivativeKey(operation) );
+		if ( blurred == null ){
+			BoxBlurFilter	filter	= new BoxBlurFilter();
+			filter.setRadius( (float)radius );
+			blurred	= filter.filter(bim, null);
+			ImageDerivativeCache.put( im.getDerivativeKey(operation), blurred );
+		}
+		im.setImage( blurred, operation );
 		return cfBooleanData.TRUE;
 	}
 }
\ No newline at end of file
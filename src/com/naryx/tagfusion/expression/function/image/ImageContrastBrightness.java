@@ -77,7 +77,7 @@ public class ImageContrastBrightness extends ImageInfo {
 			filter.setBrightness( (float)dd.getDouble() );
 		}
 
-		im.setImage( filter.filter(bim, null) );
+		im.setImage( filter.filter(bim, null), "contrastbrightness(" + filter.getContrast() + "," + filter.getBrightness() + ")" );
 		return cfBooleanData.TRUE;
 	}
 }
\ No newline at end of file
@@ -89,7 +89,7 @@ public class ImageCrop extends ImageInfo {
 
 		
 		CropFilter	filter	= new CropFilter(x,y,w,h);
-		im.setImage( filter.filter(bim, null) );
+		im.setImage( filter.filter(bim, null), "crop(" + x + "," + y + "," + w + "," + h + ")" );
 		return cfBooleanData.TRUE;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,279 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.expression.function.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import com.nary.io.FileUtils;
+import com.naryx.tagfusion.cfm.engine.cfEngine;
+import com.naryx.tagfusion.xmlConfig.xmlCFML;
+
+/**
+ * ImageDerivativeCache
+ *
+ * Keeps the images derived from files on disk (thumbnails and the like) in the
+ * "imagecache" working directory, filed under the source path, its modification
+ * time and size, and the chain of operations applied since it was read. Editing
+ * the source gives it a new key, so a stale entry is never served; it just ages
+ * out with the least recently used entries once the cache is over its size.
+ *
+ * Entries are written as PNG on a background thread from a copy of the pixels,
+ * after a byte giving the BufferedImage type they were made as, so a hit comes
+ * back as the same type as a miss. Images of a custom type are not cached. If
+ * the writer falls behind, new entries are dropped rather than queued.
+ */
+public class ImageDerivativeCache {
+
+	// bigger results cost more to encode and store than most operations cost to redo
+	private static final long MAX_PIXELS = 1024 * 1024;
+
+	private static final AtomicInteger entries = new AtomicInteger( 0 );
+
+	private static boolean initialised = false;
+	private static File cacheDir = null;
+	private static int maxEntries = 5000;
+	private static ThreadPoolExecutor writer = null;
+
+
+	/**
+	 * Returns the cached derivative for the key, or null if there is none
+	 */
+	public static BufferedImage get( String key ) {
+		if ( key == null )
+			return null;
+
+		File dir = getCacheDir();
+		if ( dir == null )
+			return null;
+
+		File file = new File( dir, getFileName( key ) );
+		if ( !file.isFile() )
+			return null;
+
+		try {
+			int type;
+			BufferedImage cached;
+			InputStream in = new BufferedInputStream( new FileInputStream( file ) );
+			try {
+				type = in.read();
+				cached = ImageIO.read( in );
+			} finally {
+				in.close();
+			}
+
+			if ( cached == null || type <= BufferedImage.TYPE_CUSTOM || type > BufferedImage.TYPE_BYTE_INDEXED ) {
+				file.delete();
+				return null;
+			}
+
+			file.setLastModified( System.currentTimeMillis() );
+			return toType( cached, type );
+		} catch ( IOException e ) {
+			file.delete();
+			return null;
+		}
+	}
+
+
+	/**
+	 * Queues the derivative to be stored under the key. The pixels are copied first,
+	 * so the caller can carry on changing the image
+	 */
+	public static void put( String key, BufferedImage image ) {
+		if ( key == null || image.getType() == BufferedImage.TYPE_CUSTOM || (long) image.getWidth() * image.getHeight() > MAX_PIXELS )
+			return;
+
+		final File dir = getCacheDir();
+		if ( dir == null || writer.getQueue().remainingCapacity() == 0 )
+			return;
+
+		final File file = new File( dir, getFileName( key ) );
+		if ( file.isFile() )
+			return;
+
+		ColorModel cm = image.getColorModel();
+		final BufferedImage copy = new BufferedImage( cm, image.copyData( null ), cm.isAlphaPremultiplied(), null );
+		final int type = image.getType();
+
+		writer.execute( new Runnable() {
+			public void run() {
+				write( dir, file, copy, type );
+			}
+		} );
+	}
+
+
+	private static void write( File dir, File file, BufferedImage image, int type ) {
+		// written alongside and renamed into place, so a reader never sees half a file
+		File tmp = new File( dir, file.getName() + ".tmp" );
+		try {
+			boolean written;
+			OutputStream out = new BufferedOutputStream( new FileOutputStream( tmp ) );
+			try {
+				out.write( type );
+				written = ImageIO.write( image, "png", out );
+			} finally {
+				out.close();
+			}
+
+			if ( !written || !tmp.renameTo( file ) ) {
+				tmp.delete();
+				return;
+			}
+		} catch ( IOException e ) {
+			tmp.delete();
+			return;
+		}
+
+		if ( entries.incrementAndGet() > maxEntries )
+			trim( dir );
+	}
+
+
+	/**
+	 * Removes the least recently used entries until the cache is back to 90% of its size
+	 */
+	private static void trim( File dir ) {
+		File[] files = dir.listFiles( new FileFilter() {
+			public boolean accept( File f ) {
+				return f.getName().endsWith( ".img" );
+			}
+		} );
+		if ( files == null )
+			return;
+
+		final long[] modified = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for ( int i = 0; i < files.length; i++ ) {
+			modified[i] = files[i].lastModified();
+			order[i] = i;
+		}
+
+		Arrays.sort( order, new Comparator<Integer>() {
+			public int compare( Integer a, Integer b ) {
+				return modified[a] < modified[b] ? -1 : ( modified[a] == modified[b] ? 0 : 1 );
+			}
+		} );
+
+		int remaining = files.length;
+		int keep = maxEntries * 9 / 10;
+		for ( int i = 0; i < order.length && remaining > keep; i++ ) {
+			if ( files[order[i]].delete() )
+				remaining--;
+		}
+		entries.set( remaining );
+	}
+
+
+	private static synchronized File getCacheDir() {
+		if ( !initialised ) {
+			initialised = true;
+
+			xmlCFML config = cfEngine.getConfig();
+			if ( config != null )
+				maxEntries = config.getInt( "server.cfimage.derivativecache", maxEntries );
+
+			if ( maxEntries > 0 ) {
+				try {
+					cacheDir = FileUtils.checkAndCreateDirectory( cfEngine.thisPlatform.getFileIO().getWorkingDirectory(), "imagecache", false );
+
+					String[] files = cacheDir.list();
+					entries.set( files == null ? 0 : files.length );
+
+					writer = new ThreadPoolExecutor( 1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>( 64 ), new ThreadFactory() {
+						public Thread newThread( Runnable r ) {
+							Thread t = new Thread( r, "ImageDerivativeCache" );
+							t.setDaemon( true );
+							t.setPriority( Thread.MIN_PRIORITY );
+							return t;
+						}
+					}, new ThreadPoolExecutor.DiscardPolicy() );
+					writer.allowCoreThreadTimeOut( true );
+
+					cfEngine.log( "ImageDerivativeCache: directory=" + cacheDir + "; maxentries=" + maxEntries );
+				} catch ( Exception e ) {
+					cacheDir = null;
+					cfEngine.log( "ImageDerivativeCache: disabled; " + e.getMessage() );
+				}
+			}
+		}
+		return cacheDir;
+	}
+
+
+	private static String getFileName( String key ) {
+		try {
+			byte[] hash = MessageDigest.getInstance( "SHA-1" ).digest( key.getBytes( "UTF-8" ) );
+			StringBuilder sb = new StringBuilder( hash.length * 2 + 4 );
+			for ( int i = 0; i < hash.length; i++ ) {
+				sb.append( Character.forDigit( ( hash[i] >> 4 ) & 0xf, 16 ) );
+				sb.append( Character.forDigit( hash[i] & 0xf, 16 ) );
+			}
+			return sb.append( ".img" ).toString();
+		} catch ( Exception e ) {
+			// SHA-1 and UTF-8 are always there
+			throw new IllegalStateException( e );
+		}
+	}
+
+
+	/**
+	 * PNG decodes to the byte-packed types; bring it back to the type the entry was made as
+	 */
+	private static BufferedImage toType( BufferedImage image, int type ) {
+		if ( image.getType() == type )
+			return image;
+
+		int width = image.getWidth(), height = image.getHeight();
+		BufferedImage converted = new BufferedImage( width, height, type );
+		converted.setRGB( 0, 0, width, height, image.getRGB( 0, 0, width, height, null, 0, width ), 0, width );
+		return converted;
+	}
+}
@@ -86,7 +86,7 @@ public class ImageFlip extends ImageInfo {
 		
 		FlipFilter	filter	= new FlipFilter();
 		filter.setOperation( op );
-		im.setImage( filter.filter(bim, null) );
+		im.setImage( filter.filter(bim, null), "flip(" + op + ")" );
 		return cfBooleanData.TRUE;
 	}
 }
\ No newline at end of file
@@ -52,6 +52,9 @@ public class ImageGetBufferedImage extends ImageInfo {
 
 	public cfData execute( cfSession _session, cfArgStructData argStruct ) throws cfmRunTimeException{
 		cfImageData im	= getImage( _session, argStruct );
+		
+		// the caller is free to change the pixels, so stop tracking derivatives of this image
+		im.setImage( im.getImage() );
 		return new cfJavaObjectData( im.getImage() );
 	}
 }
\ No newline at end of file
@@ -60,7 +60,7 @@ public class ImageGrayScale extends ImageInfo {
 		BufferedImage	bim	= im.getImage();
 		
 		GrayscaleFilter	filter	= new GrayscaleFilter();
-		im.setImage( filter.filter(bim, null) );
+		im.setImage( filter.filter(bim, null), "grayscale" );
 		return cfBooleanData.TRUE;
 	}
 }
\ No newline at end of file
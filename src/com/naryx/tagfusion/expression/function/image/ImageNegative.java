@@ -60,7 +60,7 @@ public class ImageNegative extends ImageInfo {
 		BufferedImage	bim	= im.getImage();
 		
 		InvertFilter	filter	= new InvertFilter();
-		im.setImage( filter.filter(bim, null) );
+		im.setImage( filter.filter(bim, null), "negative" );
 		return cfBooleanData.TRUE;
 	}
 }
\ No newline at end of file
@@ -31,9 +31,16 @@
 
 package com.naryx.tagfusion.expression.function.image;
 
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 import com.naryx.tagfusion.cfm.engine.cfArgStructData;
 import com.naryx.tagfusion.cfm.engine.cfData;
@@ -46,13 +53,16 @@ public class ImageRead extends functionBase {
 	private static final long serialVersionUID = 1L;
 
 	public ImageRead() {
-		min = max = 1;
-		setNamedParams( new String[]{ "src" } );
+		min = 1; max = 4;
+		setNamedParams( new String[]{ "src", "width", "height", "quality" } );
 	}
 
 	public String[] getParamInfo(){
 		return new String[]{
-			"Path to the image to load (can be a url, file path or memory path)"
+			"Path to the image to load (can be a url, file path or memory path)",
+			"width to load the image at, can be a percentage value (add %); as ImageResize() but large images are only partly decoded. Results for local files are cached",
+			"height to load the image at, can be a percentage value (add %); as ImageResize() but large images are only partly decoded. Results for local files are cached",
+			"values: bicubic (default), bilinear, nearest"
 		};
 	}
 	
@@ -65,22 +75,51 @@ public class ImageRead extends functionBase {
 	
 	public cfData execute( cfSession _session, cfArgStructData argStruct ) throws cfmRunTimeException{
   	String src	= getNamedStringParam(argStruct, "src", null );
-		return loadImage( _session, src );
+		String sw		= getNamedStringParam(argStruct, "width", "" ).trim();
+		String sh		= getNamedStringParam(argStruct, "height", "" ).trim();
+		String quality	= getNamedStringParam(argStruct, "quality", "bicubic" ).toLowerCase();
+		return loadImage( _session, src, sw, sh, quality );
 	}
 	
 	
 	
 	protected cfImageData	loadImage( cfSession _session, String src ) throws cfmRunTimeException{
+		return loadImage( _session, src, "", "", "bicubic" );
+	}
+	
+	
+	
+	protected cfImageData	loadImage( cfSession _session, String src, String sw, String sh, String quality ) throws cfmRunTimeException{
 		cfVFSData	fileObj = null;
 		
 		try {
 			cfImageData	im	= new cfImageData();
 			
 			if ( src.startsWith("http") ){
-				readImgFromUrl( src, im );
+				readImgFromUrl( src, im, sw, sh, quality );
 			}else{
 				fileObj	= new cfVFSData( src, "readbinary", null );	
-				im.setImage( ImageIO.read(fileObj.getStreamReader()) );
+				File file	= fileObj.isNative() ? fileObj.getFile() : null;
+				
+				if ( sw.length() == 0 && sh.length() == 0 ){
+					im.setImage( ImageIO.read(fileObj.getStreamReader()) );
+					if ( file != null )
+						im.setDerivativeSource( file );
+				}else{
+					// a local file is keyed by its path and modification time, so the thumbnail is only made once
+					String operation	= "read(" + sw + "," + sh + "," + quality + ")";
+					if ( file != null )
+						im.setDerivativeSource( file );
+					
+					BufferedImage bim	= ImageDerivativeCache.get( im.getDerivativeKey(operation) );
+					if ( bim == null ){
+						bim	= readImage( fileObj.getStreamReader(), sw, sh, quality );
+						if ( bim != null )
+							ImageDerivativeCache.put( im.getDerivativeKey(operation), bim );
+					}
+					im.setImage( bim, operation );
+				}
+				
 				im.setSize( fileObj.size() );
 			}
 
@@ -97,14 +136,58 @@ public class ImageRead extends functionBase {
 
 	
 	
-	private void readImgFromUrl(String src, cfImageData im) throws Exception {
+	private void readImgFromUrl(String src, cfImageData im, String sw, String sh, String quality) throws Exception {
 		org.aw20.net.HttpResult res = org.aw20.net.HttpGet.doGet(src);
 
 		if ( res.getResponseCode() != 200 )
 			throw new Exception( res.getResponseCode() + " " + res.getResponseMessage() + "; " + src );
 		
 		InputStream	is	= new java.io.ByteArrayInputStream( res.getBody() );
-		im.setImage( ImageIO.read(is) );
+		if ( sw.length() == 0 && sh.length() == 0 )
+			im.setImage( ImageIO.read(is) );
+		else
+			im.setImage( readImage( is, sw, sh, quality ) );
 		im.setSize( res.getContentLength() );
 	}
+	
+	
+	
+	/**
+	 * Decodes the image and scales it to the size given by the width and height parameters.  Where the
+	 * image is at least four times that size it is subsampled as it is decoded, keeping every n'th pixel
+	 * so no less than twice the target is left for the scaling to smooth; a large photo is never held
+	 * at full size just to make a thumbnail of it
+	 */
+	static BufferedImage readImage( InputStream in, String sw, String sh, String quality ) throws IOException {
+		ImageInputStream iis	= ImageIO.createImageInputStream( in );
+		if ( iis == null )
+			return null;
+		
+		try{
+			Iterator<ImageReader> readers	= ImageIO.getImageReaders( iis );
+			if ( !readers.hasNext() )
+				return null;
+			
+			ImageReader reader	= readers.next();
+			try{
+				reader.setInput( iis, true, true );
+				
+				int width		= reader.getWidth(0);
+				int height	= reader.getHeight(0);
+				int[] target	= ImageResize.getTargetSize( sw, sh, width, height );
+				
+				ImageReadParam param	= reader.getDefaultReadParam();
+				int step	= Math.min( width / Math.max( 1, target[0] * 2 ), height / Math.max( 1, target[1] * 2 ) );
+				if ( step > 1 )
+					param.setSourceSubsampling( step, step, 0, 0 );
+				
+				BufferedImage bim	= reader.read( 0, param );
+				return ImageResize.scaleToSize( bim, target[0], target[1], ImageResize.getInterpolation(quality) );
+			}finally{
+				reader.dispose();
+			}
+		}finally{
+			iis.close();
+		}
+	}
 }
\ No newline at end of file
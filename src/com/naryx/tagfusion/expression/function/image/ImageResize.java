@@ -76,12 +76,33 @@ public class ImageResize extends ImageInfo {
 			throwException(_session, "missing both width and height parameters. Specify at least one" );
 		}
 
+		int[] target	= getTargetSize( sw, sh, im.getWidth(), im.getHeight() );
+		String	quality	= getNamedStringParam(argStruct, "quality", "bicubic" ).toLowerCase();
+		
+		String operation	= "resize(" + target[0] + "," + target[1] + "," + quality + ")";
+		BufferedImage resized	= ImageDerivativeCache.get( im.getDerivativeKey(operation) );
+		if ( resized == null ){
+			resized	= scaleToSize( im.getImage(), target[0], target[1], getInterpolation(quality) );
+			if ( resized != im.getImage() )
+				ImageDerivativeCache.put( im.getDerivativeKey(operation), resized );
+		}
+		
+		im.setImage( resized, operation );
+    return cfBooleanData.TRUE;
+	}
+	
+	
+	/**
+	 * Works out the size to scale a width x height image to, from the width and height
+	 * parameters; either can be a percentage, or blank to keep the aspect ratio
+	 */
+	static int[] getTargetSize( String sw, String sh, int width, int height ){
 		int	targetWidth = -1, targetHeight = -1;
 		
 		if ( sw.length() != 0 ){
 			if ( sw.endsWith("%") ){
 				int percentage = Integer.valueOf( sw.substring(0,sw.length()-1) ).intValue();
-				targetWidth	= (int)((double)im.getWidth() * (double)((double)percentage/100.0));
+				targetWidth	= (int)((double)width * (double)((double)percentage/100.0));
 			}else{
 				targetWidth = Integer.valueOf( sw ).intValue();
 			}
@@ -90,7 +111,7 @@ public class ImageResize extends ImageInfo {
 		if ( sh.length() != 0 ){
 			if ( sh.endsWith("%") ){
 				int percentage = Integer.valueOf( sh.substring(0,sh.length()-1) ).intValue();
-				targetHeight	= (int)((double)im.getHeight() * (double)((double)percentage/100.0));
+				targetHeight	= (int)((double)height * (double)((double)percentage/100.0));
 			}else{
 				targetHeight = Integer.valueOf( sh ).intValue();
 			}
@@ -99,29 +120,31 @@ public class ImageResize extends ImageInfo {
 		
 		if ( targetWidth == -1 ){
 			//this is now a scale of the target height
-			double scale	= (double)im.getWidth() / (double)im.getHeight();
+			double scale	= (double)width / (double)height;
 			targetWidth		= (int)((double)targetHeight * scale);
 		}
 		if ( targetHeight == -1 ){
 			//this is now a scale of the target height
-			double scale	= (double)im.getWidth() / (double)im.getHeight();
+			double scale	= (double)width / (double)height;
 			targetHeight		= (int)((double)targetWidth / scale);
 		}
 		
-		String	quality	= getNamedStringParam(argStruct, "quality", "bicubic" ).toLowerCase();
-		Object rh = RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+		return new int[]{ targetWidth, targetHeight };
+	}
+	
+	
+	static Object getInterpolation( String quality ){
 		if ( quality.equals("bilinear") ){
-			rh = RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+			return RenderingHints.VALUE_INTERPOLATION_BILINEAR;
 		}else if ( quality.equals("nearest") ){
-			rh = RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+			return RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+		}else{
+			return RenderingHints.VALUE_INTERPOLATION_BICUBIC;
 		}
-		
-		im.setImage( scaleToSize( im.getImage(), targetWidth, targetHeight, rh ) );
-    return cfBooleanData.TRUE;
 	}
 	
 	
-	private BufferedImage scaleToSize(BufferedImage img, int targetWidth, int targetHeight, Object interpolation) {
+	static BufferedImage scaleToSize(BufferedImage img, int targetWidth, int targetHeight, Object interpolation) {
 		if (targetWidth == img.getWidth() && targetHeight == img.getHeight()) {
 			return img;
 		}
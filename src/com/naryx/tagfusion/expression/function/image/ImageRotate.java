@@ -100,7 +100,7 @@ public class ImageRotate extends ImageInfo {
 		g.drawImage( im.getImage(), null, 0, 0);
 		g.dispose();
 		
-		im.setImage( dimg );
+		im.setImage( dimg, "rotate(" + angle + "," + x1 + "," + y1 + "," + interpolation + "," + im.isAntialise() + ")" );
 		
 		return cfBooleanData.TRUE;
 	}
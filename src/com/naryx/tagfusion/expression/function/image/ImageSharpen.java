@@ -73,14 +73,21 @@ public class ImageSharpen extends ImageInfo {
 		//Check boundaries
 		BufferedImage	bim	= im.getImage();
 		
-		if ( gain < 0 ){
-			BoxBlurFilter	filter	= new BoxBlurFilter();
-			filter.setRadius( (float)3 );
-			im.setImage( filter.filter(bim, null) );
-		}else{
-			SharpenFilter	filter	= new SharpenFilter();
-			im.setImage( filter.filter(bim, null) );
+		// only the sign of the gain makes any difference
+		String operation	= ( gain < 0 ) ? "blur(3.0)" : "sharpen";
+		BufferedImage result	= ImageDerivativeCache.get( im.getDerivativeKey(operation) );
+		if ( result == null ){
+			if ( gain < 0 ){
+				BoxBlurFilter	filter	= new BoxBlurFilter();
+				filter.setRadius( (float)3 );
+				result	= filter.filter(bim, null);
+			}else{
+				SharpenFilter	filter	= new SharpenFilter();
+				result	= filter.filter(bim, null);
+			}
+			ImageDerivativeCache.put( im.getDerivativeKey(operation), result );
 		}
+		im.setImage( result, operation );
 
 		return cfBooleanData.TRUE;
 	}
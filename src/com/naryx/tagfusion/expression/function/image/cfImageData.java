@@ -34,6 +34,7 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.io.File;
 
 import com.naryx.tagfusion.cfm.engine.cfData;
 import com.naryx.tagfusion.cfm.engine.cfNumberData;
@@ -49,12 +50,40 @@ public class cfImageData extends cfStructReadOnlyData {
 	private Color					activeColor = null, backgroundColor = null, xorMode = null;
 	private boolean 			bAntiAlias = true;
 	private cfStructData 	cfMetaData = null;
+	private String				derivativeKey = null;
 	
 	public void setImage(BufferedImage image){
 		this.image = image;
+		this.derivativeKey = null;
 		updateMetaData();
 	}
 	
+	/**
+	 * Replaces the image with the result of the given operation, so the key
+	 * for the derivative cache follows the image along
+	 */
+	public void setImage(BufferedImage image, String operation){
+		String key = getDerivativeKey( operation );
+		setImage( image );
+		this.derivativeKey = key;
+	}
+	
+	/**
+	 * Marks the image as a straight decode of the given file, which starts the
+	 * key the derivative cache files its results under
+	 */
+	public void setDerivativeSource(File file){
+		this.derivativeKey = file.getAbsolutePath() + "|" + file.lastModified() + "|" + file.length();
+	}
+	
+	/**
+	 * Returns the derivative cache key for applying the given operation to this image,
+	 * or null if the image has been changed in a way the key cannot describe
+	 */
+	public String getDerivativeKey(String operation){
+		return ( derivativeKey == null ) ? null : derivativeKey + "|" + operation;
+	}
+	
 	public BufferedImage getImage(){
 		return this.image;
 	}
@@ -133,6 +162,8 @@ public class cfImageData extends cfStructReadOnlyData {
 	 * @return
 	 */
 	public Graphics2D createGraphics() {
+		// anything drawn is not part of the operation chain, so the image has no derivative key from now on
+		derivativeKey = null;
 		Graphics2D g2 = image.createGraphics();
 		
 		if ( bAntiAlias )
@@ -30,27 +30,36 @@
 
 package com.naryx.tagfusion.expression.function.query;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.naryx.tagfusion.cfm.engine.cfArgStructData;
 import com.naryx.tagfusion.cfm.engine.cfBooleanData;
 import com.naryx.tagfusion.cfm.engine.cfData;
 import com.naryx.tagfusion.cfm.engine.cfDataSession;
 import com.naryx.tagfusion.cfm.engine.cfQueryResultData;
 import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.parser.script.userDefinedFunction;
+import com.naryx.tagfusion.cfm.tag.ext.thread.cfParallelLoop;
 import com.naryx.tagfusion.expression.function.functionBase;
 
 public class queryEach extends functionBase {
 	private static final long serialVersionUID = 1L;
 
 	public queryEach() {
-		min = max = 2;
-		setNamedParams( new String[]{ "query", "function" } );
+		min = 2;
+		max = 4;
+		setNamedParams( new String[]{ "query", "function", "parallel", "maxthreads" } );
 	}
 
 	public String[]  getParamInfo(){
 		return new String[]{
 			"Array Object",
-			"function to loop over the query data, passing in the element as the parameter to each. function(row){}"
+			"function to loop over the query data, passing in the element as the parameter to each. function(row){}",
+			"flag to run the function across the parallel thread pool; defaults to false",
+			"maximum number of threads to use when parallel; defaults to the size of the pool"
 		};
 	}
 	
@@ -70,7 +79,21 @@ public class queryEach extends functionBase {
 
 		if (array.getDataType() == cfData.CFQUERYRESULTDATA ) {
 			cfQueryResultData	arrData	= (cfQueryResultData)array;
-			arrData.each( new cfDataSession(_session), func );
+
+			if ( getNamedBooleanParam(argStruct, "parallel", false) ){
+				final List<cfStructData>	rows	= getRows( arrData );
+				final userDefinedFunction	udf	= (userDefinedFunction)func;
+
+				cfParallelLoop.run( _session, rows.size(), getNamedIntParam(argStruct, "maxthreads", 0), new cfParallelLoop.Iteration(){
+					public cfData run( cfSession _workerSession, int _index ) throws cfmRunTimeException {
+						List<cfData>	args	= new ArrayList<cfData>(1);
+						args.add( rows.get(_index) );
+						return udf.execute( _workerSession, args );
+					}
+				});
+			} else
+				arrData.each( new cfDataSession(_session), func );
+
 			return cfBooleanData.TRUE;
 		} else {
 			throwException(_session, "the parameter is not a Query");
@@ -78,4 +101,21 @@ public class queryEach extends functionBase {
 
 		return null;
 	}
+
+	/**
+	 * The row cursor is not thread safe, so the rows are all taken up front
+	 * before being handed out to the parallel workers
+	 */
+	public static List<cfStructData> getRows( cfQueryResultData queryData ) throws cfmRunTimeException {
+		List<cfStructData>	rows	= new ArrayList<cfStructData>( queryData.getSize() );
+
+		int resetRow = queryData.getCurrentRow();
+		queryData.reset();
+
+		while ( queryData.nextRow() )
+			rows.add( queryData.getRowAsStruct() );
+
+		queryData.setCurrentRow( resetRow == 0 ? 1 : resetRow );
+		return rows;
+	}
 }
@@ -0,0 +1,120 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.expression.function.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.naryx.tagfusion.cfm.engine.cfArgStructData;
+import com.naryx.tagfusion.cfm.engine.cfData;
+import com.naryx.tagfusion.cfm.engine.cfQueryResultData;
+import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
+import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.parser.script.userDefinedFunction;
+import com.naryx.tagfusion.cfm.tag.ext.thread.cfParallelLoop;
+import com.naryx.tagfusion.expression.function.functionBase;
+
+public class queryMap extends functionBase {
+	private static final long serialVersionUID = 1L;
+
+	public queryMap() {
+		min = 2;
+		max = 4;
+		setNamedParams( new String[]{ "query", "function", "parallel", "maxthreads" } );
+	}
+
+	public String[]  getParamInfo(){
+		return new String[]{
+			"Query Object",
+			"function to loop over the query data, passing in each row as a structure; the structure returned supplies the values for that row in the new query. function(row){}",
+			"flag to run the function across the parallel thread pool; defaults to false",
+			"maximum number of threads to use when parallel; defaults to the size of the pool"
+		};
+	}
+	
+	public java.util.Map getInfo(){
+		return makeInfo(
+				"query", 
+				"Creates a new query with the same columns, each row being the structure returned by the function applied to the same row of the query. Columns missing from the returned structure keep their original value", 
+				ReturnType.QUERY );
+	}
+	
+	public cfData execute(cfSession _session, cfArgStructData argStruct) throws cfmRunTimeException {
+		cfData data = getNamedParam(argStruct, "query");
+		cfData	func = getNamedParam(argStruct, "function" );
+
+		if ( func.getDataType() != cfData.CFUDFDATA )
+			throwException(_session, "the parameter is not a function");
+
+		if (data.getDataType() != cfData.CFQUERYRESULTDATA )
+			throwException(_session, "the parameter is not a Query");
+
+		cfQueryResultData	queryData	= (cfQueryResultData)data;
+		final List<cfStructData>	rows	= queryEach.getRows( queryData );
+		final userDefinedFunction	udf	= (userDefinedFunction)func;
+
+		cfParallelLoop.Iteration	iteration	= new cfParallelLoop.Iteration(){
+			public cfData run( cfSession _runSession, int _index ) throws cfmRunTimeException {
+				List<cfData>	args	= new ArrayList<cfData>(1);
+				args.add( rows.get(_index) );
+				return udf.execute( _runSession, args );
+			}
+		};
+
+		cfData[] results;
+		if ( getNamedBooleanParam(argStruct, "parallel", false) ){
+			results = cfParallelLoop.run( _session, rows.size(), getNamedIntParam(argStruct, "maxthreads", 0), iteration );
+		} else {
+			results = new cfData[ rows.size() ];
+			for ( int x = 0; x < results.length; x++ )
+				results[x] = iteration.run( _session, x );
+		}
+
+		String[]	columns	= queryData.getColumnList();
+		cfQueryResultData	newQuery	= new cfQueryResultData( columns, null );
+		newQuery.addRow( results.length );
+
+		for ( int x = 0; x < results.length; x++ ){
+			if ( results[x] == null || results[x].getDataType() != cfData.CFSTRUCTDATA )
+				throwException(_session, "the function must return a structure for each row; row " + (x+1) + " did not");
+
+			cfStructData	rowResult	= (cfStructData)results[x];
+			cfStructData	original	= rows.get(x);
+
+			for ( int c = 0; c < columns.length; c++ ){
+				cfData	value	= rowResult.getData( columns[c] );
+				newQuery.setCell( x+1, c+1, value != null ? value : original.getData( columns[c] ) );
+			}
+		}
+
+		return newQuery;
+	}
+}
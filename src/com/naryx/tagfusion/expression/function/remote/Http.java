@@ -58,7 +58,7 @@ public class Http extends functionBase {
 	 */
 	public Http() {
 		min = 1;
-		max = 28;
+		max = 30;
 		setNamedParams( new String[] { 
 				"url", "resolveurl", "redirect", "getasbinary", 
 				"throwonerror", "port", "useragent", "method", 
@@ -66,7 +66,7 @@ public class Http extends functionBase {
 				"proxyuser", "proxypassword", "user", "password", 
 				"file", "path", "uridirectory", "charset", "result", 
 				"name", "firstrowasheaders", "columns", "textqualifier", 
-				"delimiter", "httpparams", "clientcert", "clientcertpassword" } );
+				"delimiter", "httpparams", "clientcert", "clientcertpassword", "responsetype" } );
 	}
 
 
@@ -105,7 +105,8 @@ public class Http extends functionBase {
 				"If reading the response as CSV, the text delimiter to use in parsing it", 
 				"Array of structures {type, value, encoded, url, formfield, cgi, header, cookie, file, mimetype} representing the attributes of CFHTTPPARAM",
 				"The file path to the client certificate to use for a secure connection",
-				"The password to the client certificate file"
+				"The password to the client certificate file",
+				"BUFFER (default) reads the whole body into FILECONTENT; STREAM makes FILECONTENT a stream to read from (readLine(), hasNextLine(), read(), close()); JSON parses the body into CFML data as it arrives. Ignored when FILE/PATH is given"
 		};
 	}
 
@@ -125,206 +126,219 @@ public class Http extends functionBase {
 		String result = getNamedStringParam( argStruct, "result", null );
 		cfHttpConnectionI httpConnection = null;
 		try {
+			httpConnection = prepare( _session, argStruct, httpData );
+			httpConnection.connect();
 
-			// get the client cert and password options if they've been passed in
-			String clientCert = getNamedStringParam( argStruct, "clientcert", null );
-			String clientCertPassword = getNamedStringParam( argStruct, "clientcertpassword", null );
-			File clientCertFile = null;
-			if ( clientCert != null ){
-				if ( clientCertPassword == null ){
-					throwException( _session, "The CLIENTCERTPASSWORD must be provided when the CLIENTCERT has a value." );
-				}
-				clientCertFile = new File( clientCert );
-				if ( !clientCertFile.exists() || !clientCertFile.canRead() ){
-					throwException( _session, "Failed to read clientcert file '" + clientCert + "'. Check the file path exists and has the appropriate read permissions.");
-				}
-			}
-			
-			httpConnection = new cfHttpConnection( _session, httpData, clientCertFile, clientCertPassword );
-			
-			String url = getNamedStringParam( argStruct, "url", null );
-			httpConnection.setMethod( getNamedStringParam( argStruct, "method", "GET" ), getNamedBooleanParam( argStruct, "multipart", false ) );
-			httpConnection.setURL( url, getNamedIntParam( argStruct, "port", -1 ) );
-			
-			if ( charset != null ){
-				httpConnection.setCharset( charset );
+		} finally {
+			// Release the connection.
+			try {
+				if ( httpConnection != null )
+					httpConnection.close();
+			} catch ( IOException ioe ) {
+				// Shouldn't be important if an exception is thrown at this stage but lets log it
+				cfEngine.log( "CFHTTP exception when closing connection: " + ioe.getClass() + ioe.getMessage() );
 			}
+ 		}
+		
+		if (result != null ){
+			_session.setData( result, httpData );
+    }
+		
+		return httpData;
+	}
 
-			// authentication
-			String user = getNamedStringParam( argStruct, "user", null );
-			if ( user != null ){
-				httpConnection.authenticate( user, getNamedStringParam( argStruct, "password", "" ) );
-			}
 
-			// proxy related
-			String proxyserver = getNamedStringParam( argStruct, "proxyserver", null );
-			if( proxyserver != null ){
-				httpConnection.setProxyServer( proxyserver, getNamedIntParam( argStruct, "proxyport", -1 ) );
 
-				String proxyuser = getNamedStringParam( argStruct, "proxyuser", null );
-				if( proxyuser != null ){
-					String proxypassword = getNamedStringParam( argStruct, "proxypassword", "" );
-					httpConnection.authenticateProxy( proxyuser, proxypassword );
-				}
+	/**
+	 * Sets up the connection from the arguments, ready for connect(); everything
+	 * that needs the session is done here
+	 */
+	protected cfHttpConnection prepare( cfSession _session, cfArgStructData argStruct, cfHttpData httpData ) throws cfmRunTimeException {
+		String charset = getNamedStringParam( argStruct, "charset", null );
+
+		// get the client cert and password options if they've been passed in
+		String clientCert = getNamedStringParam( argStruct, "clientcert", null );
+		String clientCertPassword = getNamedStringParam( argStruct, "clientcertpassword", null );
+		File clientCertFile = null;
+		if ( clientCert != null ){
+			if ( clientCertPassword == null ){
+				throwException( _session, "The CLIENTCERTPASSWORD must be provided when the CLIENTCERT has a value." );
+			}
+			clientCertFile = new File( clientCert );
+			if ( !clientCertFile.exists() || !clientCertFile.canRead() ){
+				throwException( _session, "Failed to read clientcert file '" + clientCert + "'. Check the file path exists and has the appropriate read permissions.");
 			}
+		}
+		
+		cfHttpConnection httpConnection = new cfHttpConnection( _session, httpData, clientCertFile, clientCertPassword );
+		
+		String url = getNamedStringParam( argStruct, "url", null );
+		httpConnection.setMethod( getNamedStringParam( argStruct, "method", "GET" ), getNamedBooleanParam( argStruct, "multipart", false ) );
+		httpConnection.setURL( url, getNamedIntParam( argStruct, "port", -1 ) );
+		
+		if ( charset != null ){
+			httpConnection.setCharset( charset );
+		}
 
+		// authentication
+		String user = getNamedStringParam( argStruct, "user", null );
+		if ( user != null ){
+			httpConnection.authenticate( user, getNamedStringParam( argStruct, "password", "" ) );
+		}
 
-			// saving result as a query?
-			String name = getNamedStringParam( argStruct, "name", null );
-			if( name != null ){
-				boolean firstrowasheader = getNamedBooleanParam( argStruct, "firstrowasheaders", true );
-				String columns = getNamedStringParam( argStruct, "columns", null );
-				String textqualifier = getNamedStringParam( argStruct, "textqualifier", "\"" );
-				String delimiter = getNamedStringParam( argStruct, "delimiter", "," );
-				httpConnection.setQueryDetails( name, columns, textqualifier, delimiter, firstrowasheader );
+		// proxy related
+		String proxyserver = getNamedStringParam( argStruct, "proxyserver", null );
+		if( proxyserver != null ){
+			httpConnection.setProxyServer( proxyserver, getNamedIntParam( argStruct, "proxyport", -1 ) );
+
+			String proxyuser = getNamedStringParam( argStruct, "proxyuser", null );
+			if( proxyuser != null ){
+				String proxypassword = getNamedStringParam( argStruct, "proxypassword", "" );
+				httpConnection.authenticateProxy( proxyuser, proxypassword );
 			}
-			
-			setTimeout( _session, httpConnection, getNamedIntParam( argStruct, "timeout", 9999 ) );
-			httpConnection.setFollowRedirects( getNamedBooleanParam( argStruct, "redirect", true ) );
-			httpConnection.setThrowOnError( getNamedBooleanParam( argStruct, "throwonerror", false ) );
-			httpConnection.setGetAsBinary( getNamedStringParam( argStruct, "getasbinary", "no" ).toLowerCase() );
-			httpConnection.setResolveLinks( getNamedBooleanParam( argStruct, "resolveurl", false ) );
-			httpConnection.setUserAgent( getNamedStringParam( argStruct, "useragent", "OpenBD" ) );
-			
-			String path = getNamedStringParam( argStruct, "path", null );
-			if( path != null )
-				httpConnection.setFile( getFile( _session, url, argStruct ) );
-			
-
-			cfData paramData = getNamedParam( argStruct, "httpparams", null );
-			if ( paramData != null ) {
-				cfArrayData httpParams = ( cfArrayData )paramData;
-				for ( int x = 0; x < httpParams.size(); x++ ) {
-					cfData data = httpParams.getElement( x + 1 );
-					if ( data.getDataType() != cfData.CFSTRUCTDATA )
-						throwException( _session, "params must be an array of structures; " + ( x + 1 ) + " element was not a structure" );
-
-					cfStructData sdata = ( cfStructData )data;
-
-					// Extract all parameters
-					String paramDataType = null;
-					boolean paramDataEncoded = false;
-
-					if ( sdata.containsKey( "type" ) ) {
-						paramDataType = sdata.getData( "type" ).getString();
-
-						// URL
-						if ( paramDataType.equalsIgnoreCase("url" ) ) {
-							String urlName = getName( sdata, _session, paramDataType );
-							String urlValue = getValue( sdata, _session, paramDataType );
-							httpData.addURLData( urlName, urlValue );
-
-							// FORMFIELD
-						} else if ( paramDataType.equalsIgnoreCase( "formfield" ) ) {
-							if ( httpData.isBodySet() ) {
-								throwException( _session, "You cannot combine CFHTTPPARAM values of type FILE/FORMFIELD with those of type BODY/XML." );
-							}
-							String formFiledName = getName( sdata, _session, paramDataType );
-							if ( formFiledName.length() != 0 ) {
-								String formFieldValue = getValue( sdata, _session, paramDataType );
-								if ( sdata.containsKey( "encoded" ) ) {
-									paramDataEncoded = sdata.getData( "encoded" ).getBoolean();
-									httpData.addFormData( formFiledName, formFieldValue, paramDataEncoded );
-								} else {
-									httpData.addFormData( formFiledName, formFieldValue, paramDataEncoded );
-								}
-							}
+		}
 
-							// CGI
-						} else if ( paramDataType.equalsIgnoreCase( "cgi" ) ) {
-							String cgiName = getName( sdata, _session, paramDataType );
-							if ( cgiName.length() != 0 ) {
-								String cgiValue = getValue( sdata, _session, paramDataType );
-								if ( sdata.containsKey( "encoded" ) ) {
-									paramDataEncoded = sdata.getData( "encoded" ).getBoolean();
-									httpData.addHeader( cgiName, cgiValue, paramDataEncoded );
-								} else {
-									httpData.addHeader( cgiName, cgiValue, paramDataEncoded );// only url encode the data if ENCODED = YES
-								}
-							}
 
-							// BODY/XML
-						} else if ( paramDataType.equalsIgnoreCase( "body" ) || paramDataType.equalsIgnoreCase( "xml" ) ) {
-							if ( httpData.isBodySet() ) {
-								throwException( _session, "You can only use one CFHTTPPARAM of type XML or BODY." );
-							} else if ( httpData.getFiles().size() > 0 || httpData.getFormData().size() > 0 ) {
-								throwException( _session, "You cannot combine CFHTTPPARAM values of type FILE/FORMFIELD with those of type BODY/XML." );
-							}
-							if ( paramDataType.equalsIgnoreCase( "xml" ) ) {
-								String xmlValue = getValue( sdata, _session, paramDataType );
-								httpData.setBody( xmlValue, "text/xml" );
+		// saving result as a query?
+		String name = getNamedStringParam( argStruct, "name", null );
+		if( name != null ){
+			boolean firstrowasheader = getNamedBooleanParam( argStruct, "firstrowasheaders", true );
+			String columns = getNamedStringParam( argStruct, "columns", null );
+			String textqualifier = getNamedStringParam( argStruct, "textqualifier", "\"" );
+			String delimiter = getNamedStringParam( argStruct, "delimiter", "," );
+			httpConnection.setQueryDetails( name, columns, textqualifier, delimiter, firstrowasheader );
+		}
+		
+		setTimeout( _session, httpConnection, getNamedIntParam( argStruct, "timeout", 9999 ) );
+		httpConnection.setFollowRedirects( getNamedBooleanParam( argStruct, "redirect", true ) );
+		httpConnection.setThrowOnError( getNamedBooleanParam( argStruct, "throwonerror", false ) );
+		httpConnection.setGetAsBinary( getNamedStringParam( argStruct, "getasbinary", "no" ).toLowerCase() );
+		httpConnection.setResolveLinks( getNamedBooleanParam( argStruct, "resolveurl", false ) );
+		httpConnection.setUserAgent( getNamedStringParam( argStruct, "useragent", "OpenBD" ) );
+		httpConnection.setResponseType( getNamedStringParam( argStruct, "responsetype", "buffer" ).toLowerCase() );
+		
+		String path = getNamedStringParam( argStruct, "path", null );
+		if( path != null )
+			httpConnection.setFile( getFile( _session, url, argStruct ) );
+		
+
+		cfData paramData = getNamedParam( argStruct, "httpparams", null );
+		if ( paramData != null ) {
+			cfArrayData httpParams = ( cfArrayData )paramData;
+			for ( int x = 0; x < httpParams.size(); x++ ) {
+				cfData data = httpParams.getElement( x + 1 );
+				if ( data.getDataType() != cfData.CFSTRUCTDATA )
+					throwException( _session, "params must be an array of structures; " + ( x + 1 ) + " element was not a structure" );
+
+				cfStructData sdata = ( cfStructData )data;
+
+				// Extract all parameters
+				String paramDataType = null;
+				boolean paramDataEncoded = false;
+
+				if ( sdata.containsKey( "type" ) ) {
+					paramDataType = sdata.getData( "type" ).getString();
+
+					// URL
+					if ( paramDataType.equalsIgnoreCase("url" ) ) {
+						String urlName = getName( sdata, _session, paramDataType );
+						String urlValue = getValue( sdata, _session, paramDataType );
+						httpData.addURLData( urlName, urlValue );
+
+						// FORMFIELD
+					} else if ( paramDataType.equalsIgnoreCase( "formfield" ) ) {
+						if ( httpData.isBodySet() ) {
+							throwException( _session, "You cannot combine CFHTTPPARAM values of type FILE/FORMFIELD with those of type BODY/XML." );
+						}
+						String formFiledName = getName( sdata, _session, paramDataType );
+						if ( formFiledName.length() != 0 ) {
+							String formFieldValue = getValue( sdata, _session, paramDataType );
+							if ( sdata.containsKey( "encoded" ) ) {
+								paramDataEncoded = sdata.getData( "encoded" ).getBoolean();
+								httpData.addFormData( formFiledName, formFieldValue, paramDataEncoded );
 							} else {
-								String bodyValue = getValue( sdata, _session, paramDataType );
-								httpData.setBody( bodyValue, "application/octet-stream" );
+								httpData.addFormData( formFiledName, formFieldValue, paramDataEncoded );
 							}
+						}
 
-							// HEADER
-						} else if ( paramDataType.equalsIgnoreCase( "header" ) ) {
-							String headerName = getName( sdata, _session, paramDataType );
-							if ( headerName.length() != 0 ) { // different from cgi in that data is not urlencoded
-								String headerValue = getValue( sdata, _session, paramDataType );
-								httpData.addHeader( headerName, headerValue, false );
+						// CGI
+					} else if ( paramDataType.equalsIgnoreCase( "cgi" ) ) {
+						String cgiName = getName( sdata, _session, paramDataType );
+						if ( cgiName.length() != 0 ) {
+							String cgiValue = getValue( sdata, _session, paramDataType );
+							if ( sdata.containsKey( "encoded" ) ) {
+								paramDataEncoded = sdata.getData( "encoded" ).getBoolean();
+								httpData.addHeader( cgiName, cgiValue, paramDataEncoded );
+							} else {
+								httpData.addHeader( cgiName, cgiValue, paramDataEncoded );// only url encode the data if ENCODED = YES
 							}
+						}
 
-							// COOKIE
-						} else if ( paramDataType.equalsIgnoreCase( "cookie" ) ) {
-							String cookieName = getName( sdata, _session, paramDataType );
-							if ( cookieName.length() != 0 ) {
-								String cookieValue = getValue( sdata, _session, paramDataType );
-								if ( sdata.containsKey( "encoded" ) ) {
-									paramDataEncoded = sdata.getData( "encoded" ).getBoolean();
-									httpData.addCookie( cookieName, cookieValue, paramDataEncoded );
-								} else {
-									httpData.addCookie( cookieName, cookieValue, paramDataEncoded );
-								}
+						// BODY/XML
+					} else if ( paramDataType.equalsIgnoreCase( "body" ) || paramDataType.equalsIgnoreCase( "xml" ) ) {
+						if ( httpData.isBodySet() ) {
+							throwException( _session, "You can only use one CFHTTPPARAM of type XML or BODY." );
+						} else if ( httpData.getFiles().size() > 0 || httpData.getFormData().size() > 0 ) {
+							throwException( _session, "You cannot combine CFHTTPPARAM values of type FILE/FORMFIELD with those of type BODY/XML." );
+						}
+						if ( paramDataType.equalsIgnoreCase( "xml" ) ) {
+							String xmlValue = getValue( sdata, _session, paramDataType );
+							httpData.setBody( xmlValue, "text/xml" );
+						} else {
+							String bodyValue = getValue( sdata, _session, paramDataType );
+							httpData.setBody( bodyValue, "application/octet-stream" );
+						}
+
+						// HEADER
+					} else if ( paramDataType.equalsIgnoreCase( "header" ) ) {
+						String headerName = getName( sdata, _session, paramDataType );
+						if ( headerName.length() != 0 ) { // different from cgi in that data is not urlencoded
+							String headerValue = getValue( sdata, _session, paramDataType );
+							httpData.addHeader( headerName, headerValue, false );
+						}
+
+						// COOKIE
+					} else if ( paramDataType.equalsIgnoreCase( "cookie" ) ) {
+						String cookieName = getName( sdata, _session, paramDataType );
+						if ( cookieName.length() != 0 ) {
+							String cookieValue = getValue( sdata, _session, paramDataType );
+							if ( sdata.containsKey( "encoded" ) ) {
+								paramDataEncoded = sdata.getData( "encoded" ).getBoolean();
+								httpData.addCookie( cookieName, cookieValue, paramDataEncoded );
+							} else {
+								httpData.addCookie( cookieName, cookieValue, paramDataEncoded );
 							}
+						}
 
-							// FILE
-						} else if ( paramDataType.equalsIgnoreCase( "file" ) ) {
-							if ( httpData.isBodySet() ) {
-								throwException( _session, "You cannot combine CFHTTPPARAM values of type FILE/FORMFIELD with those of type BODY/XML." );
+						// FILE
+					} else if ( paramDataType.equalsIgnoreCase( "file" ) ) {
+						if ( httpData.isBodySet() ) {
+							throwException( _session, "You cannot combine CFHTTPPARAM values of type FILE/FORMFIELD with those of type BODY/XML." );
+						}
+						String fileName = getName( sdata, _session, paramDataType );
+						String fileMimeType;
+						if ( sdata.containsKey( "file" ) ) {
+							String filePath = sdata.getData( "file" ).getString();
+							if ( sdata.containsKey( "mimetype" ) ) {
+								fileMimeType = sdata.getData( "mimetype" ).getString();
+							} else {
+								MimetypesFileTypeMap mimemap = new MimetypesFileTypeMap();
+								fileMimeType = mimemap.getContentType( filePath );
 							}
-							String fileName = getName( sdata, _session, paramDataType );
-							String fileMimeType;
-							if ( sdata.containsKey( "file" ) ) {
-								String filePath = sdata.getData( "file" ).getString();
-								if ( sdata.containsKey( "mimetype" ) ) {
-									fileMimeType = sdata.getData( "mimetype" ).getString();
-								} else {
-									MimetypesFileTypeMap mimemap = new MimetypesFileTypeMap();
-									fileMimeType = mimemap.getContentType( filePath );
-								}
-								if ( filePath.length() != 0 ) {
-									httpData.addFile( new fileDescriptor( fileName, new File( filePath ), fileMimeType ) );
-								}
+							if ( filePath.length() != 0 ) {
+								httpData.addFile( new fileDescriptor( fileName, new File( filePath ), fileMimeType ) );
 							}
-
 						}
 
-					} else {
-						throwException( _session, "Missing the TYPE attribute for http parameter." );
 					}
+
+				} else {
+					throwException( _session, "Missing the TYPE attribute for http parameter." );
 				}
 			}
-			
-			httpConnection.connect();
+		}
 
-		} finally {
-			// Release the connection.
-			try {
-				if ( httpConnection != null )
-					httpConnection.close();
-			} catch ( IOException ioe ) {
-				// Shouldn't be important if an exception is thrown at this stage but lets log it
-				cfEngine.log( "CFHTTP exception when closing connection: " + ioe.getClass() + ioe.getMessage() );
-			}
- 		}
-		
-		if (result != null ){
-			_session.setData( result, httpData );
-    }
-		
-		return httpData;
+		return httpConnection;
 	}
 
 
@@ -0,0 +1,266 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.expression.function.remote;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.naryx.tagfusion.cfm.engine.cfArgStructData;
+import com.naryx.tagfusion.cfm.engine.cfArrayData;
+import com.naryx.tagfusion.cfm.engine.cfData;
+import com.naryx.tagfusion.cfm.engine.cfEngine;
+import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
+import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.http.cfHttpConnection;
+import com.naryx.tagfusion.cfm.http.cfHttpData;
+import com.naryx.tagfusion.xmlConfig.xmlCFML;
+
+/**
+ * Makes a batch of Http() requests at once.
+ * 
+ * Each request is set up on the calling thread exactly as Http() would; only
+ * the exchanges themselves, and the reading of the responses (into memory or
+ * straight to the PATH/FILE given), run on the worker threads, at most
+ * MAXCONCURRENCY at a time, over the shared connection pool. The workers never
+ * touch the request's session; a failure is passed back as its message and
+ * set on the result by the calling thread.
+ * 
+ * The workers are shared by every batch on the server and capped at
+ * server.cfhttp.multithreads (default 64); a batch that finds them all busy
+ * waits its turn, within its own TIMEOUT.
+ */
+public class HttpMulti extends Http {
+
+	private static final long	serialVersionUID	= 1L;
+
+	private static final int	PENDING = 0, RUNNING = 1, DONE = 2;
+
+	// grace given to aborted requests to wind up before their result is replaced
+	private static final long	ABORT_GRACE_MS = 2000;
+
+	private static ExecutorService workers;
+
+	public HttpMulti() {
+		min = 1;
+		max = 3;
+		setNamedParams( new String[] { "requests", "timeout", "maxconcurrency" } );
+	}
+
+
+	public String[] getParamInfo() {
+		return new String[] { 
+				"Array of structures, each taking the same keys as the arguments to Http() (NAME, for a query result, and RESPONSETYPE=STREAM are not supported)", 
+				"The number of seconds to wait for the whole batch; requests still outstanding are abandoned. Each request's own TIMEOUT still applies. Defaults to no overall limit", 
+				"The most requests to have in flight at once. Defaults to 10"
+		};
+	}
+
+
+	public java.util.Map getInfo() {
+		return makeInfo( "remote", 
+				"Makes a number of HTTP requests concurrently, returning an array of CFHTTP structures in the same order as the requests. " +
+				"A request that fails, or is abandoned at the timeout, has its ERRORDETAIL set rather than stopping the rest", 
+				ReturnType.ARRAY );
+	}
+
+
+	public cfData execute( cfSession _session, cfArgStructData argStruct ) throws cfmRunTimeException {
+		cfData requestData = getNamedParam( argStruct, "requests" );
+		if ( requestData == null || requestData.getDataType() != cfData.CFARRAYDATA )
+			throwException( _session, "REQUESTS must be an array of structures" );
+
+		cfArrayData requests = (cfArrayData) requestData;
+		int timeout = getNamedIntParam( argStruct, "timeout", 0 );
+		int maxConcurrency = getNamedIntParam( argStruct, "maxconcurrency", 10 );
+
+		final int size = requests.size();
+		final cfHttpData[] results = new cfHttpData[size];
+		final cfHttpConnection[] connections = new cfHttpConnection[size];
+		final String[] errors = new String[size];
+
+		// Set up every request on this thread, as they may need the session
+		try {
+			for ( int x = 0; x < size; x++ ) {
+				cfData data = requests.getElement( x + 1 );
+				if ( data.getDataType() != cfData.CFSTRUCTDATA )
+					throwException( _session, "REQUESTS must be an array of structures; " + ( x + 1 ) + " element was not a structure" );
+
+				cfArgStructData args = toArgs( (cfStructData) data );
+				if ( args.containsKey( "name" ) )
+					throwException( _session, "NAME is not supported by HttpMulti; request " + ( x + 1 ) );
+				if ( args.containsKey( "responsetype" ) && args.getData( "responsetype" ).getString().equalsIgnoreCase( "stream" ) )
+					throwException( _session, "RESPONSETYPE=STREAM is not supported by HttpMulti; request " + ( x + 1 ) );
+
+				String charset = getNamedStringParam( args, "charset", null );
+				results[x] = new cfHttpData( charset == null ? "UTF-8" : charset );
+				connections[x] = prepare( _session, args, results[x] );
+				connections[x].setDetached( true );
+			}
+		} catch ( cfmRunTimeException e ) {
+			closeAll( connections );
+			throw e;
+		}
+
+		// Run them
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicIntegerArray state = new AtomicIntegerArray( size );
+		final CountDownLatch done = new CountDownLatch( size );
+
+		Runnable worker = new Runnable() {
+			public void run() {
+				int x;
+				while ( ( x = next.getAndIncrement() ) < size ) {
+					if ( state.compareAndSet( x, PENDING, RUNNING ) ) {
+						try {
+							connections[x].connect();
+						} catch ( cfmRunTimeException e ) {
+							errors[x] = e.getMessage();
+						} catch ( Throwable t ) {
+							errors[x] = "Connect Exception: " + t.getMessage();
+						} finally {
+							close( connections[x] );
+							state.set( x, DONE );
+						}
+					}
+					done.countDown();
+				}
+			}
+		};
+
+		ExecutorService pool = getWorkers();
+		int threads = Math.max( 1, Math.min( maxConcurrency, size ) );
+		for ( int x = 0; x < threads; x++ )
+			pool.execute( worker );
+
+		boolean completed = true;
+		try {
+			if ( timeout > 0 )
+				completed = done.await( timeout, TimeUnit.SECONDS );
+			else
+				done.await();
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			completed = false;
+		}
+
+		// Abandon anything still outstanding
+		if ( !completed ) {
+			for ( int x = 0; x < size; x++ ) {
+				if ( state.compareAndSet( x, PENDING, DONE ) ) {
+					results[x].setError( "Request abandoned; the HttpMulti timeout was reached before it started", "Connection Failure" );
+					close( connections[x] );
+				} else if ( state.get( x ) == RUNNING ) {
+					connections[x].abort();
+				}
+			}
+
+			try {
+				done.await( ABORT_GRACE_MS, TimeUnit.MILLISECONDS );
+			} catch ( InterruptedException ignore ) {}
+
+			// a request that still has not let go keeps writing to its own data, so hand back a fresh one
+			for ( int x = 0; x < size; x++ ) {
+				if ( state.get( x ) == RUNNING ) {
+					results[x] = new cfHttpData( results[x].getCharset() );
+					results[x].setError( "Request abandoned; the HttpMulti timeout was reached", "Connection Failure" );
+				}
+			}
+		}
+
+		// the errors of the requests that did finish; the state read orders these after the worker's writes
+		for ( int x = 0; x < size; x++ ) {
+			if ( state.get( x ) == DONE && errors[x] != null )
+				results[x].setError( errors[x], "Connection Failure" );
+		}
+
+		cfArrayData resultArray = cfArrayData.createArray( 1 );
+		for ( int x = 0; x < size; x++ )
+			resultArray.addElement( results[x] );
+
+		return resultArray;
+	}
+
+
+	private static synchronized ExecutorService getWorkers() {
+		if ( workers == null ) {
+			int threads = 64;
+			xmlCFML config = cfEngine.getConfig();
+			if ( config != null )
+				threads = config.getInt( "server.cfhttp.multithreads", threads );
+
+			ThreadPoolExecutor pool = new ThreadPoolExecutor( Math.max( 1, threads ), Math.max( 1, threads ), 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread( Runnable r ) {
+					Thread t = new Thread( r, "HttpMulti-" + count.incrementAndGet() );
+					t.setDaemon( true );
+					return t;
+				}
+			} );
+			pool.allowCoreThreadTimeOut( true );
+			workers = pool;
+		}
+		return workers;
+	}
+
+
+	private static cfArgStructData toArgs( cfStructData request ) {
+		cfArgStructData args = new cfArgStructData( true );
+		Object[] keys = request.keys();
+		for ( int x = 0; x < keys.length; x++ )
+			args.setData( (String) keys[x], request.getData( (String) keys[x] ) );
+		return args;
+	}
+
+
+	private static void closeAll( cfHttpConnection[] connections ) {
+		for ( int x = 0; x < connections.length; x++ ) {
+			if ( connections[x] != null )
+				close( connections[x] );
+		}
+	}
+
+
+	private static void close( cfHttpConnection connection ) {
+		try {
+			connection.close();
+		} catch ( IOException ioe ) {
+			cfEngine.log( "HttpMulti exception when closing connection: " + ioe.getClass() + ioe.getMessage() );
+		}
+	}
+}
@@ -32,6 +32,11 @@
 package com.naryx.tagfusion.expression.function.string;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParseException;
@@ -42,11 +47,14 @@ import com.fasterxml.jackson.core.JsonToken;
 
 import com.naryx.tagfusion.cfm.engine.cfArgStructData;
 import com.naryx.tagfusion.cfm.engine.cfArrayData;
+import com.naryx.tagfusion.cfm.engine.cfBinaryData;
 import com.naryx.tagfusion.cfm.engine.cfBooleanData;
 import com.naryx.tagfusion.cfm.engine.cfData;
 import com.naryx.tagfusion.cfm.engine.cfDateData;
+import com.naryx.tagfusion.cfm.engine.cfJavaObjectData;
 import com.naryx.tagfusion.cfm.engine.cfNullData;
 import com.naryx.tagfusion.cfm.engine.cfNumberData;
+import com.naryx.tagfusion.cfm.engine.cfQueryResultData;
 import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfStringData;
 import com.naryx.tagfusion.cfm.engine.cfStructData;
@@ -58,22 +66,38 @@ import com.naryx.tagfusion.expression.function.functionBase;
 /*
  * Takes in a JSON String and converts it to a cfData
  * 
+ * The CFML data is built straight from the parser's tokens; there is no
+ * intermediate tree. The input can be text, binary or an InputStream.
  */
 public class DeserializeJSONJackson extends functionBase {
 
 	private static final long serialVersionUID = 1L;
 
+	/*
+	 * One factory for every parse, so its symbol table is shared: a key seen in
+	 * an earlier document comes back as the same String rather than a new copy.
+	 * They are canonicalized but not intern()'d, as the keys come from outside.
+	 */
+	private static final JsonFactory jsonFactory = new JsonFactory();
+	static {
+		jsonFactory.configure(Feature.ALLOW_BACKSLASH_ESCAPING_ANY_CHARACTER, true);
+		jsonFactory.configure(Feature.ALLOW_UNQUOTED_FIELD_NAMES, true);
+		jsonFactory.configure(Feature.ALLOW_UNQUOTED_CONTROL_CHARS, true );
+		jsonFactory.disable(JsonFactory.Feature.INTERN_FIELD_NAMES);
+	}
+
 	public DeserializeJSONJackson() {
 		min = 1;
-		max = 3;
-		setNamedParams( new String[]{ "jsonstring", "strictmapping", "file"  } );
+		max = 4;
+		setNamedParams( new String[]{ "jsonstring", "strictmapping", "file", "query" } );
 	}
 
 	public String[] getParamInfo(){
 		return new String[]{
-			"JSON string. Cannot be used at the same time as file",
+			"JSON string; can also be binary or a Java InputStream (such as a CFHTTP RESPONSETYPE=STREAM response). Cannot be used at the same time as file",
 			"Flag to determine if CFML Query objects should be recognized and converted to a Query object; defaults to true",
-			"path to the file to read instead of using the parameter 'jsonstring'; can be any handle to a virtual file system"
+			"path to the file to read instead of using the parameter 'jsonstring'; can be any handle to a virtual file system",
+			"Flag to return an array of structures that all have the same simple-valued keys as a Query object instead; defaults to false"
 		};
 	}
   
@@ -84,12 +108,14 @@ public class DeserializeJSONJackson extends functionBase {
 				ReturnType.OBJECT );
 	}
 	
+	/**
+	 * The factory set up with the leniencies deserializeJSON() has always allowed
+	 */
+	public static JsonFactory getFactory(){
+		return jsonFactory;
+	}
+	
 	public cfData execute(cfSession _session, cfArgStructData argStruct ) throws cfmRunTimeException {
-		JsonFactory f = new JsonFactory();
-		f.configure(Feature.ALLOW_BACKSLASH_ESCAPING_ANY_CHARACTER, true);
-		f.configure(Feature.ALLOW_UNQUOTED_FIELD_NAMES, true);
-		f.configure(Feature.ALLOW_UNQUOTED_CONTROL_CHARS, true );
-		
 		cfVFSData fileObj = null;
 		JsonParser jp;
 		try {
@@ -97,44 +123,34 @@ public class DeserializeJSONJackson extends functionBase {
 			String file	= getNamedStringParam( argStruct, "file", null );
 			if ( file != null ){
 				fileObj	= new cfVFSData( file, "read", null );
-				jp = f.createParser(fileObj.getReader());
+				jp = jsonFactory.createParser(fileObj.getReader());
 			}else{
-				String jsonString = getNamedStringParam( argStruct, "jsonstring","");
-				if ( jsonString.isEmpty() )
-					return cfStringData.EMPTY_STRING;
+				cfData json	= getNamedParam( argStruct, "jsonstring", cfStringData.EMPTY_STRING );
 				
-				jp = f.createParser(jsonString);
+				if ( json.getDataType() == cfData.CFBINARYDATA ){
+					byte[] bytes = ((cfBinaryData)json).getByteArray();
+					if ( bytes.length == 0 )
+						return cfStringData.EMPTY_STRING;
+					
+					jp = jsonFactory.createParser(bytes);
+				}else if ( json.getDataType() == cfData.CFJAVAOBJECTDATA && ((cfJavaObjectData)json).getInstance() instanceof InputStream ){
+					jp = jsonFactory.createParser( (InputStream)((cfJavaObjectData)json).getInstance() );
+				}else{
+					String jsonString = json.getString();
+					if ( jsonString.isEmpty() )
+						return cfStringData.EMPTY_STRING;
+					
+					jp = jsonFactory.createParser(jsonString);
+				}
 			}
 
 			boolean bStrictMapping = getNamedBooleanParam( argStruct, "strictmapping", true ) ;
-			cfData obj = cfBooleanData.TRUE;
-			JsonToken	token	= jp.nextToken();
-			
-			if ( token == JsonToken.START_OBJECT ){
-				obj	= parseObject( jp, new cfStructData(), bStrictMapping );
-			}else if ( token == JsonToken.START_ARRAY ){
-				obj	= parseArray( jp, cfArrayData.createArray(1), bStrictMapping );
-			}else if ( token == JsonToken.VALUE_NUMBER_INT ){
-				if ( jp.getNumberType() == NumberType.INT )
-					obj	=  new cfNumberData(jp.getIntValue());
-				else if ( jp.getNumberType() == NumberType.LONG || jp.getNumberType() == NumberType.BIG_INTEGER )
-					obj	=  new cfNumberData(jp.getLongValue());
-			}else if ( token == JsonToken.VALUE_NUMBER_FLOAT ){
-				if ( jp.getNumberType() == NumberType.FLOAT )
-					obj	= new cfNumberData(jp.getFloatValue());
-				else if ( jp.getNumberType() == NumberType.DOUBLE )
-					obj	= new cfNumberData(jp.getDoubleValue());
-			} else if ( token == JsonToken.VALUE_FALSE ){
-				obj	=  cfBooleanData.FALSE;
-			} else if ( token == JsonToken.VALUE_TRUE ){
-				obj	= cfBooleanData.TRUE;
-			} else if ( token == JsonToken.VALUE_NULL ){
-				obj	= cfNullData.NULL;
-			}else{
-				obj = getString(jp.getText());
+			boolean bQuery = getNamedBooleanParam( argStruct, "query", false ) ;
+			try {
+				return parse( jp, bStrictMapping, bQuery );
+			} finally {
+				jp.close();
 			}
-
-			return obj;
 		} catch (JsonParseException e) {
 			throwException(_session, "[Invalid JSON] Line=" + e.getLocation().getLineNr() + "; Column=" + e.getLocation().getColumnNr() + "; Offset=" + e.getLocation().getCharOffset() );
 		} catch (Exception e) {
@@ -150,6 +166,60 @@ public class DeserializeJSONJackson extends functionBase {
 	}
 	
 	
+	/**
+	 * Reads the next JSON value from the parser; it can be over a String, a
+	 * Reader or straight over an InputStream (the UTF8StreamJsonParser), so a
+	 * large document is turned into CFML data without first being held as text.
+	 */
+	public static cfData parse( JsonParser jp, boolean bStrictMapping ) throws JsonParseException, IOException, cfmRunTimeException {
+		return parse( jp, bStrictMapping, false );
+	}
+	
+	
+	/**
+	 * As parse(jp, bStrictMapping), optionally building a Query object directly
+	 * from any array of objects that all share the same simple-valued keys
+	 */
+	public static cfData parse( JsonParser jp, boolean bStrictMapping, boolean bQuery ) throws JsonParseException, IOException, cfmRunTimeException {
+		JsonToken	token	= jp.nextToken();
+		
+		if ( token == null )
+			return cfStringData.EMPTY_STRING;
+		else
+			return parseValue( jp, token, bStrictMapping, bQuery );
+	}
+	
+	
+	private static cfData parseValue( JsonParser jp, JsonToken token, boolean bStrictMapping, boolean bQuery ) throws JsonParseException, IOException, cfmRunTimeException {
+		switch ( token ){
+			case START_OBJECT:
+				return parseObject( jp, bStrictMapping, bQuery );
+			case START_ARRAY:
+				return parseArray( jp, bStrictMapping, bQuery );
+			case VALUE_NUMBER_INT:
+				if ( jp.getNumberType() == NumberType.INT )
+					return new cfNumberData(jp.getIntValue());
+				else if ( jp.getNumberType() == NumberType.LONG )
+					return new cfNumberData(jp.getLongValue());
+				else
+					return new cfNumberData(jp.getDoubleValue());
+			case VALUE_NUMBER_FLOAT:
+				if ( jp.getNumberType() == NumberType.FLOAT )
+					return new cfNumberData(jp.getFloatValue());
+				else
+					return new cfNumberData(jp.getDoubleValue());
+			case VALUE_FALSE:
+				return cfBooleanData.FALSE;
+			case VALUE_TRUE:
+				return cfBooleanData.TRUE;
+			case VALUE_NULL:
+				return cfNullData.NULL;
+			default:
+				return getString(jp.getText());
+		}
+	}
+	
+	
 	/**
 	 * Determines if this is a query object, if so, converts it to a query one
 	 * 
@@ -159,7 +229,7 @@ public class DeserializeJSONJackson extends functionBase {
 	 * @return
 	 * @throws cfmRunTimeException 
 	 */
-	private cfData convertToQuery(cfStructData obj) throws cfmRunTimeException {
+	private static cfData convertToQuery(cfStructData obj) throws cfmRunTimeException {
 		if ( obj.containsKey("columns") && obj.containsKey("data" ) ){
 			cfData	columns	= obj.getData("columns");
 			if ( columns.getDataType() != cfData.CFARRAYDATA )	// columns is always an array
@@ -185,40 +255,13 @@ public class DeserializeJSONJackson extends functionBase {
 
 	
 
-	private cfData	parseObject(JsonParser jp, cfStructData struct, boolean bStrictMapping ) throws JsonParseException, IOException, cfmRunTimeException{
+	private static cfData	parseObject(JsonParser jp, boolean bStrictMapping, boolean bQuery ) throws JsonParseException, IOException, cfmRunTimeException{
+		cfStructData struct = new cfStructData();
 		
 		JsonToken	token	= jp.nextToken();
 		while ( token != JsonToken.END_OBJECT ){
 			String namefield = jp.getCurrentName();
-			
-			if ( token == JsonToken.START_ARRAY ){
-				struct.setData( namefield, parseArray(jp, cfArrayData.createArray(1), bStrictMapping) );
-			}else if ( token == JsonToken.START_OBJECT ){
-				struct.setData( namefield, parseObject(jp,new cfStructData(), bStrictMapping) );
-			}else if ( token == JsonToken.VALUE_NUMBER_INT ){
-
-				if ( jp.getNumberType() == NumberType.INT )
-					struct.setData( namefield, new cfNumberData(jp.getIntValue()) );
-				else if ( jp.getNumberType() == NumberType.LONG || jp.getNumberType() == NumberType.BIG_INTEGER )
-					struct.setData( namefield, new cfNumberData(jp.getLongValue()) );
-
-			}else if ( token == JsonToken.VALUE_NUMBER_FLOAT ){
-
-				if ( jp.getNumberType() == NumberType.FLOAT )
-					struct.setData( namefield, new cfNumberData(jp.getFloatValue()) );
-				else if ( jp.getNumberType() == NumberType.DOUBLE )
-					struct.setData( namefield, new cfNumberData(jp.getDoubleValue()) );
-
-			} else if ( token == JsonToken.VALUE_FALSE ){
-				struct.setData( namefield, cfBooleanData.FALSE );
-			} else if ( token == JsonToken.VALUE_TRUE ){
-				struct.setData( namefield, cfBooleanData.TRUE );
-			} else if ( token == JsonToken.VALUE_NULL ){
-				struct.setData( namefield, cfNullData.NULL );
-			}else{
-				struct.setData( namefield, getString(jp.getText()) );
-			}
-
+			struct.setData( namefield, parseValue( jp, jp.nextToken(), bStrictMapping, bQuery ) );
 			token	= jp.nextToken();
 		}
 
@@ -229,52 +272,152 @@ public class DeserializeJSONJackson extends functionBase {
 	}
 	
 	
-	private cfData	parseArray(JsonParser jp, cfArrayData array, boolean bStrictMapping ) throws JsonParseException, IOException, cfmRunTimeException{
-		
+	private static cfData	parseArray(JsonParser jp, boolean bStrictMapping, boolean bQuery ) throws JsonParseException, IOException, cfmRunTimeException{
 		JsonToken	token	= jp.nextToken();
+		
+		if ( bQuery && token == JsonToken.START_OBJECT )
+			return parseRows( jp, bStrictMapping );
+
+		cfArrayData array = cfArrayData.createArray(1);
+		while ( token != JsonToken.END_ARRAY ){
+			array.addElement( parseValue( jp, token, bStrictMapping, bQuery ) );
+			token	= jp.nextToken();
+		}
+		
+		return array;
+	}
+	
+	
+	/*
+	 * An array starting with an object: each object is read into the row
+	 * buffers and, while they all carry the same simple-valued keys, added
+	 * straight to a query. The first one that does not turns what has been
+	 * built so far back into an array of structures and carries on as one.
+	 */
+	private static cfData parseRows(JsonParser jp, boolean bStrictMapping ) throws JsonParseException, IOException, cfmRunTimeException{
+		List<String> names = new ArrayList<String>();
+		List<cfData> values = new ArrayList<cfData>();
+		
+		cfQueryResultData query = null;
+		Map<String, Integer> columns = null;
+		cfArrayData array = null;
+		
+		JsonToken	token	= JsonToken.START_OBJECT;
 		while ( token != JsonToken.END_ARRAY ){
 			
-			if ( token == JsonToken.START_ARRAY ){
-				array.addElement( parseArray(jp,cfArrayData.createArray(1),bStrictMapping ) );
-			}else if ( token == JsonToken.START_OBJECT ){
-				array.addElement( parseObject(jp,new cfStructData(),bStrictMapping) );
-			}else if ( token == JsonToken.VALUE_NUMBER_INT ){
+			if ( array == null && token == JsonToken.START_OBJECT ){
+				boolean simple = readRow( jp, names, values, bStrictMapping );
 				
-				if ( jp.getNumberType() == NumberType.INT )
-					array.addElement( new cfNumberData(jp.getIntValue()) );
-				else if ( jp.getNumberType() == NumberType.LONG || jp.getNumberType() == NumberType.BIG_INTEGER )
-					array.addElement( new cfNumberData(jp.getLongValue()) );
-
-			}else if ( token == JsonToken.VALUE_NUMBER_FLOAT ){
+				if ( query == null && simple && names.size() > 0 ){
+					columns = new HashMap<String, Integer>();
+					for ( int x = 0; x < names.size(); x++ )
+						columns.put( names.get(x), x + 1 );
+					
+					if ( columns.size() == names.size() )
+						query = new cfQueryResultData( names.toArray( new String[ names.size() ] ), "JSON" );
+				}
+				
+				if ( query != null && simple && names.size() == columns.size() && addRow( query, columns, names, values ) ){
+					// a row of the query
+				}else{
+					array = toArray( query );
+					array.addElement( toStruct( names, values, bStrictMapping ) );
+				}
+				
+			}else{
+				if ( array == null )
+					array = toArray( query );
+				
+				array.addElement( parseValue( jp, token, bStrictMapping, true ) );
+			}
+			
+			token = jp.nextToken();
+		}
 		
-				if ( jp.getNumberType() == NumberType.FLOAT )
-					array.addElement( new cfNumberData(jp.getFloatValue()) );
-				else if ( jp.getNumberType() == NumberType.DOUBLE )
-					array.addElement( new cfNumberData(jp.getDoubleValue()) );
-
-			} else if ( token == JsonToken.VALUE_FALSE ){
-				array.addElement( cfBooleanData.FALSE );
-			} else if ( token == JsonToken.VALUE_TRUE ){
-				array.addElement( cfBooleanData.TRUE );
-			} else if ( token == JsonToken.VALUE_NULL ){
-				array.addElement( cfNullData.NULL );
-			}else
-				array.addElement(  getString(jp.getText()) );
+		return ( array != null ) ? array : query;
+	}
+	
+	
+	/*
+	 * Reads the fields of one object; returns false if any of them is not a simple value
+	 */
+	private static boolean readRow(JsonParser jp, List<String> names, List<cfData> values, boolean bStrictMapping ) throws JsonParseException, IOException, cfmRunTimeException{
+		names.clear();
+		values.clear();
+		boolean simple = true;
 		
-			token	= jp.nextToken();
+		JsonToken	token	= jp.nextToken();
+		while ( token != JsonToken.END_OBJECT ){
+			names.add( jp.getCurrentName() );
+			
+			token = jp.nextToken();
+			if ( token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY )
+				simple = false;
+			
+			values.add( parseValue( jp, token, bStrictMapping, true ) );
+			token = jp.nextToken();
 		}
 		
-		return array;
+		return simple;
 	}
 	
 	
+	private static boolean addRow( cfQueryResultData query, Map<String, Integer> columns, List<String> names, List<cfData> values ){
+		int[] cols = new int[ names.size() ];
+		boolean[] seen = new boolean[ cols.length + 1 ];
+		for ( int x = 0; x < cols.length; x++ ){
+			Integer col = columns.get( names.get(x) );
+			if ( col == null || seen[col] )
+				return false;
+			cols[x] = col;
+			seen[col] = true;
+		}
+		
+		query.addRow( 1 );
+		int row = query.getSize();
+		for ( int x = 0; x < cols.length; x++ )
+			query.setCell( row, cols[x], values.get(x) );
+		
+		return true;
+	}
+	
+	
+	private static cfData toStruct( List<String> names, List<cfData> values, boolean bStrictMapping ) throws cfmRunTimeException{
+		cfStructData struct = new cfStructData();
+		for ( int x = 0; x < names.size(); x++ )
+			struct.setData( names.get(x), values.get(x) );
+		
+		if ( bStrictMapping )
+			return convertToQuery( struct );
+		else
+			return struct;
+	}
+	
+	
+	private static cfArrayData toArray( cfQueryResultData query ) throws cfmRunTimeException{
+		cfArrayData array = cfArrayData.createArray(1);
+		if ( query == null )
+			return array;
+		
+		String[] columns = query.getColumnList();
+		for ( int r = 0; r < query.getSize(); r++ ){
+			List<cfData> row = query.getRow( r );
+			cfStructData struct = new cfStructData();
+			for ( int c = 0; c < columns.length; c++ )
+				struct.setData( columns[c], row.get(c) );
+			array.addElement( struct );
+		}
+		
+		return array;
+	}
+	
 	
 	/**
 	 * Attempts to convert the date to a proper date string
 	 * @param jsonText
 	 * @return
 	 */
-	private cfData	getString( String jsonText ){
+	private static cfData	getString( String jsonText ){
 		if ( jsonText.startsWith("{ts") && jsonText.endsWith("}") ){
 			try{
 				return new cfDateData( ParseDateTime.parseDateString( jsonText ) );
@@ -285,4 +428,4 @@ public class DeserializeJSONJackson extends functionBase {
 			return new cfStringData(jsonText);
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,605 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.expression.function.string;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.oro.text.regex.MalformedPatternException;
+import org.apache.oro.text.regex.Pattern;
+import org.apache.oro.text.regex.PatternMatcherInput;
+import org.apache.oro.text.regex.Perl5Compiler;
+import org.apache.oro.text.regex.Perl5Matcher;
+import org.apache.oro.text.regex.Perl5Substitution;
+import org.apache.oro.text.regex.Util;
+
+import com.naryx.tagfusion.cfm.application.cfAPPLICATION;
+import com.naryx.tagfusion.cfm.engine.cfSession;
+
+/**
+ * Compiled regular expressions shared by the RE* functions, CFCACHE and the
+ * query-of-queries LIKE operator.
+ *
+ * Patterns are nearly always literals in the page, so each one is compiled
+ * once per engine and flag combination and held in a bounded concurrent map;
+ * when the map fills, the least recently used quarter is dropped. Use is
+ * tracked to the nearest compile, not the nearest call. Matchers
+ * are not thread-safe, so each thread keeps one of its own and points it at
+ * whichever pattern it is working with.
+ *
+ * Two engines are available: the Jakarta ORO Perl5 engine the functions have
+ * always used, and java.util.regex, which an application can select with
+ * this.regexengine="java" (or REGEXENGINE on CFAPPLICATION).
+ */
+public final class RegexCache {
+
+	public enum Engine {
+		ORO, JAVA;
+
+		public static Engine fromString(String engine) {
+			return "java".equalsIgnoreCase(engine) ? JAVA : ORO;
+		}
+	}
+
+	public static final int CASE_INSENSITIVE = 1;
+	public static final int SINGLELINE = 2;		// '.' also matches a newline
+
+	private static final int MAX_ENTRIES = 2000;
+
+	private static final ConcurrentHashMap<Key, Regex> cache = new ConcurrentHashMap<Key, Regex>();
+	private static final ReentrantLock evictLock = new ReentrantLock();
+	private static final AtomicLong clock = new AtomicLong();
+
+	private static final ThreadLocal<Perl5Matcher> oroMatcher = new ThreadLocal<Perl5Matcher>() {
+		protected Perl5Matcher initialValue() {
+			return new Perl5Matcher();
+		}
+	};
+
+	private static final ThreadLocal<Matcher> javaMatcher = new ThreadLocal<Matcher>() {
+		protected Matcher initialValue() {
+			return java.util.regex.Pattern.compile("").matcher("");
+		}
+	};
+
+	private RegexCache() {}
+
+
+	/**
+	 * The engine the current application has asked for, ORO by default
+	 */
+	public static Engine getEngine(cfSession session) {
+		Object engine = session == null ? null : session.getDataBin(cfAPPLICATION.REGEXENGINE);
+		return engine == Engine.JAVA ? Engine.JAVA : Engine.ORO;
+	}
+
+
+	public static Regex getPattern(String regex, int flags) throws MalformedPatternException {
+		return getPattern(Engine.ORO, regex, flags);
+	}
+
+
+	/**
+	 * Returns the compiled form of the regular expression, compiling it on first
+	 * use. Syntax errors from either engine are reported as a MalformedPatternException.
+	 */
+	public static Regex getPattern(Engine engine, String regex, int flags) throws MalformedPatternException {
+		Key key = new Key(engine, regex, flags);
+		Regex compiled = cache.get(key);
+		if (compiled == null) {
+			compiled = (engine == Engine.JAVA) ? new JavaRegex(regex, flags) : new OroRegex(regex, flags);
+			clock.incrementAndGet();
+
+			Regex existing = cache.putIfAbsent(key, compiled);
+			if (existing != null)
+				compiled = existing;
+			else if (cache.size() > MAX_ENTRIES)
+				evict();
+		}
+
+		// the clock only moves when a pattern is compiled, so a hit is a plain read and
+		// each pattern is written to at most once between compiles
+		long now = clock.get();
+		if (compiled.lastUsed != now)
+			compiled.lastUsed = now;
+		return compiled;
+	}
+
+
+	public static int size() {
+		return cache.size();
+	}
+
+
+	/*
+	 * Drops the least recently used quarter of the patterns. Only one thread does
+	 * this at a time; the others carry on, the map simply being a little over size
+	 */
+	private static void evict() {
+		if (!evictLock.tryLock())
+			return;
+
+		try {
+			if (cache.size() <= MAX_ENTRIES)
+				return;
+
+			long[] ages = new long[cache.size()];
+			int n = 0;
+			for (Regex r : cache.values()) {
+				if (n == ages.length)
+					break;
+				ages[n++] = r.lastUsed;
+			}
+			java.util.Arrays.sort(ages, 0, n);
+			long cutoff = ages[n / 4];
+
+			// many patterns can share a stamp, so those on the cutoff itself are only
+			// dropped until a quarter have gone
+			int drop = n / 4 + 1;
+			Iterator<Map.Entry<Key, Regex>> it = cache.entrySet().iterator();
+			while (it.hasNext()) {
+				if (it.next().getValue().lastUsed < cutoff) {
+					it.remove();
+					drop--;
+				}
+			}
+
+			it = cache.entrySet().iterator();
+			while (drop > 0 && it.hasNext()) {
+				if (it.next().getValue().lastUsed == cutoff) {
+					it.remove();
+					drop--;
+				}
+			}
+		} finally {
+			evictLock.unlock();
+		}
+	}
+
+
+	/**
+	 * A compiled pattern. The methods use the calling thread's matcher, so
+	 * they can be called from any number of threads at once.
+	 */
+	public static abstract class Regex {
+		volatile long lastUsed;
+
+		/**
+		 * The first match at or after the (zero-based) offset, or null
+		 */
+		public abstract java.util.regex.MatchResult find(String input, int offset);
+
+		/**
+		 * True if the whole input matches
+		 */
+		public abstract boolean matches(String input);
+
+		/**
+		 * True if the pattern matches anywhere in the input
+		 */
+		public abstract boolean contains(String input);
+
+		/**
+		 * The text of every successive match in the input
+		 */
+		public abstract List<String> findAll(String input);
+
+		/**
+		 * Replaces the first, or every, match with the CFML substitution string:
+		 * \1..\9 back references, with the Perl \U, \L and \E case escapes (and their
+		 * single character forms)
+		 */
+		public abstract String replace(String input, String substitution, boolean all);
+
+		/**
+		 * Replaces every match with the Perl5 substitution, $1 back references
+		 */
+		public abstract String substitute(String input, String perl5Substitution);
+	}
+
+
+	private static final class Key {
+		private final int flags;
+		private final String regex;
+		private final int hash;
+
+		Key(Engine engine, String regex, int flags) {
+			this.flags = (engine.ordinal() << 8) | flags;
+			this.regex = regex;
+			this.hash = regex.hashCode() * 31 + this.flags;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return k.flags == flags && k.regex.equals(regex);
+		}
+	}
+
+
+	private static boolean isCaseEscape(char _c) {
+		return _c == 'U' || _c == 'u' || _c == 'L' || _c == 'l' || _c == 'E';
+	}
+
+
+	/*
+	 * Jakarta ORO
+	 */
+	private static final class OroRegex extends Regex {
+		private final Pattern pattern;
+
+		OroRegex(String regex, int flags) throws MalformedPatternException {
+			int mask = Perl5Compiler.DEFAULT_MASK;
+			if ((flags & CASE_INSENSITIVE) != 0)
+				mask |= Perl5Compiler.CASE_INSENSITIVE_MASK;
+			if ((flags & SINGLELINE) != 0)
+				mask |= Perl5Compiler.SINGLELINE_MASK;
+
+			// the compiled Perl5Pattern is read-only once built, so it is safe to share
+			pattern = new Perl5Compiler().compile(regex, mask | Perl5Compiler.READ_ONLY_MASK);
+		}
+
+		public java.util.regex.MatchResult find(String input, int offset) {
+			Perl5Matcher matcher = oroMatcher.get();
+			PatternMatcherInput in = new PatternMatcherInput(input);
+			in.setCurrentOffset(offset);
+			return matcher.contains(in, pattern) ? new OroMatchResult(matcher.getMatch()) : null;
+		}
+
+		public boolean matches(String input) {
+			return oroMatcher.get().matches(new PatternMatcherInput(input), pattern);
+		}
+
+		public boolean contains(String input) {
+			return oroMatcher.get().contains(new PatternMatcherInput(input), pattern);
+		}
+
+		public List<String> findAll(String input) {
+			Perl5Matcher matcher = oroMatcher.get();
+			PatternMatcherInput in = new PatternMatcherInput(input);
+			List<String> found = new ArrayList<String>();
+			while (matcher.contains(in, pattern))
+				found.add(matcher.getMatch().toString());
+			return found;
+		}
+
+		public String replace(String input, String substitution, boolean all) {
+			return Util.substitute(oroMatcher.get(), pattern, new Perl5Substitution(toPerl5(substitution)), input, all ? Util.SUBSTITUTE_ALL : 1);
+		}
+
+		public String substitute(String input, String perl5Substitution) {
+			return Util.substitute(oroMatcher.get(), pattern, new Perl5Substitution(perl5Substitution), input, Util.SUBSTITUTE_ALL);
+		}
+
+		// replaces back references in the format \1 with $1 making sure to
+		// add escaping for the existing $'s and handle escaping \'s
+		private static String toPerl5(String _substr) {
+			StringBuilder res = new StringBuilder(_substr);
+			int i = 0;
+
+			while (i < res.length()) {
+				switch (res.charAt(i)) {
+				case '\\':
+					if (i + 1 < res.length()) {
+						char nextCh = res.charAt(i + 1);
+						if (Character.isDigit(nextCh)) {
+							res.setCharAt(i, '$');
+						} else if ((nextCh == '\\') && (i + 2 < res.length())) {
+							nextCh = res.charAt(i + 2);
+							if (!isCaseEscape(nextCh)) {
+								// It's not a \\U, \\L, etc. so escape the back slash
+								res.insert(i + 1, '\\');
+								i++; // extra increment
+							}
+						} else if (!isCaseEscape(nextCh)) {
+							// It's not a '\U', '\L', etc. so escape the back slash
+							res.insert(i + 1, '\\');
+							i++; // extra increment
+						}
+					} else {
+						res.insert(i + 1, '\\');
+						i++; // extra increment
+					}
+					i++;
+					break;
+
+				case '$':
+					res.insert(i, '\\');
+					i += 2;
+					break;
+
+				default:
+					i++;
+					break;
+				}
+			}
+
+			return res.toString();
+		}
+	}
+
+
+	/*
+	 * ORO's match offsets presented as a java.util.regex.MatchResult; a group
+	 * that took no part in the match reports -1 for both ends, as in the JDK
+	 */
+	private static final class OroMatchResult implements java.util.regex.MatchResult {
+		private final org.apache.oro.text.regex.MatchResult result;
+
+		OroMatchResult(org.apache.oro.text.regex.MatchResult result) {
+			this.result = result;
+		}
+
+		public int start() {
+			return result.beginOffset(0);
+		}
+
+		public int start(int group) {
+			return result.beginOffset(group);
+		}
+
+		public int end() {
+			return result.endOffset(0);
+		}
+
+		public int end(int group) {
+			return result.endOffset(group);
+		}
+
+		public String group() {
+			return result.group(0);
+		}
+
+		public String group(int group) {
+			return result.group(group);
+		}
+
+		public int groupCount() {
+			return result.groups() - 1;
+		}
+	}
+
+
+	/*
+	 * java.util.regex
+	 */
+	private static final class JavaRegex extends Regex {
+		private final java.util.regex.Pattern pattern;
+
+		JavaRegex(String regex, int flags) throws MalformedPatternException {
+			int mask = 0;
+			if ((flags & CASE_INSENSITIVE) != 0)
+				mask |= java.util.regex.Pattern.CASE_INSENSITIVE | java.util.regex.Pattern.UNICODE_CASE;
+			if ((flags & SINGLELINE) != 0)
+				mask |= java.util.regex.Pattern.DOTALL;
+
+			try {
+				pattern = java.util.regex.Pattern.compile(posixClasses(regex), mask);
+			} catch (PatternSyntaxException e) {
+				throw new MalformedPatternException(e.getDescription());
+			}
+		}
+
+		private Matcher matcher(String input) {
+			Matcher m = javaMatcher.get();
+			m.usePattern(pattern);
+			m.reset(input);
+			return m;
+		}
+
+		public java.util.regex.MatchResult find(String input, int offset) {
+			if (offset > input.length())
+				return null;
+			Matcher m = matcher(input);
+			return m.find(offset) ? m.toMatchResult() : null;
+		}
+
+		public boolean matches(String input) {
+			return matcher(input).matches();
+		}
+
+		public boolean contains(String input) {
+			return matcher(input).find();
+		}
+
+		public List<String> findAll(String input) {
+			Matcher m = matcher(input);
+			List<String> found = new ArrayList<String>();
+			while (m.find())
+				found.add(m.group());
+			return found;
+		}
+
+		public String replace(String input, String substitution, boolean all) {
+			Matcher m = matcher(input);
+			if (!m.find())
+				return input;
+
+			StringBuilder out = new StringBuilder(input.length() + 16);
+			int last = 0;
+			do {
+				out.append(input, last, m.start());
+				appendSubstitution(out, m, substitution);
+				last = m.end();
+			} while (all && m.find());
+
+			out.append(input, last, input.length());
+			return out.toString();
+		}
+
+		public String substitute(String input, String perl5Substitution) {
+			return matcher(input).replaceAll(perl5Substitution);
+		}
+
+		/*
+		 * Expands the CFML substitution for the current match the way ORO does:
+		 * a backslash is literal unless a group number or case escape follows;
+		 * \U and \L run until \E, while the lower-case forms only change the
+		 * next character
+		 */
+		private static void appendSubstitution(StringBuilder out, Matcher m, String sub) {
+			char caseRun = 0, caseNext = 0;
+
+			for (int i = 0; i < sub.length(); i++) {
+				char c = sub.charAt(i);
+				String text;
+
+				if (c == '\\' && i + 1 < sub.length()) {
+					char next = sub.charAt(i + 1);
+					if (Character.isDigit(next)) {
+						int group = next - '0';
+						i++;
+						while (i + 1 < sub.length() && Character.isDigit(sub.charAt(i + 1)))
+							group = group * 10 + (sub.charAt(++i) - '0');
+
+						text = (group <= m.groupCount()) ? m.group(group) : null;
+						if (text == null)
+							continue;
+					} else if (next == 'U' || next == 'L') {
+						caseRun = next;
+						i++;
+						continue;
+					} else if (next == 'E') {
+						caseRun = 0;
+						i++;
+						continue;
+					} else if (next == 'u' || next == 'l') {
+						caseNext = next;
+						i++;
+						continue;
+					} else if (next == '\\' && i + 2 < sub.length() && isCaseEscape(sub.charAt(i + 2))) {
+						// an escaped case escape is output as written, less the first backslash
+						text = sub.substring(i + 1, i + 3);
+						i += 2;
+					} else {
+						// any other backslash is literal
+						text = "\\";
+					}
+				} else {
+					text = String.valueOf(c);
+				}
+
+				if (text.length() == 0)
+					continue;
+
+				if (caseRun == 'U')
+					text = text.toUpperCase();
+				else if (caseRun == 'L')
+					text = text.toLowerCase();
+
+				if (caseNext != 0) {
+					char first = (caseNext == 'u') ? Character.toUpperCase(text.charAt(0)) : Character.toLowerCase(text.charAt(0));
+					out.append(first).append(text, 1, text.length());
+					caseNext = 0;
+				} else {
+					out.append(text);
+				}
+			}
+		}
+
+		private static final String[][] POSIX = {
+			{ "alpha", "\\p{Alpha}" }, { "digit", "\\p{Digit}" }, { "alnum", "\\p{Alnum}" },
+			{ "upper", "\\p{Upper}" }, { "lower", "\\p{Lower}" }, { "space", "\\s" },
+			{ "punct", "\\p{Punct}" }, { "xdigit", "\\p{XDigit}" }, { "cntrl", "\\p{Cntrl}" },
+			{ "print", "\\p{Print}" }, { "graph", "\\p{Graph}" }, { "blank", "\\p{Blank}" },
+			{ "word", "\\w" }, { "ascii", "\\p{ASCII}" }
+		};
+
+		/*
+		 * ORO understands POSIX bracket classes such as [[:alpha:]], which
+		 * java.util.regex would quietly read as a set of characters
+		 */
+		private static String posixClasses(String regex) {
+			if (regex.indexOf("[:") == -1)
+				return regex;
+
+			StringBuilder out = new StringBuilder(regex.length() + 16);
+			int depth = 0;
+
+			for (int i = 0; i < regex.length(); i++) {
+				char c = regex.charAt(i);
+
+				if (c == '\\' && i + 1 < regex.length()) {
+					out.append(c).append(regex.charAt(++i));
+					continue;
+				}
+
+				if (c == '[') {
+					if (depth > 0 && i + 1 < regex.length() && regex.charAt(i + 1) == ':') {
+						int close = regex.indexOf(":]", i + 2);
+						String replacement = (close == -1) ? null : posixClass(regex.substring(i + 2, close));
+						if (replacement != null) {
+							out.append(replacement);
+							i = close + 1;
+							continue;
+						}
+					}
+
+					depth++;
+					out.append(c);
+
+					// a ']' straight after the opening '[' or '[^' is a literal
+					if (i + 1 < regex.length() && regex.charAt(i + 1) == '^')
+						out.append(regex.charAt(++i));
+					if (i + 1 < regex.length() && regex.charAt(i + 1) == ']')
+						out.append(regex.charAt(++i));
+					continue;
+				}
+
+				if (c == ']' && depth > 0)
+					depth--;
+
+				out.append(c);
+			}
+
+			return out.toString();
+		}
+
+		private static String posixClass(String name) {
+			for (int i = 0; i < POSIX.length; i++) {
+				if (POSIX[i][0].equals(name))
+					return POSIX[i][1];
+			}
+			return null;
+		}
+	}
+}
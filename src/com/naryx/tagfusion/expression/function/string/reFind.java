@@ -31,14 +31,9 @@
 
 package com.naryx.tagfusion.expression.function.string;
 
+import java.util.regex.MatchResult;
+
 import org.apache.oro.text.regex.MalformedPatternException;
-import org.apache.oro.text.regex.MatchResult;
-import org.apache.oro.text.regex.Pattern;
-import org.apache.oro.text.regex.PatternCompiler;
-import org.apache.oro.text.regex.PatternMatcher;
-import org.apache.oro.text.regex.PatternMatcherInput;
-import org.apache.oro.text.regex.Perl5Compiler;
-import org.apache.oro.text.regex.Perl5Matcher;
 
 import com.naryx.tagfusion.cfm.engine.cfArgStructData;
 import com.naryx.tagfusion.cfm.engine.cfArrayData;
@@ -115,35 +110,23 @@ public class reFind extends functionBase {
 			startingPos = 1;
 		}
 		
+		RegexCache.Regex pattern = getPattern(_session, regexp);
+
 		if (subexps) {
 			// returns cfStructData
-			return execWithSubExpressions(regexp, strToSearch, startingPos);
+			return execWithSubExpressions(pattern, strToSearch, startingPos);
 		} else {
 			// returns cfNumberData
-			return execNoSubExpressions(regexp, strToSearch, startingPos);
+			return execNoSubExpressions(pattern, strToSearch, startingPos);
 		}
 
 	}// execute()
 
 	
-	// Note offset and index returned are in the range 1+. Except if no match is found 0 is returned.
-	private cfNumberData execNoSubExpressions(String _regexp, String _strToSearch, int _offset) throws cfmRunTimeException {
-
-		PatternMatcher matcher;
-		PatternCompiler compiler;
-		Pattern pattern;
-		PatternMatcherInput input;
-		MatchResult result;
-
-		compiler = new Perl5Compiler();
-		matcher = new Perl5Matcher();
-
+	private RegexCache.Regex getPattern(cfSession _session, String _regexp) throws cfmRunTimeException {
+		int flags = caseSensitiveMatch ? RegexCache.SINGLELINE : RegexCache.SINGLELINE | RegexCache.CASE_INSENSITIVE;
 		try {
-			if (caseSensitiveMatch) {
-				pattern = compiler.compile(_regexp, Perl5Compiler.SINGLELINE_MASK);
-			} else {
-				pattern = compiler.compile(_regexp, Perl5Compiler.CASE_INSENSITIVE_MASK | Perl5Compiler.SINGLELINE_MASK);
-			}
+			return RegexCache.getPattern(RegexCache.getEngine(_session), _regexp, flags);
 		} catch (MalformedPatternException e) {
 			cfCatchData catchD = new cfCatchData();
 			catchD.setType("Function");
@@ -151,67 +134,39 @@ public class reFind extends functionBase {
 			catchD.setDetail("Invalid regular expression ( " + _regexp + " )");
 			throw new cfmRunTimeException(catchD);
 		}
+	}
 
-		input = new PatternMatcherInput(_strToSearch);
-		input.setCurrentOffset(_offset - 1);
-
-		if (matcher.contains(input, pattern)) {
-			result = matcher.getMatch();
-
-			return new cfNumberData(result.beginOffset(0) + 1);
 
+	// Note offset and index returned are in the range 1+. Except if no match is found 0 is returned.
+	private cfNumberData execNoSubExpressions(RegexCache.Regex _pattern, String _strToSearch, int _offset) {
+		MatchResult result = _pattern.find(_strToSearch, _offset - 1);
+		if (result != null) {
+			return new cfNumberData(result.start() + 1);
 		} else {
 			return new cfNumberData(0);
 		}
-
 	}
 
-	private cfStructData execWithSubExpressions(String _regexp, String _strToSearch, int _offset) throws cfmRunTimeException {
+	private cfStructData execWithSubExpressions(RegexCache.Regex _pattern, String _strToSearch, int _offset) throws cfmRunTimeException {
 		cfArrayData length = cfArrayData.createArray(1);
 		cfArrayData pos = cfArrayData.createArray(1);
 
 		int groups;
-		PatternMatcher matcher;
-		PatternCompiler compiler;
-		Pattern pattern;
-		PatternMatcherInput input;
-		MatchResult result;
-
-		compiler = new Perl5Compiler();
-		matcher = new Perl5Matcher();
-
-		try {
-			if (caseSensitiveMatch) {
-				pattern = compiler.compile(_regexp, Perl5Compiler.SINGLELINE_MASK);
-			} else {
-				pattern = compiler.compile(_regexp, Perl5Compiler.CASE_INSENSITIVE_MASK | Perl5Compiler.SINGLELINE_MASK);
-			}
-		} catch (MalformedPatternException e) {
-			cfCatchData catchD = new cfCatchData();
-			catchD.setType("Function");
-			catchD.setMessage("REFind - invalid parameter");
-			catchD.setDetail("Invalid regular expression ( " + _regexp + " )");
-			throw new cfmRunTimeException(catchD);
-		}
-
-		input = new PatternMatcherInput(_strToSearch);
-		input.setCurrentOffset(_offset - 1);
-
-		if (matcher.contains(input, pattern)) {
-			result = matcher.getMatch();
+		MatchResult result = _pattern.find(_strToSearch, _offset - 1);
 
-			int startInside = result.beginOffset(0);
-			int lenInside = result.length();
+		if (result != null) {
+			int startInside = result.start();
+			int lenInside = result.end() - result.start();
 
 			length.setData(1, new cfNumberData(lenInside));
 			pos.setData(1, new cfNumberData(startInside + 1));
 
-			groups = result.groups();
+			groups = result.groupCount() + 1;
 
 			// Start at 1 because we just printed out group 0
 			for (int group = 1; group < groups; group++) {
-				length.setData(group + 1, new cfNumberData(result.end(group) - result.begin(group)));
-				pos.setData(group + 1, new cfNumberData(result.beginOffset(group) + 1));
+				length.setData(group + 1, new cfNumberData(result.end(group) - result.start(group)));
+				pos.setData(group + 1, new cfNumberData(result.start(group) + 1));
 
 				/*
 				 * System.out.println(group + ": " + result.group(group));
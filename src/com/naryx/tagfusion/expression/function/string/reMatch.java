@@ -35,15 +35,9 @@ package com.naryx.tagfusion.expression.function.string;
  */
 
 import java.util.HashSet;
+import java.util.List;
 
 import org.apache.oro.text.regex.MalformedPatternException;
-import org.apache.oro.text.regex.MatchResult;
-import org.apache.oro.text.regex.Pattern;
-import org.apache.oro.text.regex.PatternCompiler;
-import org.apache.oro.text.regex.PatternMatcher;
-import org.apache.oro.text.regex.PatternMatcherInput;
-import org.apache.oro.text.regex.Perl5Compiler;
-import org.apache.oro.text.regex.Perl5Matcher;
 
 import com.naryx.tagfusion.cfm.engine.cfArgStructData;
 import com.naryx.tagfusion.cfm.engine.cfArrayData;
@@ -91,14 +85,13 @@ public class reMatch extends functionBase {
 
 
 		/* Setup the RegEx */
-		PatternCompiler compiler = new Perl5Compiler();
-		Pattern pattern;
+		RegexCache.Regex pattern;
 		
 		try {
 			if (caseSensitiveMatch) {
-				pattern = compiler.compile(regexp, Perl5Compiler.SINGLELINE_MASK);
+				pattern = RegexCache.getPattern(RegexCache.getEngine(_session), regexp, RegexCache.SINGLELINE);
 			} else {
-				pattern = compiler.compile(regexp, Perl5Compiler.CASE_INSENSITIVE_MASK | Perl5Compiler.SINGLELINE_MASK);
+				pattern = RegexCache.getPattern(RegexCache.getEngine(_session), regexp, RegexCache.CASE_INSENSITIVE | RegexCache.SINGLELINE);
 			}
 		} catch (MalformedPatternException e) {
 			cfCatchData catchD = new cfCatchData();
@@ -110,13 +103,9 @@ public class reMatch extends functionBase {
 
 		/* Perform the search */
 		cfArrayData	array	= cfArrayData.createArray(1);
-		PatternMatcher matcher = new Perl5Matcher();
-		MatchResult result;
-		PatternMatcherInput input = new PatternMatcherInput( strToSearch );
-		while ( matcher.contains(input, pattern) ) {
-			result = matcher.getMatch();
-			
-			String strResult = result.toString();
+		List<String> results = pattern.findAll( strToSearch );
+		for ( int i = 0; i < results.size(); i++ ) {
+			String strResult = results.get(i);
 			if ( bUnique ){
 				if ( !uniqueTrack.contains( strResult ) ){
 					array.addElement( new cfStringData( strResult ) );
@@ -30,15 +30,9 @@
 package com.naryx.tagfusion.expression.function.string;
 
 import org.apache.oro.text.regex.MalformedPatternException;
-import org.apache.oro.text.regex.Pattern;
-import org.apache.oro.text.regex.PatternCompiler;
-import org.apache.oro.text.regex.PatternMatcher;
-import org.apache.oro.text.regex.Perl5Compiler;
-import org.apache.oro.text.regex.Perl5Matcher;
-import org.apache.oro.text.regex.Perl5Substitution;
-import org.apache.oro.text.regex.Util;
 
 import com.naryx.tagfusion.cfm.engine.cfCatchData;
+import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
 
 
@@ -46,17 +40,14 @@ public class reReplace extends reReplaceBase {
 	
 	private static final long serialVersionUID = 1L;
   
-	protected String doRereplace( String _theString, String _theRE, String _theSubstr, boolean _casesensitive, boolean _replaceAll ) throws cfmRunTimeException{
-		int replaceCount = _replaceAll ? Util.SUBSTITUTE_ALL : 1; 
-		PatternMatcher matcher = new Perl5Matcher();
-		Pattern pattern = null;
-		PatternCompiler compiler = new Perl5Compiler();
+	protected String doRereplace( cfSession _session, String _theString, String _theRE, String _theSubstr, boolean _casesensitive, boolean _replaceAll ) throws cfmRunTimeException{
+		RegexCache.Regex pattern;
     
 		try {
 			if ( _casesensitive ){
-				pattern = compiler.compile( _theRE, Perl5Compiler.SINGLELINE_MASK );
+				pattern = RegexCache.getPattern( RegexCache.getEngine( _session ), _theRE, RegexCache.SINGLELINE );
 			}else{
-				pattern = compiler.compile( _theRE, Perl5Compiler.CASE_INSENSITIVE_MASK | Perl5Compiler.SINGLELINE_MASK );
+				pattern = RegexCache.getPattern( RegexCache.getEngine( _session ), _theRE, RegexCache.CASE_INSENSITIVE | RegexCache.SINGLELINE );
 			}
 			
 		} catch(MalformedPatternException e){ // definitely should happen since regexp is hardcoded
@@ -68,69 +59,7 @@ public class reReplace extends reReplaceBase {
 		}
 
 		// Perform substitution and print result.
-		return Util.substitute(matcher, pattern, new Perl5Substitution( processSubstr( _theSubstr ) ), _theString, replaceCount );
+		return pattern.replace( _theString, _theSubstr, _replaceAll );
 	}//rereplace()
-
-	// replaces back references in the format \1 with $1 making sure to
-	// add escaping for the existing $'s and handle escaping \'s
-	private String processSubstr( String _substr ){
-		StringBuilder res = new StringBuilder( _substr );
-		int i = 0;
-
-		while ( i < res.length() )
-		{
-      
-			switch( res.charAt(i) )
-			{
-				case '\\':
-					if ( i+1 < res.length() )
-					{
-						char nextCh = res.charAt(i+1);
-						if ( Character.isDigit( nextCh ) )
-						{
-							res.setCharAt( i, '$' );
-						}
-						else if ( ( nextCh == '\\' ) && ( i+2 < res.length() ) )
-						{
-							nextCh = res.charAt(i+2);
-							if ( !isEsc( nextCh ) ) 
-							{
-								// It's not a \\U, \\L, etc. so escape the back slash
-								res.insert( i+1, '\\' );
-								i++; // extra increment
-							}
-						}
-						else if ( !isEsc( nextCh ) )
-						{
-							// It's not a '\U', '\L', etc. so escape the back slash
-							res.insert( i+1, '\\' );
-							i++; // extra increment
-						}
-					}
-					else
-					{
-						res.insert( i+1, '\\' );
-						i++; // extra increment
-					}
-					i++;
-					break;
-
-        case '$':
-          res.insert( i, '\\' );
-          i+=2;
-          break;
-				default:
-					i++;
-					break;
-			}
-		}
-
-		return res.toString();
-	}// processSubStr()
-  
-	private boolean isEsc( char _c )
-	{
-		return _c == 'U' || _c == 'u' || _c == 'L' || _c == 'l' || _c == 'E';
-	}
   
 }// reReplace()
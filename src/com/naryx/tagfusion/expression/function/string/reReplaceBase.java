@@ -98,10 +98,10 @@ public abstract class reReplaceBase extends functionBase {
 		// INVARIANT - index == 2 or index == 3
 		str = parameters.get(index).getString();
 
-		return new cfStringData(doRereplace(str, regexp, substr, caseSensitiveMatch, replaceall));
+		return new cfStringData(doRereplace(_session, str, regexp, substr, caseSensitiveMatch, replaceall));
 
 	}
 
-	protected abstract String doRereplace(String _theString, String _theRE, String _theSubstr, boolean _casesensitive, boolean _replaceAll) throws cfmRunTimeException;
+	protected abstract String doRereplace(cfSession _session, String _theString, String _theRE, String _theSubstr, boolean _casesensitive, boolean _replaceAll) throws cfmRunTimeException;
 
 }
\ No newline at end of file
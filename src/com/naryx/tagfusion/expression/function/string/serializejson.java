@@ -31,11 +31,19 @@
 
 package com.naryx.tagfusion.expression.function.string;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.CharacterEscapes;
 import com.mongodb.QueryBuilder;
 import com.naryx.tagfusion.cfm.engine.cfArgStructData;
 import com.naryx.tagfusion.cfm.engine.cfArrayData;
@@ -57,6 +65,8 @@ import com.naryx.tagfusion.expression.function.functionBase;
  * It adds a new parameter to the end, that allows you to force all column
  * names to lowercase, instead of the default uppercase.	
  * 
+ * The JSON is produced by a Jackson JsonGenerator, so it can be streamed
+ * to a Writer or as UTF-8 bytes to an OutputStream as well as returned.
  */
 public class serializejson extends functionBase {
 
@@ -75,14 +85,25 @@ public class serializejson extends functionBase {
 	}
 	
 	private static final long serialVersionUID = 1L;
-	private static SimpleDateFormat dateLongFormat = new SimpleDateFormat("MMMM, d yyyy HH:mm:ss");
-	private static SimpleDateFormat dateHTTPFormat = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss");
-	private static SimpleDateFormat dateJSONFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-	private static SimpleDateFormat dateMongoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+
+	// the generators are created from one shared factory so their buffers are recycled
+	private static final JsonFactory jsonFactory = new JsonFactory();
 	static {
-		dateMongoFormat.setTimeZone( TimeZone.getTimeZone("GMT") );
+		jsonFactory.disable( JsonGenerator.Feature.AUTO_CLOSE_TARGET );
+		jsonFactory.setCharacterEscapes( new LegacyEscapes() );
 	}
 
+	// each thread serializes into a buffer of its own, kept for the next call unless it grew past MAX_KEPT_BUFFER
+	private static final int MAX_KEPT_BUFFER = 64 * 1024;
+	private static final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>();
+
+	// SimpleDateFormat is not thread safe, so each thread keeps its own set
+	private static final ThreadLocal<DateFormatter> dateFormatter = new ThreadLocal<DateFormatter>(){
+		protected DateFormatter initialValue(){
+			return new DateFormatter();
+		}
+	};
+
 	public serializejson() {
 		min = 1;
 		max = 4;
@@ -152,34 +173,79 @@ public class serializejson extends functionBase {
 		CaseType caseConversion = getCaseType( getNamedStringParam(argStruct, "conv", ""  ) );
 		DateType datetype				= getDateType( getNamedStringParam(argStruct, "date", ""  ) );
 		
-		/* Serialise the data */
-		StringBuilder buffer = new StringBuilder(5000);
-		encodeJSON(buffer, var, serializeQueryByColumns, caseConversion, datetype);
-		return new cfStringData(buffer.toString());
+		/* Serialise the data; the buffer is taken off the thread while in use, so a nested call gets one of its own */
+		StringBuilder out = buffers.get();
+		if ( out == null )
+			out = new StringBuilder( 256 );
+		else
+			buffers.remove();
+
+		try {
+			writeJSON(new StringBuilderWriter(out), var, serializeQueryByColumns, caseConversion, datetype);
+		} catch (IOException e) {
+			throwException(_session, e.getMessage() );
+		}
+
+		String json = out.toString();
+		out.setLength( 0 );
+		if ( out.capacity() <= MAX_KEPT_BUFFER )
+			buffers.set( out );
+
+		return new cfStringData(json);
 	}
 
 
+	/**
+	 * Appends the JSON for the given object to the buffer
+	 */
+	public void encodeJSON(StringBuilder out, cfData var, boolean serializeQueryByColumns, CaseType caseConversion, DateType datetype) throws dataNotSupportedException {
+		try {
+			writeJSON( new StringBuilderWriter(out), var, serializeQueryByColumns, caseConversion, datetype );
+		} catch (IOException e) {
+			throw new dataNotSupportedException( e.getMessage() );
+		}
+	}
 
 	
+	/**
+	 * Writes the JSON for the given object straight to the Writer, such as the
+	 * one from cfSession.getWriter(), without building the whole string first
+	 */
+	public static void writeJSON(Writer out, cfData var, boolean serializeQueryByColumns, CaseType caseConversion, DateType datetype) throws IOException, dataNotSupportedException {
+		JsonGenerator gen = jsonFactory.createGenerator(out);
+		encodeJSON(gen, var, serializeQueryByColumns, caseConversion, datetype);
+		gen.close();
+	}
+
+
+	/**
+	 * Writes the JSON for the given object to the stream as UTF-8
+	 */
+	public static void writeJSON(OutputStream out, cfData var, boolean serializeQueryByColumns, CaseType caseConversion, DateType datetype) throws IOException, dataNotSupportedException {
+		JsonGenerator gen = jsonFactory.createGenerator(out, JsonEncoding.UTF8);
+		encodeJSON(gen, var, serializeQueryByColumns, caseConversion, datetype);
+		gen.close();
+	}
+
 	
-	public void encodeJSON(StringBuilder out, cfData var, boolean serializeQueryByColumns, CaseType caseConversion, DateType datetype) throws dataNotSupportedException {
+	public static void encodeJSON(JsonGenerator out, cfData var, boolean serializeQueryByColumns, CaseType caseConversion, DateType datetype) throws IOException, dataNotSupportedException {
 
 		if ( var == null || var.getDataType() == cfData.CFNULLDATA) {
-			out.append( "null" );
+			out.writeNull();
 
 		}else if ( var.getDataType() == cfData.CFSTRINGDATA ){
 
 			/*
 			 * Encode Strings
 			 */
-			out.append("\"" + encodeString(var.getString()) + "\"");
+			out.writeString(var.getString());
 
 		} else if (var.getDataType() == cfData.CFBOOLEANDATA) {
 
 			/*
 			 * Boolean Data
 			 */
-			out.append(var.getBoolean() ? "true" : "false");
+			out.writeBoolean(var.getBoolean());
 
 		} else if (var.getDataType() == cfData.CFDATEDATA) {
 
@@ -188,88 +254,69 @@ public class serializejson extends functionBase {
 			 */
 			Date	localeDate	= (Date)((cfDateData)var).getUnderlyingInstance();
 
-			if ( datetype == DateType.LONG )
-				out.append("\"" + dateLongFormat.format(localeDate) + "\"");
-			else if ( datetype == DateType.HTTP )
-				out.append("\"" + dateHTTPFormat.format(localeDate) + "\"");
-			else if ( datetype == DateType.JSON )
-				out.append("\"" + dateJSONFormat.format(localeDate) + "\"");
-			else if ( datetype == DateType.MONGO )
-				out.append("{$date:\"" + dateMongoFormat.format(localeDate) + "\"}");
+			if ( datetype == DateType.MONGO )
+				out.writeRawValue("{$date:\"" + dateFormatter.get().format(datetype, localeDate) + "\"}");
+			else if ( datetype == DateType.CFML )
+				out.writeString(var.getString());
 			else
-				out.append("\"" + var.getString() + "\"");
+				out.writeString(dateFormatter.get().format(datetype, localeDate));
 			
 		} else if (cfData.isSimpleValue(var)) {
 
 			/*
 			 * Encode numbers and booleans
 			 */
-			out.append(var.getString());
+			out.writeRawValue(var.getString());
 
 		} else if (var.getDataType() == cfData.CFARRAYDATA) {
 
 			/*
 			 * Encode Arrays
 			 */
-			out.append("[");
+			out.writeStartArray();
 
 			cfArrayData cfarraydata = (cfArrayData) var;
-			for (int x = 0; x < cfarraydata.size(); x++) {
+			for (int x = 0; x < cfarraydata.size(); x++)
 				encodeJSON(out, cfarraydata.getElement(x + 1), serializeQueryByColumns, caseConversion, datetype);
 
-				if (x < cfarraydata.size() - 1)
-					out.append(",");
-			}
-			out.append("]");
+			out.writeEndArray();
 
 		} else if (var.getDataType() == cfData.CFSTRUCTDATA) {
 
 			/*
 			 * Encode Structs
 			 */
-			out.append("{");
+			out.writeStartObject();
 
 			cfStructData cfstructdata = (cfStructData) var;
 			Object[] keys = cfstructdata.keys();
-			String key, value = null;
+			String key;
 			for (int x = 0; x < keys.length; x++) {
 				key = (String) keys[x];
-				
-				if ( caseConversion == CaseType.LOWER )
-					value = key.toLowerCase();
-				else if ( caseConversion == CaseType.UPPER )
-					value = key.toUpperCase();
-				else if ( caseConversion == CaseType.MAINTAIN )
-					value = key;
-
-				out.append("\"" + encodeString(value) + "\"");
-				out.append(":");
+				out.writeFieldName(convertCase(key, caseConversion));
 				encodeJSON(out, cfstructdata.getData(key), serializeQueryByColumns, caseConversion, datetype);
-
-				if (x < keys.length - 1)
-					out.append(",");
 			}
 
-			out.append("}");
+			out.writeEndObject();
 
 		} else if (var.getDataType() == cfData.CFQUERYRESULTDATA) {
 
 			/*
 			 * Encode Query
 			 */
-			out.append("{");
+			out.writeStartObject();
 
 			if (serializeQueryByColumns)
 				encodeQueryByColumnsJSON(out, (cfQueryResultData) var, serializeQueryByColumns, caseConversion, datetype);
 			else
 				encodeQueryByRowsJSON(out, (cfQueryResultData) var, serializeQueryByColumns, caseConversion, datetype);
 
-			out.append("}");
+			out.writeEndObject();
 
 		}	else if (var.getDataType() == cfData.CFJAVAOBJECTDATA) {
 			Object o	= ((cfJavaObjectData)var).getUnderlyingInstance();
 			if ( o instanceof org.bson.types.ObjectId )
-				out.append("{$oid:\"" + ((org.bson.types.ObjectId)o).toString() + "\"}");
+				out.writeRawValue("{$oid:\"" + ((org.bson.types.ObjectId)o).toString() + "\"}");
 			else if ( o instanceof java.util.regex.Pattern ){
 				
 				QueryBuilder	qb = new QueryBuilder();
@@ -277,145 +324,178 @@ public class serializejson extends functionBase {
 				qb.regex( (java.util.regex.Pattern)o );
 				String json = qb.get().toString();
 				json	= json.substring( json.indexOf("{",1), json.lastIndexOf("}") );
-				out.append(json);
+				out.writeRawValue(json);
 				
 			} else
-				out.append("\"" + encodeString( String.valueOf(o) ) + "\"");
+				out.writeString( String.valueOf(o) );
 		} else {
-			out.append("\"unsupported\"");
+			out.writeString("unsupported");
 		}
 	}
 
-	private void encodeQueryByRowsJSON(StringBuilder out, cfQueryResultData querydata, boolean serializeQueryByColumns, CaseType caseConversion, DateType datetype ) throws dataNotSupportedException {
+	private static void encodeQueryByRowsJSON(JsonGenerator out, cfQueryResultData querydata, boolean serializeQueryByColumns, CaseType caseConversion, DateType datetype ) throws IOException, dataNotSupportedException {
 		/* Output the columns */
-		if (caseConversion == CaseType.LOWER)
-			out.append("\"columns\":[");
-		else
-			out.append("\"COLUMNS\":[");
+		out.writeFieldName(caseConversion == CaseType.LOWER ? "columns" : "COLUMNS");
+		out.writeStartArray();
 
 		String[] columns = querydata.getColumnList();
-		String value = null;
-		for (int x = 0; x < columns.length; x++) {
-			if ( caseConversion == CaseType.LOWER )
-				value = columns[x].toLowerCase();
-			else if ( caseConversion == CaseType.UPPER )
-				value = columns[x].toUpperCase();
-			else if ( caseConversion == CaseType.MAINTAIN )
-				value = columns[x];
+		for (int x = 0; x < columns.length; x++)
+			out.writeString(convertCase(columns[x], caseConversion));
 
-			
-			out.append("\"" + encodeString(value) + "\"");
-
-			if (x < columns.length - 1)
-				out.append(",");
-		}
-
-		out.append("],");
+		out.writeEndArray();
 
 		/* Output the rows */
-		if (caseConversion == CaseType.LOWER)
-			out.append("\"data\":[");
-		else
-			out.append("\"DATA\":[");
+		out.writeFieldName(caseConversion == CaseType.LOWER ? "data" : "DATA");
+		out.writeStartArray();
 
 		int totalRows = querydata.getSize();
 
 		for (int x = 0; x < totalRows; x++) {
-			out.append("[");
+			out.writeStartArray();
 
 			/* Loop around each of the columns */
 			List<cfData> row = querydata.getRow(x);
-			for (int r = 0; r < row.size(); r++) {
+			for (int r = 0; r < row.size(); r++)
 				encodeJSON(out, row.get(r), serializeQueryByColumns, caseConversion, datetype);
-				if (r < row.size() - 1)
-					out.append(",");
-			}
 
-			out.append("]");
-			if (x < totalRows - 1)
-				out.append(",");
+			out.writeEndArray();
 		}
 
-		out.append("]");
+		out.writeEndArray();
 	}
 
-	private void encodeQueryByColumnsJSON(StringBuilder out, cfQueryResultData querydata, boolean serializeQueryByColumns, CaseType caseConversion, DateType datetype ) throws dataNotSupportedException {
+	private static void encodeQueryByColumnsJSON(JsonGenerator out, cfQueryResultData querydata, boolean serializeQueryByColumns, CaseType caseConversion, DateType datetype ) throws IOException, dataNotSupportedException {
 
 		/*
 		 * The rowcount
 		 */
 		int totalRows = querydata.getSize();
-		if ( caseConversion == CaseType.LOWER )
-			out.append("\"rowcount\":");
-		else
-			out.append("\"ROWCOUNT\":");
-
-		out.append(totalRows);
+		out.writeFieldName(caseConversion == CaseType.LOWER ? "rowcount" : "ROWCOUNT");
+		out.writeNumber(totalRows);
 
 		/*
 		 * The columns
 		 */
-		if ( caseConversion == CaseType.LOWER )
-			out.append(",\"columns\":[");
-		else
-			out.append(",\"COLUMNS\":[");
+		out.writeFieldName(caseConversion == CaseType.LOWER ? "columns" : "COLUMNS");
+		out.writeStartArray();
 
 		String[] columns = querydata.getColumnList();
-		String value = null;
-		for (int x = 0; x < columns.length; x++) {
-			if ( caseConversion == CaseType.LOWER )
-				value = columns[x].toLowerCase();
-			else if ( caseConversion == CaseType.UPPER )
-				value = columns[x].toUpperCase();
-			else if ( caseConversion == CaseType.MAINTAIN )
-				value = columns[x];
-			
-			out.append("\"" + encodeString(value) + "\"");
-
-			if (x < columns.length - 1)
-				out.append(",");
-		}
+		for (int x = 0; x < columns.length; x++)
+			out.writeString(convertCase(columns[x], caseConversion));
 
-		out.append("],");
+		out.writeEndArray();
 
 		/*
 		 * The data
 		 */
-		if ( caseConversion == CaseType.LOWER )
-			out.append("\"data\":{");
-		else
-			out.append("\"DATA\":{");
+		out.writeFieldName(caseConversion == CaseType.LOWER ? "data" : "DATA");
+		out.writeStartObject();
 
 		for (int c = 0; c < columns.length; c++) {
-			if ( caseConversion == CaseType.LOWER )
-				value = columns[c].toLowerCase();
-			else if ( caseConversion == CaseType.UPPER )
-				value = columns[c].toUpperCase();
-			else if ( caseConversion == CaseType.MAINTAIN )
-				value = columns[c];
-			
-			out.append("\"" + encodeString(value) + "\":[");
+			out.writeFieldName(convertCase(columns[c], caseConversion));
+			out.writeStartArray();
 
 			for (int r = 0; r < totalRows; r++) {
 				List<cfData> row = querydata.getRow(r);
 				encodeJSON(out, row.get(c), serializeQueryByColumns, caseConversion, datetype);
-				if (r < totalRows - 1)
-					out.append(",");
 			}
 
-			out.append("]");
-			if (c < columns.length - 1)
-				out.append(",");
+			out.writeEndArray();
 		}
 
-		out.append("}");
+		out.writeEndObject();
 	}
 
-	private String encodeString(String str) {
-		str = com.nary.util.string.replaceString(str, "\\", "\\\\");
-		str = com.nary.util.string.replaceString(str, "\r", "\\r");
-		str = com.nary.util.string.replaceString(str, "\n", "\\n");
-		str = com.nary.util.string.replaceString(str, "\t", "\\t");
-		return com.nary.util.string.replaceString(str, "\"", "\\\"");
+	private static String convertCase(String name, CaseType caseConversion) {
+		if ( caseConversion == CaseType.LOWER )
+			return name.toLowerCase();
+		else if ( caseConversion == CaseType.UPPER )
+			return name.toUpperCase();
+		else
+			return name;
+	}
+
+
+	/*
+	 * serializeJSON() has only ever escaped backslash, quote, CR, LF and TAB;
+	 * the other control characters went out as they were, and still do
+	 */
+	private static class LegacyEscapes extends CharacterEscapes {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] asciiEscapes;
+
+		LegacyEscapes() {
+			asciiEscapes = new int[128];
+			asciiEscapes['"'] 	= '"';
+			asciiEscapes['\\'] 	= '\\';
+			asciiEscapes['\r'] 	= 'r';
+			asciiEscapes['\n'] 	= 'n';
+			asciiEscapes['\t'] 	= 't';
+		}
+
+		public int[] getEscapeCodesForAscii() {
+			return asciiEscapes;
+		}
+
+		public SerializableString getEscapeSequence(int ch) {
+			return null;
+		}
+	}
+
+
+	/*
+	 * The date formats for one thread. A query column is often the same date
+	 * over and over, so the last one formatted in each style is kept.
+	 */
+	private static class DateFormatter {
+		private final SimpleDateFormat[] formats = new SimpleDateFormat[DateType.values().length];
+		private final long[] lastTime = new long[formats.length];
+		private final String[] lastText = new String[formats.length];
+
+		String format(DateType datetype, Date date) {
+			int t = datetype.ordinal();
+			if ( lastText[t] != null && lastTime[t] == date.getTime() )
+				return lastText[t];
+
+			SimpleDateFormat f = formats[t];
+			if ( f == null ){
+				if ( datetype == DateType.LONG )
+					f = new SimpleDateFormat("MMMM, d yyyy HH:mm:ss");
+				else if ( datetype == DateType.HTTP )
+					f = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss");
+				else if ( datetype == DateType.MONGO ){
+					f = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+					f.setTimeZone( TimeZone.getTimeZone("GMT") );
+				}else
+					f = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+				formats[t] = f;
+			}
+
+			lastTime[t] = date.getTime();
+			lastText[t] = f.format(date);
+			return lastText[t];
+		}
+	}
+
+
+	private static class StringBuilderWriter extends Writer {
+		private final StringBuilder sb;
+
+		StringBuilderWriter(StringBuilder sb) {
+			this.sb = sb;
+		}
+
+		public void write(char[] cbuf, int off, int len) {
+			sb.append(cbuf, off, len);
+		}
+
+		public void write(String str, int off, int len) {
+			sb.append(str, off, off + len);
+		}
+
+		public void flush() {}
+
+		public void close() {}
 	}
-}
\ No newline at end of file
+}
@@ -30,27 +30,36 @@
 
 package com.naryx.tagfusion.expression.function.struct;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.naryx.tagfusion.cfm.engine.cfArgStructData;
 import com.naryx.tagfusion.cfm.engine.cfBooleanData;
 import com.naryx.tagfusion.cfm.engine.cfData;
 import com.naryx.tagfusion.cfm.engine.cfDataSession;
 import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfStringData;
 import com.naryx.tagfusion.cfm.engine.cfStructData;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.parser.script.userDefinedFunction;
+import com.naryx.tagfusion.cfm.tag.ext.thread.cfParallelLoop;
 import com.naryx.tagfusion.expression.function.functionBase;
 
 public class structEach extends functionBase {
 	private static final long serialVersionUID = 1L;
 
 	public structEach() {
-		min = max = 2;
-		setNamedParams( new String[]{ "struct", "function" } );
+		min = 2;
+		max = 4;
+		setNamedParams( new String[]{ "struct", "function", "parallel", "maxthreads" } );
 	}
 
 	public String[] getParamInfo(){
 		return new String[]{
 			"Structure Object",
-			"function to loop over the data, passing in the key and element; function(key, element){}"
+			"function to loop over the data, passing in the key and element; function(key, element){}",
+			"flag to run the function across the parallel thread pool; defaults to false",
+			"maximum number of threads to use when parallel; defaults to the size of the pool"
 		};
 	}
 	
@@ -70,7 +79,23 @@ public class structEach extends functionBase {
 
 		if (data.getDataType() == cfData.CFSTRUCTDATA) {
 			cfStructData	sData	= (cfStructData)data;
-			sData.each( new cfDataSession(_session), func );
+
+			if ( getNamedBooleanParam(argStruct, "parallel", false) ){
+				final cfStructData	struct	= sData;
+				final Object[]	keys	= sData.keys();
+				final userDefinedFunction	udf	= (userDefinedFunction)func;
+
+				cfParallelLoop.run( _session, keys.length, getNamedIntParam(argStruct, "maxthreads", 0), new cfParallelLoop.Iteration(){
+					public cfData run( cfSession _workerSession, int _index ) throws cfmRunTimeException {
+						List<cfData>	args	= new ArrayList<cfData>(2);
+						args.add( new cfStringData( String.valueOf(keys[_index]) ) );
+						args.add( struct.getData( (String)keys[_index] ) );
+						return udf.execute( _workerSession, args );
+					}
+				});
+			} else
+				sData.each( new cfDataSession(_session), func );
+
 			return cfBooleanData.TRUE;
 		} else {
 			throwException(_session, "the parameter is not an Array");
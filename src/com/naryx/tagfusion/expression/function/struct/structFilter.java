@@ -40,20 +40,24 @@ import com.naryx.tagfusion.cfm.engine.cfStringData;
 import com.naryx.tagfusion.cfm.engine.cfStructData;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
 import com.naryx.tagfusion.cfm.parser.script.userDefinedFunction;
+import com.naryx.tagfusion.cfm.tag.ext.thread.cfParallelLoop;
 import com.naryx.tagfusion.expression.function.functionBase;
 
 public class structFilter extends functionBase {
 	private static final long serialVersionUID = 1L;
 
 	public structFilter() {
-		min = max = 2;
-		setNamedParams( new String[]{ "struct", "function" } );
+		min = 2;
+		max = 4;
+		setNamedParams( new String[]{ "struct", "function", "parallel", "maxthreads" } );
 	}
 
 	public String[] getParamInfo(){
 		return new String[]{
 			"Structure Object",
-			"function to loop over the data, passing in the element as the parameter to each. each function call should return true or false; function(key,element){}"
+			"function to loop over the data, passing in the element as the parameter to each. each function call should return true or false; function(key,element){}",
+			"flag to run the function across the parallel thread pool; defaults to false",
+			"maximum number of threads to use when parallel; defaults to the size of the pool"
 		};
 	}
 	
@@ -72,14 +76,32 @@ public class structFilter extends functionBase {
 			throwException(_session, "the parameter is not a function");
 
 		if (data.getDataType() == cfData.CFSTRUCTDATA) {
-			cfStructData	arrData	= (cfStructData)data;
+			final cfStructData	arrData	= (cfStructData)data;
 			cfStructData	newArr	= new cfStructData();
 			
-			userDefinedFunction	udf	= (userDefinedFunction)func;
+			final userDefinedFunction	udf	= (userDefinedFunction)func;
 			List<cfData>	args	= new ArrayList<cfData>(1);
 			cfData result;
 
-			Object[]	keys	= arrData.keys();
+			final Object[]	keys	= arrData.keys();
+
+			if ( getNamedBooleanParam(argStruct, "parallel", false) ){
+				cfData[] results = cfParallelLoop.run( _session, keys.length, getNamedIntParam(argStruct, "maxthreads", 0), new cfParallelLoop.Iteration(){
+					public cfData run( cfSession _workerSession, int _index ) throws cfmRunTimeException {
+						List<cfData>	args	= new ArrayList<cfData>(2);
+						args.add( new cfStringData( String.valueOf(keys[_index]) ) );
+						args.add( arrData.getData( (String)keys[_index] ) );
+						return udf.execute( _workerSession, args );
+					}
+				});
+
+				for ( int x = 0; x < results.length; x++ ){
+					if ( results[x] != null && results[x].isBooleanConvertible() && results[x].getBoolean() )
+						newArr.setData( String.valueOf(keys[x]), arrData.getData( (String)keys[x] ) );
+				}
+				return newArr;
+			}
+
 			for ( int x = 0; x < keys.length; x++ ){
 				args.clear();
 
@@ -0,0 +1,110 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.expression.function.struct;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.naryx.tagfusion.cfm.engine.cfArgStructData;
+import com.naryx.tagfusion.cfm.engine.cfData;
+import com.naryx.tagfusion.cfm.engine.cfNullData;
+import com.naryx.tagfusion.cfm.engine.cfSession;
+import com.naryx.tagfusion.cfm.engine.cfStringData;
+import com.naryx.tagfusion.cfm.engine.cfStructData;
+import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.parser.CFUndefinedValue;
+import com.naryx.tagfusion.cfm.parser.script.userDefinedFunction;
+import com.naryx.tagfusion.cfm.tag.ext.thread.cfParallelLoop;
+import com.naryx.tagfusion.expression.function.functionBase;
+
+public class structMap extends functionBase {
+	private static final long serialVersionUID = 1L;
+
+	public structMap() {
+		min = 2;
+		max = 4;
+		setNamedParams( new String[]{ "struct", "function", "parallel", "maxthreads" } );
+	}
+
+	public String[] getParamInfo(){
+		return new String[]{
+			"Structure Object",
+			"function to loop over the data, passing in the key and element; the value returned is stored against the same key in the new structure. function(key, element){}",
+			"flag to run the function across the parallel thread pool; defaults to false",
+			"maximum number of threads to use when parallel; defaults to the size of the pool"
+		};
+	}
+	
+	public java.util.Map getInfo(){
+		return makeInfo(
+				"structure", 
+				"Creates a new structure with the same keys, holding the result of the function applied to each element of the structure", 
+				ReturnType.STRUCTURE );
+	}
+	
+	public cfData execute(cfSession _session, cfArgStructData argStruct) throws cfmRunTimeException {
+		cfData data = getNamedParam(argStruct, "struct");
+		cfData	func = getNamedParam(argStruct, "function" );
+
+		if ( func.getDataType() != cfData.CFUDFDATA )
+			throwException(_session, "the parameter is not a function");
+
+		if (data.getDataType() != cfData.CFSTRUCTDATA)
+			throwException(_session, "the parameter is not an structure");
+
+		final cfStructData	sData	= (cfStructData)data;
+		final Object[]	keys	= sData.keys();
+		final userDefinedFunction	udf	= (userDefinedFunction)func;
+
+		cfParallelLoop.Iteration	iteration	= new cfParallelLoop.Iteration(){
+			public cfData run( cfSession _runSession, int _index ) throws cfmRunTimeException {
+				List<cfData>	args	= new ArrayList<cfData>(2);
+				args.add( new cfStringData( String.valueOf(keys[_index]) ) );
+				args.add( sData.getData( (String)keys[_index] ) );
+				return udf.execute( _runSession, args );
+			}
+		};
+
+		cfData[] results;
+		if ( getNamedBooleanParam(argStruct, "parallel", false) ){
+			results = cfParallelLoop.run( _session, keys.length, getNamedIntParam(argStruct, "maxthreads", 0), iteration );
+		} else {
+			results = new cfData[ keys.length ];
+			for ( int x = 0; x < results.length; x++ )
+				results[x] = iteration.run( _session, x );
+		}
+
+		cfStructData	newStruct	= new cfStructData();
+		for ( int x = 0; x < results.length; x++ )
+			newStruct.setData( String.valueOf(keys[x]), results[x] == null || results[x] instanceof CFUndefinedValue ? cfNullData.NULL : results[x] );
+
+		return newStruct;
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ *  Copyright (C) 2000 - 2015 aw2.0 Ltd
+ *
+ *  This file is part of OpenBD CFML Server Engine.
+ *
+ *  OpenBD is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  Free Software Foundation,version 3.
+ *
+ *  OpenBD is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with OpenBD.  If not, see http://www.gnu.org/licenses/
+ *
+ *  Additional permission under GNU GPL version 3 section 7
+ *
+ *  If you modify this Program, or any covered work, by linking or combining
+ *  it with any of the JARS listed in the README.txt (or a modified version of
+ *  (that library), containing parts covered by the terms of that JAR, the
+ *  licensors of this Program grant you additional permission to convey the
+ *  resulting work.
+ *
+ *  http://openbd.org/
+ *  https://github.com/OpenBD/openbd-core/blob/master/LICENSE
+ */
+
+package com.naryx.tagfusion.expression.function.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.xpath.XPathEvaluator;
+import org.w3c.dom.xpath.XPathExpression;
+import org.w3c.dom.xpath.XPathNSResolver;
+
+/**
+ * Holds the compiled forms XmlTransform() and XmlSearch() would otherwise
+ * rebuild on every call.
+ *
+ * Stylesheets are compiled once into Templates, which are thread-safe; an
+ * inline stylesheet is keyed on its text, a file on its path and checked
+ * against its modification time and size. Stylesheets read from a URL are
+ * not cached. XPath expressions are compiled without a document, so one
+ * compiled expression serves every document; one that uses namespace
+ * prefixes is keyed on the namespaces the prefixes resolve to as well.
+ *
+ * The parser and transformer factories are not thread-safe, so each thread
+ * keeps its own.
+ */
+final class XmlCompileCache {
+
+	private static final int MAX_TEMPLATES = 64;
+	private static final int MAX_XPATHS = 1000;
+
+	private static final Map<Object, CachedTemplates> templatesCache = new LinkedHashMap<Object, CachedTemplates>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<Object, CachedTemplates> eldest) {
+			return size() > MAX_TEMPLATES;
+		}
+	};
+
+	private static final Map<String, XPathExpression> xpathCache = new LinkedHashMap<String, XPathExpression>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+			return size() > MAX_XPATHS;
+		}
+	};
+
+	// used only to compile; expressions it creates are not tied to a document
+	private static final XPathEvaluator xpathCompiler = new org.apache.xpath.domapi.XPathEvaluatorImpl();
+
+	private static final ThreadLocal<DocumentBuilder> parser = new ThreadLocal<DocumentBuilder>();
+
+	private static final ThreadLocal<TransformerFactory> transformerFactory = new ThreadLocal<TransformerFactory>() {
+		protected TransformerFactory initialValue() {
+			return TransformerFactory.newInstance();
+		}
+	};
+
+	private XmlCompileCache() {}
+
+
+	/**
+	 * The calling thread's namespace-aware DocumentBuilder, reset ready for use
+	 */
+	static DocumentBuilder getParser() throws ParserConfigurationException {
+		DocumentBuilder builder = parser.get();
+		if (builder == null) {
+			DocumentBuilderFactory fact = DocumentBuilderFactory.newInstance();
+			fact.setNamespaceAware(true);
+			builder = fact.newDocumentBuilder();
+			parser.set(builder);
+		} else {
+			builder.reset();
+		}
+		return builder;
+	}
+
+
+	/**
+	 * Returns the compiled stylesheet for the String (the XSL itself), File or
+	 * URL as returned by cfXmlData.interpretString()
+	 */
+	static Templates getTemplates(Object xsl) throws TransformerConfigurationException, IOException {
+		if (xsl instanceof URL)
+			return transformerFactory.get().newTemplates(new StreamSource(((URL) xsl).openStream(), xsl.toString()));
+
+		Object key;
+		long lastModified = 0, length = 0;
+		if (xsl instanceof File) {
+			File file = (File) xsl;
+			key = file.getAbsoluteFile();
+			lastModified = file.lastModified();
+			length = file.length();
+		} else {
+			key = ((String) xsl).trim();
+		}
+
+		CachedTemplates cached;
+		synchronized (templatesCache) {
+			cached = templatesCache.get(key);
+		}
+		if (cached != null && cached.lastModified == lastModified && cached.length == length)
+			return cached.templates;
+
+		// Compile outside the lock; two threads may compile the same stylesheet, but only once
+		StreamSource source = (xsl instanceof File) ? new StreamSource((File) xsl) : new StreamSource(new StringReader((String) key));
+		cached = new CachedTemplates(transformerFactory.get().newTemplates(source), lastModified, length);
+
+		synchronized (templatesCache) {
+			templatesCache.put(key, cached);
+		}
+		return cached.templates;
+	}
+
+
+	/**
+	 * Returns the compiled XPath expression, with any namespace prefixes it uses
+	 * resolved against the given node
+	 */
+	static XPathExpression getXPath(String xpath, Node node) {
+		List<String> prefixes = getPrefixes(xpath);
+		XPathNSResolver resolver = null;
+		String key = xpath;
+
+		if (!prefixes.isEmpty()) {
+			resolver = xpathCompiler.createNSResolver(node);
+			StringBuilder sb = new StringBuilder(xpath);
+			for (int i = 0; i < prefixes.size(); i++) {
+				String prefix = prefixes.get(i);
+				sb.append('\n').append(prefix).append('=').append(resolver.lookupNamespaceURI(prefix));
+			}
+			key = sb.toString();
+		}
+
+		XPathExpression expression;
+		synchronized (xpathCache) {
+			expression = xpathCache.get(key);
+		}
+
+		if (expression == null) {
+			expression = xpathCompiler.createExpression(xpath, resolver);
+			synchronized (xpathCache) {
+				xpathCache.put(key, expression);
+			}
+		}
+		return expression;
+	}
+
+
+	/*
+	 * The namespace prefixes in the expression: a name followed by a single ':',
+	 * ignoring axis separators ('::') and string literals
+	 */
+	private static List<String> getPrefixes(String xpath) {
+		List<String> prefixes = new ArrayList<String>(2);
+		if (xpath.indexOf(':') == -1)
+			return prefixes;
+
+		char quote = 0;
+		int nameStart = -1;
+
+		for (int i = 0; i < xpath.length(); i++) {
+			char c = xpath.charAt(i);
+
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+				nameStart = -1;
+			} else if (c == ':') {
+				boolean axis = (i + 1 < xpath.length() && xpath.charAt(i + 1) == ':');
+				if (!axis && nameStart != -1) {
+					String prefix = xpath.substring(nameStart, i);
+					if (!prefixes.contains(prefix))
+						prefixes.add(prefix);
+				}
+				if (axis)
+					i++;
+				nameStart = -1;
+			} else if (Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.') {
+				if (nameStart == -1)
+					nameStart = i;
+			} else {
+				nameStart = -1;
+			}
+		}
+
+		return prefixes;
+	}
+
+
+	private static final class CachedTemplates {
+		final Templates templates;
+		final long lastModified, length;
+
+		CachedTemplates(Templates templates, long lastModified, long length) {
+			this.templates = templates;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
+}
@@ -35,16 +35,12 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
 import org.w3c.dom.Node;
-import org.w3c.dom.xpath.XPathEvaluator;
 import org.w3c.dom.xpath.XPathException;
-import org.w3c.dom.xpath.XPathNSResolver;
+import org.w3c.dom.xpath.XPathExpression;
 import org.w3c.dom.xpath.XPathResult;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -84,22 +80,14 @@ public class XmlSearch extends functionBase {
 	
 	public cfData execute(cfSession _session, List<cfData> parameters) throws cfmRunTimeException {
 		try {
-			// Get a DOM tree to query.
-			DocumentBuilderFactory fact = DocumentBuilderFactory.newInstance();
-			fact.setNamespaceAware(true);
-			DocumentBuilder parser = fact.newDocumentBuilder();
-
-			Document doc = null;
 			Node node = null;
 			boolean caseSensitive = false;
 			cfData xml = parameters.get(1);
 			if (xml instanceof cfXmlData) {
 				node = ((cfXmlData) xml).getXMLNode();
-				doc = node.getOwnerDocument();
 				caseSensitive = ((cfXmlData) xml).isCaseSensitive();
 			} else {
-				doc = parser.parse(new InputSource(new StringReader(xml.getString())));
-				node = doc;
+				node = XmlCompileCache.getParser().parse(new InputSource(new StringReader(xml.getString())));
 			}
 
 			/*
@@ -108,22 +96,17 @@ public class XmlSearch extends functionBase {
 			 */
 			///node = node.cloneNode(true);
 					
-			// Use the DOM L3 XPath API to apply the xpath expression to the doc.
-			// Create an XPath evaluator and pass in the document.
-			XPathEvaluator evaluator = new org.apache.xpath.domapi.XPathEvaluatorImpl(doc);
-			XPathNSResolver resolver = evaluator.createNSResolver(node);
-
-			
-			
 			// Check the xpath expression
 			String xpath = parameters.get(0).getString().trim();
 			if (xpath.endsWith("/") && !xpath.equals("/"))
 				xpath = xpath.substring(0, xpath.length() - 1);
 
-			// Evaluate the xpath expression
+			// Evaluate the xpath expression, using the DOM L3 XPath API; the compiled
+			// expression is shared between calls and documents
+			XPathExpression expression = XmlCompileCache.getXPath(xpath, node);
 			XPathResult result;
 			synchronized( node ){
-				result = (XPathResult) evaluator.evaluate(xpath, node, resolver, XPathResult.ANY_TYPE, null);
+				result = (XPathResult) expression.evaluate(node, XPathResult.ANY_TYPE, null);
 			}
 
 			// If it's an iterator type
@@ -36,15 +36,11 @@ import java.io.StringWriter;
 import java.net.URL;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
 
 import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
@@ -85,11 +81,6 @@ public class XmlTransform extends functionBase {
 	
 	public cfData execute(cfSession _session, List<cfData> parameters) throws cfmRunTimeException {
 		try {
-			// Get a DOM tree to transform.
-			DocumentBuilderFactory fact = DocumentBuilderFactory.newInstance();
-			fact.setNamespaceAware(true);
-			DocumentBuilder parser = fact.newDocumentBuilder();
-
 			Document doc = null;
 			String xsl = null;
 			cfData xml = null;
@@ -109,23 +100,16 @@ public class XmlTransform extends functionBase {
 			if (xml instanceof cfXmlData)
 				doc = (Document) ((cfXmlData) xml).getXMLNode();
 			else
-				doc = parser.parse(new InputSource(new StringReader(xml.getString())));
+				doc = XmlCompileCache.getParser().parse(new InputSource(new StringReader(xml.getString())));
 
 			DOMSource xmlSource = new DOMSource(doc);
-			StreamSource xslSource = null;
 			Object xslObj = cfXmlData.interpretString(_session, xsl);
-			if (xslObj instanceof String)
-				xslSource = new StreamSource(new StringReader(((String) xslObj).trim()));
-			else if (xslObj instanceof File)
-				xslSource = new StreamSource((File) xslObj);
-			else if (xslObj instanceof URL)
-				xslSource = new StreamSource(((URL) xslObj).openStream());
-			else
+			if (!(xslObj instanceof String || xslObj instanceof File || xslObj instanceof URL))
 				throwException(_session, "XSL transformation parameter unknown");
 
-			// Prepare for transformation
+			// Prepare for transformation; the stylesheet is compiled once and reused
 			StringWriter sWriter = new StringWriter();
-			Transformer transformer = TransformerFactory.newInstance().newTransformer(xslSource);
+			Transformer transformer = XmlCompileCache.getTemplates(xslObj).newTransformer();
 
 			// Add parameters (if any)
 			if (structure != null) {
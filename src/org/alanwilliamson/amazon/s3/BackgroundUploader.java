@@ -31,6 +31,7 @@
 package org.alanwilliamson.amazon.s3;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -40,7 +41,6 @@ import java.util.Map;
 
 import org.alanwilliamson.amazon.AmazonBase;
 import org.alanwilliamson.amazon.AmazonKey;
-import org.aw20.io.FileUtil;
 import org.aw20.util.DateUtil;
 
 import com.amazonaws.AmazonClientException;
@@ -59,6 +59,7 @@ import com.naryx.tagfusion.cfm.application.cfApplicationData;
 import com.naryx.tagfusion.cfm.engine.cfEngine;
 import com.naryx.tagfusion.cfm.engine.cfSession;
 import com.naryx.tagfusion.cfm.engine.cfmRunTimeException;
+import com.naryx.tagfusion.cfm.engine.codec.CodecFactory;
 import com.naryx.tagfusion.cfm.engine.variableStore;
 
 public class BackgroundUploader extends Thread {
@@ -144,8 +145,7 @@ public class BackgroundUploader extends Thread {
 					continue;
 
 
-				@SuppressWarnings("unchecked")
-				Map<String, Object> jobFile = (Map<String, Object>)FileUtil.loadClass( jobsDisk[x] );
+				Map<String, Object> jobFile = loadFile( jobsDisk[x] );
 				if ( jobFile == null ){
 					jobsDisk[x].delete();
 				}else{
@@ -369,7 +369,20 @@ public class BackgroundUploader extends Thread {
 	}
 	
 	private void saveFile(Map<String, Object> jobFile){
-		FileUtil.saveClass( new File(workingDirectory, jobFile.get("id") + ".job"), jobFile);
+		try {
+			CodecFactory.write( new File(workingDirectory, jobFile.get("id") + ".job"), jobFile, false );
+		} catch (IOException e) {
+			cfEngine.log("AmazonS3Write.BackgroundUploader.saveFile():" + e.getMessage());
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> loadFile(File file){
+		try {
+			return (Map<String, Object>)CodecFactory.read( file );
+		} catch (Exception e) {
+			return null;
+		}
 	}
 	
 	private Map<String, Object> takeNextJob() {
@@ -35,8 +35,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.Properties;
 
 import com.bluedragon.plugin.Plugin;
@@ -44,9 +46,15 @@ import com.bluedragon.plugin.PluginManager;
 import com.bluedragon.plugin.PluginManagerInterface;
 import com.nary.io.FileUtils;
 import com.naryx.tagfusion.cfm.engine.cfEngine;
+import com.naryx.tagfusion.cfm.schedule.ScheduleDispatcher;
 import com.naryx.tagfusion.xmlConfig.xmlCFML;
 
-public class CronExtension extends Thread implements Plugin {
+/**
+ * Runs the .cfm files dropped into each of the cron.* folders on the matching
+ * calendar boundary. Each folder is a job on the shared ScheduleDispatcher, so
+ * the crontab and CFSCHEDULE tasks share the one timer thread and worker pool.
+ */
+public class CronExtension implements Plugin {
 
 	private static File			rootCronDir;
 	private static String		uriRootPath = null;
@@ -60,15 +68,9 @@ public class CronExtension extends Thread implements Plugin {
 	private static String	CRON_WEEKLY		= "cron.weekly";
 	private static String	CRON_MONTHLY	= "cron.monthly";
 	
-	private int currentMonth = -1; 
-	private int currentDay = -1;
-	private int	currentDayOfWeek = -1;
-	private int currentHour = -1;
-	private boolean bRunning = true;
+	private final List<ScheduleDispatcher.Handle> handles = new ArrayList<ScheduleDispatcher.Handle>();
 	
-	public CronExtension(){
-		super("CronPluginThread");
-	}
+	public CronExtension(){}
 	
 	@Override
 	public String getPluginDescription() {
@@ -129,13 +131,6 @@ public class CronExtension extends Thread implements Plugin {
 		manager.registerFunction("cronenable", 				"org.alanwilliamson.openbd.plugin.crontab.CronEnable" );
 		
 		try {
-			// Setup the times
-			Calendar thisDate = new GregorianCalendar();
-			currentMonth			= thisDate.get( Calendar.MONTH );
-			currentHour				= thisDate.get( Calendar.HOUR_OF_DAY );
-			currentDayOfWeek 	= thisDate.get( Calendar.DAY_OF_WEEK );
-			currentDay				= thisDate.get( Calendar.DAY_OF_MONTH );
-			
 			rootCronDir = FileUtils.checkAndCreateDirectory( cfEngine.thisPlatform.getFileIO().getWorkingDirectory(), "plugin-cfcron", false );
 			createSubFolders( rootCronDir );
 
@@ -173,7 +168,16 @@ public class CronExtension extends Thread implements Plugin {
 				}
 			}
 			
-			start();
+			ScheduleDispatcher dispatcher = ScheduleDispatcher.getInstance();
+			synchronized( handles ){
+				handles.add( dispatcher.schedule( new CronJob( CRON_1MIN, 		Calendar.MINUTE, 1 ), 				ScheduleDispatcher.Overlap.SKIP, ScheduleDispatcher.Misfire.FIRE ) );
+				handles.add( dispatcher.schedule( new CronJob( CRON_5MIN, 		Calendar.MINUTE, 5 ), 				ScheduleDispatcher.Overlap.SKIP, ScheduleDispatcher.Misfire.FIRE ) );
+				handles.add( dispatcher.schedule( new CronJob( CRON_15MIN, 		Calendar.MINUTE, 15 ), 				ScheduleDispatcher.Overlap.SKIP, ScheduleDispatcher.Misfire.FIRE ) );
+				handles.add( dispatcher.schedule( new CronJob( CRON_HOUR, 		Calendar.HOUR_OF_DAY, 1 ), 		ScheduleDispatcher.Overlap.SKIP, ScheduleDispatcher.Misfire.FIRE ) );
+				handles.add( dispatcher.schedule( new CronJob( CRON_DAILY, 		Calendar.DAY_OF_MONTH, 1 ), 	ScheduleDispatcher.Overlap.SKIP, ScheduleDispatcher.Misfire.FIRE ) );
+				handles.add( dispatcher.schedule( new CronJob( CRON_WEEKLY, 	Calendar.DAY_OF_WEEK, 1 ), 		ScheduleDispatcher.Overlap.SKIP, ScheduleDispatcher.Misfire.FIRE ) );
+				handles.add( dispatcher.schedule( new CronJob( CRON_MONTHLY, 	Calendar.MONTH, 1 ), 					ScheduleDispatcher.Overlap.SKIP, ScheduleDispatcher.Misfire.FIRE ) );
+			}
 		} catch (Exception e) {
 			PluginManager.getPlugInManager().log( getPluginName() + " : " + e.getMessage() );
 		}
@@ -210,88 +214,87 @@ public class CronExtension extends Thread implements Plugin {
 	
 	
 	public void pluginStop(PluginManagerInterface manager) {
-		bRunning = false;
+		synchronized( handles ){
+			ScheduleDispatcher dispatcher = ScheduleDispatcher.getInstance();
+			for ( ScheduleDispatcher.Handle handle : handles )
+				dispatcher.cancel( handle );
+			handles.clear();
+		}
+		PluginManager.getPlugInManager().log( getPluginName() + " scheduler stopped" );
 	}
 
 	
-	public void run(){
+	/**
+	 * One cron.* folder; runs on every boundary of the given calendar field
+	 */
+	private class CronJob implements ScheduleDispatcher.Job {
+		private final String directory;
+		private final int field, step;
 		
-		while (bRunning){
-			try {
-				sleep( 60000 );
-			} catch (InterruptedException e) {
-				break;
-			}
-			
-			if ( !bEnabled || uriRootPath == null )
-				continue;
-			
-			Calendar thisDate = new GregorianCalendar();
-
-			new Thread("CronPlugin_" + currentMonth + "-1min" ){
-				public void run(){ try{ processCronFiles( CRON_1MIN ); }catch(Throwable ignore){} }
-			}.start();
-
-			/* Handle the 5min change */
-			if ( thisDate.get( Calendar.MINUTE )%5 == 0 ){
-				new Thread("CronPlugin_" + currentMonth + "-5mins" ){
-					public void run(){ try{ processCronFiles( CRON_5MIN ); }catch(Throwable ignore){} }
-				}.start();
-			}
-			
-			/* Handle the 15min change */
-			if ( thisDate.get( Calendar.MINUTE )%15 == 0 ){
-				new Thread("CronPlugin_" + currentMonth + "-15mins" ){
-					public void run(){ try{ processCronFiles( CRON_15MIN ); }catch(Throwable ignore){} }
-				}.start();
-			}
-						
-			/* Handle the Monthly change */
-			if ( thisDate.get( Calendar.MONTH ) != currentMonth ){
-				currentMonth = thisDate.get( Calendar.MONTH );
-				
-				new Thread("CronPlugin_" + currentMonth + "-" + currentMonth ){
-					public void run(){ try{ processCronFiles( CRON_MONTHLY ); }catch(Throwable ignore){} }
-				}.start();
-				
-			}
+		private CronJob( String directory, int field, int step ){
+			this.directory	= directory;
+			this.field			= field;
+			this.step				= step;
+		}
+		
+		public String getName(){
+			return "CronPlugin_" + directory;
+		}
+		
+		public long scheduleNext( boolean alreadyRun ){
+			Calendar next = new GregorianCalendar();
+			next.set( Calendar.SECOND, 0 );
+			next.set( Calendar.MILLISECOND, 0 );
 			
-			/* Handle the HOURLY change */
-			if ( thisDate.get( Calendar.HOUR_OF_DAY ) != currentHour ){
-				currentHour = thisDate.get( Calendar.HOUR_OF_DAY );
+			switch ( field ){
+			case Calendar.MINUTE:
+				next.set( Calendar.MINUTE, ( next.get( Calendar.MINUTE ) / step ) * step );
+				next.add( Calendar.MINUTE, step );
+				break;
 				
-				new Thread("CronPlugin_" + currentMonth + "-" + currentDay + "_" + currentHour ){
-					public void run(){ try{ processCronFiles( CRON_HOUR ); }catch(Throwable ignore){} }
-				}.start();
+			case Calendar.HOUR_OF_DAY:
+				next.set( Calendar.MINUTE, 0 );
+				next.add( Calendar.HOUR_OF_DAY, 1 );
+				break;
 				
-			}
-			
-			/* Handle the WEEKLY change */
-			if ( thisDate.get( Calendar.DAY_OF_WEEK ) != currentDayOfWeek && thisDate.get( Calendar.DAY_OF_WEEK ) == Calendar.SUNDAY ){
-				currentDayOfWeek = thisDate.get( Calendar.DAY_OF_WEEK );
+			case Calendar.DAY_OF_MONTH:
+				next.set( Calendar.MINUTE, 0 );
+				next.set( Calendar.HOUR_OF_DAY, 0 );
+				next.add( Calendar.DAY_OF_MONTH, 1 );
+				break;
 				
-				new Thread("CronPlugin_" + currentMonth + "-" + currentDay + "_" + currentHour + "_" + currentDayOfWeek ){
-					public void run(){ try{ processCronFiles( CRON_WEEKLY ); }catch(Throwable ignore){} }
-				}.start();
+			case Calendar.DAY_OF_WEEK:
+				// the start of the coming Sunday
+				next.set( Calendar.MINUTE, 0 );
+				next.set( Calendar.HOUR_OF_DAY, 0 );
+				do {
+					next.add( Calendar.DAY_OF_MONTH, 1 );
+				} while ( next.get( Calendar.DAY_OF_WEEK ) != Calendar.SUNDAY );
+				break;
 				
+			default:
+				next.set( Calendar.MINUTE, 0 );
+				next.set( Calendar.HOUR_OF_DAY, 0 );
+				next.set( Calendar.DAY_OF_MONTH, 1 );
+				next.add( Calendar.MONTH, 1 );
+				break;
 			}
 			
-			/* Handle the DAY change */
-			if ( thisDate.get( Calendar.DAY_OF_MONTH ) != currentDay ){
-				currentDay	= thisDate.get( Calendar.DAY_OF_MONTH );
-				
-				new Thread("CronPlugin_" + currentMonth + "-" + currentDay ){
-					public void run(){ try{ processCronFiles( CRON_DAILY ); }catch(Throwable ignore){} }
-				}.start();
-				
-			}
+			return next.getTimeInMillis();
 		}
 		
-		PluginManager.getPlugInManager().log( getName() + " scheduler stopped" );
+		public boolean isPaused(){
+			// a disabled crontab simply lets the boundaries go by
+			return false;
+		}
+		
+		public void execute(){
+			if ( bEnabled && uriRootPath != null )
+				processCronFiles( directory );
+		}
 	}
 	
 	
-	
 	private void processCronFiles( String directory ){
 		if ( uriRootPath == null )
 			return;